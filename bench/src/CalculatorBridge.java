@@ -0,0 +1,63 @@
+import benchmarks.CalculatorStages;
+import java.math.MathContext;
+
+/**
+ * Gives the benchmarks, which live in a named package, access to {@link Calculator}.
+ */
+public final class CalculatorBridge implements CalculatorStages {
+    @Override
+    public Object construct(String expression) {
+        return new Calculator(expression);
+    }
+
+    @Override
+    public boolean validate(String expression) {
+        return Calculator.isValidExpression(expression);
+    }
+
+    @Override
+    public String convertToPostFix(Object calculator) {
+        return ((Calculator) calculator).convertToPostFix();
+    }
+
+    @Override
+    public double evaluatePostFix(String postfix) {
+        return Calculator.evaluatePostFix(postfix);
+    }
+
+    @Override
+    public double evaluate(Object calculator) {
+        return ((Calculator) calculator).evaluate();
+    }
+
+    @Override
+    public double value(Object calculator) {
+        return ((Calculator) calculator).value();
+    }
+
+    @Override
+    public Object program(Object calculator) {
+        return CompiledExpression.fromPostFix(((Calculator) calculator).convertToPostFix());
+    }
+
+    @Override
+    public double evaluateProgram(Object program) {
+        CompiledExpression compiled = (CompiledExpression) program;
+        return compiled.evaluate(new double[compiled.stackSize()], new double[0]);
+    }
+
+    @Override
+    public Number value(Object calculator, MathContext mathContext) {
+        return ((Calculator) calculator).value(mathContext);
+    }
+
+    @Override
+    public Object workspace() {
+        return new Workspace(Calculator.AngleUnit.DEGREES);
+    }
+
+    @Override
+    public void define(Object workspace, String definition) {
+        ((Workspace) workspace).define(definition);
+    }
+}
@@ -0,0 +1,104 @@
+import benchmarks.PlotStages;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gives the benchmarks, which live in a named package, access to {@link PlotFunction},
+ * {@link PlotSampler}, {@link OverlaySampler}, {@link BoundsFinder}, {@link PrimitiveXYDataset},
+ * {@link ChartExporter} and {@link SurfaceSampler}.
+ */
+public final class PlotBridge implements PlotStages {
+    @Override
+    public Object compile(String function) {
+        return PlotFunction.compile(function);
+    }
+
+    @Override
+    public void grid(Object function, double start, double step, double[] xs, double[] ys) {
+        ((PlotFunction) function).sample(start, step, xs, ys);
+    }
+
+    @Override
+    public Object newSampler() {
+        return new PlotSampler();
+    }
+
+    @Override
+    public int sample(Object sampler, Object function, double start, double end, int width, int height) {
+        return ((PlotSampler) sampler).sample((PlotFunction) function, start, end, width, height);
+    }
+
+    @Override
+    public Object newOverlaySampler() {
+        return new OverlaySampler();
+    }
+
+    @Override
+    public int overlay(Object sampler, Object[] functions, double start, double end, int width, int height) {
+        List<PlotFunction> compiled = new ArrayList<>(functions.length);
+        for (Object function : functions) {
+            compiled.add((PlotFunction) function);
+        }
+        return ((OverlaySampler) sampler).sample(compiled, start, end, width, height);
+    }
+
+    @Override
+    public boolean bound(Object function, double start, double end, int width) {
+        BoundsFinder finder = ((PlotFunction) function).newBoundsFinder();
+        if (finder == null) {
+            return false;
+        }
+        int intervals = width * PlotSampler.SAMPLES_PER_PIXEL;
+        finder.bound(start, (end - start) / intervals, intervals);
+        return finder.isUndefinedSomewhere();
+    }
+
+    @Override
+    public double[] xs(Object sampler) {
+        return ((PlotSampler) sampler).xs();
+    }
+
+    @Override
+    public double[] ys(Object sampler) {
+        return ((PlotSampler) sampler).ys();
+    }
+
+    @Override
+    public Object newDataset() {
+        return new PrimitiveXYDataset("Graph");
+    }
+
+    @Override
+    public void setData(Object dataset, double[] xs, double[] ys, int count) {
+        ((PrimitiveXYDataset) dataset).setData(xs, ys, count);
+    }
+
+    @Override
+    public Object newExporter(int width, int height) {
+        return new ChartExporter(width, height, 1);
+    }
+
+    @Override
+    public byte[] render(Object exporter, String functions, double start, double end, boolean svg) {
+        return ((ChartExporter) exporter).render(functions, start, end,
+                svg ? ChartExporter.Format.SVG : ChartExporter.Format.PNG);
+    }
+
+    @Override
+    public Object compileSurface(String function) {
+        return SurfaceFunction.compile(function);
+    }
+
+    @Override
+    public void clearSurfaceCache() {
+        SurfaceSampler.clearCache();
+    }
+
+    @Override
+    public void renderSurface(Object function, double spacing, long left, long top, int step, boolean contours,
+                              BufferedImage image) {
+        SurfaceSampler.Window window = new SurfaceSampler.Window(spacing, left, top, image.getWidth(), image.getHeight());
+        SurfaceSampler.render((SurfaceFunction) function, window, step, contours, image, TaskMonitor.NONE);
+    }
+}
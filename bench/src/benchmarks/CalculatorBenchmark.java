@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures each stage of {@code Calculator} on its own, per expression of the corpus, with
+ * the compiled-expression cache warm: this is the cost of an expression the user has typed
+ * before. {@link ColdCalculatorBenchmark} measures the first time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CalculatorBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private final CalculatorStages stages = Corpus.bridge("CalculatorBridge", CalculatorStages.class);
+    private String[] expressions;
+    private Object[] calculators;
+    private String[] postfixes;
+
+    @Setup
+    public void setUp() {
+        expressions = Corpus.expressions(size);
+        calculators = new Object[expressions.length];
+        postfixes = new String[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            calculators[i] = stages.construct(expressions[i]);
+            postfixes[i] = stages.convertToPostFix(calculators[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void validate(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.validate(expression));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void construct(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.construct(expression));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void convertToPostFix(Blackhole blackhole) {
+        for (Object calculator : calculators) {
+            blackhole.consume(stages.convertToPostFix(calculator));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void evaluatePostFix(Blackhole blackhole) {
+        for (String postfix : postfixes) {
+            blackhole.consume(stages.evaluatePostFix(postfix));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void evaluate(Blackhole blackhole) {
+        for (Object calculator : calculators) {
+            blackhole.consume(stages.evaluate(calculator));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void constructAndEvaluate(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.evaluate(stages.construct(expression)));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.math.MathContext;
+
+/**
+ * The stages of {@code Calculator} measured by {@link CalculatorBenchmark}, implemented by
+ * the default-package {@code CalculatorBridge}. Calculators are passed around as opaque
+ * objects.
+ */
+public interface CalculatorStages {
+    /**
+     * @return a new calculator for the expression, compiled or taken from the cache
+     */
+    Object construct(String expression);
+
+    /**
+     * @return true if the expression is valid
+     */
+    boolean validate(String expression);
+
+    /**
+     * @return the postfix form of the calculator's expression
+     */
+    String convertToPostFix(Object calculator);
+
+    /**
+     * @return the value of a postfix expression
+     */
+    double evaluatePostFix(String postfix);
+
+    /**
+     * @return the value of the calculator's expression, which is also added to the history
+     */
+    double evaluate(Object calculator);
+
+    /**
+     * @return the value of the calculator's expression, without history
+     */
+    double value(Object calculator);
+
+    /**
+     * @return the parsed program of the calculator's expression, which unlike the
+     *         calculator does not remember its result
+     */
+    Object program(Object calculator);
+
+    /**
+     * @return the value of a program from {@link #program}, evaluated as doubles
+     */
+    double evaluateProgram(Object program);
+
+    /**
+     * @return the exact or rounded value of the calculator's expression, without history
+     */
+    Number value(Object calculator, MathContext mathContext);
+
+    /**
+     * @return a new, empty workspace of definitions
+     */
+    Object workspace();
+
+    /**
+     * Adds or replaces a definition in a workspace from {@link #workspace}, updating what
+     * depends on it.
+     */
+    void define(Object workspace, String definition);
+}
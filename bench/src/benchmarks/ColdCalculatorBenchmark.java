@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@code Calculator} on expressions it has not seen: the compiled-expression cache
+ * is sized to zero, so every constructor lexes, validates and parses its expression and
+ * every evaluation optimizes the program first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dcalculator.cache.maxWeight=0")
+public class ColdCalculatorBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private final CalculatorStages stages = Corpus.bridge("CalculatorBridge", CalculatorStages.class);
+    private String[] expressions;
+
+    @Setup
+    public void setUp() {
+        expressions = Corpus.expressions(size);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void construct(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.construct(expression));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void convertToPostFix(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.convertToPostFix(stages.construct(expression)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void constructAndEvaluate(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.evaluate(stages.construct(expression)));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Corpus class loads the fixed benchmark inputs from {@code corpus/*.tsv}. Each line is
+ * a size group ({@code small}, {@code medium} or {@code large}) and an expression separated
+ * by a tab; lines starting with {@code #} are comments. Every group holds the same number
+ * of entries so that scores can be reported per expression.
+ */
+final class Corpus {
+    /**
+     * Number of calculator expressions in each size group.
+     */
+    static final int EXPRESSIONS_PER_SIZE = 16;
+
+    /**
+     * Number of plotted functions in each size group.
+     */
+    static final int FUNCTIONS_PER_SIZE = 8;
+
+    private Corpus() {
+    }
+
+    /**
+     * @return the calculator expressions of a size group, trigonometry in degrees
+     */
+    static String[] expressions(String size) {
+        return load("corpus/expressions.tsv", size, EXPRESSIONS_PER_SIZE);
+    }
+
+    /**
+     * @return the functions of x of a size group, trigonometry in radians
+     */
+    static String[] functions(String size) {
+        return load("corpus/functions.tsv", size, FUNCTIONS_PER_SIZE);
+    }
+
+    private static String[] load(String resource, String size, int expected) {
+        List<String> entries = new ArrayList<>();
+        InputStream in = Corpus.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Missing corpus: " + resource);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (line.substring(0, tab).equals(size)) {
+                    entries.add(line.substring(tab + 1));
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (entries.size() != expected) {
+            throw new IllegalStateException(resource + " has " + entries.size() + " " + size
+                    + " entries, expected " + expected);
+        }
+        return entries.toArray(new String[0]);
+    }
+
+    /**
+     * Creates a bridge to the application classes. The application lives in the default
+     * package, which code in a named package cannot refer to, so each bridge is a
+     * default-package class that implements an interface of this package.
+     *
+     * @return a new instance of the named bridge class
+     */
+    static <T> T bridge(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + className, e);
+        }
+    }
+}
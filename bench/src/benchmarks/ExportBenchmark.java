@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures headless chart export, per chart: sampling each function of the corpus over
+ * the graphing tool's default domain, drawing it on an 800x600 chart and encoding it.
+ * One thread renders, so charts per second on a machine is about the number of cores
+ * divided by the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ExportBenchmark {
+    private static final double START = -10;
+    private static final double END = 10;
+
+    @Param({"small", "medium"})
+    public String size;
+
+    @Param({"png", "svg"})
+    public String format;
+
+    private final PlotStages stages = Corpus.bridge("PlotBridge", PlotStages.class);
+    private String[] functions;
+    private Object exporter;
+
+    @Setup
+    public void setUp() {
+        functions = Corpus.functions(size);
+        exporter = stages.newExporter(800, 600);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void render(Blackhole blackhole) {
+        for (String function : functions) {
+            blackhole.consume(stages.render(exporter, function, START, END, format.equals("svg")));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what the engine metrics cost. Each operation validates, constructs and evaluates
+ * one expression of the corpus, which times three stages when metrics are on. The three
+ * benchmarks run the same code in JVMs started with metrics off (the default), on, and on
+ * with a Flight Recorder recording taking the stage events. Metrics are switched at
+ * startup, so each runs in forks of its own; {@code off} should match the same work in
+ * {@link CalculatorBenchmark} before the timing calls were added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricsBenchmark {
+    @Param({"small", "medium"})
+    public String size;
+
+    private final CalculatorStages stages = Corpus.bridge("CalculatorBridge", CalculatorStages.class);
+    private String[] expressions;
+
+    @Setup
+    public void setUp() {
+        expressions = Corpus.expressions(size);
+    }
+
+    @Benchmark
+    @Fork(2)
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void off(Blackhole blackhole) {
+        run(blackhole);
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = "-Dcalculator.metrics=true")
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void on(Blackhole blackhole) {
+        run(blackhole);
+    }
+
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = {"-Dcalculator.metrics=true", "-XX:StartFlightRecording=settings=profile"})
+    @OperationsPerInvocation(Corpus.EXPRESSIONS_PER_SIZE)
+    public void onWithFlightRecording(Blackhole blackhole) {
+        run(blackhole);
+    }
+
+    private void run(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(stages.validate(expression));
+            blackhole.consume(stages.value(stages.construct(expression)));
+        }
+    }
+}
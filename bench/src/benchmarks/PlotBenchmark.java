@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures plotting, per function of the corpus, over the graphing tool's default domain:
+ * the parallel grid pass alone, the whole sampling loop (grid, refinement and decimation),
+ * the same loop for all the functions of a size overlaid on one chart, bounding each
+ * function over the grid by interval arithmetic, which the overlaid loop does first to fit
+ * the y range and skip off-screen refinement, and building the chart dataset from the
+ * sampled points. {@link #xySeries} builds the {@code XYSeriesCollection} the graphing
+ * tool used to plot into, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotBenchmark {
+    private static final double START = -10;
+    private static final double END = 10;
+    private static final int HEIGHT = 600;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"800", "1920"})
+    public int width;
+
+    private final PlotStages stages = Corpus.bridge("PlotBridge", PlotStages.class);
+    private Object[] functions;
+    private Object sampler;
+    private Object overlaySampler;
+    private Object dataset;
+    private double[] gridX;
+    private double[] gridY;
+    private double[][] sampledX;
+    private double[][] sampledY;
+    private int[] sampledCount;
+
+    @Setup
+    public void setUp() {
+        String[] texts = Corpus.functions(size);
+        functions = new Object[texts.length];
+        sampler = stages.newSampler();
+        overlaySampler = stages.newOverlaySampler();
+        dataset = stages.newDataset();
+        gridX = new double[width * 2 + 1];
+        gridY = new double[width * 2 + 1];
+        sampledX = new double[texts.length][];
+        sampledY = new double[texts.length][];
+        sampledCount = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            functions[i] = stages.compile(texts[i]);
+            sampledCount[i] = stages.sample(sampler, functions[i], START, END, width, HEIGHT);
+            sampledX[i] = stages.xs(sampler).clone();
+            sampledY[i] = stages.ys(sampler).clone();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void grid(Blackhole blackhole) {
+        double step = (END - START) / (gridX.length - 1);
+        for (Object function : functions) {
+            stages.grid(function, START, step, gridX, gridY);
+            blackhole.consume(gridY);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void sample(Blackhole blackhole) {
+        for (Object function : functions) {
+            blackhole.consume(stages.sample(sampler, function, START, END, width, HEIGHT));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public int overlay() {
+        return stages.overlay(overlaySampler, functions, START, END, width, HEIGHT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void bound(Blackhole blackhole) {
+        for (Object function : functions) {
+            blackhole.consume(stages.bound(function, START, END, width));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void plot(Blackhole blackhole) {
+        for (Object function : functions) {
+            int count = stages.sample(sampler, function, START, END, width, HEIGHT);
+            stages.setData(dataset, stages.xs(sampler), stages.ys(sampler), count);
+        }
+        blackhole.consume(dataset);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void dataset(Blackhole blackhole) {
+        for (int i = 0; i < functions.length; i++) {
+            stages.setData(dataset, sampledX[i], sampledY[i], sampledCount[i]);
+        }
+        blackhole.consume(dataset);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FUNCTIONS_PER_SIZE)
+    public void xySeries(Blackhole blackhole) {
+        for (int i = 0; i < functions.length; i++) {
+            XYSeries series = new XYSeries("Graph");
+            for (int j = 0; j < sampledCount[i]; j++) {
+                series.add(sampledX[i][j], sampledY[i][j]);
+            }
+            blackhole.consume(new XYSeriesCollection(series));
+        }
+    }
+}
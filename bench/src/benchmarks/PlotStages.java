@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The stages of plotting measured by {@link PlotBenchmark}, implemented by the
+ * default-package {@code PlotBridge}. Functions, samplers and datasets are passed around
+ * as opaque objects.
+ */
+public interface PlotStages {
+    /**
+     * @return the compiled function of x
+     */
+    Object compile(String function);
+
+    /**
+     * Samples the function on an evenly spaced grid, the first pass of a plot.
+     */
+    void grid(Object function, double start, double step, double[] xs, double[] ys);
+
+    /**
+     * @return a new plot sampler
+     */
+    Object newSampler();
+
+    /**
+     * Samples the function over a window, as the graphing tool does for each plot and zoom.
+     *
+     * @return number of points to draw
+     */
+    int sample(Object sampler, Object function, double start, double end, int width, int height);
+
+    /**
+     * @return a new sampler for several functions on one chart
+     */
+    Object newOverlaySampler();
+
+    /**
+     * Samples all the functions over one window in a shared pass, as the graphing tool
+     * does when functions are overlaid.
+     *
+     * @return number of curves
+     */
+    int overlay(Object sampler, Object[] functions, double start, double end, int width, int height);
+
+    /**
+     * Bounds the function by interval arithmetic over each interval of the coarse grid of a
+     * window, as the overlay sampler does before refining it.
+     *
+     * @return true if the bounds show the function to be undefined somewhere
+     */
+    boolean bound(Object function, double start, double end, int width);
+
+    /**
+     * @return x of each point of the sampler's last sample
+     */
+    double[] xs(Object sampler);
+
+    /**
+     * @return y of each point of the sampler's last sample
+     */
+    double[] ys(Object sampler);
+
+    /**
+     * @return a new, empty chart dataset
+     */
+    Object newDataset();
+
+    /**
+     * Replaces the data of a chart dataset.
+     */
+    void setData(Object dataset, double[] xs, double[] ys, int count);
+
+    /**
+     * @return a new headless chart exporter for charts of the given size
+     */
+    Object newExporter(int width, int height);
+
+    /**
+     * Samples, draws and encodes one chart on the calling thread.
+     *
+     * @return the PNG or SVG file
+     */
+    byte[] render(Object exporter, String functions, double start, double end, boolean svg);
+
+    /**
+     * @return the compiled function of x and y
+     */
+    Object compileSurface(String function);
+
+    /**
+     * Empties the cache of evaluated surface tiles.
+     */
+    void clearSurfaceCache();
+
+    /**
+     * Draws a function of x and y as a heatmap, as the surface tool does for each view.
+     *
+     * @param left pixel column of the plane at the left edge of the image
+     * @param step 1 for full resolution, or the side of the pixel blocks of a coarse pass
+     */
+    void renderSurface(Object function, double spacing, long left, long top, int step, boolean contours,
+                       BufferedImage image);
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluating the corpus as doubles with evaluating it exactly, rounding to the
+ * given number of digits where a step has no exact result. Precision {@code double} is the
+ * baseline: it runs the parsed program each time, since a calculator remembers the double
+ * result of an expression without variables. Expressions are compiled once and the
+ * constants of {@code BigMath} are warm, so this is the cost of evaluation alone.
+ * <p>
+ * Exact evaluation reports division by zero and the tangent of a right angle where doubles
+ * return infinities, and a difference that cancels at one precision may not at another, so
+ * expressions that throw at any of the precisions are left out of every mode. Each operation evaluates the next kept expression in turn, so the score is
+ * the average over those expressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PrecisionBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private static final int[] DIGITS = {16, 34, 100, 1000};
+
+    /** "double", or one of {@link #DIGITS}. */
+    @Param({"double", "16", "34", "100", "1000"})
+    public String precision;
+
+    private final CalculatorStages stages = Corpus.bridge("CalculatorBridge", CalculatorStages.class);
+    private Object[] calculators;
+    private Object[] programs;
+    private MathContext mathContext;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Object> kept = new ArrayList<>();
+        for (String expression : Corpus.expressions(size)) {
+            Object calculator = stages.construct(expression);
+            if (evaluatesAtEveryPrecision(calculator)) {
+                kept.add(calculator);
+            }
+        }
+        calculators = kept.toArray();
+        programs = new Object[calculators.length];
+        for (int i = 0; i < calculators.length; i++) {
+            programs[i] = stages.program(calculators[i]);
+        }
+        mathContext = precision.equals("double") ? null : new MathContext(Integer.parseInt(precision));
+    }
+
+    private boolean evaluatesAtEveryPrecision(Object calculator) {
+        for (int digits : DIGITS) {
+            try {
+                stages.value(calculator, new MathContext(digits));
+            }
+            catch (ArithmeticException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    public Object value() {
+        int index = next;
+        next = index + 1 == calculators.length ? 0 : index + 1;
+        if (mathContext == null) {
+            return stages.evaluateProgram(programs[index]);
+        }
+        return stages.value(calculators[index], mathContext);
+    }
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cold start of the calculator in a new JVM each time: {@code firstFrame} is
+ * the time from launching the JVM until the calculator's window has opened, and
+ * {@code firstPlot} until the graphing tool, opened as soon as the window is, has drawn
+ * its first graph. The application reports each milestone with {@code -Dcalculator.startup.run}
+ * and exits; the time is taken here, when the report is read.
+ * <p>
+ * With {@code archive=trained} the JVMs map an AppCDS archive recorded by a training run of
+ * {@code Startup} before the measurements, as {@code mvn -P startup package} does;
+ * {@code none} uses only the JDK's default archive. The application needs a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"none", "trained"})
+    public String archive;
+
+    private final List<String> java = new ArrayList<>();
+    private Path archiveFile;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        java.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        java.add("-cp");
+        java.add(System.getProperty("java.class.path"));
+        if (archive.equals("trained")) {
+            archiveFile = Files.createTempFile("calculator", ".jsa");
+            List<String> training = new ArrayList<>(java);
+            training.add(1, "-XX:ArchiveClassesAtExit=" + archiveFile);
+            training.add("Startup");
+            Process trainer = new ProcessBuilder(training).inheritIO().start();
+            if (trainer.waitFor() != 0) {
+                throw new IllegalStateException("The training run failed");
+            }
+            java.add(1, "-XX:SharedArchiveFile=" + archiveFile);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (archiveFile != null) {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void exit() throws InterruptedException {
+        if (process != null) {
+            process.waitFor();
+        }
+    }
+
+    @Benchmark
+    public void firstFrame() throws IOException {
+        launch("frame", "first frame");
+    }
+
+    @Benchmark
+    public void firstPlot() throws IOException {
+        launch("plot", "first plot");
+    }
+
+    /**
+     * Starts the calculator and returns when it reports the milestone.
+     */
+    private void launch(String run, String milestone) throws IOException {
+        List<String> command = new ArrayList<>(java);
+        command.add("-Dcalculator.startup.run=" + run);
+        command.add("CalculatorGUI");
+        process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Startup: " + milestone)) {
+                    return;
+                }
+                output.add(line);
+            }
+        }
+        throw new IllegalStateException("The calculator exited before its " + milestone + ":\n"
+                + String.join("\n", output));
+    }
+}
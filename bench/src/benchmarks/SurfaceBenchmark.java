@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing a surface as a heatmap, per view: a cold view at full resolution, the
+ * coarse pass shown first, a pan by one tile that evaluates only the tiles coming into
+ * view, and redrawing a view whose tiles are all cached, which is the cost of colouring
+ * alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SurfaceBenchmark {
+    private static final double SPACING = 0.025;
+    private static final int TILE_SIZE = 64;
+    private static final int COARSE_STEP = 8;
+
+    @Param({"sin(x) * cos(y)", "sqrt(x^2 + y^2) - sin(3 * x) * y"})
+    public String function;
+
+    @Param({"1920x1080", "3840x2160"})
+    public String resolution;
+
+    private final PlotStages stages = Corpus.bridge("PlotBridge", PlotStages.class);
+    private Object surface;
+    private BufferedImage image;
+    private long left;
+    private long top;
+
+    @Setup
+    public void setUp() {
+        surface = stages.compileSurface(function);
+        String[] size = resolution.split("x");
+        image = new BufferedImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]), BufferedImage.TYPE_INT_RGB);
+        left = -image.getWidth() / 2;
+        top = -image.getHeight() / 2;
+        stages.clearSurfaceCache();
+    }
+
+    @Benchmark
+    public BufferedImage cold() {
+        stages.clearSurfaceCache();
+        stages.renderSurface(surface, SPACING, left, top, 1, false, image);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage coarse() {
+        stages.clearSurfaceCache();
+        stages.renderSurface(surface, SPACING, left, top, COARSE_STEP, false, image);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage pan() {
+        left += TILE_SIZE;
+        stages.renderSurface(surface, SPACING, left, top, 1, false, image);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage cached() {
+        stages.renderSurface(surface, SPACING, left, top, 1, true, image);
+        return image;
+    }
+}
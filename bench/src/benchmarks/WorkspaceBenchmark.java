@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures updating a workspace of definitions after one of them changes. The workspace
+ * holds a variable {@code c}, a function {@code f(x) = x + c} and {@code size} variables
+ * {@code va, vb, ...} that call it: in a {@code chain} each calls f on the one before, and
+ * in a {@code wide} workspace each is a multiple of f of the first.
+ * <p>
+ * {@code changeValue} gives the first variable a new value, so every other variable is
+ * evaluated again with the program it has; {@code changeFunction} redefines f, so every
+ * variable is compiled again; {@code changeLeaf} redefines the last variable, which nothing depends on.
+ * {@code reenterAll} defines everything in a new workspace, which is what each change
+ * would cost without dependency tracking.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WorkspaceBenchmark {
+    @Param({"chain", "wide"})
+    public String shape;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private final CalculatorStages stages = Corpus.bridge("CalculatorBridge", CalculatorStages.class);
+    private final List<String> definitions = new ArrayList<>();
+    private Object workspace;
+    private String leaf;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        definitions.add("c = 1");
+        definitions.add("f(x) = x + c");
+        definitions.add(name(0) + " = 1");
+        for (int i = 1; i < size; i++) {
+            definitions.add(name(i) + " = " + (shape.equals("chain") ? "f(" + name(i - 1) + ")" : "f(" + name(0) + ") * " + i));
+        }
+        leaf = name(size - 1) + " = ";
+        workspace = reenterAll();
+    }
+
+    /**
+     * @return the name of the i-th variable; names are letters only
+     */
+    private static String name(int i) {
+        StringBuilder name = new StringBuilder("v");
+        do {
+            name.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return name.toString();
+    }
+
+    @Benchmark
+    public Object changeValue() {
+        stages.define(workspace, name(0) + " = " + (next++ & 1));
+        return workspace;
+    }
+
+    @Benchmark
+    public Object changeFunction() {
+        stages.define(workspace, (next++ & 1) == 0 ? "f(x) = x - c" : "f(x) = x + c");
+        return workspace;
+    }
+
+    @Benchmark
+    public Object changeLeaf() {
+        stages.define(workspace, leaf + (next++ & 1));
+        return workspace;
+    }
+
+    @Benchmark
+    public Object reenterAll() {
+        Object fresh = stages.workspace();
+        for (String definition : definitions) {
+            stages.define(fresh, definition);
+        }
+        return fresh;
+    }
+}
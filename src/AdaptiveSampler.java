@@ -0,0 +1,225 @@
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * The AdaptiveSampler class refines a coarse, evenly spaced sampling of a function.
+ * Each interval is split while the function's midpoint strays from the straight line
+ * between its ends by more than a tolerance, or while one end is finite and the other
+ * is not, so curved regions and discontinuities get extra points and flat regions keep
+ * only the coarse grid. A sampler is not thread-safe; its output arrays are reused.
+ */
+public final class AdaptiveSampler {
+    private static final IntPredicate NEVER = interval -> false;
+    private static final IntToDoubleFunction NO_GAP = interval -> Double.NaN;
+
+    private final DoubleUnaryOperator function;
+    private final int maxDepth;
+    private final int maxPoints;
+    private double tolerance;
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int count;
+    private long evaluations;
+
+    /**
+     * @param function  evaluator of the function, confined to the calling thread
+     * @param maxDepth  how many times an interval of the coarse grid may be halved
+     * @param maxPoints point budget after which no more intervals are split
+     */
+    public AdaptiveSampler(DoubleUnaryOperator function, int maxDepth, int maxPoints) {
+        this.function = function;
+        this.maxDepth = maxDepth;
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Refines an evenly spaced grid, replacing the result of any previous call.
+     *
+     * @param gridX     x of each grid point, ascending
+     * @param gridY     function value at each grid point
+     * @param n         number of grid points
+     * @param tolerance largest allowed distance, in y units, between the function and
+     *                  the line drawn through the samples
+     * @return number of samples produced
+     */
+    public int refine(double[] gridX, double[] gridY, int n, double tolerance) {
+        return refine(gridX, gridY, n, tolerance, TaskMonitor.NONE);
+    }
+
+    /**
+     * Refines an evenly spaced grid like {@link #refine(double[], double[], int, double)},
+     * checking for cancellation and reporting progress after each grid interval.
+     *
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int refine(double[] gridX, double[] gridY, int n, double tolerance, TaskMonitor monitor) {
+        return refine(gridX, gridY, n, 1, tolerance, NEVER, NO_GAP, monitor);
+    }
+
+    /**
+     * Refines a grid that already holds the midpoint of every coarse interval: the even
+     * points are the coarse grid and each odd point lies halfway between its neighbours,
+     * as when the grid was sampled at twice the resolution in one batch. The result is
+     * that of refining the coarse grid, without evaluating the first midpoints one by one.
+     *
+     * @param n number of grid points, odd
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int refineSampledMidpoints(double[] gridX, double[] gridY, int n, double tolerance, TaskMonitor monitor) {
+        return refine(gridX, gridY, n, 2, tolerance, NEVER, NO_GAP, monitor);
+    }
+
+    /**
+     * Refines a grid that already holds the midpoint of every coarse interval like
+     * {@link #refineSampledMidpoints(double[], double[], int, double, TaskMonitor)}, leaving
+     * alone the coarse intervals known to need no refinement, such as those a
+     * {@link BoundsFinder} shows to lie off-screen. A settled interval with a break is
+     * drawn with a gap at the break, as across a pole.
+     *
+     * @param settled per coarse interval, true if it is not to be refined
+     * @param breaks  per coarse interval, the x of a gap to leave, or NaN
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int refineSampledMidpoints(double[] gridX, double[] gridY, int n, double tolerance,
+                                      boolean[] settled, double[] breaks, TaskMonitor monitor) {
+        return refine(gridX, gridY, n, 2, tolerance, interval -> settled[interval],
+                interval -> breaks[interval], monitor);
+    }
+
+    /**
+     * Refines the coarse intervals of a grid whose coarse points are every stride-th point;
+     * with a stride of 2 the point between two coarse points is their sampled midpoint.
+     *
+     * @param skip per coarse interval, true if it is not to be refined
+     * @param gap  per coarse interval that is skipped, the x of a gap to leave, or NaN
+     */
+    private int refine(double[] gridX, double[] gridY, int n, int stride, double tolerance,
+                       IntPredicate skip, IntToDoubleFunction gap, TaskMonitor monitor) {
+        this.tolerance = tolerance;
+        count = 0;
+        if (n == 0) {
+            return 0;
+        }
+        add(gridX[0], gridY[0]);
+        int reported = 0;
+        for (int i = stride; i < n; i += stride) {
+            monitor.checkCancelled();
+            int interval = i / stride - 1;
+            if (skip.test(interval)) {
+                double at = gap.applyAsDouble(interval);
+                if (!Double.isNaN(at)) {
+                    add(at, Double.NaN);
+                }
+            }
+            else if (stride == 1) {
+                split(gridX[i - 1], gridY[i - 1], gridX[i], gridY[i], 0);
+            }
+            else if (maxDepth > 0 && count < maxPoints) {
+                split(gridX[i - 2], gridY[i - 2], gridX[i - 1], gridY[i - 1], gridX[i], gridY[i], 0);
+            }
+            add(gridX[i], gridY[i]);
+            int percent = (int) (100L * i / n);
+            if (percent != reported) {
+                monitor.progress(percent);
+                reported = percent;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the points strictly between x0 and x1 that the interval needs.
+     */
+    private void split(double x0, double y0, double x1, double y1, int depth) {
+        if (depth >= maxDepth || count >= maxPoints) {
+            return;
+        }
+        double xm = 0.5 * (x0 + x1);
+        evaluations++;
+        split(x0, y0, xm, function.applyAsDouble(xm), x1, y1, depth);
+    }
+
+    /**
+     * Adds the points strictly between x0 and x1 that the interval needs, given the
+     * value at its midpoint.
+     */
+    private void split(double x0, double y0, double xm, double ym, double x1, double y1, int depth) {
+        if (!needsSplit(y0, ym, y1)) {
+            return;
+        }
+        split(x0, y0, xm, ym, depth + 1);
+        add(xm, ym);
+        split(xm, ym, x1, y1, depth + 1);
+    }
+
+    private boolean needsSplit(double y0, double ym, double y1) {
+        boolean finite0 = Double.isFinite(y0);
+        boolean finiteM = Double.isFinite(ym);
+        boolean finite1 = Double.isFinite(y1);
+        if (!finite0 || !finiteM || !finite1) {
+            return finite0 || finiteM || finite1;
+        }
+        return Math.abs(ym - 0.5 * (y0 + y1)) > tolerance;
+    }
+
+    private void add(double x, double y) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * @return x of the samples from the last refinement; only the first {@link #count()} are valid
+     */
+    public double[] xs() {
+        return xs;
+    }
+
+    /**
+     * @return y of the samples from the last refinement; only the first {@link #count()} are valid
+     */
+    public double[] ys() {
+        return ys;
+    }
+
+    /**
+     * @return number of samples from the last refinement
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return number of points evaluated so far by refinement, not counting the grid
+     */
+    public long evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Picks a tolerance of half a pixel for a plot of the given height, based on the spread
+     * of the finite values in the grid.
+     *
+     * @return tolerance in y units
+     */
+    public static double halfPixel(double[] ys, int n, int heightInPixels) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (Double.isFinite(ys[i])) {
+                min = Math.min(min, ys[i]);
+                max = Math.max(max, ys[i]);
+            }
+        }
+        if (!(max > min)) {
+            return Double.MIN_NORMAL;
+        }
+        return 0.5 * (max - min) / Math.max(1, heightInPixels);
+    }
+}
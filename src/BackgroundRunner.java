@@ -0,0 +1,171 @@
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * The BackgroundRunner class runs one kind of work, such as evaluating or plotting, off the
+ * Event Dispatch Thread. Only the latest request matters: submitting work cancels the run
+ * in progress, so rapid repeated requests never queue up, and only the result of the
+ * latest run is handed to the Event Dispatch Thread. Each run gets a virtual thread and a
+ * timeout; progress reports are merged so the EDT sees at most one pending update.
+ * <p>
+ * {@link #submit}, {@link #cancel()} and {@link #isBusy()} must be called on the Event
+ * Dispatch Thread, and all callbacks run there.
+ *
+ * @param <T> type of the result of the work
+ */
+public final class BackgroundRunner<T> {
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("background-timeouts").daemon().factory());
+
+    private final String name;
+    private final Duration timeout;
+    private final Consumer<Throwable> onFailure;
+    private final IntConsumer onProgress;
+    private Run current;
+
+    /**
+     * Work done in the background. It should call {@link TaskMonitor#checkCancelled()}
+     * between steps so that a cancelled run stops early; the results of cancelled runs
+     * are dropped either way.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T call(TaskMonitor monitor) throws Exception;
+    }
+
+    /**
+     * @param name      name of the work, used for its threads and in timeout messages
+     * @param timeout   how long a run may take before it is cancelled
+     * @param onFailure told about a failed or timed out run
+     */
+    public BackgroundRunner(String name, Duration timeout, Consumer<Throwable> onFailure) {
+        this(name, timeout, onFailure, percent -> { });
+    }
+
+    /**
+     * @param name       name of the work, used for its threads and in timeout messages
+     * @param timeout    how long a run may take before it is cancelled
+     * @param onFailure  told about a failed or timed out run
+     * @param onProgress told about the progress of the current run, from 0 to 100
+     */
+    public BackgroundRunner(String name, Duration timeout, Consumer<Throwable> onFailure, IntConsumer onProgress) {
+        this.name = name;
+        this.timeout = timeout;
+        this.onFailure = onFailure;
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * One run of the work, which is also the monitor the work reports to.
+     */
+    private final class Run implements TaskMonitor {
+        private final AtomicBoolean progressPending = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile int percent;
+        private ScheduledFuture<?> deadline;
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void progress(int percent) {
+            this.percent = percent;
+            if (!cancelled && progressPending.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    progressPending.set(false);
+                    if (current == this) {
+                        onProgress.accept(this.percent);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Starts work in the background, cancelling the run in progress if there is one.
+     *
+     * @param task   the work
+     * @param onDone receives the result, unless the run is cancelled or superseded
+     */
+    public void submit(Task<T> task, Consumer<? super T> onDone) {
+        cancel();
+        Run run = new Run();
+        current = run;
+        onProgress.accept(0);
+        run.deadline = TIMEOUTS.schedule(() -> SwingUtilities.invokeLater(() -> timedOut(run)),
+                timeout.toMillis(), TimeUnit.MILLISECONDS);
+        Thread.ofVirtual().name(name).start(() -> execute(run, task, onDone));
+    }
+
+    private void execute(Run run, Task<T> task, Consumer<? super T> onDone) {
+        try {
+            T result = task.call(run);
+            SwingUtilities.invokeLater(() -> {
+                if (finish(run)) {
+                    onDone.accept(result);
+                }
+            });
+        }
+        catch (CancellationException e) {
+            // Superseded or timed out; whoever cancelled the run has already moved on.
+        }
+        catch (Exception | StackOverflowError e) {
+            SwingUtilities.invokeLater(() -> {
+                if (finish(run)) {
+                    onFailure.accept(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Ends a run that completed on its own.
+     *
+     * @return true if it was still the current run, so its outcome should be published
+     */
+    private boolean finish(Run run) {
+        if (current != run) {
+            return false;
+        }
+        run.deadline.cancel(false);
+        current = null;
+        return true;
+    }
+
+    private void timedOut(Run run) {
+        if (current == run) {
+            run.cancelled = true;
+            current = null;
+            onFailure.accept(new TimeoutException(name + " took longer than " + timeout.toMillis() / 1000.0 + " s"));
+        }
+    }
+
+    /**
+     * Cancels the run in progress, if any. Its result will not be delivered.
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            current.deadline.cancel(false);
+            current = null;
+        }
+    }
+
+    /**
+     * @return true while a run is in progress
+     */
+    public boolean isBusy() {
+        return current != null;
+    }
+}
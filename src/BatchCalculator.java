@@ -0,0 +1,540 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The BatchCalculator class evaluates files without starting Swing. It has two modes:
+ * <ul>
+ *     <li>{@code BatchCalculator expressions.txt} evaluates one expression per line;</li>
+ *     <li>{@code BatchCalculator -e "x^2 + y" bindings.csv} evaluates one expression for
+ *     every row of a CSV file whose header names the variables.</li>
+ * </ul>
+ * Each input line produces one output line, in the same order: the result, or
+ * {@code Error: } and the reason. Results are not added to the calculator history.
+ * <p>
+ * The input is memory-mapped a region at a time and cut into batches of whole lines,
+ * which a fixed set of workers evaluate in parallel. Batches come from a small pool and
+ * keep their buffers, so memory use does not depend on the input size and a slow output
+ * makes the reader wait. A writer thread writes the batches in input order.
+ */
+public final class BatchCalculator {
+    private static final int REGION_SIZE = 1 << 28;
+    private static final int BATCH_SIZE = 1 << 18;
+    private static final byte[] NEW_LINE = {'\n'};
+    private static final Batch END = new Batch(0);
+    private static final String USAGE = """
+            Usage: BatchCalculator [options] expressions.txt
+                   BatchCalculator [options] -e expression bindings.csv
+            Options:
+              -o file     write results to the file instead of standard output
+              -t threads  number of worker threads
+              -radians    take the arguments of sin, cos and tan in radians""";
+
+    private final Calculator.AngleUnit angleUnit;
+    private final CompiledExpression bound;
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> work;
+    private final BlockingQueue<Batch> ordered;
+    private final int threads;
+
+    /**
+     * @param angleUnit  unit of the arguments of sin, cos and tan
+     * @param expression expression evaluated for every CSV row, or null to evaluate lines
+     * @param variables  names of the CSV columns, in order
+     * @param threads    number of worker threads
+     */
+    public BatchCalculator(Calculator.AngleUnit angleUnit, String expression, String[] variables, int threads) {
+        this.angleUnit = angleUnit;
+        this.bound = expression == null ? null : new Calculator(expression, angleUnit, variables).compile();
+        this.threads = threads;
+        int batches = threads * 2 + 2;
+        free = new ArrayBlockingQueue<>(batches);
+        work = new ArrayBlockingQueue<>(batches + threads);
+        ordered = new ArrayBlockingQueue<>(batches + 1);
+        for (int i = 0; i < batches; i++) {
+            free.add(new Batch(variables.length));
+        }
+    }
+
+    /**
+     * A slice of whole input lines together with the buffers its results are built in.
+     * A worker signals {@code done} when the results are ready to write.
+     */
+    private static final class Batch {
+        final Semaphore done = new Semaphore(0);
+        ByteBuffer input;
+        byte[] output = new byte[BATCH_SIZE];
+        int outputLength;
+        double[][] columns;
+        double[] results = new double[0];
+        String[] rowErrors = new String[0];
+        Throwable failure;
+
+        Batch(int variables) {
+            columns = new double[variables][0];
+        }
+
+        void write(byte[] bytes, int length) {
+            ensureOutput(length);
+            System.arraycopy(bytes, 0, output, outputLength, length);
+            outputLength += length;
+        }
+
+        void write(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            write(bytes, bytes.length);
+        }
+
+        /**
+         * Writes a result. Whole numbers are written without a fraction and without
+         * allocating; other values use {@link Double#toString(double)}, which round-trips.
+         */
+        void write(double value) {
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                long n = (long) value;
+                ensureOutput(20);
+                if (n < 0) {
+                    output[outputLength++] = '-';
+                    n = -n;
+                }
+                int end = outputLength;
+                for (long rest = n; rest >= 10; rest /= 10) {
+                    end++;
+                }
+                for (int i = end; i >= outputLength; i--) {
+                    output[i] = (byte) ('0' + n % 10);
+                    n /= 10;
+                }
+                outputLength = end + 1;
+            }
+            else {
+                write(Double.toString(value));
+            }
+        }
+
+        private void ensureOutput(int length) {
+            if (outputLength + length > output.length) {
+                output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + length));
+            }
+        }
+
+        void ensureRows(int rows) {
+            if (results.length < rows) {
+                results = new double[rows];
+                rowErrors = new String[rows];
+                for (int v = 0; v < columns.length; v++) {
+                    columns[v] = new double[rows];
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String expression = null;
+        String output = null;
+        String input = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Calculator.AngleUnit angleUnit = Calculator.AngleUnit.DEGREES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-e" -> expression = argument(args, ++i);
+                case "-o" -> output = argument(args, ++i);
+                case "-t" -> threads = Integer.parseInt(argument(args, ++i));
+                case "-radians" -> angleUnit = Calculator.AngleUnit.RADIANS;
+                default -> input = args[i];
+            }
+        }
+        if (input == null || threads < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try (FileChannel in = FileChannel.open(Path.of(input), StandardOpenOption.READ);
+             WritableByteChannel out = output == null
+                     ? new FileOutputStream(FileDescriptor.out).getChannel()
+                     : FileChannel.open(Path.of(output), StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long start = 0;
+            String[] variables = {};
+            if (expression != null) {
+                ByteBuffer head = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(in.size(), REGION_SIZE));
+                int end = lineEnd(head, 0, head.limit());
+                byte[] header = new byte[end];
+                head.get(0, header);
+                start = end;
+                variables = parseHeader(new String(header, StandardCharsets.UTF_8));
+            }
+            new BatchCalculator(angleUnit, expression, variables, threads).run(in, start, out);
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.err.println(errorLine(e.getMessage()));
+            System.exit(1);
+        }
+    }
+
+    private static String argument(String[] args, int i) {
+        if (i >= args.length) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        return args[i];
+    }
+
+    /**
+     * @return the variable names of a CSV header
+     */
+    private static String[] parseHeader(String header) {
+        String[] names = header.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].strip();
+        }
+        return names;
+    }
+
+    /**
+     * Evaluates the input from the given offset to its end, writing one line per input line.
+     *
+     * @param in    input file
+     * @param start offset of the first line to evaluate
+     * @param out   receives the results
+     */
+    public void run(FileChannel in, long start, WritableByteChannel out) throws IOException, InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "batch-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        Writer writer = new Writer(out);
+        Thread writerThread = new Thread(writer, "batch-writer");
+        writerThread.start();
+
+        try {
+            read(in, start);
+        }
+        finally {
+            ordered.put(END);
+            writerThread.join();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+    }
+
+    /**
+     * Maps the input a region at a time and hands it out in batches of whole lines. A line
+     * cut by the end of a region is read again at the start of the next one.
+     */
+    private void read(FileChannel in, long start) throws IOException, InterruptedException {
+        long size = in.size();
+        long position = start;
+        while (position < size) {
+            int length = (int) Math.min(REGION_SIZE, size - position);
+            ByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            boolean last = position + length == size;
+            int offset = 0;
+            while (offset < length) {
+                int end = length - offset <= BATCH_SIZE ? length : lineEnd(region, offset + BATCH_SIZE, length);
+                if (end == length && !last) {
+                    end = lastLineEnd(region, offset, length);
+                    if (end < 0 && offset == 0) {
+                        throw new IOException("Line at offset " + position + " is longer than " + REGION_SIZE + " bytes");
+                    }
+                    if (end < 0) {
+                        break;
+                    }
+                }
+                submit(region.slice(offset, end - offset));
+                offset = end;
+            }
+            position += offset;
+        }
+    }
+
+    /**
+     * @return offset after the last line feed in the range, or -1 if there is none
+     */
+    private static int lastLineEnd(ByteBuffer region, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (region.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return offset after the next line feed, or the end of the range if there is none
+     */
+    private static int lineEnd(ByteBuffer region, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (region.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    private void submit(ByteBuffer lines) throws InterruptedException {
+        Batch batch = free.take();
+        batch.input = lines;
+        batch.outputLength = 0;
+        batch.failure = null;
+        ordered.put(batch);
+        work.put(batch);
+    }
+
+    /**
+     * Worker loop: evaluates batches until interrupted. Whatever a batch throws, even an
+     * error such as running out of memory, is recorded as its failure and the batch is
+     * always signalled done, so the writer never waits for it forever.
+     */
+    private void work() {
+        Lexer lexer = new Lexer();
+        ByteSequence text = new ByteSequence();
+        double[][] registers = bound == null ? null : bound.newRegisters();
+        while (true) {
+            Batch batch;
+            try {
+                batch = work.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (bound == null) {
+                    evaluateLines(batch);
+                }
+                else {
+                    evaluateRows(batch, lexer, text, registers);
+                }
+            }
+            catch (Throwable e) {
+                batch.failure = e;
+            }
+            finally {
+                batch.done.release();
+            }
+        }
+    }
+
+    /**
+     * Evaluates one expression per line. Expressions go through the shared compiled
+     * expression cache, so repeated lines are compiled once.
+     */
+    private void evaluateLines(Batch batch) {
+        ByteBuffer input = batch.input;
+        byte[] line = new byte[256];
+        int limit = input.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = lineEnd(input, start, limit);
+            int length = end - start;
+            if (length > 0 && input.get(end - 1) == '\n') {
+                length--;
+            }
+            if (length > 0 && input.get(start + length - 1) == '\r') {
+                length--;
+            }
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            input.get(start, line, 0, length);
+            String expression = new String(line, 0, length, StandardCharsets.UTF_8);
+            if (!expression.isBlank()) {
+                try {
+                    batch.write(new Calculator(expression, angleUnit).value());
+                }
+                catch (RuntimeException e) {
+                    batch.write(errorLine(e.getMessage()));
+                }
+            }
+            batch.write(NEW_LINE, 1);
+            start = end;
+        }
+    }
+
+    /**
+     * @return the message as an output line, which always starts with {@code Error:}
+     */
+    private static String errorLine(String message) {
+        return message != null && message.startsWith("Error:") ? message : "Error: " + message;
+    }
+
+    /**
+     * Parses the CSV rows of a batch into columns, then evaluates the bound expression over
+     * all of them at once.
+     */
+    private void evaluateRows(Batch batch, Lexer lexer, ByteSequence text, double[][] registers) {
+        ByteBuffer input = batch.input;
+        int limit = input.limit();
+        text.wrap(input);
+        int rows = 0;
+        for (int start = 0; start < limit; start = lineEnd(input, start, limit)) {
+            rows++;
+        }
+        batch.ensureRows(rows);
+
+        int variables = batch.columns.length;
+        int row = 0;
+        int start = 0;
+        while (start < limit) {
+            int end = lineEnd(input, start, limit);
+            int stop = end;
+            if (stop > start && input.get(stop - 1) == '\n') {
+                stop--;
+            }
+            if (stop > start && input.get(stop - 1) == '\r') {
+                stop--;
+            }
+            batch.rowErrors[row] = parseRow(text, start, stop, batch.columns, row, lexer);
+            start = end;
+            row++;
+        }
+
+        bound.evaluateColumns(batch.columns, batch.results, 0, rows, registers);
+        for (int r = 0; r < rows; r++) {
+            String error = batch.rowErrors[r];
+            if (error == null) {
+                batch.write(batch.results[r]);
+            }
+            else if (!error.isEmpty()) {
+                batch.write(errorLine(error));
+            }
+            batch.write(NEW_LINE, 1);
+        }
+    }
+
+    /**
+     * Parses one CSV row into the given row of the columns.
+     *
+     * @return null if the row was parsed, an empty string for a blank line, or the reason
+     *         the row cannot be evaluated
+     */
+    private static String parseRow(ByteSequence text, int start, int end, double[][] columns, int row, Lexer lexer) {
+        if (start == end) {
+            for (double[] column : columns) {
+                column[row] = Double.NaN;
+            }
+            return "";
+        }
+        int field = 0;
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || text.charAt(i) == ',') {
+                if (field == columns.length) {
+                    return "Expected " + columns.length + " values";
+                }
+                try {
+                    columns[field][row] = lexer.parseNumber(text, from, i);
+                }
+                catch (NumberFormatException e) {
+                    columns[field][row] = Double.NaN;
+                    return e.getMessage();
+                }
+                field++;
+                from = i + 1;
+            }
+        }
+        if (field != columns.length) {
+            for (int v = field; v < columns.length; v++) {
+                columns[v][row] = Double.NaN;
+            }
+            return "Expected " + columns.length + " values";
+        }
+        return null;
+    }
+
+    /**
+     * A view of ASCII bytes as characters, so that CSV fields can be parsed in place.
+     */
+    private static final class ByteSequence implements CharSequence {
+        private ByteBuffer bytes;
+
+        void wrap(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] copy = new byte[end - start];
+            bytes.get(start, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    /**
+     * Writes finished batches in input order and returns them to the pool.
+     */
+    private final class Writer implements Runnable {
+        private final WritableByteChannel out;
+        volatile IOException failure;
+
+        Writer(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = ordered.take()) != END) {
+                    batch.done.acquire();
+                    if (failure == null) {
+                        write(batch);
+                    }
+                    free.put(batch);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(Batch batch) {
+            try {
+                if (batch.failure != null) {
+                    throw new IOException("Evaluation failed", batch.failure);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(batch.output, 0, batch.outputLength);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
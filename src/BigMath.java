@@ -0,0 +1,358 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.function.IntFunction;
+
+/**
+ * The BigMath class computes the functions of the calculator on {@link BigDecimal}s to any
+ * precision. Arguments are reduced first so the series converge quickly: logarithms to
+ * near one with powers of ten and two, exponentials with powers of two and then halving,
+ * and trigonometric functions to within π/4 with quarter turns and then halving. The
+ * number of halvings grows with the square root of the precision, which balances the
+ * squarings that undo them against the terms they save. The series are summed in binary
+ * fixed point, where rounding is a shift.
+ * <p>
+ * The constants π, ln 2 and ln 10 are summed by binary splitting, which turns a series of
+ * n rational terms into one large division of integers built by balanced multiplication,
+ * so it runs at the speed of the JDK's Karatsuba and Toom-Cook multiplication. Each
+ * constant is kept at the highest precision computed so far and rounded for callers that
+ * need fewer digits.
+ */
+public final class BigMath {
+    private static final int GUARD_DIGITS = 10;
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigInteger CHUDNOVSKY_Q = BigInteger.valueOf(10939058860032000L);
+
+    private static final Constant PI = new Constant(BigMath::computePi);
+    private static final Constant LN2 = new Constant(BigMath::computeLn2);
+    private static final Constant LN10 = new Constant(BigMath::computeLn10);
+
+    private BigMath() {
+    }
+
+    /**
+     * A constant that is recomputed only when more digits are asked for than it holds.
+     */
+    private static final class Constant {
+        private final IntFunction<BigDecimal> compute;
+        private volatile BigDecimal value;
+
+        Constant(IntFunction<BigDecimal> compute) {
+            this.compute = compute;
+        }
+
+        BigDecimal get(MathContext mathContext) {
+            BigDecimal cached = value;
+            if (cached == null || cached.precision() < mathContext.getPrecision()) {
+                synchronized (this) {
+                    cached = value;
+                    if (cached == null || cached.precision() < mathContext.getPrecision()) {
+                        cached = compute.apply(mathContext.getPrecision() + GUARD_DIGITS)
+                                .round(new MathContext(mathContext.getPrecision() + GUARD_DIGITS));
+                        value = cached;
+                    }
+                }
+            }
+            return cached.round(mathContext);
+        }
+    }
+
+    /**
+     * @return π rounded to the context
+     */
+    public static BigDecimal pi(MathContext mathContext) {
+        return PI.get(mathContext);
+    }
+
+    /**
+     * @return ln 2 rounded to the context
+     */
+    public static BigDecimal ln2(MathContext mathContext) {
+        return LN2.get(mathContext);
+    }
+
+    /**
+     * @return ln 10 rounded to the context
+     */
+    public static BigDecimal ln10(MathContext mathContext) {
+        return LN10.get(mathContext);
+    }
+
+    /**
+     * Computes π with the Chudnovsky series, about 14 digits per term.
+     */
+    private static BigDecimal computePi(int digits) {
+        int terms = (int) (digits / 14.18) + 2;
+        BigInteger[] pqt = chudnovsky(0, terms);
+        MathContext mathContext = new MathContext(digits);
+        BigDecimal sqrt = BigDecimal.valueOf(10005).sqrt(mathContext);
+        return new BigDecimal(pqt[1]).multiply(BigDecimal.valueOf(426880)).multiply(sqrt)
+                .divide(new BigDecimal(pqt[2]), mathContext);
+    }
+
+    /**
+     * @return P, Q and T of the Chudnovsky terms from a to b
+     */
+    private static BigInteger[] chudnovsky(int a, int b) {
+        if (b - a == 1) {
+            if (a == 0) {
+                return new BigInteger[] {BigInteger.ONE, BigInteger.ONE, BigInteger.valueOf(13591409)};
+            }
+            long k = a;
+            BigInteger p = BigInteger.valueOf(6 * k - 5).multiply(BigInteger.valueOf(2 * k - 1))
+                    .multiply(BigInteger.valueOf(6 * k - 1));
+            BigInteger q = BigInteger.valueOf(k).pow(3).multiply(CHUDNOVSKY_Q);
+            BigInteger t = p.multiply(BigInteger.valueOf(13591409 + 545140134 * k));
+            return new BigInteger[] {p, q, (a & 1) == 1 ? t.negate() : t};
+        }
+        int middle = (a + b) >>> 1;
+        BigInteger[] left = chudnovsky(a, middle);
+        BigInteger[] right = chudnovsky(middle, b);
+        return new BigInteger[] {
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                left[2].multiply(right[1]).add(left[0].multiply(right[2]))
+        };
+    }
+
+    /**
+     * Computes ln 2 = 18 atanh(1/26) - 2 atanh(1/4801) + 8 atanh(1/8749).
+     */
+    private static BigDecimal computeLn2(int digits) {
+        MathContext mathContext = new MathContext(digits + 2);
+        return atanhInverse(26, mathContext).multiply(BigDecimal.valueOf(18))
+                .subtract(atanhInverse(4801, mathContext).multiply(TWO))
+                .add(atanhInverse(8749, mathContext).multiply(BigDecimal.valueOf(8)), mathContext);
+    }
+
+    /**
+     * Computes ln 10 = 3 ln 2 + ln(5/4) = 3 ln 2 + 2 atanh(1/9).
+     */
+    private static BigDecimal computeLn10(int digits) {
+        MathContext mathContext = new MathContext(digits + 2);
+        return ln2(mathContext).multiply(BigDecimal.valueOf(3))
+                .add(atanhInverse(9, mathContext).multiply(TWO), mathContext);
+    }
+
+    /**
+     * Computes atanh(1/q) = sum of 1 / ((2k + 1) q^(2k + 1)) by binary splitting.
+     */
+    private static BigDecimal atanhInverse(long q, MathContext mathContext) {
+        int terms = (int) (mathContext.getPrecision() / (2 * Math.log10(q))) + 2;
+        BigInteger[] qbt = atanhTerms(BigInteger.valueOf(q).multiply(BigInteger.valueOf(q)), 0, terms);
+        BigInteger denominator = qbt[0].multiply(qbt[1]).multiply(BigInteger.valueOf(q));
+        return new BigDecimal(qbt[2]).divide(new BigDecimal(denominator), mathContext);
+    }
+
+    /**
+     * @return Q, B and T of the terms from a to b of the atanh series, where term k is
+     *         1 / ((2k + 1) q²ᵏ) and the partial sum is T / (B Q)
+     */
+    private static BigInteger[] atanhTerms(BigInteger qSquared, int a, int b) {
+        if (b - a == 1) {
+            return new BigInteger[] {a == 0 ? BigInteger.ONE : qSquared, BigInteger.valueOf(2L * a + 1), BigInteger.ONE};
+        }
+        int middle = (a + b) >>> 1;
+        BigInteger[] left = atanhTerms(qSquared, a, middle);
+        BigInteger[] right = atanhTerms(qSquared, middle, b);
+        return new BigInteger[] {
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                right[1].multiply(right[0]).multiply(left[2]).add(left[1].multiply(right[2]))
+        };
+    }
+
+    /**
+     * Computes the natural logarithm. The argument is written as m · 10^e · 2^k with m
+     * within a third of one, so that ln m = 2 atanh((m - 1) / (m + 1)) converges quickly.
+     *
+     * @throws ArithmeticException if the argument is not positive
+     */
+    public static BigDecimal ln(BigDecimal x, MathContext mathContext) {
+        if (x.signum() <= 0) {
+            throw new ArithmeticException("Logarithm of a non-positive number");
+        }
+        if (x.compareTo(BigDecimal.ONE) == 0) {
+            return BigDecimal.ZERO;
+        }
+        MathContext working = new MathContext(mathContext.getPrecision() + GUARD_DIGITS);
+        int exponent = x.precision() - x.scale() - 1;
+        BigDecimal m = x.scaleByPowerOfTen(-exponent);
+        int twos = (int) Math.round(Math.log(m.doubleValue()) / Math.log(2));
+        m = m.multiply(BigDecimal.valueOf(5).pow(twos).scaleByPowerOfTen(-twos));
+
+        BigDecimal difference = m.subtract(BigDecimal.ONE);
+        int bits = bits(working) + leadingZeroBits(difference);
+        BigInteger one = BigInteger.ONE.shiftLeft(bits);
+        BigInteger fixedM = fixed(m, bits);
+        BigInteger z = fixedM.subtract(one).abs().shiftLeft(bits).divide(fixedM.add(one));
+        BigInteger zSquared = z.multiply(z).shiftRight(bits);
+        BigInteger power = z;
+        BigInteger sum = z;
+        for (long k = 3; power.signum() != 0; k += 2) {
+            power = power.multiply(zSquared).shiftRight(bits);
+            sum = sum.add(power.divide(BigInteger.valueOf(k)));
+        }
+        BigDecimal atanh = decimal(difference.signum() < 0 ? sum.negate() : sum, bits - 1, working);
+        return atanh.add(ln10(working).multiply(BigDecimal.valueOf(exponent)))
+                .add(ln2(working).multiply(BigDecimal.valueOf(twos)), working)
+                .round(mathContext);
+    }
+
+    /**
+     * Computes e^x as 2^n · e^r with |r| at most ln(2)/2; e^r is in turn e^(r/2^h)
+     * squared h times.
+     *
+     * @throws ArithmeticException if the result is too large or too small for a BigDecimal
+     */
+    public static BigDecimal exp(BigDecimal x, MathContext mathContext) {
+        if (x.signum() == 0) {
+            return BigDecimal.ONE;
+        }
+        MathContext working = new MathContext(mathContext.getPrecision() + GUARD_DIGITS);
+        BigDecimal ln2 = ln2(new MathContext(working.getPrecision() + Math.max(0, x.precision() - x.scale())));
+        BigInteger twos = x.divide(ln2, 0, RoundingMode.HALF_EVEN).toBigIntegerExact();
+        if (twos.bitLength() > 31) {
+            throw new ArithmeticException("Overflow");
+        }
+        BigDecimal r = x.subtract(ln2.multiply(new BigDecimal(twos)), working);
+
+        int halvings = reductions(working);
+        int bits = bits(working) + halvings;
+        BigInteger fixedR = fixed(r, bits).shiftRight(halvings);
+        BigInteger term = BigInteger.ONE.shiftLeft(bits);
+        BigInteger sum = term;
+        for (long k = 1; term.signum() != 0; k++) {
+            term = term.multiply(fixedR).shiftRight(bits).divide(BigInteger.valueOf(k));
+            sum = sum.add(term);
+        }
+        for (int i = 0; i < halvings; i++) {
+            sum = sum.multiply(sum).shiftRight(bits);
+        }
+        int n = twos.intValueExact();
+        BigDecimal scale = TWO.pow(Math.abs(n), working);
+        BigDecimal value = decimal(sum, bits, working);
+        return (n >= 0 ? value.multiply(scale) : value.divide(scale, working)).round(mathContext);
+    }
+
+    /**
+     * @return sine of an angle in radians
+     */
+    public static BigDecimal sin(BigDecimal x, MathContext mathContext) {
+        return sinOrCos(x, 0, mathContext);
+    }
+
+    /**
+     * @return cosine of an angle in radians
+     */
+    public static BigDecimal cos(BigDecimal x, MathContext mathContext) {
+        return sinOrCos(x, 1, mathContext);
+    }
+
+    /**
+     * Computes sin(x + quarterTurns · π/2). The angle is first reduced by a whole number of
+     * quarter turns to within π/4, with π computed to enough digits that the integer part
+     * of x does not eat into the precision of the remainder, then halved a number of times
+     * that are undone with the double-angle formula.
+     */
+    static BigDecimal sinOrCos(BigDecimal x, int quarterTurns, MathContext mathContext) {
+        MathContext working = new MathContext(mathContext.getPrecision() + GUARD_DIGITS
+                + Math.max(0, x.precision() - x.scale()));
+        BigDecimal halfPi = pi(working).divide(TWO, working);
+        BigInteger turns = x.divide(halfPi, 0, RoundingMode.HALF_EVEN).toBigIntegerExact();
+        BigDecimal r = x.subtract(halfPi.multiply(new BigDecimal(turns)), working);
+        int quadrant = turns.add(BigInteger.valueOf(quarterTurns)).mod(BigInteger.valueOf(4)).intValue();
+
+        int halvings = reductions(mathContext);
+        int bits = bits(mathContext) + 2 * halvings + 2 * leadingZeroBits(r);
+        BigInteger one = BigInteger.ONE.shiftLeft(bits);
+        BigInteger angle = fixed(r, bits).shiftRight(halvings);
+        BigInteger versine = versine(angle, bits);
+        BigInteger sine = (quadrant & 1) == 0 ? sine(angle, bits) : null;
+        for (int i = 0; i < halvings; i++) {
+            if (sine != null) {
+                sine = sine.multiply(one.subtract(versine)).shiftRight(bits - 1);
+            }
+            versine = versine.multiply(one.shiftLeft(1).subtract(versine)).shiftRight(bits - 1);
+        }
+        BigInteger value = sine != null ? sine : one.subtract(versine);
+        return decimal(quadrant >= 2 ? value.negate() : value, bits, mathContext);
+    }
+
+    /**
+     * Computes 1 - cos x = x²/2! - x⁴/4! + ... in fixed point with the given number of
+     * fraction bits. Unlike the cosine it keeps its relative precision for small x, and
+     * 1 - cos 2x = 2v(2 - v) doubles the angle without cancellation.
+     */
+    private static BigInteger versine(BigInteger x, int bits) {
+        BigInteger xSquared = x.multiply(x).shiftRight(bits);
+        BigInteger term = xSquared.shiftRight(1);
+        BigInteger sum = term;
+        xSquared = xSquared.negate();
+        for (long k = 3; term.signum() != 0; k += 2) {
+            term = term.multiply(xSquared).shiftRight(bits).divide(BigInteger.valueOf(k * (k + 1)));
+            sum = sum.add(term);
+        }
+        return sum;
+    }
+
+    /**
+     * Computes sin x = x - x³/3! + x⁵/5! - ... in fixed point with the given number of
+     * fraction bits; sin 2x = 2 sin x cos x doubles the angle alongside the versine.
+     */
+    private static BigInteger sine(BigInteger x, int bits) {
+        BigInteger xSquared = x.multiply(x).shiftRight(bits).negate();
+        BigInteger term = x;
+        BigInteger sum = term;
+        for (long k = 2; term.signum() != 0; k += 2) {
+            term = term.multiply(xSquared).shiftRight(bits).divide(BigInteger.valueOf(k * (k + 1)));
+            sum = sum.add(term);
+        }
+        return sum;
+    }
+
+    /**
+     * @return how many times to halve an argument before summing a series to the
+     *         precision of the context
+     */
+    private static int reductions(MathContext mathContext) {
+        return (int) Math.sqrt(bits(mathContext)) / 2;
+    }
+
+    /**
+     * @return number of fraction bits that hold the digits of the context, plus a few
+     */
+    private static int bits(MathContext mathContext) {
+        return (int) (mathContext.getPrecision() * 3.3219280948873623) + 16;
+    }
+
+    /**
+     * @return number of bits a fixed-point fraction needs before the first significant
+     *         bit of a value below one, so that small values keep their relative precision
+     */
+    private static int leadingZeroBits(BigDecimal value) {
+        if (value.signum() == 0) {
+            return 0;
+        }
+        int exponent = value.precision() - value.scale();
+        return exponent >= 0 ? 0 : (int) (-exponent * 3.3219280948873623) + 1;
+    }
+
+    /**
+     * @return the value in fixed point, times 2^bits and truncated
+     */
+    private static BigInteger fixed(BigDecimal value, int bits) {
+        if (value.scale() <= 0) {
+            return value.toBigInteger().shiftLeft(bits);
+        }
+        return value.unscaledValue().shiftLeft(bits).divide(BigInteger.TEN.pow(value.scale()));
+    }
+
+    /**
+     * @return a fixed-point value with the given number of fraction bits as a decimal
+     */
+    private static BigDecimal decimal(BigInteger fixed, int bits, MathContext mathContext) {
+        return new BigDecimal(fixed).divide(new BigDecimal(BigInteger.ONE.shiftLeft(bits)), mathContext);
+    }
+}
@@ -0,0 +1,317 @@
+import java.util.Arrays;
+
+/**
+ * The BoundsFinder class bounds a function of one variable over each interval of a coarse
+ * grid by {@link CompiledExpression#evaluateInterval interval arithmetic}, so a plot can
+ * know where the curve can and cannot be without sampling it. The grid is bounded a piece
+ * of {@value #INTERVALS_PER_PIECE} intervals at a time; a piece whose bounds are infinite,
+ * because it holds a pole or an operation that interval arithmetic cannot bound tightly,
+ * is bisected down to single intervals, and those down to slivers a quarter of an interval
+ * wide. A sliver still unbounded marks a possible singularity. Evaluating the function at
+ * either end of it tells a jump, such as the pole of {@code tan(x)} at π/2, from a
+ * singularity the curve passes through smoothly, such as that of {@code sin(x)/x} at 0.
+ * <p>
+ * Interval arithmetic overestimates when a variable appears many times, and for long
+ * expressions the bounds may be infinite everywhere. A piece with more slivers than a
+ * pole or two, or spending more interval evaluations than half the intervals of the grid,
+ * shows the bounds to be of no use, and the finder gives up on the function: every
+ * interval is then unbounded, and nothing is settled or marked.
+ * <p>
+ * From the bounds, {@link #settle} picks the intervals a plot need not refine: those
+ * entirely above or below the visible range, those where the function is undefined and
+ * those holding a jump, which is drawn as a gap instead. The intervals next to a
+ * singularity are marked so that the range fitted to a plot can leave out the spike
+ * towards it. A finder keeps scratch state and must stay confined to one thread.
+ */
+public final class BoundsFinder {
+    /**
+     * Number of grid intervals bounded together before any bisection.
+     */
+    static final int INTERVALS_PER_PIECE = 8;
+    private static final int SLIVER_BISECTIONS = 2;
+    private static final int MAX_SLIVERS_PER_PIECE = 2;
+    /**
+     * Number of intervals either side of a singularity left out of the fitted range.
+     */
+    private static final int NEAR_SINGULARITY = INTERVALS_PER_PIECE;
+
+    private final CompiledExpression function;
+    private final double[] lowStack;
+    private final double[] highStack;
+    private final double[] xLows = new double[1];
+    private final double[] xHighs = new double[1];
+    private final double[] stack;
+    private final double[] values = new double[1];
+    private double start;
+    private double step;
+    private int intervals;
+    private double[] lows = new double[0];
+    private double[] highs = new double[0];
+    private boolean[] coarse = new boolean[0];
+    private boolean[] near = new boolean[0];
+    private double[] sliverStarts = new double[0];
+    private double[] sliverEnds = new double[0];
+    private double[] sliverStartValues = new double[0];
+    private double[] sliverEndValues = new double[0];
+    private long evaluations;
+    private boolean loose;
+
+    /**
+     * Compiles the function without the optimizer's rewrites, which may loosen bounds:
+     * {@code x^2} stays a square instead of becoming {@code x * x}.
+     *
+     * @param tree      expression tree of the function, as from {@link Calculator#toTree()}
+     * @param variables the single variable of the function
+     * @throws IllegalArgumentException if the function has more than one variable
+     */
+    public BoundsFinder(ExpressionNode tree, String[] variables) {
+        if (variables.length != 1) {
+            throw new IllegalArgumentException("Expected one variable but found " + variables.length);
+        }
+        function = CompiledExpression.fromTree(tree, variables);
+        lowStack = new double[function.stackSize()];
+        highStack = new double[function.stackSize()];
+        stack = new double[function.stackSize()];
+    }
+
+    /**
+     * Bounds the function over each interval of a grid, replacing the result of any
+     * previous call.
+     *
+     * @param start     x of the first grid point
+     * @param step      width of each interval
+     * @param intervals number of intervals
+     */
+    public void bound(double start, double step, int intervals) {
+        this.start = start;
+        this.step = step;
+        this.intervals = intervals;
+        if (lows.length < intervals) {
+            lows = new double[intervals];
+            highs = new double[intervals];
+            coarse = new boolean[intervals];
+            near = new boolean[intervals];
+            sliverStarts = new double[intervals];
+            sliverEnds = new double[intervals];
+            sliverStartValues = new double[intervals];
+            sliverEndValues = new double[intervals];
+        }
+        Arrays.fill(sliverStarts, 0, intervals, Double.NaN);
+        long budget = evaluations + intervals / 2;
+        loose = false;
+        for (int from = 0; from < intervals && !loose; from += INTERVALS_PER_PIECE) {
+            int to = Math.min(from + INTERVALS_PER_PIECE, intervals);
+            bound(from, to);
+            int slivers = 0;
+            for (int c = from; c < to; c++) {
+                if (!Double.isNaN(sliverStarts[c])) {
+                    slivers++;
+                }
+            }
+            loose = slivers > MAX_SLIVERS_PER_PIECE || evaluations > budget;
+        }
+        if (loose) {
+            Arrays.fill(lows, 0, intervals, Double.NEGATIVE_INFINITY);
+            Arrays.fill(highs, 0, intervals, Double.POSITIVE_INFINITY);
+            Arrays.fill(coarse, 0, intervals, false);
+            Arrays.fill(sliverStarts, 0, intervals, Double.NaN);
+        }
+        markNearSingularities();
+    }
+
+    /**
+     * Bounds the intervals from, inclusive, to to, exclusive, together if the bounds are
+     * finite and by bisection otherwise.
+     */
+    private void bound(int from, int to) {
+        evaluate(x(from), x(to));
+        double low = lowStack[0];
+        double high = highStack[0];
+        if (isBounded(low, high) || Double.isNaN(low)) {
+            Arrays.fill(lows, from, to, low);
+            Arrays.fill(highs, from, to, high);
+            Arrays.fill(coarse, from, to, to - from > 1);
+        }
+        else if (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            bound(from, middle);
+            bound(middle, to);
+        }
+        else {
+            lows[from] = Double.POSITIVE_INFINITY;
+            highs[from] = Double.NEGATIVE_INFINITY;
+            coarse[from] = false;
+            bisect(from, x(from), x(to), 0);
+            if (lows[from] > highs[from]) {
+                lows[from] = Double.NaN;
+                highs[from] = Double.NaN;
+            }
+            if (!Double.isNaN(sliverStarts[from])) {
+                sliverStartValues[from] = valueAt(sliverStarts[from]);
+                sliverEndValues[from] = valueAt(sliverEnds[from]);
+            }
+        }
+    }
+
+    /**
+     * Bounds part of an unbounded interval by halves, gathering the bounds of the parts
+     * that have them and the extent of those that do not.
+     */
+    private void bisect(int interval, double a, double b, int depth) {
+        evaluate(a, b);
+        double low = lowStack[0];
+        double high = highStack[0];
+        if (isBounded(low, high)) {
+            lows[interval] = Math.min(lows[interval], low);
+            highs[interval] = Math.max(highs[interval], high);
+        }
+        else if (Double.isNaN(low)) {
+            return;
+        }
+        else if (depth < SLIVER_BISECTIONS) {
+            double middle = 0.5 * (a + b);
+            bisect(interval, a, middle, depth + 1);
+            bisect(interval, middle, b, depth + 1);
+        }
+        else {
+            if (Double.isNaN(sliverStarts[interval])) {
+                sliverStarts[interval] = a;
+            }
+            sliverEnds[interval] = b;
+        }
+    }
+
+    private static boolean isBounded(double low, double high) {
+        return Double.isFinite(low) && Double.isFinite(high);
+    }
+
+    /**
+     * Evaluates the function over [a, b], widened by an ulp on either side to cover x
+     * values the grid rounds differently.
+     */
+    private void evaluate(double a, double b) {
+        xLows[0] = Math.nextDown(a);
+        xHighs[0] = Math.nextUp(b);
+        function.evaluateInterval(xLows, xHighs, lowStack, highStack);
+        evaluations++;
+    }
+
+    private double valueAt(double x) {
+        values[0] = x;
+        return function.evaluate(stack, values);
+    }
+
+    private double x(int interval) {
+        return start + interval * step;
+    }
+
+    /**
+     * Decides which intervals of the last {@link #bound} need no refinement for a plot
+     * of the given visible range. Intervals bounded only as part of a larger piece are
+     * bounded again on their own where the piece crosses an edge of the range.
+     *
+     * @param yLow    bottom of the visible range
+     * @param yHigh   top of the visible range
+     * @param settled receives, per interval, true if it needs no refinement
+     * @param breaks  receives, per interval, the x of a jump to draw as a gap, or NaN
+     */
+    public void settle(double yLow, double yHigh, boolean[] settled, double[] breaks) {
+        double span = yHigh - yLow;
+        for (int c = 0; c < intervals; c++) {
+            breaks[c] = Double.NaN;
+            if (!Double.isNaN(sliverStarts[c])) {
+                if (isJump(sliverStartValues[c], sliverEndValues[c], span)) {
+                    settled[c] = true;
+                    breaks[c] = 0.5 * (sliverStarts[c] + sliverEnds[c]);
+                }
+                else {
+                    // A curve off-screen on one side of the sliver and both of its ends,
+                    // such as tan(x)^2 about a pole, could only come into view within it,
+                    // narrower than a pixel.
+                    settled[c] = isAbove(c, yHigh, sliverStartValues[c], sliverEndValues[c])
+                            || isBelow(c, yLow, sliverStartValues[c], sliverEndValues[c]);
+                }
+                continue;
+            }
+            if (Double.isNaN(lows[c])) {
+                settled[c] = true;
+                continue;
+            }
+            if (coarse[c] && lows[c] < yHigh && highs[c] > yLow && (lows[c] < yLow || highs[c] > yHigh)) {
+                evaluate(x(c), x(c + 1));
+                lows[c] = lowStack[0];
+                highs[c] = highStack[0];
+                coarse[c] = false;
+            }
+            settled[c] = lows[c] > yHigh || highs[c] < yLow;
+        }
+    }
+
+    private boolean isAbove(int c, double yHigh, double before, double after) {
+        return (Double.isNaN(lows[c]) || lows[c] > yHigh) && before > yHigh && after > yHigh;
+    }
+
+    private boolean isBelow(int c, double yLow, double before, double after) {
+        return (Double.isNaN(highs[c]) || highs[c] < yLow) && before < yLow && after < yLow;
+    }
+
+    /**
+     * @return true if the function at the ends of a sliver is undefined or leaps across
+     *         more than the visible range from one sign to the other
+     */
+    private static boolean isJump(double before, double after, double span) {
+        if (!Double.isFinite(before) || !Double.isFinite(after)) {
+            return true;
+        }
+        return (before < 0) != (after < 0) && Math.abs(after - before) > span;
+    }
+
+    /**
+     * Marks the intervals within a piece of a singularity, where the curve heads off
+     * towards infinity and a fitted range should not follow it.
+     */
+    private void markNearSingularities() {
+        int last = Integer.MIN_VALUE / 2;
+        for (int c = 0; c < intervals; c++) {
+            if (!Double.isNaN(sliverStarts[c])) {
+                last = c;
+            }
+            near[c] = c - last <= NEAR_SINGULARITY;
+        }
+        int next = Integer.MAX_VALUE / 2;
+        for (int c = intervals - 1; c >= 0; c--) {
+            if (!Double.isNaN(sliverStarts[c])) {
+                next = c;
+            }
+            near[c] |= next - c <= NEAR_SINGULARITY;
+        }
+    }
+
+    /**
+     * @return true if an interval of the last {@link #bound} lies within a piece of a
+     *         singularity, so that its values should not decide the range of a plot
+     */
+    public boolean isNearSingularity(int interval) {
+        return near[interval];
+    }
+
+    /**
+     * @return true if the last {@link #bound} found an interval where the function is
+     *         undefined throughout, such as {@code sqrt(x)} left of zero
+     */
+    public boolean isUndefinedSomewhere() {
+        for (int c = 0; c < intervals; c++) {
+            if (Double.isNaN(lows[c]) && Double.isNaN(sliverStarts[c])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of interval evaluations so far
+     */
+    public long evaluations() {
+        return evaluations;
+    }
+}
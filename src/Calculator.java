@@ -1,58 +1,243 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.ArrayList;
-import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
 
 /**
- * The Calculator Class tokenizes the expression, then converts it to postfix,
- * (Reverse Polish Notation) and finally evaluates the postfix. Valid expressions
+ * The Calculator Class tokenizes the expression, then compiles it to a postfix
+ * (Reverse Polish Notation) program and finally evaluates that program. Valid expressions
  * include integer expressions, though the evaluation of the expression will involve double.
  */
 public class Calculator {
+    private static final int LEFT_PARENTHESIS = -1;
+    private static final int CALL_PARENTHESIS = -2;
+    private static final ThreadLocal<Lexer> LEXER = ThreadLocal.withInitial(Lexer::new);
+    private static final ExpressionCache<CacheKey, CompiledExpression> CACHE =
+            new ExpressionCache<>(Long.getLong("calculator.cache.maxWeight", 1 << 20), CompiledExpression::weight);
+
     String expression;
-    private static final List<String> history = new ArrayList<>();
+    private final CacheKey key;
+    private final CompiledExpression parsed;
+    private static final HistoryStore history = HistoryStore.fromSystemProperties();
+
+    /**
+     * Units in which trigonometric functions take their argument.
+     */
+    public enum AngleUnit {
+        DEGREES,
+        RADIANS
+    }
+
+    /**
+     * Meanings of the notation that differ between the calculator and the graphing tools,
+     * whose input has always followed exp4j.
+     */
+    public enum Syntax {
+        /**
+         * {@code log} is the logarithm to base 10 and {@code ^} groups from the left.
+         */
+        CALCULATOR,
+        /**
+         * {@code log} is the natural logarithm and {@code ^} groups from the right, so
+         * {@code 2^x^2} is {@code 2^(x^2)}, as in exp4j.
+         */
+        GRAPH
+    }
 
     /**
      * @param input Constructs the calculator for the given expression.
      *              Checks if the expression is valid.
      */
     public Calculator(String input) {
-        expression = input.replaceAll(" ", "");
-        if (!isValidExpression()) {
-            throw new IllegalArgumentException("Error: Improper expression format.");
+        this(input, AngleUnit.DEGREES);
+    }
+
+    /**
+     * @param input     Constructs the calculator for the given expression.
+     *                  Checks if the expression is valid.
+     * @param variables names that may appear in the expression as variables
+     */
+    public Calculator(String input, String... variables) {
+        this(input, AngleUnit.DEGREES, variables);
+    }
+
+    /**
+     * @param input     Constructs the calculator for the given expression.
+     *                  Checks if the expression is valid.
+     * @param angleUnit unit of the arguments of sin, cos and tan
+     * @param variables names that may appear in the expression as variables
+     */
+    public Calculator(String input, AngleUnit angleUnit, String... variables) {
+        this(input, angleUnit, Map.of(), variables);
+    }
+
+    /**
+     * @param input     Constructs the calculator for the given expression.
+     *                  Checks if the expression is valid.
+     * @param angleUnit unit of the arguments of sin, cos and tan
+     * @param functions user-defined functions the expression may call, by name; calls are
+     *                  inlined, so the variables the functions read must be declared too
+     * @param variables names that may appear in the expression as variables
+     */
+    public Calculator(String input, AngleUnit angleUnit, Map<String, UserFunction> functions, String... variables) {
+        this(input, angleUnit, Syntax.CALCULATOR, functions, variables);
+    }
+
+    /**
+     * @param input     Constructs the calculator for the given expression.
+     *                  Checks if the expression is valid.
+     * @param angleUnit unit of the arguments of sin, cos and tan
+     * @param syntax    meaning of {@code log} and {@code ^} in the expression; the bodies of
+     *                  the functions it calls keep the meaning they were compiled with
+     * @param functions user-defined functions the expression may call, by name; calls are
+     *                  inlined, so the variables the functions read must be declared too
+     * @param variables names that may appear in the expression as variables
+     */
+    public Calculator(String input, AngleUnit angleUnit, Syntax syntax, Map<String, UserFunction> functions,
+                      String... variables) {
+        long start = EngineMetrics.start();
+        expression = stripWhitespace(input);
+        try {
+            key = new CacheKey(expression, angleUnit, syntax, List.of(variables), Map.copyOf(functions));
+            parsed = CACHE.get(key, Calculator::compile);
+        }
+        catch (RuntimeException e) {
+            EngineMetrics.failed(EngineMetrics.Stage.COMPILE, start);
+            throw e;
         }
+        EngineMetrics.record(EngineMetrics.Stage.COMPILE, start);
     }
 
     /**
-     * Checks validity of expression.
+     * Everything that determines a compiled program: the expression without whitespace,
+     * the angle unit, the syntax, the declared variables and the functions it may call. A function
+     * that is redefined is a new object, so programs that inlined the old one are not
+     * found again.
+     */
+    private record CacheKey(String expression, AngleUnit angleUnit, Syntax syntax, List<String> variables,
+                            Map<String, UserFunction> functions) {
+    }
+
+    /**
+     * Compiles an expression on a cache miss.
      *
-     * @return true if valid, false otherwise.
+     * @return compiled expression
      */
-    private boolean isValidExpression() {
-        return hasMatchingParentheses();
+    private static CompiledExpression compile(CacheKey key) {
+        Lexer lexer = LEXER.get();
+        lexer.tokenize(key.expression());
+        return parse(lexer, key.angleUnit(), key.syntax(), key.variables().toArray(new String[0]), key.functions(), null);
     }
 
     /**
-     * Checks use of parenthesis.
+     * @return the input without whitespace, or the input itself if it has none
+     */
+    static String stripWhitespace(String input) {
+        return stripWhitespace((CharSequence) input).toString();
+    }
+
+    /**
+     * @return the input without whitespace, or the input itself if it has none
+     */
+    private static CharSequence stripWhitespace(CharSequence input) {
+        int length = input.length();
+        int i = 0;
+        while (i < length && !Character.isWhitespace(input.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return input;
+        }
+        StringBuilder stripped = new StringBuilder(length).append(input, 0, i);
+        for (; i < length; i++) {
+            char c = input.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                stripped.append(c);
+            }
+        }
+        return stripped;
+    }
+
+    /**
+     * Retrieves the statistics of the cache of compiled expressions shared by all calculators.
+     *
+     * @return hit, miss and eviction counts
+     */
+    public static ExpressionCache.Stats getCacheStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * Checks validity of an expression without compiling it. Whitespace is ignored, as it
+     * is by the constructor. The scan reuses a per-thread lexer, so validating expressions
+     * without whitespace does not allocate.
      *
-     * @return true if parenthesis are used appropriately, false otherwise
+     * @param variables names that may appear in the expression as variables
+     * @return true if valid, false otherwise.
      */
-    private boolean hasMatchingParentheses() {
-        Stack<Character> parenthesesStack = new Stack<>();
-        for (char c : expression.toCharArray()) {
-            if (c == '(') {
-                parenthesesStack.push(c);
+    public static boolean isValidExpression(CharSequence input, String... variables) {
+        long start = EngineMetrics.start();
+        boolean valid = isValid(input, variables);
+        if (valid) {
+            EngineMetrics.record(EngineMetrics.Stage.VALIDATE, start);
+        }
+        else {
+            EngineMetrics.failed(EngineMetrics.Stage.VALIDATE, start);
+        }
+        return valid;
+    }
+
+    private static boolean isValid(CharSequence input, String[] variables) {
+        Lexer lexer = LEXER.get();
+        if (!lexer.isValid(stripWhitespace(input))) {
+            return false;
+        }
+        for (int i = 0; i < lexer.count(); i++) {
+            if (lexer.type(i) == Lexer.NAME && variableIndex(lexer, i, variables) < 0
+                    || lexer.type(i) == Lexer.CALL || lexer.type(i) == Lexer.COMMA) {
+                return false;
             }
-            else if (c == ')') {
-                try {
-                    parenthesesStack.pop();
-                }
-                catch (EmptyStackException e) {
-                    return false;
-                }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position of the NAME token in the variable list, or -1 if it is not declared
+     */
+    private static int variableIndex(Lexer lexer, int token, String[] variables) {
+        for (int v = 0; v < variables.length; v++) {
+            if (lexer.textEquals(token, variables[v])) {
+                return v;
             }
         }
-        return parenthesesStack.isEmpty();
+        return -1;
+    }
+
+    /**
+     * Returns the executable form of the expression, after the {@link Optimizer} pass.
+     * Expressions are compiled and optimized once and shared through a cache keyed by
+     * their text, so repeated expressions skip parsing.
+     *
+     * @return compiled expression
+     */
+    public CompiledExpression compile() {
+        return parsed.optimized();
+    }
+
+    /**
+     * @return the program as parsed, before optimization, such as the body of a
+     *         {@link UserFunction}
+     */
+    CompiledExpression program() {
+        return parsed;
+    }
+
+    /**
+     * @return the expression as parsed, as a tree, for passes such as {@link Derivative}
+     */
+    public ExpressionNode toTree() {
+        return parsed.toTree();
     }
 
     /**
@@ -61,66 +246,191 @@ public class Calculator {
      * @return postfix expression
      */
     public String convertToPostFix() {
-        Stack<String> operators = new Stack<>();
-        Stack<String> numbers = new Stack<>();
-        StringBuilder currentNumber = new StringBuilder();
-        StringBuilder currentFunction = new StringBuilder();
-
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-
-            if (Character.isDigit(c)) {
-                currentNumber.append(c);
-            } else {
-                if (!currentNumber.isEmpty()) {
-                    numbers.push(currentNumber.toString());
-                    currentNumber.setLength(0);
-                }
+        return parsed.toPostFix();
+    }
+
+    /**
+     * Renders the optimized program that is actually evaluated, for comparison with
+     * {@link #convertToPostFix()}. Temporaries are written as {@code =t0} (store) and
+     * {@code t0} (recall).
+     *
+     * @return optimized postfix expression
+     */
+    public String convertToOptimizedPostFix() {
+        return compile().toPostFix();
+    }
 
-                if (Character.isLetter(c)) {
-                    currentFunction.append(c);
-                    while (i + 1 < expression.length() && Character.isLetter(expression.charAt(i + 1))) {
-                        currentFunction.append(expression.charAt(++i));
+    /**
+     * @return true if the {@code calculator.showOptimized} system property asks front ends
+     *         to print the optimized postfix form next to the parsed one
+     */
+    public static boolean showOptimized() {
+        return Boolean.getBoolean("calculator.showOptimized");
+    }
+
+    /**
+     * Parses the lexer's tokens with the shunting-yard algorithm, emitting each postfix
+     * instruction straight into the compiled program. The arguments of a call to a
+     * user-defined function are emitted like any operand; when the call closes, they are
+     * replaced by the inlined body of the function.
+     *
+     * @param literals if not null, each number literal is loaded as a variable after the
+     *                 declared ones instead of being pushed as a constant, and its text is
+     *                 added here as the name of that variable
+     * @return compiled expression
+     */
+    private static CompiledExpression parse(Lexer lexer, AngleUnit angleUnit, Syntax syntax, String[] variables,
+                                            Map<String, UserFunction> functions, List<String> literals) {
+        CompiledExpression.Builder program = new CompiledExpression.Builder();
+        int[] operators = new int[lexer.count()];
+        int operatorCount = 0;
+        UserFunction[] calls = new UserFunction[lexer.count()];
+        int[][] arguments = new int[lexer.count()][];
+        int[] argumentCounts = new int[lexer.count()];
+        int[] callDepths = new int[lexer.count()];
+        int callCount = 0;
+
+        for (int i = 0; i < lexer.count(); i++) {
+            switch (lexer.type(i)) {
+                case Lexer.NUMBER -> {
+                    if (literals == null) {
+                        program.push(lexer.value(i));
+                    }
+                    else {
+                        program.load(variables.length + literals.size());
+                        literals.add(lexer.text(i));
                     }
-                    operators.push(currentFunction.toString());
-                    currentFunction.setLength(0);
-                    continue;
                 }
-
-                switch (c) {
-                    case '+', '-', '*', '/', '^' -> {
-                        while (!operators.isEmpty() && hasPrecedence(operators.peek(), Character.toString(c))) {
-                            numbers.push(operators.pop());
-                        }
-                        operators.push(Character.toString(c));
+                case Lexer.NAME -> {
+                    int variable = variableIndex(lexer, i, variables);
+                    if (variable < 0) {
+                        throw new IllegalArgumentException("Unsupported function or variable: " + lexer.text(i));
                     }
-                    case '(' -> operators.push("(");
-                    case ')' -> {
-                        while (!operators.isEmpty() && !operators.peek().equals("(")) {
-                            numbers.push(operators.pop());
+                    program.load(variable);
+                }
+                case Lexer.FUNCTION -> operators[operatorCount++] = (int) lexer.value(i);
+                case Lexer.CALL -> {
+                    UserFunction function = functions.get(lexer.text(i));
+                    if (function == null) {
+                        throw new IllegalArgumentException("Unsupported function: " + lexer.text(i));
+                    }
+                    // The lexer only makes a CALL of a name followed by '(', which this skips.
+                    i++;
+                    calls[callCount] = function;
+                    arguments[callCount] = new int[function.parameters().size()];
+                    arguments[callCount][0] = program.position();
+                    argumentCounts[callCount] = 1;
+                    callDepths[callCount] = program.depth();
+                    callCount++;
+                    operators[operatorCount++] = CALL_PARENTHESIS;
+                }
+                case Lexer.COMMA -> {
+                    while (operators[operatorCount - 1] != LEFT_PARENTHESIS && operators[operatorCount - 1] != CALL_PARENTHESIS) {
+                        emit(program, operators[--operatorCount], angleUnit, syntax);
+                    }
+                    int call = callCount - 1;
+                    if (operators[operatorCount - 1] != CALL_PARENTHESIS
+                            || program.depth() != callDepths[call] + argumentCounts[call]) {
+                        throw new IllegalArgumentException("Error: Improper expression format.");
+                    }
+                    if (argumentCounts[call] == arguments[call].length) {
+                        throw wrongArgumentCount(calls[call]);
+                    }
+                    arguments[call][argumentCounts[call]++] = program.position();
+                }
+                case Lexer.NEGATE -> operators[operatorCount++] = CompiledExpression.NEGATE;
+                case Lexer.FACTORIAL -> program.emit(CompiledExpression.FACTORIAL);
+                case Lexer.LEFT_PARENTHESIS -> operators[operatorCount++] = LEFT_PARENTHESIS;
+                case Lexer.RIGHT_PARENTHESIS -> {
+                    while (operators[operatorCount - 1] != LEFT_PARENTHESIS && operators[operatorCount - 1] != CALL_PARENTHESIS) {
+                        emit(program, operators[--operatorCount], angleUnit, syntax);
+                    }
+                    if (operators[--operatorCount] == CALL_PARENTHESIS) {
+                        int call = --callCount;
+                        if (program.depth() != callDepths[call] + argumentCounts[call]) {
+                            throw new IllegalArgumentException("Error: Improper expression format.");
                         }
-                        operators.pop();
+                        if (argumentCounts[call] != arguments[call].length) {
+                            throw wrongArgumentCount(calls[call]);
+                        }
+                        program.inline(calls[call].body(), arguments[call], globals(calls[call], variables));
+                    }
+                    else if (operatorCount > 0 && isFunction(operators[operatorCount - 1])) {
+                        emit(program, operators[--operatorCount], angleUnit, syntax);
                     }
-                    case '!' -> numbers.push(Character.toString(c));
-                    default -> throw new IllegalArgumentException("Unsupported character: " + c);
+                }
+                default -> {
+                    int operator = binaryOperator(lexer.type(i));
+                    while (operatorCount > 0 && hasPrecedence(operators[operatorCount - 1], operator)
+                            && !(syntax == Syntax.GRAPH && operator == CompiledExpression.POWER
+                            && operators[operatorCount - 1] == CompiledExpression.POWER)) {
+                        emit(program, operators[--operatorCount], angleUnit, syntax);
+                    }
+                    operators[operatorCount++] = operator;
                 }
             }
         }
 
-        if (!currentNumber.isEmpty()) {
-            numbers.push(currentNumber.toString());
+        while (operatorCount > 0) {
+            emit(program, operators[--operatorCount], angleUnit, syntax);
         }
 
-        while (!operators.isEmpty()) {
-            numbers.push(operators.pop());
+        if (literals == null) {
+            return program.build(variables);
+        }
+        List<String> names = new ArrayList<>(List.of(variables));
+        names.addAll(literals);
+        return program.build(names.toArray(new String[0]));
+    }
+
+    private static IllegalArgumentException wrongArgumentCount(UserFunction function) {
+        return new IllegalArgumentException("Error: " + function.name() + " takes "
+                + function.parameters().size() + " argument" + (function.parameters().size() == 1 ? "" : "s"));
+    }
+
+    /**
+     * @return the index in the calling expression's variables of each name the function
+     *         reads from the caller
+     */
+    private static int[] globals(UserFunction function, String[] variables) {
+        List<String> globals = function.globals();
+        int[] indices = new int[globals.size()];
+        for (int g = 0; g < indices.length; g++) {
+            indices[g] = List.of(variables).indexOf(globals.get(g));
+            if (indices[g] < 0) {
+                throw new IllegalArgumentException("Unsupported function or variable: " + globals.get(g));
+            }
         }
+        return indices;
+    }
 
-        StringBuilder result = new StringBuilder();
-        while (!numbers.isEmpty()) {
-            result.insert(0, " " + numbers.pop());
+    /**
+     * Helper method that emits an operator, converting the argument of trigonometric
+     * functions to radians first when the calculator works in degrees. In the graph
+     * syntax, {@code log} is emitted as the natural logarithm.
+     */
+    private static void emit(CompiledExpression.Builder program, int operator, AngleUnit angleUnit, Syntax syntax) {
+        if (angleUnit == AngleUnit.DEGREES && (operator == CompiledExpression.SIN
+                || operator == CompiledExpression.COS || operator == CompiledExpression.TAN)) {
+            program.emit(CompiledExpression.TO_RADIANS);
         }
+        program.emit(syntax == Syntax.GRAPH && operator == CompiledExpression.LOG ? CompiledExpression.LN : operator);
+    }
 
-        return result.toString().trim();
+    /**
+     * Helper method that maps a binary operator token to its opcode.
+     *
+     * @return opcode of the operator
+     */
+    private static int binaryOperator(int token) {
+        return switch (token) {
+            case Lexer.PLUS -> CompiledExpression.ADD;
+            case Lexer.MINUS -> CompiledExpression.SUBTRACT;
+            case Lexer.MULTIPLY -> CompiledExpression.MULTIPLY;
+            case Lexer.DIVIDE -> CompiledExpression.DIVIDE;
+            case Lexer.POWER -> CompiledExpression.POWER;
+            default -> throw new IllegalStateException("Unexpected token: " + token);
+        };
     }
 
     /**
@@ -128,7 +438,7 @@ public class Calculator {
      *
      * @return true if op1 higher or equal precedence than op2, false if lower
      */
-    private boolean hasPrecedence(String op1, String op2) {
+    private static boolean hasPrecedence(int op1, int op2) {
         int precedenceOp1 = getOperatorPrecedence(op1);
         int precedenceOp2 = getOperatorPrecedence(op2);
         return precedenceOp1 >= precedenceOp2;
@@ -139,103 +449,113 @@ public class Calculator {
      *
      * @return precedence number
      */
-    private int getOperatorPrecedence(String operator) {
+    private static int getOperatorPrecedence(int operator) {
         return switch (operator) {
-            case "+", "-" -> 1;
-            case "*", "/" -> 2;
-            case "^" -> 3;
-            default -> 0;
+            case CompiledExpression.ADD, CompiledExpression.SUBTRACT -> 1;
+            case CompiledExpression.MULTIPLY, CompiledExpression.DIVIDE -> 2;
+            case CompiledExpression.POWER -> 4;
+            case LEFT_PARENTHESIS, CALL_PARENTHESIS -> 0;
+            default -> 3;
         };
     }
 
+    /**
+     * @return true if the operator stack entry is a named function awaiting its argument
+     */
+    private static boolean isFunction(int operator) {
+        return operator >= CompiledExpression.SIN && operator <= CompiledExpression.SQRT;
+    }
+
     /**
      * Evaluates the expression.
      *
      * @return result of the evaluation
      */
     public double evaluate() {
-        String postfixExpression = convertToPostFix();
-        double result = evaluatePostFix(postfixExpression);
-        addToHistory(expression, postfixExpression, result);
+        double result = value();
+        addToHistory(expression, parsed.toPostFix(), result);
         return result;
     }
 
     /**
-     * Solves the math expression using the postfix expression.
+     * Evaluates the expression without adding it to the history. The parsed program is
+     * evaluated directly: for an expression without variables the optimizer would only
+     * fold it to the same constant at a higher cost.
      *
-     * @return evaluated postfix expression
+     * @return result of the evaluation
      */
-    public static double evaluatePostFix(String postfix) {
-        Stack<Double> stack = new Stack<>();
-        String[] tokens = postfix.split("\\s+");
-
-        for (String token : tokens) {
-            if (token.matches("\\d+")) {
-                stack.push(Double.valueOf(token));
-            }
-            else if (token.matches("[+\\-*/^]")) {
-                double operand2 = stack.pop();
-                double operand1 = stack.pop();
-                double result = applyOperator(token, operand1, operand2);
-                stack.push(result);
-            }
-            else if (token.matches("sin|cos|tan|log|sqrt|!")) {
-                double operand = stack.pop();
-                double result = applyFunction(token, operand);
-                stack.push(result);
-            }
-            else {
-                throw new IllegalArgumentException("Invalid token: " + token);
-            }
-        }
-
-        return stack.pop();
+    public double value() {
+        long start = EngineMetrics.start();
+        return evaluated(parsed.evaluate(), start);
     }
 
     /**
-     * Helper method that performs the operation.
+     * Records an evaluation that started at {@code start}; a NaN result counts as an error.
      *
-     * @return the result of the current operation
+     * @return the result
      */
-    private static double applyOperator(String operator, double operand1, double operand2) {
-        return switch (operator) {
-            case "+" -> operand1 + operand2;
-            case "-" -> operand1 - operand2;
-            case "*" -> operand1 * operand2;
-            case "/" -> operand1 / operand2;
-            case "^" -> Math.pow(operand1, operand2);
-            default -> throw new IllegalArgumentException("Unsupported operator: " + operator);
-        };
+    private static double evaluated(double result, long start) {
+        if (Double.isNaN(result)) {
+            EngineMetrics.failed(EngineMetrics.Stage.EVALUATE, start);
+        }
+        else {
+            EngineMetrics.record(EngineMetrics.Stage.EVALUATE, start);
+        }
+        return result;
     }
 
     /**
-     * Helper method
+     * Evaluates the expression without rounding to double, and without adding it to the
+     * history. The result is exact while every step of the expression has an exact result
+     * and is rounded to the context otherwise; see {@link PreciseEvaluator}.
      *
-     * @return the result of the trigonometric and other mathematical functions on an operand
-     */
-    private static double applyFunction(String function, double operand) {
-        function = function.replaceAll("\\s+", "");
-        return switch (function) {
-            case "sin" -> Math.sin(Math.toRadians(operand));
-            case "cos" -> Math.cos(Math.toRadians(operand));
-            case "tan" -> Math.tan(Math.toRadians(operand));
-            case "log" -> Math.log10(operand);
-            case "sqrt" -> Math.sqrt(operand);
-            case "!" -> factorial((int) operand);
-            default -> throw new IllegalArgumentException("Unsupported function: " + function);
-        };
+     * @param mathContext precision of inexact results
+     * @return a {@link Rational} if the result is exact, otherwise a BigDecimal
+     * @throws ArithmeticException if a step has no real result, such as a division by zero
+     */
+    public Number value(MathContext mathContext) {
+        String[] variables = parsed.variables();
+        if (variables.length > 0) {
+            throw new IllegalStateException("Unbound variables: " + String.join(", ", variables));
+        }
+        long start = EngineMetrics.start();
+        // Parsed again with the literals as variables, so each keeps its exact value even
+        // where two literals round to the same double.
+        Lexer lexer = LEXER.get();
+        lexer.tokenize(expression);
+        List<String> literals = new ArrayList<>();
+        CompiledExpression program = parse(lexer, key.angleUnit(), key.syntax(), variables, key.functions(), literals);
+        BigDecimal[] values = new BigDecimal[literals.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new BigDecimal(literals.get(i));
+        }
+        try {
+            Number result = new PreciseEvaluator(mathContext, values).evaluate(program.toTree());
+            EngineMetrics.record(EngineMetrics.Stage.EVALUATE, start);
+            return result;
+        }
+        catch (ArithmeticException e) {
+            EngineMetrics.failed(EngineMetrics.Stage.EVALUATE, start);
+            throw e;
+        }
     }
 
     /**
-     * Helper method that uses recursion to compute a number's factorial.
+     * Solves the math expression using the postfix expression.
      *
-     * @return factorial of a number
+     * @return evaluated postfix expression
      */
-    private static double factorial(int n) {
-        if (n == 0 || n == 1) {
-            return 1;
+    public static double evaluatePostFix(String postfix) {
+        long start = EngineMetrics.start();
+        double result;
+        try {
+            result = CompiledExpression.fromPostFix(postfix).evaluate();
+        }
+        catch (RuntimeException e) {
+            EngineMetrics.failed(EngineMetrics.Stage.EVALUATE, start);
+            throw e;
         }
-        return n * factorial(n - 1);
+        return evaluated(result, start);
     }
 
     /**
@@ -246,16 +566,38 @@ public class Calculator {
      * @param result     Result of evaluating the expression
      */
     public static void addToHistory(String expression, String postfix, double result) {
-        history.add("Expression: " + expression + ", Postfix: " + postfix + ", Result: " + String.format("%.8f", result));
+        addToHistory(new HistoryEntry(expression, postfix, result));
+    }
+
+    /**
+     * Adds an evaluated expression to the history as the given entry, so the caller knows
+     * which entry listeners are told about.
+     */
+    public static void addToHistory(HistoryEntry entry) {
+        history.add(entry);
     }
 
     /**
      * Retrieves the history of evaluated expressions.
      *
-     * @return A list of strings representing the history.
+     * @return the most recent entries, oldest first.
+     */
+    public static List<HistoryEntry> getHistory() {
+        return history.snapshot();
+    }
+
+    /**
+     * Registers a listener that is told about every entry added to the history.
+     */
+    public static void addHistoryListener(HistoryListener listener) {
+        history.addListener(listener);
+    }
+
+    /**
+     * Unregisters a history listener.
      */
-    public static ArrayList<String> getHistory() {
-        return new ArrayList<>(history);
+    public static void removeHistoryListener(HistoryListener listener) {
+        history.removeListener(listener);
     }
 
 }
\ No newline at end of file
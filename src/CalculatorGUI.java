@@ -1,13 +1,18 @@
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.JButton;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -21,13 +26,24 @@ import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.math.MathContext;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The CalculatorGUI class creates a graphical user interface for a calculator.
  * The calculator supports basic arithmetic operations and several additional functions.
  */
 public class CalculatorGUI {
+    private static final int MAX_OUTPUT_LENGTH = 100_000;
+    private static final Duration EVALUATION_TIMEOUT = Duration.ofSeconds(10);
+
     /**
      * The main method that starts the calculator application.
      */
@@ -36,10 +52,56 @@ public class CalculatorGUI {
     }
 
     private final JTextField inputField;
+    private final JComboBox<Precision> precisionBox = new JComboBox<>(Precision.values());
     private final JTextArea outputArea;
     private final JScrollPane outputScrollPane;
-    private final JList<String> historyList;
-    private final DefaultListModel<String> historyListModel;
+    private final JList<HistoryEntry> historyList;
+    private final DefaultListModel<HistoryEntry> historyListModel;
+    private final Deque<Integer> outputBlockLengths = new ArrayDeque<>();
+    private final BackgroundRunner<Evaluation> evaluator =
+            new BackgroundRunner<>("Evaluation", EVALUATION_TIMEOUT, this::evaluationFailed);
+    private final Workspace workspace = new Workspace(Calculator.AngleUnit.DEGREES);
+    private final Map<HistoryEntry, Workspace.Formula> watchedFormulas = new IdentityHashMap<>();
+    private final Map<Workspace.Formula, HistoryEntry> watchedEntries = new IdentityHashMap<>();
+    private int outputLength;
+
+    /**
+     * The outcome of evaluating the input in the background. Definitions and formulas are
+     * only committed to the workspace once the outcome is published.
+     *
+     * @param input      text of the input field that was evaluated
+     * @param entry      history entry to record, or null for a definition
+     * @param formula    the entry's formula if it uses workspace definitions, otherwise null
+     * @param definition the staged definition, or null for an expression
+     * @param outputText text to show in the output area, or null for a definition
+     */
+    private record Evaluation(String input, HistoryEntry entry, Workspace.Formula formula,
+                              Workspace.Staged definition, String outputText) {
+    }
+
+    /**
+     * Precisions the user can evaluate with. Anything but double is evaluated exactly
+     * where possible, see {@link Calculator#value(MathContext)}.
+     */
+    private enum Precision {
+        DOUBLE("Double", null),
+        DECIMAL128("34 digits", MathContext.DECIMAL128),
+        DIGITS_100("100 digits", new MathContext(100)),
+        DIGITS_1000("1000 digits", new MathContext(1000));
+
+        private final String label;
+        private final MathContext mathContext;
+
+        Precision(String label, MathContext mathContext) {
+            this.label = label;
+            this.mathContext = mathContext;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
 
     /**
      * Constructs the CalculatorGUI and initializes the components.
@@ -59,7 +121,7 @@ public class CalculatorGUI {
         outputArea.setEditable(false);
         outputArea.setLineWrap(true);
         outputArea.setWrapStyleWord(true);
-        outputArea.setText("Welcome to the calculator!\nResults are computed as doubles, but inputted numbers must be integers.\nDisplayed keys and keyboard input are supported.\n\n");
+        prependOutput("Welcome to the calculator!\nResults are computed as doubles, or exactly where possible with the precision selector. Decimals, scientific notation (1.5e3) and negative numbers are supported.\nDisplayed keys and keyboard input are supported.\n\n");
 
         outputScrollPane = new JScrollPane(outputArea);
         outputScrollPane.getVerticalScrollBar().setUnitIncrement(16);
@@ -76,13 +138,15 @@ public class CalculatorGUI {
                 "C", "CE", "=", "^",
                 "sqrt", "log", "cos",
                 "tan", "sin", "!",
-                "Graph"
+                "Graph", "Surface"
         };
 
+        Font buttonFont = new Font("Arial", Font.PLAIN, 24);
+        ButtonClickListener buttonClickListener = new ButtonClickListener();
         for (String text : buttons) {
             JButton button = new JButton(text);
-            button.setFont(new Font("Arial", Font.PLAIN, 24));
-            button.addActionListener(new ButtonClickListener());
+            button.setFont(buttonFont);
+            button.addActionListener(buttonClickListener);
             button.setForeground(Color.WHITE);
             button.setBackground(Color.DARK_GRAY);
             button.setFocusPainted(false);
@@ -94,6 +158,7 @@ public class CalculatorGUI {
         historyList.setFont(new Font("Times", Font.PLAIN, 18));
         historyList.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
         historyList.addListSelectionListener(new HistorySelectionListener());
+        historyList.setCellRenderer(new HistoryCellRenderer());
 
         JScrollPane historyScrollPane = new JScrollPane(historyList);
         historyScrollPane.getVerticalScrollBar().setUnitIncrement(16);
@@ -120,14 +185,24 @@ public class CalculatorGUI {
         splitPane.setResizeWeight(0.5);
         splitPane.setContinuousLayout(true);
 
+        precisionBox.setFont(new Font("Arial", Font.PLAIN, 18));
+        precisionBox.addActionListener(_ -> inputField.requestFocus());
+
+        JPanel inputPanel = new JPanel(new BorderLayout());
+        inputPanel.add(inputField, BorderLayout.CENTER);
+        inputPanel.add(precisionBox, BorderLayout.EAST);
+
         JPanel mainPanel = new JPanel(new BorderLayout());
-        mainPanel.add(inputField, BorderLayout.NORTH);
+        mainPanel.add(inputPanel, BorderLayout.NORTH);
         mainPanel.add(splitPane, BorderLayout.CENTER);
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         mainPanel.setBackground(Color.BLACK);
         inputField.setBackground(Color.DARK_GRAY);
         inputField.setForeground(Color.WHITE);
+        precisionBox.setBackground(Color.DARK_GRAY);
+        precisionBox.setForeground(Color.WHITE);
+        inputPanel.setBackground(Color.BLACK);
         outputArea.setBackground(Color.BLACK);
         outputArea.setForeground(Color.WHITE);
         outputScrollPane.setBackground(Color.BLACK);
@@ -138,9 +213,17 @@ public class CalculatorGUI {
         outputPanel.setBackground(Color.BLACK);
 
         frame.setContentPane(mainPanel);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                SwingUtilities.invokeLater(() -> Startup.frameShown(CalculatorGUI.this::launchGraphingTool));
+            }
+        });
         frame.setVisible(true);
 
-        updateHistory();
+        loadHistory();
+        Calculator.addHistoryListener(this::historyEntryAdded);
+        workspace.addListener(change -> SwingUtilities.invokeLater(() -> workspaceChanged(change)));
     }
 
     /**
@@ -160,13 +243,15 @@ public class CalculatorGUI {
                     }
                 }
                 case "Graph" -> launchGraphingTool();
+                case "Surface" -> SwingUtilities.invokeLater(SurfaceTool::new);
                 default -> inputField.setText(inputField.getText() + command);
             }
         }
     }
 
     /**
-     * KeyAdapter for handling Enter key press in the input field.
+     * KeyAdapter for handling Enter key press in the input field. Escape cancels an
+     * evaluation that is still running.
      */
     private class EnterKeyListener extends KeyAdapter {
         @Override
@@ -174,6 +259,10 @@ public class CalculatorGUI {
             if (e.getKeyCode() == KeyEvent.VK_ENTER) {
                 evaluateExpression();
             }
+            else if (e.getKeyCode() == KeyEvent.VK_ESCAPE && evaluator.isBusy()) {
+                evaluator.cancel();
+                prependOutput("Evaluation cancelled.\n\n");
+            }
         }
     }
 
@@ -184,57 +273,193 @@ public class CalculatorGUI {
         @Override
         public void valueChanged(ListSelectionEvent e) {
             if (!e.getValueIsAdjusting()) {
-                String selectedHistory = historyList.getSelectedValue();
+                HistoryEntry selectedHistory = historyList.getSelectedValue();
                 if (selectedHistory != null) {
-                    String expression = selectedHistory.split(",")[0].split(":")[1].trim();
-                    inputField.setText(expression);
+                    inputField.setText(selectedHistory.expression());
                 }
             }
         }
     }
 
     /**
-     * Evaluates the expression entered in the input field, updates the output area with the result,
-     * and handles any errors that may occur during the evaluation.
+     * Shows each history entry, with the current value of those that use workspace
+     * definitions.
+     */
+    private class HistoryCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                      boolean cellHasFocus) {
+            Workspace.Formula formula = watchedFormulas.get(value);
+            if (formula != null) {
+                HistoryEntry entry = (HistoryEntry) value;
+                value = new HistoryEntry(entry.expression(), entry.postfix(), formula.value());
+            }
+            return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        }
+    }
+
+    /**
+     * Evaluates the expression entered in the input field in the background, so that a
+     * slow expression does not freeze the window. A new evaluation replaces one that is
+     * still running.
      */
     private void evaluateExpression() {
-        try {
-            Calculator calculator = new Calculator(inputField.getText());
-            String postfixExpression = calculator.convertToPostFix();
-            double result = calculator.evaluate();
-            String resultText = result % 1 == 0 ? String.format("%.0f", result) : String.format("%.8f", result);
-            String outputText = "Expression: " + inputField.getText() + "\nPostfix: " + postfixExpression + "\nResult: " + resultText + "\n\n";
+        String input = inputField.getText();
+        MathContext mathContext = ((Precision) precisionBox.getSelectedItem()).mathContext;
+        evaluator.submit(monitor -> evaluate(input, mathContext), this::evaluated);
+    }
+
+    /**
+     * Parses and evaluates an expression, or stages a definition for the workspace. Runs
+     * off the Event Dispatch Thread and touches no Swing state or workspace state.
+     *
+     * @param mathContext precision to evaluate with, or null for double
+     * @return the history entry and output text for the expression
+     */
+    private Evaluation evaluate(String input, MathContext mathContext) {
+        if (Workspace.isDefinition(input)) {
+            return new Evaluation(input, null, null, workspace.stage(input), null);
+        }
+        if (workspace.uses(input)) {
+            if (mathContext != null) {
+                throw new IllegalArgumentException("Expressions using definitions are evaluated in double precision only");
+            }
+            Workspace.Formula formula = workspace.formula(input);
+            HistoryEntry entry = new HistoryEntry(Calculator.stripWhitespace(input), formula.postfix(), formula.value());
+            String outputText = "Expression: " + input + "\nPostfix: " + entry.postfix() + "\nResult: "
+                    + entry.formattedResult() + "\n\n";
+            return new Evaluation(input, entry, formula, null, outputText);
+        }
+        Calculator calculator = new Calculator(input);
+        String postfixExpression = calculator.convertToPostFix();
+        double result;
+        String resultText;
+        if (mathContext == null) {
+            result = calculator.value();
+            resultText = result % 1 == 0 ? String.format("%.0f", result) : String.format("%.8f", result);
+        }
+        else {
+            Number value = calculator.value(mathContext);
+            result = value.doubleValue();
+            resultText = PreciseEvaluator.format(value, mathContext);
+        }
+        String optimizedText = Calculator.showOptimized() ? "\nOptimized: " + calculator.convertToOptimizedPostFix() : "";
+        String outputText = "Expression: " + input + "\nPostfix: " + postfixExpression + optimizedText + "\nResult: " + resultText + "\n\n";
+        return new Evaluation(input, new HistoryEntry(calculator.expression, postfixExpression, result), null, null,
+                outputText);
+    }
 
-            String currentOutput = outputArea.getText();
-            outputArea.setText(outputText + currentOutput);
+    /**
+     * Publishes a finished evaluation: commits its definition or starts watching its
+     * formula, records it in the history, which updates the history list, and updates the
+     * output area. Committing only here means a run that is superseded, cancelled or timed
+     * out leaves the workspace as it was; the commit itself compiles and evaluates nothing.
+     */
+    private void evaluated(Evaluation evaluation) {
+        String outputText = evaluation.outputText();
+        try {
+            if (evaluation.definition() != null) {
+                Workspace.Change change = workspace.commit(evaluation.definition());
+                List<String> updated = change.names().stream().skip(1).toList();
+                String updatedText = updated.isEmpty() ? "" : "\nUpdated: " + String.join(", ", updated);
+                outputText = "Defined: " + evaluation.input().strip() + updatedText + "\n\n";
+            }
+            else if (evaluation.formula() != null) {
+                workspace.watch(evaluation.formula());
+            }
+        }
+        catch (IllegalStateException e) {
+            evaluationFailed(e);
+            return;
+        }
+        HistoryEntry entry = evaluation.entry();
+        if (entry != null) {
+            if (evaluation.formula() != null) {
+                watchedFormulas.put(entry, evaluation.formula());
+                watchedEntries.put(evaluation.formula(), entry);
+            }
+            Calculator.addToHistory(entry);
+        }
+        prependOutput(outputText);
 
+        if (inputField.getText().equals(evaluation.input())) {
             inputField.setText("");
-            inputField.requestFocus();
+        }
+        inputField.requestFocus();
+
+        SwingUtilities.invokeLater(() -> {
+            JScrollBar verticalScrollBar = outputScrollPane.getVerticalScrollBar();
+            verticalScrollBar.setValue(verticalScrollBar.getMinimum());
+        });
+    }
+
+    private void evaluationFailed(Throwable error) {
+        prependOutput("Error: " + error.getMessage() + "\n\n");
+    }
 
-            updateHistory();
+    /**
+     * Inserts text at the top of the output area. Only the new text goes into the document;
+     * once the transcript passes {@link #MAX_OUTPUT_LENGTH} characters the oldest blocks are
+     * removed from the bottom, so long sessions do not slow down.
+     */
+    private void prependOutput(String text) {
+        Document document = outputArea.getDocument();
+        try {
+            document.insertString(0, text, null);
+            outputBlockLengths.addFirst(text.length());
+            outputLength += text.length();
+            while (outputLength > MAX_OUTPUT_LENGTH && outputBlockLengths.size() > 1) {
+                int oldest = outputBlockLengths.removeLast();
+                document.remove(document.getLength() - oldest, oldest);
+                outputLength -= oldest;
+            }
+        }
+        catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            SwingUtilities.invokeLater(() -> {
-                JScrollBar verticalScrollBar = outputScrollPane.getVerticalScrollBar();
-                verticalScrollBar.setValue(verticalScrollBar.getMinimum());
-            });
+    /**
+     * Fills the history list with the entries evaluated so far.
+     */
+    private void loadHistory() {
+        List<HistoryEntry> history = Calculator.getHistory();
+        for (HistoryEntry entry : history) {
+            historyListModel.addElement(entry);
         }
-        catch (Exception e) {
-            outputArea.setText("Error: " + e.getMessage() + "\n\n" + outputArea.getText());
+    }
+
+    /**
+     * Applies one history change to the list model on the Event Dispatch Thread.
+     */
+    private void historyEntryAdded(HistoryEntry added, HistoryEntry evicted) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> historyEntryAdded(added, evicted));
+            return;
         }
+        if (evicted != null && !historyListModel.isEmpty() && historyListModel.getElementAt(0) == evicted) {
+            historyListModel.remove(0);
+        }
+        Workspace.Formula formula = evicted == null ? null : watchedFormulas.remove(evicted);
+        if (formula != null) {
+            watchedEntries.remove(formula);
+            workspace.unwatch(formula);
+        }
+        historyListModel.addElement(added);
     }
 
     /**
-     * Updates the history list with the latest evaluated expressions.
+     * Redraws the history entries whose formulas have a new value.
      */
-    private void updateHistory() {
-        List<String> history = Calculator.getHistory();
-        historyListModel.clear();
-        for (String entry : history) {
-            String[] parts = entry.split(",");
-            String expression = parts[0].split(":")[1].trim();
-            double result = Double.parseDouble(parts[2].split(":")[1].trim());
-            String resultText = result % 1 == 0 ? String.format("%.0f", result) : String.format("%.8f", result);
-            historyListModel.addElement("Expression: " + expression + ", Result: " + resultText);
+    private void workspaceChanged(Workspace.Change change) {
+        for (Workspace.Formula formula : change.formulas()) {
+            HistoryEntry entry = watchedEntries.get(formula);
+            for (int i = historyListModel.size() - 1; entry != null && i >= 0; i--) {
+                if (historyListModel.getElementAt(i) == entry) {
+                    historyListModel.set(i, entry);
+                    break;
+                }
+            }
         }
     }
 
@@ -242,6 +467,6 @@ public class CalculatorGUI {
      * Launches the graphing tool.
      */
     private void launchGraphingTool() {
-        SwingUtilities.invokeLater(GraphingTool::new);
+        SwingUtilities.invokeLater(() -> new GraphingTool(workspace));
     }
 }
\ No newline at end of file
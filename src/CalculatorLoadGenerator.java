@@ -0,0 +1,198 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CalculatorLoadGenerator class drives a {@link CalculatorServer} from several
+ * connections at once and reports throughput and client-side latency. Each connection
+ * keeps a fixed number of requests in flight: it sends until that many are unanswered,
+ * then reads one response before sending the next. The requests cycle through a small
+ * set of expressions, so the server's compiled-expression cache is exercised the way
+ * repeated client traffic would.
+ * <p>
+ * Run it with {@code -embedded} to start a server in the same process, so the whole test
+ * needs nothing but localhost.
+ */
+public final class CalculatorLoadGenerator {
+    private static final String[] EXPRESSIONS = {
+            "1+2*3", "sqrt(16)+log(100)", "sin(30)^2+cos(30)^2", "(4+5)*(6-7)/8", "2^10-5!",
+            "3.5e2/7+0.25", "tan(45)*sqrt(2)", "-(2+3)^2", "log(2)*log(5)+1", "((1+2)*(3+4))^2"
+    };
+    private static final String BIND_EXPRESSION = "x^2+sin(y)*x-y/3";
+
+    private final String host;
+    private final int port;
+    private final int requests;
+    private final int depth;
+    private final int rows;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * @param host     server host
+     * @param port     server port
+     * @param requests requests to send on each connection
+     * @param depth    requests each connection keeps in flight
+     * @param rows     rows of values per request, or 0 to send {@code EVAL} requests
+     */
+    public CalculatorLoadGenerator(String host, int port, int requests, int depth, int rows) {
+        this.host = host;
+        this.port = port;
+        this.requests = requests;
+        this.depth = depth;
+        this.rows = rows;
+    }
+
+    /**
+     * Runs the given number of connections, each on its own virtual thread, and waits for
+     * all of them to finish.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long run(int connections) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            long seed = c;
+            threads.add(Thread.ofVirtual().name("load-" + c).start(() -> drive(seed)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * One connection: sends requests ahead up to the pipeline depth and times each one
+     * from when it was sent to when its response was read.
+     */
+    private void drive(long seed) {
+        Random random = new Random(seed);
+        long[] sentAt = new long[depth];
+        try (Socket socket = new Socket(host, port);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            socket.setTcpNoDelay(true);
+            int sent = 0;
+            int received = 0;
+            while (received < requests) {
+                while (sent < requests && sent - received < depth) {
+                    writer.write(request(random, sent));
+                    writer.write('\n');
+                    sentAt[sent % depth] = System.nanoTime();
+                    sent++;
+                }
+                writer.flush();
+                String response = reader.readLine();
+                if (response == null) {
+                    throw new IOException("Server closed the connection");
+                }
+                latency.record(System.nanoTime() - sentAt[received % depth]);
+                if (!response.startsWith("OK")) {
+                    errors.increment();
+                }
+                received++;
+            }
+            writer.write("QUIT\n");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String request(Random random, int i) {
+        if (rows == 0) {
+            return "EVAL " + EXPRESSIONS[i % EXPRESSIONS.length];
+        }
+        StringBuilder request = new StringBuilder("BIND x,y|").append(BIND_EXPRESSION).append('|');
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                request.append(';');
+            }
+            request.append(random.nextInt(1000) / 10.0).append(',').append(random.nextInt(360));
+        }
+        return request.toString();
+    }
+
+    /**
+     * @return the server's statistics line
+     */
+    private String serverStats() throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            writer.write("STATS\nQUIT\n");
+            writer.flush();
+            return reader.readLine();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = CalculatorServer.DEFAULT_PORT;
+        int connections = 16;
+        int requests = 100_000;
+        int depth = 32;
+        int rows = 0;
+        boolean embedded = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h" -> host = args[++i];
+                case "-p" -> port = Integer.parseInt(args[++i]);
+                case "-c" -> connections = Integer.parseInt(args[++i]);
+                case "-n" -> requests = Integer.parseInt(args[++i]);
+                case "-d" -> depth = Integer.parseInt(args[++i]);
+                case "-rows" -> rows = Integer.parseInt(args[++i]);
+                case "-embedded" -> embedded = true;
+                default -> {
+                    System.err.println("Usage: CalculatorLoadGenerator [-h host] [-p port] [-c connections]"
+                            + " [-n requestsPerConnection] [-d pipelineDepth] [-rows rowsPerRequest] [-embedded]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        CalculatorServer server = null;
+        if (embedded) {
+            server = new CalculatorServer(0, Runtime.getRuntime().availableProcessors() * 2, Calculator.AngleUnit.DEGREES);
+            port = server.port();
+            CalculatorServer started = server;
+            Thread.ofPlatform().daemon().name("calculator-server").start(() -> {
+                try {
+                    started.serve();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        try {
+            CalculatorLoadGenerator generator = new CalculatorLoadGenerator(host, port, requests, depth, rows);
+            long elapsed = generator.run(connections);
+            long total = (long) connections * requests;
+            System.out.printf("%d requests over %d connections in %.2f s: %.0f requests/s, %d errors%n",
+                    total, connections, elapsed / 1e9, total / (elapsed / 1e9), generator.errors.sum());
+            System.out.println("Client latency: " + generator.latency);
+            System.out.println("Server: " + generator.serverStats());
+        }
+        finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CalculatorServer class serves the Calculator engine over TCP with a line protocol.
+ * Each request is one line and gets one response line, in order, so clients may pipeline
+ * as many requests as they like before reading the responses:
+ * <ul>
+ *     <li>{@code EVAL 1+2*3} answers {@code OK 7.0};</li>
+ *     <li>{@code BIND x,y|x^2+y|1,2;3,4} evaluates the expression once per row of values
+ *     and answers {@code OK 3.0 13.0};</li>
+ *     <li>{@code STATS} answers with the latency histograms and cache statistics;</li>
+ *     <li>{@code QUIT} closes the connection.</li>
+ * </ul>
+ * Failed requests are answered with {@code ERR} and the reason.
+ * <p>
+ * Every connection runs on its own virtual thread. Compiled expressions are shared by all
+ * clients through the Calculator cache. Evaluations are limited to a fixed number at a
+ * time: a connection waits for its turn without reading further requests, which pushes
+ * back on the client through TCP, and a request that cannot start within a second is
+ * answered with {@code ERR Busy}.
+ */
+public final class CalculatorServer implements Closeable {
+    public static final int DEFAULT_PORT = 7878;
+    private static final long PERMIT_TIMEOUT_MILLIS = 1000;
+
+    private final ServerSocket serverSocket;
+    private final Calculator.AngleUnit angleUnit;
+    private final Semaphore permits;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram evalLatency = new LatencyHistogram();
+    private final LatencyHistogram bindLatency = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Opens the server socket on the loopback interface. Requests are served once
+     * {@link #serve()} is called.
+     *
+     * @param port        port to listen on, or 0 for any free port
+     * @param maxInFlight number of requests evaluated at the same time
+     * @param angleUnit   unit of the arguments of sin, cos and tan
+     */
+    public CalculatorServer(int port, int maxInFlight, Calculator.AngleUnit angleUnit) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.angleUnit = angleUnit;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each on a new virtual thread.
+     */
+    public void serve() throws IOException {
+        Thread.Builder connectionThreads = Thread.ofVirtual().name("calculator-connection-", 0);
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            connections.add(socket);
+            connectionThreads.start(() -> handle(socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connection loop. Responses are flushed only once no further request is waiting, so
+     * pipelined requests are answered with few writes.
+     */
+    private void handle(Socket socket) {
+        Lexer lexer = new Lexer();
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            String request;
+            while ((request = reader.readLine()) != null && !request.equals("QUIT")) {
+                writer.write(respond(request, lexer));
+                writer.write('\n');
+                if (!reader.ready()) {
+                    writer.flush();
+                }
+            }
+        }
+        catch (IOException e) {
+            // The client went away; there is nobody left to answer.
+        }
+        finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * @return the response line to a request line
+     */
+    private String respond(String request, Lexer lexer) {
+        long start = System.nanoTime();
+        int space = request.indexOf(' ');
+        String command = space < 0 ? request : request.substring(0, space);
+        String argument = space < 0 ? "" : request.substring(space + 1);
+        LatencyHistogram latency;
+        switch (command) {
+            case "EVAL" -> latency = evalLatency;
+            case "BIND" -> latency = bindLatency;
+            case "STATS" -> {
+                return "OK " + stats();
+            }
+            default -> {
+                return "ERR Unknown command: " + command;
+            }
+        }
+
+        String response;
+        try {
+            if (!permits.tryAcquire(PERMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                return "ERR Busy";
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR Busy";
+        }
+        try {
+            response = latency == evalLatency ? evaluate(argument) : bind(argument, lexer);
+        }
+        catch (RuntimeException e) {
+            response = error(e.getMessage());
+        }
+        finally {
+            permits.release();
+        }
+        latency.record(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * @return an error response; the "Error:" that Calculator messages start with is dropped
+     */
+    private static String error(String message) {
+        return message != null && message.startsWith("Error: ") ? "ERR " + message.substring(7) : "ERR " + message;
+    }
+
+    private String evaluate(String expression) {
+        return "OK " + new Calculator(expression, angleUnit).value();
+    }
+
+    /**
+     * Evaluates {@code variables|expression|rows}, where rows are separated by {@code ;}
+     * and the values of a row by {@code ,}. The expression is compiled once, or taken from
+     * the cache, and evaluated over all rows at once.
+     */
+    private String bind(String argument, Lexer lexer) {
+        int first = argument.indexOf('|');
+        int second = argument.indexOf('|', first + 1);
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("Expected variables|expression|rows");
+        }
+        String[] variables = argument.substring(0, first).split(",");
+        for (int v = 0; v < variables.length; v++) {
+            variables[v] = variables[v].strip();
+        }
+        CompiledExpression program =
+                new Calculator(argument.substring(first + 1, second), angleUnit, variables).compile();
+
+        int rows = 1;
+        for (int i = second + 1; i < argument.length(); i++) {
+            if (argument.charAt(i) == ';') {
+                rows++;
+            }
+        }
+        double[][] columns = new double[variables.length][rows];
+        int row = 0;
+        int field = 0;
+        int from = second + 1;
+        for (int i = from; i <= argument.length(); i++) {
+            char c = i == argument.length() ? ';' : argument.charAt(i);
+            if (c == ',' || c == ';') {
+                if (field == variables.length) {
+                    throw new IllegalArgumentException("Row " + (row + 1) + ": expected " + variables.length + " values");
+                }
+                columns[field++][row] = lexer.parseNumber(argument, from, i);
+                from = i + 1;
+                if (c == ';') {
+                    if (field != variables.length) {
+                        throw new IllegalArgumentException("Row " + (row + 1) + ": expected " + variables.length + " values");
+                    }
+                    field = 0;
+                    row++;
+                }
+            }
+        }
+
+        double[] results = new double[rows];
+        program.evaluateColumns(columns, results, rows);
+        StringBuilder response = new StringBuilder(rows * 12).append("OK");
+        for (double result : results) {
+            response.append(' ').append(result);
+        }
+        return response.toString();
+    }
+
+    /**
+     * @return latency histograms, rejections and cache statistics on one line
+     */
+    public String stats() {
+        ExpressionCache.Stats cache = Calculator.getCacheStats();
+        return String.format("eval[%s] bind[%s] rejected=%d cache[hits=%d misses=%d hitRate=%.3f]",
+                evalLatency, bindLatency, rejected.sum(), cache.hits(), cache.misses(), cache.hitRate());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+        Calculator.AngleUnit angleUnit = Calculator.AngleUnit.DEGREES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p" -> port = Integer.parseInt(args[++i]);
+                case "-c" -> maxInFlight = Integer.parseInt(args[++i]);
+                case "-radians" -> angleUnit = Calculator.AngleUnit.RADIANS;
+                default -> {
+                    System.err.println("Usage: CalculatorServer [-p port] [-c maxInFlight] [-radians]");
+                    System.exit(2);
+                }
+            }
+        }
+        try (CalculatorServer server = new CalculatorServer(port, maxInFlight, angleUnit)) {
+            System.out.println("Calculator server listening on localhost:" + server.port());
+            server.serve();
+        }
+    }
+}
@@ -10,13 +10,16 @@ public class CalculatorTester {
         Scanner scanner = new Scanner(System.in);
 
         while (true) {
-            System.out.print("Please enter an integer-based expression: ");
+            System.out.print("Please enter an expression: ");
             String expression = scanner.nextLine();
             Calculator calc1 = new Calculator(expression);
 
             try {
                 String postfixExpression = calc1.convertToPostFix();
                 System.out.println("Postfix Expression: " + postfixExpression);
+                if (Calculator.showOptimized()) {
+                    System.out.println("Optimized Postfix: " + calc1.convertToOptimizedPostFix());
+                }
     
                 double result = calc1.evaluate();
                 System.out.println("Result: " + result);
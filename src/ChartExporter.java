@@ -0,0 +1,292 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.graphics2d.svg.SVGGraphics2D;
+
+/**
+ * The ChartExporter class renders graphs of functions straight to PNG or SVG, without a
+ * window: it creates no Swing components, so it runs with {@code -Djava.awt.headless=true}.
+ * Charts look like those of the {@link GraphingTool} and are sampled the same way, with
+ * several functions separated by {@code ;} overlaid on one chart.
+ * <p>
+ * Every thread that renders keeps a template: a chart with its plot, axes, renderer and
+ * dataset, an image with a {@link PngEncoder}, and an SVG buffer. A render only replaces
+ * the data and the axis range and draws, so nothing is built per chart. {@link #submit}
+ * renders on a fixed pool of threads with a bounded queue; when the queue is full the
+ * submitting thread renders the chart itself, which keeps the number of charts in flight
+ * bounded.
+ * <p>
+ * Run from the command line with a file of jobs, one chart per line: the output file, the
+ * domain start and end and the functions, separated by tabs. The format follows the file
+ * extension.
+ */
+public final class ChartExporter implements AutoCloseable {
+    private static final String USAGE = """
+            Usage: ChartExporter [options] jobs.tsv
+            Each line of the jobs file is: output.png or output.svg, domain start, domain end,
+            and the functions separated by ';', with tabs in between.
+            Options:
+              -w pixels   chart width (default 800)
+              -h pixels   chart height (default 600)
+              -t threads  number of rendering threads""";
+
+    private final int width;
+    private final int height;
+    private final ThreadPoolExecutor pool;
+    private final ThreadLocal<Template> templates;
+
+    /**
+     * The image formats charts are exported to.
+     */
+    public enum Format {
+        PNG,
+        SVG;
+
+        /**
+         * @return the format named by the extension of a file
+         * @throws IllegalArgumentException if the extension is neither .png nor .svg
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".png")) {
+                return PNG;
+            }
+            if (name.endsWith(".svg")) {
+                return SVG;
+            }
+            throw new IllegalArgumentException("Unknown image format: " + file);
+        }
+    }
+
+    /**
+     * @param width   chart width in pixels
+     * @param height  chart height in pixels
+     * @param threads number of threads of the rendering pool
+     */
+    public ChartExporter(int width, int height, int threads) {
+        this.width = width;
+        this.height = height;
+        this.templates = ThreadLocal.withInitial(Template::new);
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                task -> Thread.ofPlatform().name("chart-export-" + count.incrementAndGet()).daemon().unstarted(task),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * A chart and everything needed to draw it, reused by one thread for all its charts.
+     */
+    private final class Template {
+        final PrimitiveXYDataset dataset = new PrimitiveXYDataset("f(x)");
+        final NumberAxis domainAxis = new NumberAxis("X-Axis");
+        final NumberAxis rangeAxis = new NumberAxis("Y-Axis");
+        final JFreeChart chart;
+        final OverlaySampler sampler = new OverlaySampler();
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D imageGraphics = image.createGraphics();
+        final PngEncoder png = new PngEncoder();
+        final StringBuilder svg = new StringBuilder();
+        final Rectangle2D area = new Rectangle2D.Double(0, 0, width, height);
+
+        Template() {
+            chart = ChartFactory.createXYLineChart("Graph", "X-Axis", "Y-Axis", dataset,
+                    PlotOrientation.VERTICAL, true, false, false);
+            XYPlot plot = chart.getXYPlot();
+            plot.setDomainAxis(domainAxis);
+            plot.setRangeAxis(rangeAxis);
+            ((XYLineAndShapeRenderer) plot.getRenderer()).setDrawSeriesLineAsPath(true);
+        }
+
+        /**
+         * Samples the functions into the dataset and fits the chart to the domain and to
+         * the range the sampler fitted around the curves.
+         */
+        void plot(String text, double start, double end) {
+            List<PlotFunction> functions = PlotFunction.compileAll(text);
+            int curves = sampler.sample(functions, start, end, width, height);
+            List<String> keys = new ArrayList<>(curves);
+            double[][] xs = new double[curves][];
+            double[][] ys = new double[curves][];
+            int[] counts = new int[curves];
+            for (int i = 0; i < curves; i++) {
+                keys.add(functions.get(i).text());
+                xs[i] = sampler.xs(i);
+                ys[i] = sampler.ys(i);
+                counts[i] = sampler.count(i);
+            }
+            dataset.setData(keys, xs, ys, counts);
+            domainAxis.setRange(start, end);
+            if (Double.isNaN(sampler.low())) {
+                rangeAxis.setAutoRange(true);
+            }
+            else {
+                rangeAxis.setRange(sampler.low(), sampler.high());
+            }
+            chart.setTitle(text.strip());
+        }
+
+        byte[] png() {
+            chart.draw(imageGraphics, area);
+            return png.encode(image);
+        }
+
+        byte[] svg() {
+            svg.setLength(0);
+            SVGGraphics2D graphics = new SVGGraphics2D(width, height, svg);
+            chart.draw(graphics, area);
+            return graphics.getSVGDocument().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Renders a chart on the calling thread.
+     *
+     * @param functions functions of x separated by {@code ;}
+     * @param start     left end of the domain
+     * @param end       right end of the domain
+     * @param format    image format
+     * @return the encoded image
+     * @throws IllegalArgumentException if a function does not parse
+     */
+    public byte[] render(String functions, double start, double end, Format format) {
+        Template template = templates.get();
+        long sampleStart = EngineMetrics.start();
+        template.plot(functions, start, end);
+        EngineMetrics.record(EngineMetrics.Stage.SAMPLE, sampleStart);
+        long renderStart = EngineMetrics.start();
+        byte[] image = format == Format.PNG ? template.png() : template.svg();
+        EngineMetrics.record(EngineMetrics.Stage.RENDER, renderStart);
+        return image;
+    }
+
+    /**
+     * Renders a chart on the calling thread and writes it to a file, in the format of
+     * its extension.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void export(String functions, double start, double end, Path file) throws IOException {
+        Files.write(file, render(functions, start, end, Format.of(file)));
+    }
+
+    /**
+     * Renders a chart on the pool and writes it to a file. If the pool's queue is full,
+     * the chart is rendered on the calling thread before this returns.
+     *
+     * @return completes with the file once it is written, or with the error
+     */
+    public CompletableFuture<Path> submit(String functions, double start, double end, Path file) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                export(functions, start, end, file);
+                result.complete(file);
+            }
+            catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for the submitted charts to finish and stops the pool. If interrupted, stops
+     * waiting and leaves the thread's interrupt flag set.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        int width = 800;
+        int height = 600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-w" -> width = Integer.parseInt(argument(args, ++i));
+                case "-h" -> height = Integer.parseInt(argument(args, ++i));
+                case "-t" -> threads = Integer.parseInt(argument(args, ++i));
+                default -> input = args[i];
+            }
+        }
+        if (input == null || width < 1 || height < 1 || threads < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<String> lines = Files.readAllLines(Path.of(input));
+        List<CompletableFuture<Path>> charts = new ArrayList<>();
+        long started = System.nanoTime();
+        try (ChartExporter exporter = new ChartExporter(width, height, threads)) {
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                int lineNumber = i + 1;
+                try {
+                    if (fields.length != 4) {
+                        throw new IllegalArgumentException("Expected 4 tab-separated fields but found " + fields.length);
+                    }
+                    Path file = Path.of(fields[0]);
+                    // Rejects an unknown extension before the chart is rendered.
+                    Format.of(file);
+                    charts.add(exporter.submit(fields[3], Double.parseDouble(fields[1]),
+                            Double.parseDouble(fields[2]), file).whenComplete((written, error) -> {
+                                if (error != null) {
+                                    System.err.println("Line " + lineNumber + ": Error: " + error.getMessage());
+                                }
+                            }));
+                }
+                catch (IllegalArgumentException e) {
+                    System.err.println("Line " + lineNumber + ": Error: " + e.getMessage());
+                }
+            }
+        }
+        long failed = charts.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.printf("Rendered %d charts in %.2f s (%.0f charts/s), %d failed%n",
+                charts.size() - failed, seconds, (charts.size() - failed) / seconds, failed);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String argument(String[] args, int i) {
+        if (i >= args.length) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        return args[i];
+    }
+}
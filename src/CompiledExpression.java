@@ -0,0 +1,966 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The CompiledExpression class is the executable form of a Calculator expression.
+ * The expression is parsed once into a flat postfix program of primitive opcodes and
+ * constants, so evaluating it involves no parsing, regular expressions or boxing.
+ * Instances are immutable and may be shared between threads; the operand stack is
+ * supplied by the caller so that hot loops can reuse it.
+ * <p>
+ * Expressions with variables can also be evaluated a whole column at a time: each
+ * instruction is applied to a block of rows held in primitive arrays, which keeps the
+ * interpreter overhead per block instead of per row and gives the JIT simple loops
+ * it can unroll and vectorize. Powers and functions, which it does not vectorize, go
+ * through {@link VectorKernels} when the Vector API build is present.
+ */
+public final class CompiledExpression {
+    static final int PUSH = 0;
+    static final int ADD = 1;
+    static final int SUBTRACT = 2;
+    static final int MULTIPLY = 3;
+    static final int DIVIDE = 4;
+    static final int POWER = 5;
+    static final int SIN = 6;
+    static final int COS = 7;
+    static final int TAN = 8;
+    static final int LOG = 9;
+    static final int SQRT = 10;
+    static final int FACTORIAL = 11;
+    static final int NEGATE = 12;
+    static final int LOAD = 13;
+    static final int TO_RADIANS = 14;
+    static final int DUPLICATE = 15;
+    static final int STORE = 16;
+    static final int RECALL = 17;
+    /**
+     * ψ(x), emitted by {@link Derivative} for the derivative of {@code !}; not in the grammar.
+     */
+    static final int DIGAMMA = 18;
+    /**
+     * Natural logarithm, emitted for {@code log} in the graph syntax; not in the grammar.
+     */
+    static final int LN = 19;
+
+    /**
+     * Number of rows evaluated together by the column evaluator.
+     */
+    static final int BLOCK_SIZE = 512;
+
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+    private static final double[] NO_VALUES = new double[0];
+    private static final VectorKernels VECTOR = VectorKernels.load();
+
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int depth;
+    private final int stackSize;
+    private final int results;
+    private String postfix;
+    private volatile CompiledExpression optimized;
+    private double constantValue;
+    private volatile boolean constantEvaluated;
+
+    private CompiledExpression(int[] code, double[] constants, String[] variables, int depth, int temporaries,
+                               int results) {
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.depth = depth;
+        this.stackSize = depth + temporaries;
+        this.results = results;
+    }
+
+    /**
+     * Evaluates an expression without variables. The result is computed the first time
+     * and remembered, so shared expressions are only evaluated once.
+     *
+     * @return result of the evaluation
+     * @throws IllegalStateException if the expression has variables
+     */
+    public double evaluate() {
+        if (variables.length > 0) {
+            throw new IllegalStateException("Unbound variables: " + String.join(", ", variables));
+        }
+        if (!constantEvaluated) {
+            constantValue = evaluate(new double[stackSize], NO_VALUES);
+            constantEvaluated = true;
+        }
+        return constantValue;
+    }
+
+    /**
+     * Evaluates the expression using the given operand stack, which must hold at least
+     * {@link #stackSize()} values. Reusing the stack makes the evaluation allocation-free.
+     *
+     * @param stack  scratch space for the operand stack
+     * @param values variable values, in the order of {@link #variables()}
+     * @return result of the evaluation
+     */
+    public double evaluate(double[] stack, double[] values) {
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case PUSH -> stack[sp++] = constants[code[++pc]];
+                case LOAD -> stack[sp++] = values[code[++pc]];
+                case DUPLICATE -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case STORE -> stack[depth + code[++pc]] = stack[sp - 1];
+                case RECALL -> stack[sp++] = stack[depth + code[++pc]];
+                case ADD -> {
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                }
+                case SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                }
+                case MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                }
+                case DIVIDE -> {
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                }
+                case POWER -> {
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                }
+                default -> stack[sp - 1] = applyFunction(code[pc], stack[sp - 1]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the expression over intervals: given a range for each variable, finds a
+     * range holding every value the expression takes for variables in those ranges, by
+     * running the program on pairs of bounds with {@link IntervalArithmetic}. The range
+     * is left at index 0 of the two stacks, which must each hold {@link #stackSize()}
+     * values. Both bounds are NaN if the expression is undefined throughout; an infinite
+     * bound means the expression may be arbitrarily large there.
+     *
+     * @param lows      lower bound of each variable, in the order of {@link #variables()}
+     * @param highs     upper bound of each variable
+     * @param lowStack  scratch space for the lower bounds of the operands
+     * @param highStack scratch space for the upper bounds of the operands
+     */
+    public void evaluateInterval(double[] lows, double[] highs, double[] lowStack, double[] highStack) {
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case PUSH -> {
+                    lowStack[sp] = constants[code[++pc]];
+                    highStack[sp++] = constants[code[pc]];
+                }
+                case LOAD -> {
+                    lowStack[sp] = lows[code[++pc]];
+                    highStack[sp++] = highs[code[pc]];
+                }
+                case DUPLICATE -> {
+                    lowStack[sp] = lowStack[sp - 1];
+                    highStack[sp] = highStack[sp - 1];
+                    sp++;
+                }
+                case STORE -> {
+                    lowStack[depth + code[++pc]] = lowStack[sp - 1];
+                    highStack[depth + code[pc]] = highStack[sp - 1];
+                }
+                case RECALL -> {
+                    lowStack[sp] = lowStack[depth + code[++pc]];
+                    highStack[sp++] = highStack[depth + code[pc]];
+                }
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER -> {
+                    sp--;
+                    IntervalArithmetic.applyOperator(code[pc], lowStack, highStack, sp - 1);
+                }
+                default -> IntervalArithmetic.applyFunction(code[pc], lowStack, highStack, sp - 1);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a single-variable expression for every value in {@code xs}.
+     *
+     * @param xs  values of the variable
+     * @param out receives one result per value
+     */
+    public void evaluateColumn(double[] xs, double[] out) {
+        if (variables.length > 1) {
+            throw new IllegalStateException("Expected at most one variable but found " + variables.length);
+        }
+        evaluateColumns(new double[][] {xs}, out, 0, xs.length, newRegisters());
+    }
+
+    /**
+     * Evaluates the expression for every row of the given columns.
+     *
+     * @param columns one column of values per variable, in the order of {@link #variables()}
+     * @param out     receives one result per row
+     * @param rows    number of rows to evaluate
+     */
+    public void evaluateColumns(double[][] columns, double[] out, int rows) {
+        if (columns.length < variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " columns but found " + columns.length);
+        }
+        evaluateColumns(columns, out, 0, rows, newRegisters());
+    }
+
+    /**
+     * Allocates the scratch registers used by the column evaluator. Callers that evaluate
+     * many ranges on one thread should allocate these once and pass them back in.
+     *
+     * @return registers for {@link #evaluateColumns(double[][], double[], int, int, double[][])}
+     */
+    public double[][] newRegisters() {
+        return new double[stackSize][BLOCK_SIZE];
+    }
+
+    /**
+     * Evaluates rows {@code from} (inclusive) to {@code to} (exclusive) of the columns,
+     * writing each result to the same row of {@code out}. Work is done one block of
+     * rows at a time: every instruction runs over the whole block before the next starts.
+     *
+     * @param columns   one column of values per variable, in the order of {@link #variables()}
+     * @param out       receives one result per row
+     * @param from      first row to evaluate
+     * @param to        row after the last one to evaluate
+     * @param registers scratch space from {@link #newRegisters()}
+     */
+    public void evaluateColumns(double[][] columns, double[] out, int from, int to, double[][] registers) {
+        for (int offset = from; offset < to; offset += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, to - offset);
+            evaluateBlock(columns, offset, n, registers);
+            System.arraycopy(registers[0], 0, out, offset, n);
+        }
+    }
+
+    /**
+     * Evaluates a program with several {@link #results()} for rows {@code from}
+     * (inclusive) to {@code to} (exclusive) of the columns, writing the r-th result of
+     * each row to the same row of {@code outs[r]}.
+     *
+     * @param columns   one column of values per variable, in the order of {@link #variables()}
+     * @param outs      one output column per result
+     * @param from      first row to evaluate
+     * @param to        row after the last one to evaluate
+     * @param registers scratch space from {@link #newRegisters()}
+     */
+    public void evaluateColumns(double[][] columns, double[][] outs, int from, int to, double[][] registers) {
+        if (outs.length != results) {
+            throw new IllegalArgumentException("Expected " + results + " output columns but found " + outs.length);
+        }
+        for (int offset = from; offset < to; offset += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, to - offset);
+            evaluateBlock(columns, offset, n, registers);
+            for (int r = 0; r < results; r++) {
+                System.arraycopy(registers[r], 0, outs[r], offset, n);
+            }
+        }
+    }
+
+    private void evaluateBlock(double[][] columns, int offset, int n, double[][] registers) {
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case PUSH -> Arrays.fill(registers[sp++], 0, n, constants[code[++pc]]);
+                case LOAD -> System.arraycopy(columns[code[++pc]], offset, registers[sp++], 0, n);
+                case DUPLICATE -> {
+                    System.arraycopy(registers[sp - 1], 0, registers[sp], 0, n);
+                    sp++;
+                }
+                case STORE -> System.arraycopy(registers[sp - 1], 0, registers[depth + code[++pc]], 0, n);
+                case RECALL -> System.arraycopy(registers[depth + code[++pc]], 0, registers[sp++], 0, n);
+                case ADD -> {
+                    sp--;
+                    double[] a = registers[sp - 1];
+                    double[] b = registers[sp];
+                    for (int k = 0; k < n; k++) {
+                        a[k] += b[k];
+                    }
+                }
+                case SUBTRACT -> {
+                    sp--;
+                    double[] a = registers[sp - 1];
+                    double[] b = registers[sp];
+                    for (int k = 0; k < n; k++) {
+                        a[k] -= b[k];
+                    }
+                }
+                case MULTIPLY -> {
+                    sp--;
+                    double[] a = registers[sp - 1];
+                    double[] b = registers[sp];
+                    for (int k = 0; k < n; k++) {
+                        a[k] *= b[k];
+                    }
+                }
+                case DIVIDE -> {
+                    sp--;
+                    double[] a = registers[sp - 1];
+                    double[] b = registers[sp];
+                    for (int k = 0; k < n; k++) {
+                        a[k] /= b[k];
+                    }
+                }
+                case POWER -> {
+                    sp--;
+                    double[] a = registers[sp - 1];
+                    double[] b = registers[sp];
+                    if (VECTOR != null) {
+                        VECTOR.power(a, b, n);
+                    }
+                    else {
+                        for (int k = 0; k < n; k++) {
+                            a[k] = Math.pow(a[k], b[k]);
+                        }
+                    }
+                }
+                case NEGATE -> {
+                    double[] a = registers[sp - 1];
+                    for (int k = 0; k < n; k++) {
+                        a[k] = -a[k];
+                    }
+                }
+                case TO_RADIANS -> {
+                    double[] a = registers[sp - 1];
+                    for (int k = 0; k < n; k++) {
+                        a[k] *= DEGREES_TO_RADIANS;
+                    }
+                }
+                default -> {
+                    int opcode = code[pc];
+                    double[] a = registers[sp - 1];
+                    if (VECTOR == null || !VECTOR.applyFunction(opcode, a, n)) {
+                        for (int k = 0; k < n; k++) {
+                            a[k] = applyFunction(opcode, a[k]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method that applies a binary opcode.
+     *
+     * @return the result of the operation
+     */
+    static double applyOperator(int opcode, double operand1, double operand2) {
+        return switch (opcode) {
+            case ADD -> operand1 + operand2;
+            case SUBTRACT -> operand1 - operand2;
+            case MULTIPLY -> operand1 * operand2;
+            case DIVIDE -> operand1 / operand2;
+            case POWER -> Math.pow(operand1, operand2);
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        };
+    }
+
+    /**
+     * Helper method that applies a unary opcode.
+     *
+     * @return the result of the function on the operand
+     */
+    static double applyFunction(int opcode, double operand) {
+        return switch (opcode) {
+            case SIN -> Math.sin(operand);
+            case COS -> Math.cos(operand);
+            case TAN -> Math.tan(operand);
+            case LOG -> Math.log10(operand);
+            case LN -> Math.log(operand);
+            case SQRT -> Math.sqrt(operand);
+            case FACTORIAL -> Factorials.factorial(operand);
+            case DIGAMMA -> Factorials.digamma(operand);
+            case NEGATE -> -operand;
+            case TO_RADIANS -> operand * DEGREES_TO_RADIANS;
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        };
+    }
+
+    /**
+     * @return the variable names, in the order their values are passed to evaluate
+     */
+    public String[] variables() {
+        return variables.clone();
+    }
+
+    /**
+     * @return the position of a variable in {@link #variables()}, or -1 if it is not used
+     */
+    public int variableIndex(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return size of the program, used to bound caches of compiled expressions
+     */
+    public int weight() {
+        return code.length + constants.length;
+    }
+
+    /**
+     * @return number of values the program leaves on the stack; 1 unless it was built by
+     *         {@link #fromTrees(ExpressionNode[], String[])}
+     */
+    public int results() {
+        return results;
+    }
+
+    /**
+     * @return the number of operand stack slots evaluation needs
+     */
+    public int stackSize() {
+        return stackSize;
+    }
+
+    /**
+     * Renders the program as a space separated postfix (Reverse Polish) string.
+     * This is a debugging view only; evaluation never goes through the text form.
+     * A degree to radian conversion directly before a trigonometric function is implied
+     * by the function and not shown; anywhere else it is written as {@code rad}.
+     *
+     * @return postfix expression
+     */
+    public String toPostFix() {
+        String result = postfix;
+        if (result == null) {
+            StringBuilder builder = new StringBuilder();
+            for (int pc = 0; pc < code.length; pc++) {
+                if (code[pc] == TO_RADIANS && pc + 1 < code.length
+                        && code[pc + 1] >= SIN && code[pc + 1] <= TAN) {
+                    continue;
+                }
+                if (!builder.isEmpty()) {
+                    builder.append(' ');
+                }
+                if (code[pc] == PUSH) {
+                    appendNumber(builder, constants[code[++pc]]);
+                }
+                else if (code[pc] == LOAD) {
+                    builder.append(variables[code[++pc]]);
+                }
+                else if (code[pc] == STORE) {
+                    builder.append("=t").append(code[++pc]);
+                }
+                else if (code[pc] == RECALL) {
+                    builder.append('t').append(code[++pc]);
+                }
+                else {
+                    builder.append(symbol(code[pc]));
+                }
+            }
+            result = builder.toString();
+            postfix = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toPostFix();
+    }
+
+    /**
+     * Writes a constant so that {@link #fromPostFix} reads back the same value: negative
+     * zero keeps its sign, and the non-finite values the optimizer may fold constants into
+     * are written as the divisions that produce them.
+     */
+    private static void appendNumber(StringBuilder builder, double value) {
+        if (Double.isNaN(value)) {
+            builder.append("0 0 /");
+        }
+        else if (Double.isInfinite(value)) {
+            builder.append(value > 0 ? "1 0 /" : "-1 0 /");
+        }
+        else if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+            builder.append("-0");
+        }
+        else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            builder.append((long) value);
+        }
+        else {
+            builder.append(value);
+        }
+    }
+
+    /**
+     * @return the postfix token for an opcode
+     */
+    static String symbol(int opcode) {
+        return switch (opcode) {
+            case ADD -> "+";
+            case SUBTRACT -> "-";
+            case MULTIPLY -> "*";
+            case DIVIDE -> "/";
+            case POWER -> "^";
+            case SIN -> "sin";
+            case COS -> "cos";
+            case TAN -> "tan";
+            case LOG -> "log";
+            case LN -> "ln";
+            case SQRT -> "sqrt";
+            case FACTORIAL -> "!";
+            case DIGAMMA -> "digamma";
+            case NEGATE -> "neg";
+            case TO_RADIANS -> "rad";
+            case DUPLICATE -> "dup";
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        };
+    }
+
+    /**
+     * Looks up the opcode of a function name or operator token.
+     *
+     * @return the opcode, or -1 if the token is not an operator or function
+     */
+    static int opcode(String token) {
+        return switch (token) {
+            case "+" -> ADD;
+            case "-" -> SUBTRACT;
+            case "*" -> MULTIPLY;
+            case "/" -> DIVIDE;
+            case "^" -> POWER;
+            case "sin" -> SIN;
+            case "cos" -> COS;
+            case "tan" -> TAN;
+            case "log" -> LOG;
+            case "ln" -> LN;
+            case "sqrt" -> SQRT;
+            case "!" -> FACTORIAL;
+            case "digamma" -> DIGAMMA;
+            case "neg" -> NEGATE;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @return true if the opcode takes two operands, false if it takes one
+     */
+    static boolean isBinary(int opcode) {
+        return opcode >= ADD && opcode <= POWER;
+    }
+
+    /**
+     * Compiles a space separated postfix string, as produced by {@link #toPostFix()}.
+     * Trigonometric functions take their argument in degrees. Numbers follow the same
+     * grammar as in expressions, with an optional sign; NaN and Infinity are not numbers.
+     *
+     * @param postfix postfix expression
+     * @return the compiled expression
+     */
+    public static CompiledExpression fromPostFix(String postfix) {
+        Builder builder = new Builder();
+        Lexer lexer = new Lexer();
+        int length = postfix.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(postfix.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(postfix.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            String token = postfix.substring(start, i);
+            int opcode = opcode(token);
+            if (opcode >= 0) {
+                if (opcode == SIN || opcode == COS || opcode == TAN) {
+                    builder.emit(TO_RADIANS);
+                }
+                builder.emit(opcode);
+            }
+            else {
+                try {
+                    builder.push(lexer.parseNumber(token, 0, token.length()));
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid token: " + token);
+                }
+            }
+        }
+        return builder.build(new String[0]);
+    }
+
+    /**
+     * Returns the optimized form of this expression, computing it on first use.
+     *
+     * @return the expression after the {@link Optimizer} pass
+     */
+    public CompiledExpression optimized() {
+        CompiledExpression result = optimized;
+        if (result == null) {
+            result = Optimizer.optimize(this);
+            optimized = result;
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the expression tree of a program made of constants, variables, operators
+     * and functions.
+     *
+     * @return the root of the tree
+     */
+    public ExpressionNode toTree() {
+        ExpressionNode[] stack = new ExpressionNode[stackSize];
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            switch (opcode) {
+                case PUSH -> stack[sp++] = new ExpressionNode.Constant(constants[code[++pc]]);
+                case LOAD -> stack[sp++] = new ExpressionNode.Variable(code[++pc]);
+                case DUPLICATE, STORE, RECALL -> throw new IllegalStateException("Program is already optimized");
+                default -> {
+                    if (isBinary(opcode)) {
+                        sp--;
+                        stack[sp - 1] = new ExpressionNode.Binary(opcode, stack[sp - 1], stack[sp]);
+                    }
+                    else {
+                        stack[sp - 1] = new ExpressionNode.Unary(opcode, stack[sp - 1]);
+                    }
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Compiles an expression tree. A subtree that occurs more than once is computed the
+     * first time, kept in a temporary, and recalled from there afterwards.
+     *
+     * @param root      root of the tree
+     * @param variables names of the variables the tree refers to
+     * @return the compiled expression
+     */
+    public static CompiledExpression fromTree(ExpressionNode root, String[] variables) {
+        return fromTrees(new ExpressionNode[] {root}, variables);
+    }
+
+    /**
+     * Compiles several expression trees over the same variables into one program that
+     * leaves the value of each tree on the stack, in order, for
+     * {@link #evaluateColumns(double[][], double[][], int, int, double[][])}. Subtrees are
+     * counted across all the trees, so a subtree shared by two of them is computed once.
+     * The trees are interned first, so that equal subtrees are found by identity, and are
+     * walked with an explicit stack, so deep trees do not overflow the call stack.
+     *
+     * @param roots     roots of the trees
+     * @param variables names of the variables the trees refer to
+     * @return the compiled program, with one result per tree
+     */
+    public static CompiledExpression fromTrees(ExpressionNode[] roots, String[] variables) {
+        NodeInterner interner = new NodeInterner();
+        ExpressionNode[] interned = new ExpressionNode[roots.length];
+        Map<ExpressionNode, Integer> uses = new IdentityHashMap<>();
+        for (int i = 0; i < roots.length; i++) {
+            interned[i] = interner.intern(roots[i]);
+            countUses(interned[i], uses);
+        }
+        Builder builder = new Builder();
+        Map<ExpressionNode, Integer> temporaries = new IdentityHashMap<>();
+        for (ExpressionNode root : interned) {
+            emitTree(root, uses, temporaries, builder);
+        }
+        return builder.build(variables, roots.length);
+    }
+
+    /**
+     * Counts how many times each node of an interned tree is used, counting the children
+     * of a node only the first time it is used.
+     */
+    private static void countUses(ExpressionNode root, Map<ExpressionNode, Integer> uses) {
+        Deque<ExpressionNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            ExpressionNode node = pending.pop();
+            if (uses.merge(node, 1, Integer::sum) > 1) {
+                continue;
+            }
+            switch (node) {
+                case ExpressionNode.Unary unary -> pending.push(unary.operand());
+                case ExpressionNode.Binary binary -> {
+                    pending.push(binary.right());
+                    pending.push(binary.left());
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * The instruction of an operator or function, emitted once its operands have been,
+     * after a copy of the single operand of a square if {@code duplicate} is set.
+     */
+    private record Apply(ExpressionNode node, int opcode, boolean duplicate) {
+    }
+
+    /**
+     * Emits an interned tree in postfix order. A node used more than once is stored in a
+     * temporary when it is first computed and recalled afterwards; a square of a node used
+     * nowhere else duplicates its operand instead.
+     */
+    private static void emitTree(ExpressionNode root, Map<ExpressionNode, Integer> uses,
+                                 Map<ExpressionNode, Integer> temporaries, Builder builder) {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof Apply apply) {
+                if (apply.duplicate()) {
+                    builder.duplicate();
+                }
+                builder.emit(apply.opcode());
+                if (uses.get(apply.node()) > 1 && !temporaries.containsKey(apply.node())) {
+                    temporaries.put(apply.node(), temporaries.size());
+                    builder.store(temporaries.size() - 1);
+                }
+                continue;
+            }
+            ExpressionNode node = (ExpressionNode) item;
+            Integer temporary = temporaries.get(node);
+            if (temporary != null) {
+                builder.recall(temporary);
+                continue;
+            }
+            switch (node) {
+                case ExpressionNode.Constant constant -> builder.push(constant.value());
+                case ExpressionNode.Variable variable -> builder.load(variable.index());
+                case ExpressionNode.Unary unary -> {
+                    pending.push(new Apply(unary, unary.opcode(), false));
+                    pending.push(unary.operand());
+                }
+                case ExpressionNode.Binary binary -> {
+                    ExpressionNode left = binary.left();
+                    if (left == binary.right() && uses.get(left) == 2 && !temporaries.containsKey(left)) {
+                        uses.put(left, 1);
+                        pending.push(new Apply(binary, binary.opcode(), true));
+                        pending.push(left);
+                    }
+                    else {
+                        pending.push(new Apply(binary, binary.opcode(), false));
+                        pending.push(binary.right());
+                        pending.push(left);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder that assembles a program one postfix instruction at a time and checks
+     * that every operator has its operands.
+     */
+    static final class Builder {
+        private static final int MAX_INLINED_LENGTH = 1 << 16;
+
+        private int[] code = new int[16];
+        private double[] constants = new double[8];
+        private int codeLength;
+        private int constantCount;
+        private int depth;
+        private int maxDepth;
+        private int temporaries;
+        private int lastPushEnd = -1;
+
+        /**
+         * Appends an instruction that pushes a constant.
+         */
+        void push(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            append(PUSH);
+            append(constantCount++);
+            lastPushEnd = codeLength;
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Appends an instruction that pushes the value of a variable.
+         */
+        void load(int variable) {
+            append(LOAD);
+            append(variable);
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Appends an instruction that pushes a copy of the top of the stack.
+         */
+        void duplicate() {
+            append(DUPLICATE);
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Appends an instruction that copies the top of the stack into a temporary.
+         */
+        void store(int temporary) {
+            append(STORE);
+            append(temporary);
+            temporaries = Math.max(temporaries, temporary + 1);
+        }
+
+        /**
+         * Appends an instruction that pushes the value of a temporary.
+         */
+        void recall(int temporary) {
+            append(RECALL);
+            append(temporary);
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Appends an operator or function instruction. Negating a constant that was just
+         * pushed is folded into the constant itself.
+         */
+        void emit(int opcode) {
+            int operands = isBinary(opcode) ? 2 : 1;
+            if (depth < operands) {
+                throw new IllegalArgumentException("Error: Missing operand for " + symbol(opcode));
+            }
+            if (opcode == NEGATE && codeLength == lastPushEnd) {
+                constants[constantCount - 1] = -constants[constantCount - 1];
+                return;
+            }
+            append(opcode);
+            depth -= operands - 1;
+        }
+
+        /**
+         * @return number of code words so far, which is where the next instruction starts
+         */
+        int position() {
+            return codeLength;
+        }
+
+        /**
+         * @return number of values on the stack after the instructions so far
+         */
+        int depth() {
+            return depth;
+        }
+
+        /**
+         * Inlines a call to a user-defined function. The arguments are the last code
+         * appended, one value each, starting at the positions in {@code arguments}. They are
+         * replaced by the body of the function, in which every load of a parameter becomes
+         * the code of its argument and every other variable is loaded from this program.
+         * Since each call copies its arguments and the bodies of nested definitions, the
+         * code can grow exponentially with their depth, so it is limited to
+         * {@link #MAX_INLINED_LENGTH} words.
+         *
+         * @param body      parsed program of the function, whose variables are its
+         *                  parameters followed by the names it reads from the caller
+         * @param arguments position of the first instruction of each argument
+         * @param variables index in this program of each variable of the body after the
+         *                  parameters
+         * @throws IllegalArgumentException if the inlined code would be too long
+         */
+        void inline(CompiledExpression body, int[] arguments, int[] variables) {
+            int start = arguments[0];
+            int[] bodyCode = body.code;
+            long length = start;
+            for (int pc = 0; pc < bodyCode.length; pc++) {
+                int operands = bodyCode[pc] == PUSH || bodyCode[pc] == LOAD ? 1 : 0;
+                if (bodyCode[pc] == LOAD && bodyCode[pc + 1] < arguments.length) {
+                    int variable = bodyCode[pc + 1];
+                    length += (variable + 1 < arguments.length ? arguments[variable + 1] : codeLength) - arguments[variable];
+                }
+                else {
+                    length += 1 + operands;
+                }
+                pc += operands;
+            }
+            if (length > MAX_INLINED_LENGTH) {
+                throw new IllegalArgumentException("Error: Expression is too large once its calls are inlined");
+            }
+            int[] argumentCode = Arrays.copyOfRange(code, start, codeLength);
+            codeLength = start;
+            depth -= arguments.length;
+            lastPushEnd = -1;
+            for (int pc = 0; pc < bodyCode.length; pc++) {
+                switch (bodyCode[pc]) {
+                    case PUSH -> push(body.constants[bodyCode[++pc]]);
+                    case LOAD -> {
+                        int variable = bodyCode[++pc];
+                        if (variable < arguments.length) {
+                            int to = variable + 1 < arguments.length ? arguments[variable + 1] : start + argumentCode.length;
+                            replay(argumentCode, arguments[variable] - start, to - start);
+                        }
+                        else {
+                            load(variables[variable - arguments.length]);
+                        }
+                    }
+                    default -> replay(bodyCode, pc, pc + 1);
+                }
+            }
+        }
+
+        /**
+         * Appends again a range of code of this builder, or a range of a body's code that
+         * holds no constants or variables.
+         */
+        private void replay(int[] source, int from, int to) {
+            for (int pc = from; pc < to; pc++) {
+                switch (source[pc]) {
+                    case PUSH -> push(constants[source[++pc]]);
+                    case LOAD -> load(source[++pc]);
+                    case DUPLICATE -> duplicate();
+                    case STORE, RECALL -> throw new IllegalArgumentException("Expected a parsed program without temporaries");
+                    default -> emit(source[pc]);
+                }
+            }
+        }
+
+        private void append(int value) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+            }
+            code[codeLength++] = value;
+        }
+
+        /**
+         * @param variables names of the variables loaded by the program
+         * @return the finished program
+         */
+        CompiledExpression build(String[] variables) {
+            return build(variables, 1);
+        }
+
+        /**
+         * @param variables names of the variables loaded by the program
+         * @param results   number of values the program must leave on the stack
+         * @return the finished program
+         */
+        CompiledExpression build(String[] variables, int results) {
+            if (depth != results) {
+                throw new IllegalArgumentException("Error: Improper expression format.");
+            }
+            return new CompiledExpression(Arrays.copyOf(code, codeLength),
+                    Arrays.copyOf(constants, constantCount), variables.clone(), maxDepth, temporaries, results);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * The Decimator class reduces a sampled curve to what can be seen at a given pixel width.
+ * The x range is cut into one bucket per pixel column and each bucket keeps only its first,
+ * lowest, highest and last points, plus its first non-finite point so that gaps in the
+ * curve stay visible. The drawn line then looks the same as the full data with at most
+ * five points per pixel column.
+ */
+public final class Decimator {
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int count;
+
+    /**
+     * Decimates samples sorted by x, replacing the result of any previous call.
+     *
+     * @param sourceX x of each sample, ascending
+     * @param sourceY y of each sample
+     * @param n       number of samples
+     * @param start   x at the left edge of the plot
+     * @param end     x at the right edge of the plot
+     * @param pixels  plot width in pixels
+     * @return number of points kept
+     */
+    public int minMax(double[] sourceX, double[] sourceY, int n, double start, double end, int pixels) {
+        count = 0;
+        int buckets = Math.max(1, pixels);
+        double scale = buckets / (end - start);
+        int[] picks = new int[5];
+        int i = 0;
+        while (i < n) {
+            int bucket = bucket(sourceX[i], start, scale, buckets);
+            int first = i;
+            int lowest = -1;
+            int highest = -1;
+            int gap = -1;
+            while (i < n && bucket(sourceX[i], start, scale, buckets) == bucket) {
+                double y = sourceY[i];
+                if (!Double.isFinite(y)) {
+                    if (gap < 0) {
+                        gap = i;
+                    }
+                }
+                else {
+                    if (lowest < 0 || y < sourceY[lowest]) {
+                        lowest = i;
+                    }
+                    if (highest < 0 || y > sourceY[highest]) {
+                        highest = i;
+                    }
+                }
+                i++;
+            }
+            int last = i - 1;
+
+            int picked = 0;
+            picks[picked++] = first;
+            if (lowest >= 0) {
+                picks[picked++] = lowest;
+                picks[picked++] = highest;
+            }
+            if (gap >= 0) {
+                picks[picked++] = gap;
+            }
+            picks[picked++] = last;
+            Arrays.sort(picks, 0, picked);
+            for (int k = 0; k < picked; k++) {
+                if (k == 0 || picks[k] != picks[k - 1]) {
+                    add(sourceX[picks[k]], sourceY[picks[k]]);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int bucket(double x, double start, double scale, int buckets) {
+        int bucket = (int) ((x - start) * scale);
+        return Math.max(0, Math.min(buckets - 1, bucket));
+    }
+
+    private void add(double x, double y) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * @return x of the kept points; only the first {@link #count()} are valid
+     */
+    public double[] xs() {
+        return xs;
+    }
+
+    /**
+     * @return y of the kept points; only the first {@link #count()} are valid
+     */
+    public double[] ys() {
+        return ys;
+    }
+
+    /**
+     * @return number of points kept by the last call
+     */
+    public int count() {
+        return count;
+    }
+}
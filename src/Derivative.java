@@ -0,0 +1,216 @@
+/**
+ * The Derivative class differentiates expression trees symbolically. Each rule builds its
+ * result through small constructors that fold constants and drop the zeros and ones the
+ * chain and product rules leave behind, so {@code d/dx 3*x^2} is {@code 6*x} rather than
+ * {@code 0*x^2 + 3*(2*x^1*1)}. Common subexpressions, such as {@code cos(x)} in the
+ * derivative of {@code tan(x)}, are left for the {@link Optimizer} to share.
+ */
+public final class Derivative {
+    private static final double LN_10 = Math.log(10);
+
+    private Derivative() {
+    }
+
+    /**
+     * Differentiates a compiled expression.
+     *
+     * @param tree      expression tree, as from {@link Calculator#toTree()}
+     * @param variables names of the variables the tree refers to
+     * @param variable  name of the variable to differentiate with respect to
+     * @return the optimized derivative
+     * @throws IllegalArgumentException if the variable is not one of the variables
+     */
+    public static CompiledExpression of(ExpressionNode tree, String[] variables, String variable) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(variable)) {
+                return Optimizer.optimize(differentiate(tree, i), variables);
+            }
+        }
+        throw new IllegalArgumentException("Unknown variable: " + variable);
+    }
+
+    /**
+     * @param node     expression tree
+     * @param variable index of the variable to differentiate with respect to
+     * @return the simplified derivative, as a tree
+     */
+    public static ExpressionNode differentiate(ExpressionNode node, int variable) {
+        return switch (node) {
+            case ExpressionNode.Constant constant -> constant(0);
+            case ExpressionNode.Variable v -> constant(v.index() == variable ? 1 : 0);
+            case ExpressionNode.Unary unary -> differentiateUnary(unary, variable);
+            case ExpressionNode.Binary binary -> differentiateBinary(binary, variable);
+        };
+    }
+
+    private static ExpressionNode differentiateUnary(ExpressionNode.Unary node, int variable) {
+        ExpressionNode u = node.operand();
+        ExpressionNode du = differentiate(u, variable);
+        if (isZero(du)) {
+            return du;
+        }
+        return switch (node.opcode()) {
+            case CompiledExpression.NEGATE -> negate(du);
+            case CompiledExpression.TO_RADIANS -> unary(CompiledExpression.TO_RADIANS, du);
+            case CompiledExpression.SIN -> multiply(unary(CompiledExpression.COS, u), du);
+            case CompiledExpression.COS -> negate(multiply(unary(CompiledExpression.SIN, u), du));
+            case CompiledExpression.TAN -> divide(du, power(unary(CompiledExpression.COS, u), constant(2)));
+            case CompiledExpression.LOG -> divide(du, multiply(constant(LN_10), u));
+            case CompiledExpression.LN -> divide(du, u);
+            case CompiledExpression.SQRT -> divide(du, multiply(constant(2), node));
+            // (u!)' = u! ψ(u + 1) u'
+            case CompiledExpression.FACTORIAL -> multiply(multiply(node,
+                    unary(CompiledExpression.DIGAMMA, add(u, constant(1)))), du);
+            default -> throw new IllegalArgumentException(
+                    "Cannot differentiate " + CompiledExpression.symbol(node.opcode()));
+        };
+    }
+
+    private static ExpressionNode differentiateBinary(ExpressionNode.Binary node, int variable) {
+        ExpressionNode u = node.left();
+        ExpressionNode v = node.right();
+        ExpressionNode du = differentiate(u, variable);
+        ExpressionNode dv = differentiate(v, variable);
+        return switch (node.opcode()) {
+            case CompiledExpression.ADD -> add(du, dv);
+            case CompiledExpression.SUBTRACT -> subtract(du, dv);
+            case CompiledExpression.MULTIPLY -> add(multiply(du, v), multiply(u, dv));
+            case CompiledExpression.DIVIDE -> isZero(dv)
+                    ? divide(du, v)
+                    : divide(subtract(multiply(du, v), multiply(u, dv)), power(v, constant(2)));
+            case CompiledExpression.POWER -> {
+                if (isZero(dv)) {
+                    // (u^c)' = c u^(c - 1) u'
+                    yield multiply(multiply(v, power(u, subtract(v, constant(1)))), du);
+                }
+                ExpressionNode lnU = unary(CompiledExpression.LN, u);
+                if (isZero(du)) {
+                    // (c^v)' = c^v ln(c) v'
+                    yield multiply(multiply(node, lnU), dv);
+                }
+                // (u^v)' = u^v (v' ln u + v u' / u)
+                yield multiply(node, add(multiply(dv, lnU), divide(multiply(v, du), u)));
+            }
+            default -> throw new IllegalArgumentException(
+                    "Cannot differentiate " + CompiledExpression.symbol(node.opcode()));
+        };
+    }
+
+    private static ExpressionNode constant(double value) {
+        return new ExpressionNode.Constant(value);
+    }
+
+    private static boolean isZero(ExpressionNode node) {
+        return node instanceof ExpressionNode.Constant constant && constant.value() == 0;
+    }
+
+    private static ExpressionNode unary(int opcode, ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Constant constant) {
+            return constant(CompiledExpression.applyFunction(opcode, constant.value()));
+        }
+        return new ExpressionNode.Unary(opcode, operand);
+    }
+
+    private static ExpressionNode negate(ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Unary inner && inner.opcode() == CompiledExpression.NEGATE) {
+            return inner.operand();
+        }
+        return unary(CompiledExpression.NEGATE, operand);
+    }
+
+    private static ExpressionNode add(ExpressionNode left, ExpressionNode right) {
+        if (isZero(left)) {
+            return right;
+        }
+        if (isZero(right)) {
+            return left;
+        }
+        if (right instanceof ExpressionNode.Unary negated && negated.opcode() == CompiledExpression.NEGATE) {
+            return subtract(left, negated.operand());
+        }
+        return binary(CompiledExpression.ADD, left, right);
+    }
+
+    private static ExpressionNode subtract(ExpressionNode left, ExpressionNode right) {
+        if (isZero(right)) {
+            return left;
+        }
+        if (isZero(left)) {
+            return negate(right);
+        }
+        if (left.equals(right)) {
+            return constant(0);
+        }
+        return binary(CompiledExpression.SUBTRACT, left, right);
+    }
+
+    /**
+     * Multiplies, keeping constant factors on the left and merging them, and pulling
+     * negations out so that they can cancel.
+     */
+    private static ExpressionNode multiply(ExpressionNode left, ExpressionNode right) {
+        if (isZero(left) || isZero(right)) {
+            return constant(0);
+        }
+        if (ExpressionNode.isConstant(left, 1)) {
+            return right;
+        }
+        if (ExpressionNode.isConstant(right, 1)) {
+            return left;
+        }
+        if (ExpressionNode.isConstant(left, -1)) {
+            return negate(right);
+        }
+        if (ExpressionNode.isConstant(right, -1)) {
+            return negate(left);
+        }
+        if (left instanceof ExpressionNode.Unary negated && negated.opcode() == CompiledExpression.NEGATE) {
+            return negate(multiply(negated.operand(), right));
+        }
+        if (right instanceof ExpressionNode.Unary negated && negated.opcode() == CompiledExpression.NEGATE) {
+            return negate(multiply(left, negated.operand()));
+        }
+        if (right instanceof ExpressionNode.Constant && !(left instanceof ExpressionNode.Constant)) {
+            return multiply(right, left);
+        }
+        if (left instanceof ExpressionNode.Constant a && right instanceof ExpressionNode.Binary product
+                && product.opcode() == CompiledExpression.MULTIPLY
+                && product.left() instanceof ExpressionNode.Constant b) {
+            return multiply(constant(a.value() * b.value()), product.right());
+        }
+        return binary(CompiledExpression.MULTIPLY, left, right);
+    }
+
+    private static ExpressionNode divide(ExpressionNode left, ExpressionNode right) {
+        if (isZero(left)) {
+            return constant(0);
+        }
+        if (ExpressionNode.isConstant(right, 1)) {
+            return left;
+        }
+        if (left.equals(right)) {
+            return constant(1);
+        }
+        if (left instanceof ExpressionNode.Unary negated && negated.opcode() == CompiledExpression.NEGATE) {
+            return negate(divide(negated.operand(), right));
+        }
+        return binary(CompiledExpression.DIVIDE, left, right);
+    }
+
+    private static ExpressionNode power(ExpressionNode base, ExpressionNode exponent) {
+        if (ExpressionNode.isConstant(exponent, 0)) {
+            return constant(1);
+        }
+        if (ExpressionNode.isConstant(exponent, 1)) {
+            return base;
+        }
+        return binary(CompiledExpression.POWER, base, exponent);
+    }
+
+    private static ExpressionNode binary(int opcode, ExpressionNode left, ExpressionNode right) {
+        if (left instanceof ExpressionNode.Constant a && right instanceof ExpressionNode.Constant b) {
+            return constant(CompiledExpression.applyOperator(opcode, a.value(), b.value()));
+        }
+        return new ExpressionNode.Binary(opcode, left, right);
+    }
+}
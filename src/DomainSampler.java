@@ -0,0 +1,169 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * The DomainSampler class evaluates a function of x over an evenly spaced domain in
+ * parallel. The domain is split into chunks that run on a fork/join pool, and every
+ * chunk writes straight into its own slice of the result arrays, so the results come
+ * out in order without a merge step. The i-th sample is taken at {@code start + i * step}
+ * so rounding errors do not accumulate across the domain.
+ */
+public final class DomainSampler {
+    /**
+     * Domains with at most this many points are split no further.
+     */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    private DomainSampler() {
+    }
+
+    /**
+     * @return number of samples from start to end (both inclusive) at the given step
+     */
+    public static int count(double start, double end, double step) {
+        return Math.max(0, (int) Math.floor((end - start) / step + 1e-9) + 1);
+    }
+
+    /**
+     * Samples a compiled single-variable expression using the common fork/join pool.
+     *
+     * @param expression expression of at most one variable
+     * @param start      first x
+     * @param step       distance between samples
+     * @param xs         receives the x of every sample
+     * @param ys         receives the value at every sample
+     */
+    public static void sample(CompiledExpression expression, double start, double step, double[] xs, double[] ys) {
+        sample(ForkJoinPool.commonPool(), expression, start, step, xs, ys);
+    }
+
+    /**
+     * Samples a compiled single-variable expression. Each chunk runs through the column
+     * evaluator with scratch registers owned by the worker thread.
+     */
+    public static void sample(ForkJoinPool pool, CompiledExpression expression,
+                              double start, double step, double[] xs, double[] ys) {
+        if (expression.variables().length > 1) {
+            throw new IllegalArgumentException("Expected at most one variable");
+        }
+        ThreadLocal<double[][]> registers = ThreadLocal.withInitial(expression::newRegisters);
+        double[][] columns = {xs};
+        run(pool, new Chunk(start, step, xs, 0, xs.length,
+                (from, to) -> expression.evaluateColumns(columns, ys, from, to, registers.get())));
+    }
+
+    /**
+     * Samples a program with several {@link CompiledExpression#results() results}, such
+     * as several functions fused by {@link Optimizer#optimize(ExpressionNode[], String[])},
+     * using the common fork/join pool. All of them share the one x column.
+     *
+     * @param expression program of at most one variable
+     * @param start      first x
+     * @param step       distance between samples
+     * @param xs         receives the x of every sample
+     * @param ys         one column per result, each receiving the value at every sample
+     */
+    public static void sample(CompiledExpression expression, double start, double step, double[] xs, double[][] ys) {
+        sample(ForkJoinPool.commonPool(), expression, start, step, xs, ys);
+    }
+
+    /**
+     * Samples a program with several results, one block of rows at a time for all of them.
+     */
+    public static void sample(ForkJoinPool pool, CompiledExpression expression,
+                              double start, double step, double[] xs, double[][] ys) {
+        if (expression.variables().length > 1) {
+            throw new IllegalArgumentException("Expected at most one variable");
+        }
+        ThreadLocal<double[][]> registers = ThreadLocal.withInitial(expression::newRegisters);
+        double[][] columns = {xs};
+        run(pool, new Chunk(start, step, xs, 0, xs.length,
+                (from, to) -> expression.evaluateColumns(columns, ys, from, to, registers.get())));
+    }
+
+    /**
+     * Samples a function using the common fork/join pool.
+     *
+     * @param evaluators creates an evaluator for one worker thread; evaluators are never
+     *                   shared, so they do not need to be thread-safe
+     * @param start      first x
+     * @param step       distance between samples
+     * @param xs         receives the x of every sample
+     * @param ys         receives the value at every sample
+     */
+    public static void sample(Supplier<DoubleUnaryOperator> evaluators, double start, double step,
+                              double[] xs, double[] ys) {
+        sample(ForkJoinPool.commonPool(), evaluators, start, step, xs, ys);
+    }
+
+    /**
+     * Samples a function, creating one evaluator per worker thread.
+     */
+    public static void sample(ForkJoinPool pool, Supplier<DoubleUnaryOperator> evaluators,
+                              double start, double step, double[] xs, double[] ys) {
+        ThreadLocal<DoubleUnaryOperator> evaluator = ThreadLocal.withInitial(evaluators);
+        run(pool, new Chunk(start, step, xs, 0, xs.length, (from, to) -> {
+            DoubleUnaryOperator f = evaluator.get();
+            for (int i = from; i < to; i++) {
+                ys[i] = f.applyAsDouble(xs[i]);
+            }
+        }));
+    }
+
+    /**
+     * Runs small domains on the calling thread and hands larger ones to the pool.
+     */
+    private static void run(ForkJoinPool pool, Chunk root) {
+        if (root.to - root.from <= CHUNK_SIZE) {
+            root.compute();
+        }
+        else {
+            pool.invoke(root);
+        }
+    }
+
+    /**
+     * Evaluates the samples in a range of indices whose x values are already filled in.
+     */
+    private interface RangeEvaluator {
+        void evaluate(int from, int to);
+    }
+
+    /**
+     * A contiguous range of sample indices. Large ranges split in half; small ones fill
+     * in their x values and evaluate them.
+     */
+    private static final class Chunk extends RecursiveAction {
+        private final double start;
+        private final double step;
+        private final double[] xs;
+        private final int from;
+        private final int to;
+        private final RangeEvaluator evaluator;
+
+        Chunk(double start, double step, double[] xs, int from, int to, RangeEvaluator evaluator) {
+            this.start = start;
+            this.step = step;
+            this.xs = xs;
+            this.from = from;
+            this.to = to;
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    xs[i] = start + i * step;
+                }
+                evaluator.evaluate(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(start, step, xs, from, middle, evaluator),
+                    new Chunk(start, step, xs, middle, to, evaluator));
+        }
+    }
+}
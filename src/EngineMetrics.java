@@ -0,0 +1,248 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The EngineMetrics class times the stages of the engine: validating, compiling and
+ * evaluating expressions, and sampling and rendering graphs. Each stage has a count, an
+ * error count and a {@link LatencyHistogram}, and every timing is also emitted as a
+ * {@code calculator.Stage} Flight Recorder event while a recording is running.
+ * <p>
+ * Metrics are off unless the JVM is started with {@code -Dcalculator.metrics=true}. The
+ * switch is a static final field, so when it is off the JIT removes the timing calls from
+ * the instrumented methods along with the clock reads. With
+ * {@code -Dcalculator.metrics.jmx=true} the metrics are also published as the
+ * {@code calculator:type=EngineMetrics} MXBean.
+ */
+public final class EngineMetrics {
+    /**
+     * True if the stages are timed; read once at startup.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("calculator.metrics")
+            || Boolean.getBoolean("calculator.metrics.jmx");
+
+    private static final Map<Stage, StageMetrics> STAGES = new EnumMap<>(Stage.class);
+    private static final long STARTED = System.nanoTime();
+
+    static {
+        for (Stage stage : Stage.values()) {
+            STAGES.put(stage, new StageMetrics());
+        }
+        if (Boolean.getBoolean("calculator.metrics.jmx")) {
+            register();
+        }
+    }
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * The timed stages.
+     */
+    public enum Stage {
+        VALIDATE,
+        COMPILE,
+        EVALUATE,
+        SAMPLE,
+        RENDER
+    }
+
+    /**
+     * Counters of one stage.
+     */
+    private static final class StageMetrics {
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * One timed stage, as recorded by Flight Recorder.
+     */
+    @Name("calculator.Stage")
+    @Label("Calculator Stage")
+    @Category("Calculator")
+    @Description("A timed stage of the calculator engine")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    /**
+     * Starts timing a stage. Callers pass the result to {@link #record} or {@link #failed}
+     * when the stage ends.
+     *
+     * @return the current time, or 0 if metrics are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a stage that started at {@code start} and succeeded.
+     */
+    public static void record(Stage stage, long start) {
+        if (ENABLED) {
+            end(stage, start, false);
+        }
+    }
+
+    /**
+     * Records a stage that started at {@code start} and failed.
+     */
+    public static void failed(Stage stage, long start) {
+        if (ENABLED) {
+            end(stage, start, true);
+        }
+    }
+
+    private static void end(Stage stage, long start, boolean failed) {
+        long nanos = System.nanoTime() - start;
+        StageMetrics metrics = STAGES.get(stage);
+        metrics.latency.record(nanos);
+        if (failed) {
+            metrics.errors.increment();
+        }
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage.name();
+            event.nanos = nanos;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return number of times the stage ran, including failures
+     */
+    public static long count(Stage stage) {
+        return STAGES.get(stage).latency.count();
+    }
+
+    /**
+     * @return number of times the stage failed
+     */
+    public static long errors(Stage stage) {
+        return STAGES.get(stage).errors.sum();
+    }
+
+    /**
+     * @return latency histogram of the stage
+     */
+    public static LatencyHistogram latency(Stage stage) {
+        return STAGES.get(stage).latency;
+    }
+
+    /**
+     * @return runs of the stage per second since startup
+     */
+    public static double throughput(Stage stage) {
+        double seconds = (System.nanoTime() - STARTED) / 1e9;
+        return count(stage) / seconds;
+    }
+
+    /**
+     * @return one line per stage with its errors and latency summary, or a note that
+     *         metrics are off
+     */
+    public static String summary() {
+        if (!ENABLED) {
+            return "metrics off (-Dcalculator.metrics=true)";
+        }
+        StringBuilder summary = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            summary.append(String.format("%s[errors=%d %s]%n", stage, errors(stage), latency(stage)));
+        }
+        return summary.toString().stripTrailing();
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(),
+                    new ObjectName("calculator:type=EngineMetrics"));
+        }
+        catch (JMException e) {
+            System.err.println("Could not register the engine metrics MXBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return a value per stage, in stage order
+     */
+    private static <T> Map<String, T> perStage(Function<Stage, T> value) {
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            values.put(stage.name(), value.apply(stage));
+        }
+        return values;
+    }
+
+    /**
+     * The MXBean view of the metrics and of the expression caches.
+     */
+    private static final class MXBean implements EngineMetricsMXBean {
+        @Override
+        public Map<String, Long> getCounts() {
+            return perStage(EngineMetrics::count);
+        }
+
+        @Override
+        public Map<String, Long> getErrors() {
+            return perStage(EngineMetrics::errors);
+        }
+
+        @Override
+        public Map<String, Double> getThroughput() {
+            return perStage(EngineMetrics::throughput);
+        }
+
+        @Override
+        public Map<String, Double> getMeanMicros() {
+            return perStage(stage -> latency(stage).mean() / 1000);
+        }
+
+        @Override
+        public Map<String, Double> getP99Micros() {
+            return perStage(stage -> latency(stage).percentile(99) / 1000.0);
+        }
+
+        @Override
+        public Map<String, Double> getMaxMicros() {
+            return perStage(stage -> latency(stage).max() / 1000.0);
+        }
+
+        @Override
+        public double getCacheHitRate() {
+            return Calculator.getCacheStats().hitRate();
+        }
+
+        @Override
+        public long getCacheEvictions() {
+            return Calculator.getCacheStats().evictions();
+        }
+
+        @Override
+        public double getPlotCacheHitRate() {
+            return PlotFunction.getCacheStats().hitRate();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * The management interface of {@link EngineMetrics}, published as
+ * {@code calculator:type=EngineMetrics} when the JVM is started with
+ * {@code -Dcalculator.metrics.jmx=true}. Per-stage values are keyed by stage name.
+ */
+public interface EngineMetricsMXBean {
+    /**
+     * @return number of runs of each stage, including failures
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * @return number of failed runs of each stage
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * @return runs of each stage per second since startup
+     */
+    Map<String, Double> getThroughput();
+
+    /**
+     * @return mean latency of each stage in microseconds
+     */
+    Map<String, Double> getMeanMicros();
+
+    /**
+     * @return 99th percentile latency of each stage in microseconds
+     */
+    Map<String, Double> getP99Micros();
+
+    /**
+     * @return largest latency of each stage in microseconds
+     */
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return fraction of calculator constructions that found the expression compiled
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return number of compiled expressions evicted from the calculator cache
+     */
+    long getCacheEvictions();
+
+    /**
+     * @return fraction of plotted functions that were found compiled
+     */
+    double getPlotCacheHitRate();
+}
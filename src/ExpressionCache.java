@@ -0,0 +1,179 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The ExpressionCache class is a concurrent, weight-bounded cache for compiled expressions.
+ * Lookups are a single {@link ConcurrentHashMap} read plus setting a "recently used" flag,
+ * so hits never lock. When the total weight passes the bound, entries are evicted in CLOCK
+ * order, an approximation of LRU: entries are visited oldest first, and one that was used
+ * since the last visit gets a second chance instead of being removed.
+ *
+ * @param <K> key type, such as the normalized expression text
+ * @param <V> value type, such as a compiled expression
+ */
+public final class ExpressionCache<K, V> {
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong weight = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final long maximumWeight;
+    private final ToIntFunction<? super V> weigher;
+
+    /**
+     * A cached value with its weight and the flag CLOCK uses for second chances.
+     */
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        volatile boolean referenced;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counts together with the current size and weight.
+     */
+    public record Stats(long hits, long misses, long evictions, int size, long weight) {
+        /**
+         * @return fraction of lookups that were hits, or 0 if there were none
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    /**
+     * Creates a cache holding at most the given number of entries.
+     *
+     * @param maximumSize maximum number of entries
+     */
+    public ExpressionCache(int maximumSize) {
+        this(maximumSize, value -> 1);
+    }
+
+    /**
+     * Creates a cache bounded by the total weight of its entries.
+     *
+     * @param maximumWeight maximum total weight
+     * @param weigher       weight of one value
+     */
+    public ExpressionCache(long maximumWeight, ToIntFunction<? super V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached value for a key, loading and caching it on a miss. Two threads
+     * missing on the same key at once may both load it; only the first value is kept.
+     * Nothing is cached if the loader throws.
+     *
+     * @param key    key to look up
+     * @param loader creates the value on a miss
+     * @return the cached or loaded value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            node.referenced = true;
+            hits.increment();
+            return node.value;
+        }
+        misses.increment();
+        V value = loader.apply(key);
+        Node<K, V> created = new Node<>(key, value, weigher.applyAsInt(value));
+        Node<K, V> existing = map.putIfAbsent(key, created);
+        if (existing != null) {
+            existing.referenced = true;
+            return existing.value;
+        }
+        clock.add(created);
+        if (weight.addAndGet(created.weight) > maximumWeight) {
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value for a key without loading it. A value found counts as a
+     * hit; a value not found does not count as a miss.
+     *
+     * @return the cached value, or null if there is none
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.referenced = true;
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Sweeps the clock until the cache is back under its weight bound. Only one thread
+     * sweeps at a time; others carry on and leave the work to it.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (weight.get() > maximumWeight) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    break;
+                }
+                if (node.referenced) {
+                    node.referenced = false;
+                    clock.add(node);
+                }
+                else if (map.remove(node.key, node)) {
+                    weight.addAndGet(-node.weight);
+                    evictions.increment();
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry. Statistics are kept.
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            Node<K, V> node;
+            while ((node = clock.poll()) != null) {
+                if (map.remove(node.key, node)) {
+                    weight.addAndGet(-node.weight);
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache statistics
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), map.size(), weight.get());
+    }
+}
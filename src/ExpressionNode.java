@@ -0,0 +1,39 @@
+/**
+ * An ExpressionNode is one node of the tree form of a compiled expression. Trees are built
+ * from a program with {@link CompiledExpression#toTree()} so that passes such as the
+ * {@link Optimizer} can work on whole subexpressions, and are turned back into a program
+ * with {@link CompiledExpression#fromTree}. Nodes are immutable values: two nodes are equal
+ * when they describe the same computation.
+ */
+public sealed interface ExpressionNode {
+    /**
+     * A number.
+     */
+    record Constant(double value) implements ExpressionNode {
+    }
+
+    /**
+     * The value of a variable, by its position in the expression's variable list.
+     */
+    record Variable(int index) implements ExpressionNode {
+    }
+
+    /**
+     * A function or unary operator applied to one operand.
+     */
+    record Unary(int opcode, ExpressionNode operand) implements ExpressionNode {
+    }
+
+    /**
+     * A binary operator applied to two operands.
+     */
+    record Binary(int opcode, ExpressionNode left, ExpressionNode right) implements ExpressionNode {
+    }
+
+    /**
+     * @return true if the node is a constant equal to the value
+     */
+    static boolean isConstant(ExpressionNode node, double value) {
+        return node instanceof Constant constant && Double.compare(constant.value(), value) == 0;
+    }
+}
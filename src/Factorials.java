@@ -0,0 +1,196 @@
+import java.math.BigInteger;
+
+/**
+ * The Factorials class computes factorials for the {@code !} operator and exact factorials
+ * for callers that need every digit.
+ * <p>
+ * Every factorial a double can hold, 0! to 170!, is looked up in a table built once from
+ * exact values, so each entry is correctly rounded. Other arguments go through the gamma
+ * function: x! = Γ(x + 1), computed with the Lanczos approximation, which is accurate to
+ * about 15 significant digits.
+ * <p>
+ * Exact factorials use Luschny's prime swing: n! = ((n/2)!)² · swing(n), where swing(n)
+ * is a product of prime powers that is multiplied out by binary splitting, so the large
+ * multiplications are between numbers of similar size. The factorials of the recursion are
+ * kept in a weight-bounded cache, so nearby and repeated arguments reuse them.
+ */
+public final class Factorials {
+    /**
+     * 170! is the largest factorial below {@link Double#MAX_VALUE}.
+     */
+    private static final int MAX_DOUBLE_ARGUMENT = 170;
+    private static final double[] TABLE = new double[MAX_DOUBLE_ARGUMENT + 1];
+    private static final long[] SMALL = new long[21];
+
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+            -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+            1.5056327351493116e-7
+    };
+    private static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+
+    /**
+     * Exact factorials by argument, weighed in 32-bit words of magnitude.
+     */
+    private static final ExpressionCache<Integer, BigInteger> EXACT = new ExpressionCache<>(
+            Long.getLong("calculator.factorial.maxWords", 1 << 20), value -> 1 + value.bitLength() / 32);
+
+    static {
+        BigInteger exact = BigInteger.ONE;
+        TABLE[0] = 1;
+        for (int n = 1; n <= MAX_DOUBLE_ARGUMENT; n++) {
+            exact = exact.multiply(BigInteger.valueOf(n));
+            TABLE[n] = exact.doubleValue();
+        }
+        SMALL[0] = 1;
+        for (int n = 1; n < SMALL.length; n++) {
+            SMALL[n] = SMALL[n - 1] * n;
+        }
+    }
+
+    private Factorials() {
+    }
+
+    /**
+     * Computes x! for any real x. Whole numbers up to 170 are a table lookup; larger ones
+     * overflow to infinity. Other numbers use the gamma function, and negative whole
+     * numbers, where it has poles, are NaN.
+     *
+     * @return factorial of a number
+     */
+    public static double factorial(double x) {
+        int n = (int) x;
+        if (n == x) {
+            if (n < 0) {
+                return Double.NaN;
+            }
+            return n <= MAX_DOUBLE_ARGUMENT ? TABLE[n] : Double.POSITIVE_INFINITY;
+        }
+        return gamma(x + 1);
+    }
+
+    /**
+     * Computes Γ(x) with the Lanczos approximation, using the reflection formula
+     * Γ(x)Γ(1 - x) = π / sin(πx) below one half.
+     *
+     * @return gamma of a number
+     */
+    public static double gamma(double x) {
+        if (Double.isNaN(x) || x == Double.NEGATIVE_INFINITY) {
+            return Double.NaN;
+        }
+        if (x > MAX_DOUBLE_ARGUMENT + 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (x < 0.5) {
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        x -= 1;
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x + i);
+        }
+        double t = x + LANCZOS_G + 0.5;
+        // t^(x + 0.5) alone overflows before Γ does, so it is applied in two halves.
+        double half = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * half * (half * Math.exp(-t)) * sum;
+    }
+
+    /**
+     * Computes the digamma function ψ(x) = Γ'(x) / Γ(x), the logarithmic derivative of
+     * gamma, so that the derivative of x! is x! ψ(x + 1). Small arguments are raised with
+     * ψ(x) = ψ(x + 1) - 1/x until the asymptotic series is accurate, and arguments below
+     * one half use the reflection formula ψ(1 - x) - ψ(x) = π cot(πx).
+     *
+     * @return digamma of a number, NaN at the poles 0, -1, -2, ...
+     */
+    public static double digamma(double x) {
+        if (Double.isNaN(x) || x == Double.NEGATIVE_INFINITY || (x <= 0 && x == Math.rint(x))) {
+            return Double.NaN;
+        }
+        if (x < 0.5) {
+            return digamma(1 - x) - Math.PI / Math.tan(Math.PI * x);
+        }
+        double shift = 0;
+        while (x < 6) {
+            shift -= 1 / x;
+            x++;
+        }
+        double inverseSquare = 1 / (x * x);
+        double series = inverseSquare * (1.0 / 12 - inverseSquare * (1.0 / 120 - inverseSquare
+                * (1.0 / 252 - inverseSquare * (1.0 / 240 - inverseSquare / 132))));
+        return shift + Math.log(x) - 0.5 / x - series;
+    }
+
+    /**
+     * Computes n! exactly.
+     *
+     * @return factorial of a number
+     * @throws IllegalArgumentException if n is negative
+     */
+    public static BigInteger exact(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Factorial of a negative number: " + n);
+        }
+        if (n < SMALL.length) {
+            return BigInteger.valueOf(SMALL[n]);
+        }
+        return EXACT.get(n, key -> {
+            BigInteger half = exact(key / 2);
+            return half.multiply(half).multiply(swing(key));
+        });
+    }
+
+    /**
+     * Computes n! / ((n/2)!)². The exponent of a prime p in it is the number of odd
+     * quotients n / p^k, so the product of p's powers never exceeds n.
+     *
+     * @return the swinging factorial of a number
+     */
+    private static BigInteger swing(int n) {
+        boolean[] composite = new boolean[n + 1];
+        long[] factors = new long[n];
+        int count = 0;
+        for (int p = 2; p <= n; p++) {
+            if (composite[p]) {
+                continue;
+            }
+            for (long multiple = (long) p * p; multiple <= n; multiple += p) {
+                composite[(int) multiple] = true;
+            }
+            long factor = 1;
+            for (int q = n / p; q > 0; q /= p) {
+                if ((q & 1) == 1) {
+                    factor *= p;
+                }
+            }
+            if (factor > 1) {
+                factors[count++] = factor;
+            }
+        }
+        return product(factors, 0, count);
+    }
+
+    /**
+     * Multiplies a range of factors by splitting it in halves, so that large numbers are
+     * only ever multiplied by numbers of similar size.
+     *
+     * @return product of factors[from] to factors[to - 1]
+     */
+    private static BigInteger product(long[] factors, int from, int to) {
+        int length = to - from;
+        if (length == 0) {
+            return BigInteger.ONE;
+        }
+        if (length <= 4) {
+            BigInteger result = BigInteger.valueOf(factors[from]);
+            for (int i = from + 1; i < to; i++) {
+                result = result.multiply(BigInteger.valueOf(factors[i]));
+            }
+            return result;
+        }
+        int middle = (from + to) >>> 1;
+        return product(factors, from, middle).multiply(product(factors, middle, to));
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The FeatureFinder class locates the roots, minima and maxima of a function of one
+ * variable. The function and its first derivative are evaluated once over a coarse grid,
+ * and every interval where either changes sign is refined by Newton's method on the
+ * {@link Derivative symbolic} derivatives, kept inside the bracket by falling back to
+ * bisection. Refinement converges quadratically, so each feature costs a handful of
+ * evaluations to full double precision, however fine the grid would have had to be.
+ * <p>
+ * A sign change across a pole, such as that of {@code tan(x)} at π/2, converges to the
+ * pole; such points are recognised because the function grows towards them instead of
+ * shrinking, and are dropped. Roots where the function touches zero without crossing it
+ * are found as extrema with a value of zero. A finder keeps scratch state and must stay
+ * confined to one thread.
+ */
+public final class FeatureFinder {
+    private static final int MAX_ITERATIONS = 100;
+    private static final int MAX_FEATURES = 1000;
+    private static final double TOUCHING_ZERO = 1e-12;
+
+    /**
+     * The kinds of points found.
+     */
+    public enum Kind {
+        ROOT,
+        MINIMUM,
+        MAXIMUM
+    }
+
+    /**
+     * A point of interest on the curve.
+     */
+    public record Feature(Kind kind, double x, double y) {
+    }
+
+    private final CompiledExpression function;
+    private final CompiledExpression derivative;
+    private final CompiledExpression secondDerivative;
+    private final double[] stack;
+    private final double[] values = new double[1];
+    private long evaluations;
+
+    /**
+     * Compiles the function and its first two derivatives.
+     *
+     * @param tree      expression tree of the function, as from {@link Calculator#toTree()}
+     * @param variables the single variable of the function
+     * @throws IllegalArgumentException if the function has more than one variable
+     */
+    public FeatureFinder(ExpressionNode tree, String[] variables) {
+        if (variables.length != 1) {
+            throw new IllegalArgumentException("Expected one variable but found " + variables.length);
+        }
+        ExpressionNode first = Derivative.differentiate(tree, 0);
+        function = Optimizer.optimize(tree, variables);
+        derivative = Optimizer.optimize(first, variables);
+        secondDerivative = secondDerivative(first, variables);
+        int stackSize = Math.max(function.stackSize(), derivative.stackSize());
+        stack = new double[secondDerivative == null ? stackSize : Math.max(stackSize, secondDerivative.stackSize())];
+    }
+
+    /**
+     * @return the derivative of the first derivative, or null if it has no symbolic
+     *         derivative, as with the ψ of a factorial
+     */
+    private static CompiledExpression secondDerivative(ExpressionNode first, String[] variables) {
+        try {
+            return Optimizer.optimize(Derivative.differentiate(first, 0), variables);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the features between start and end, in order of x. Features closer together
+     * than one interval of the grid may be missed.
+     *
+     * @param intervals number of grid intervals to search for sign changes
+     * @return roots and extrema, at most a thousand
+     */
+    public List<Feature> find(double start, double end, int intervals) {
+        double[] xs = new double[intervals + 1];
+        for (int i = 0; i <= intervals; i++) {
+            xs[i] = start + (end - start) * i / intervals;
+        }
+        double[] fs = new double[xs.length];
+        double[] ds = new double[xs.length];
+        function.evaluateColumn(xs, fs);
+        derivative.evaluateColumn(xs, ds);
+        evaluations += 2L * xs.length;
+
+        double scale = 0;
+        for (double f : fs) {
+            if (Double.isFinite(f)) {
+                scale = Math.max(scale, Math.abs(f));
+            }
+        }
+
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < intervals && features.size() < MAX_FEATURES; i++) {
+            if (fs[i] == 0) {
+                features.add(new Feature(Kind.ROOT, xs[i], 0));
+            }
+            else if (changesSign(fs[i], fs[i + 1])) {
+                double x = solve(function, derivative, xs[i], xs[i + 1], fs[i], fs[i + 1]);
+                double y = Double.isNaN(x) ? x : evaluate(function, x);
+                if (Math.abs(y) <= Math.min(Math.abs(fs[i]), Math.abs(fs[i + 1]))) {
+                    features.add(new Feature(Kind.ROOT, x, y));
+                }
+            }
+            double x = Double.NaN;
+            if (ds[i] == 0 && i > 0 && changesSign(ds[i - 1], ds[i + 1])) {
+                x = xs[i];
+            }
+            else if (changesSign(ds[i], ds[i + 1])) {
+                x = solve(derivative, secondDerivative, xs[i], xs[i + 1], ds[i], ds[i + 1]);
+                if (!Double.isNaN(x) && !(Math.abs(evaluate(derivative, x)) <= Math.min(Math.abs(ds[i]), Math.abs(ds[i + 1])))) {
+                    x = Double.NaN;
+                }
+            }
+            if (!Double.isNaN(x)) {
+                double y = evaluate(function, x);
+                if (Double.isFinite(y)) {
+                    Kind kind = (i > 0 && ds[i] == 0 ? ds[i - 1] : ds[i]) > 0 ? Kind.MAXIMUM : Kind.MINIMUM;
+                    features.add(new Feature(kind, x, y));
+                    if (Math.abs(y) <= TOUCHING_ZERO * scale && fs[i] != 0 && !changesSign(fs[i], fs[i + 1])) {
+                        features.add(new Feature(Kind.ROOT, x, y));
+                    }
+                }
+            }
+        }
+        if (fs[intervals] == 0) {
+            features.add(new Feature(Kind.ROOT, xs[intervals], 0));
+        }
+        features.sort(Comparator.comparingDouble(Feature::x));
+        return features;
+    }
+
+    /**
+     * @return number of points evaluated so far, counting each of the function and its
+     *         derivatives separately
+     */
+    public long evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return true if the values have opposite signs; a sign change next to an infinity
+     *         is a pole, not a zero
+     */
+    private static boolean changesSign(double a, double b) {
+        if (Double.isInfinite(a) || Double.isInfinite(b)) {
+            return false;
+        }
+        return (a < 0 && b > 0) || (a > 0 && b < 0);
+    }
+
+    /**
+     * Finds a zero of g between a and b, where g changes sign, with Newton steps on g and
+     * its derivative dg, or secant steps if dg is null. A step that would leave the
+     * bracket, or that shrinks it less than bisection would, is replaced by bisection, so
+     * the search always converges. If g grows beyond its values at both ends, the sign
+     * change is a pole, and the search gives up.
+     *
+     * @param ga value of g at a
+     * @param gb value of g at b
+     * @return x with g(x) = 0, to within a few ulps, or NaN at a pole
+     */
+    private double solve(CompiledExpression g, CompiledExpression dg, double a, double b, double ga, double gb) {
+        double bound = Math.max(Math.abs(ga), Math.abs(gb));
+        double low = ga < 0 ? a : b;
+        double high = ga < 0 ? b : a;
+        double x = 0.5 * (a + b);
+        double step = Math.abs(b - a);
+        double previousStep = step;
+        double previousX = a;
+        double previousG = ga;
+        double gx = evaluate(g, x);
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            if (gx == 0) {
+                return x;
+            }
+            if (!(Math.abs(gx) <= bound)) {
+                return Double.NaN;
+            }
+            double dgx = dg != null ? evaluate(dg, x) : (gx - previousG) / (x - previousX);
+            if (gx < 0) {
+                low = x;
+            }
+            else {
+                high = x;
+            }
+            previousX = x;
+            previousG = gx;
+            boolean outside = ((x - high) * dgx - gx) * ((x - low) * dgx - gx) > 0;
+            if (outside || Math.abs(2 * gx) > Math.abs(previousStep * dgx) || !Double.isFinite(dgx)) {
+                previousStep = step;
+                step = 0.5 * (high - low);
+                x = low + step;
+            }
+            else {
+                previousStep = step;
+                step = gx / dgx;
+                x -= step;
+            }
+            if (x == previousX || Math.abs(step) <= 2 * Math.ulp(x)) {
+                return x;
+            }
+            gx = evaluate(g, x);
+        }
+        return x;
+    }
+
+    private double evaluate(CompiledExpression program, double x) {
+        evaluations++;
+        values[0] = x;
+        return program.evaluate(stack, values);
+    }
+}
@@ -1,35 +1,106 @@
 import java.awt.BorderLayout;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.event.ChartProgressEvent;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.Range;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
 
 public class GraphingTool extends JFrame {
+    private static final int MIN_PIXELS = 400;
+    private static final Duration PLOT_TIMEOUT = Duration.ofSeconds(30);
+    private static final int LIVE_PLOT_DELAY_MILLIS = 150;
+
     private final JTextField functionInput;
     private final JTextField rangeStartInput;
     private final JTextField rangeEndInput;
     private final JPanel chartContainer;
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JLabel statusLabel = new JLabel();
+    private final BackgroundRunner<Plot> plotter =
+            new BackgroundRunner<>("Plotting", PLOT_TIMEOUT, this::plotFailed, progressBar::setValue);
+    private final PrimitiveXYDataset dataset = new PrimitiveXYDataset("Graph");
+    private final XYSeries roots = new XYSeries("Roots", false);
+    private final XYSeries minima = new XYSeries("Minima", false);
+    private final XYSeries maxima = new XYSeries("Maxima", false);
+    private final JLabel featureLabel = new JLabel();
+    private final NumberAxis domainAxis = new NumberAxis();
+    private final NumberAxis rangeAxis = new NumberAxis();
+    private final Timer livePlotTimer = new Timer(LIVE_PLOT_DELAY_MILLIS, _ -> plotLive());
+    private final Workspace workspace;
+    private final WorkspaceListener workspaceListener = change -> SwingUtilities.invokeLater(() -> workspaceChanged(change));
+    private Set<String> plottedNames = Set.of();
+    private String plottedText;
+    private String plottedStart;
+    private String plottedEnd;
+    private Supplier<List<PlotFunction>> functions;
+    private double domainStart;
+    private double domainEnd;
+    private double requestedStart;
+    private double requestedEnd;
+    private boolean fitRange = true;
+    private boolean fittingRange;
+    private boolean resamplePending;
+    private double fittedLow = Double.NaN;
+    private double fittedHigh = Double.NaN;
+    private long renderStart;
+
+    /**
+     * Points sampled in the background, one curve per function, ready to be shown, with
+     * the roots and extrema of all of them found in the same window, the y range fitted
+     * around them and the functions found to be undefined in parts of it.
+     */
+    private record Plot(double start, double end, List<String> keys, double[][] xs, double[][] ys, int[] counts,
+                        List<FeatureFinder.Feature> features, double low, double high, List<String> undefined) {
+    }
 
     public GraphingTool() {
+        this(new Workspace(Calculator.AngleUnit.RADIANS));
+    }
+
+    /**
+     * @param workspace definitions the plotted functions may use; the plot is redrawn
+     *                  when one of those it uses changes
+     */
+    public GraphingTool(Workspace workspace) {
+        this.workspace = workspace;
         setTitle("Graphing Tool");
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setLocationRelativeTo(null);
 
         JPanel inputPanel = new JPanel();
-        inputPanel.add(new JLabel("Function:"));
-        functionInput = new JTextField("sin(x)", 15);
+        inputPanel.add(new JLabel("Functions (; between):"));
+        functionInput = new JTextField("sin(x)", 20);
         inputPanel.add(functionInput);
 
         inputPanel.add(new JLabel("Domain Start:"));
@@ -44,31 +115,33 @@ public class GraphingTool extends JFrame {
         plotButton.addActionListener(_ -> plotGraph());
         inputPanel.add(plotButton);
 
-        chartContainer = new JPanel(new BorderLayout());
-
-        setLayout(new BorderLayout());
-        add(inputPanel, BorderLayout.NORTH);
-        add(chartContainer, BorderLayout.CENTER);
-
-        setVisible(true);
-    }
-
-    private void plotGraph() {
-        String functionText = functionInput.getText();
-        double rangeStart = Double.parseDouble(rangeStartInput.getText());
-        double rangeEnd = Double.parseDouble(rangeEndInput.getText());
+        cancelButton.addActionListener(_ -> cancelPlot());
+        inputPanel.add(cancelButton);
+        inputPanel.add(progressBar);
+        inputPanel.add(statusLabel);
+        inputPanel.add(featureLabel);
+        showIdle();
 
-        XYSeries series = new XYSeries("Graph");
+        livePlotTimer.setRepeats(false);
+        DocumentListener edits = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                inputChanged();
+            }
 
-        Expression e = new ExpressionBuilder(functionText).variable("x").build();
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                inputChanged();
+            }
 
-        for (double x = rangeStart; x <= rangeEnd; x += 0.1) {
-            e.setVariable("x", x);
-            double y = e.evaluate();
-            series.add(x, y);
-        }
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        };
+        functionInput.getDocument().addDocumentListener(edits);
+        rangeStartInput.getDocument().addDocumentListener(edits);
+        rangeEndInput.getDocument().addDocumentListener(edits);
 
-        XYSeriesCollection dataset = new XYSeriesCollection(series);
         JFreeChart chart = ChartFactory.createXYLineChart(
             "Graph",
             "X-Axis",
@@ -81,15 +154,348 @@ public class GraphingTool extends JFrame {
         );
 
         XYPlot plot = chart.getXYPlot();
-        plot.setDomainAxis(new NumberAxis());
-        plot.setRangeAxis(new NumberAxis());
+        plot.setDomainAxis(domainAxis);
+        plot.setRangeAxis(rangeAxis);
+        domainAxis.addChangeListener(_ -> domainChanged());
+        rangeAxis.addChangeListener(_ -> rangeChanged());
+        if (EngineMetrics.ENABLED || Startup.isReporting()) {
+            chart.addProgressListener(this::renderProgress);
+        }
+        ((XYLineAndShapeRenderer) plot.getRenderer()).setDrawSeriesLineAsPath(true);
+        XYSeriesCollection features = new XYSeriesCollection();
+        features.addSeries(roots);
+        features.addSeries(minima);
+        features.addSeries(maxima);
+        plot.setDataset(1, features);
+        plot.setRenderer(1, new XYLineAndShapeRenderer(false, true));
 
         ChartPanel chartPanel = new ChartPanel(chart);
         chartPanel.setMouseWheelEnabled(true);
+        // One tooltip entity per sampled point costs more to build than the line costs to draw.
+        chartPanel.getChartRenderingInfo().setEntityCollection(null);
 
-        chartContainer.removeAll();
+        chartContainer = new JPanel(new BorderLayout());
         chartContainer.add(chartPanel, BorderLayout.CENTER);
-        chartContainer.revalidate();
+
+        setLayout(new BorderLayout());
+        add(inputPanel, BorderLayout.NORTH);
+        add(chartContainer, BorderLayout.CENTER);
+
+        workspace.addListener(workspaceListener);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                workspace.removeListener(workspaceListener);
+            }
+        });
+        setVisible(true);
+        plotGraph();
+    }
+
+    /**
+     * Loads and initializes what the first plot needs by drawing a chart offscreen and
+     * sampling a function, so that opening the graphing tool does not wait for it. Safe to
+     * call from any thread; creates no Swing components.
+     */
+    static void preload() {
+        PrimitiveXYDataset data = new PrimitiveXYDataset("Graph");
+        List<PlotFunction> compiled = PlotFunction.compileAll("sin(x); abs(x)");
+        OverlaySampler sampler = new OverlaySampler();
+        int curves = sampler.sample(compiled, -10, 10, MIN_PIXELS, MIN_PIXELS);
+        List<String> keys = new ArrayList<>();
+        double[][] xs = new double[curves][];
+        double[][] ys = new double[curves][];
+        int[] counts = new int[curves];
+        for (int i = 0; i < curves; i++) {
+            keys.add(compiled.get(i).text());
+            xs[i] = sampler.xs(i);
+            ys[i] = sampler.ys(i);
+            counts[i] = sampler.count(i);
+        }
+        data.setData(keys, xs, ys, counts);
+        FeatureFinder finder = compiled.getFirst().newFeatureFinder();
+        if (finder != null) {
+            finder.find(-10, 10, MIN_PIXELS);
+        }
+        JFreeChart chart = ChartFactory.createXYLineChart("Graph", "X-Axis", "Y-Axis", data,
+                PlotOrientation.VERTICAL, true, true, false);
+        ((XYLineAndShapeRenderer) chart.getXYPlot().getRenderer()).setDrawSeriesLineAsPath(true);
+        BufferedImage image = new BufferedImage(MIN_PIXELS, MIN_PIXELS, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            chart.draw(graphics, new Rectangle2D.Double(0, 0, MIN_PIXELS, MIN_PIXELS));
+        }
+        finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Called on every edit of the function or domain. Sampling for the previous text is
+     * stopped at once, and the plot is redrawn once typing pauses.
+     */
+    private void inputChanged() {
+        if (plotter.isBusy()) {
+            plotter.cancel();
+            plottedText = null;
+            showIdle();
+        }
+        livePlotTimer.restart();
+    }
+
+    /**
+     * Plots the typed function once typing pauses, unless it is empty or already plotted.
+     * Text that does not parse yet leaves the previous plot in place.
+     */
+    private void plotLive() {
+        if (functionInput.getText().isBlank()
+                || functionInput.getText().equals(plottedText)
+                && rangeStartInput.getText().equals(plottedStart)
+                && rangeEndInput.getText().equals(plottedEnd)) {
+            return;
+        }
+        plotGraph();
+    }
+
+    /**
+     * Plots the functions over the typed domain, overlaid on the one chart and reusing its
+     * dataset. The functions are compiled and sampled in the background; the chart
+     * changes only once the points are ready.
+     */
+    private void plotGraph() {
+        livePlotTimer.stop();
+        String text = functionInput.getText();
+        plottedText = text;
+        plottedStart = rangeStartInput.getText();
+        plottedEnd = rangeEndInput.getText();
+        double start;
+        double end;
+        try {
+            start = Double.parseDouble(rangeStartInput.getText());
+            end = Double.parseDouble(rangeEndInput.getText());
+        }
+        catch (NumberFormatException e) {
+            plotFailed(e);
+            return;
+        }
+        functions = () -> PlotFunction.compileAll(text, workspace);
+        Set<String> names = new HashSet<>();
+        for (String function : text.split(";")) {
+            names.addAll(workspace.names(function));
+        }
+        plottedNames = names;
+        fitRange = true;
+        resample(start, end, plot -> {
+            domainStart = plot.start();
+            domainEnd = plot.end();
+            domainAxis.setRange(domainStart, domainEnd);
+        });
+    }
+
+    /**
+     * Re-samples the visible window after a zoom. "Auto range" goes back to the typed
+     * domain rather than fitting the axis around data that was sampled for it.
+     */
+    private void domainChanged() {
+        if (functions == null) {
+            return;
+        }
+        if (domainAxis.isAutoRange()) {
+            domainAxis.setRange(domainStart, domainEnd);
+            return;
+        }
+        Range visible = domainAxis.getRange();
+        if (visible.getLowerBound() != requestedStart || visible.getUpperBound() != requestedEnd) {
+            scheduleResample();
+        }
+    }
+
+    /**
+     * Re-samples after a vertical zoom or pan, since curves sampled as off-screen were
+     * not refined. "Auto range" goes back to the range fitted around the curves.
+     */
+    private void rangeChanged() {
+        if (functions == null || fittingRange) {
+            return;
+        }
+        fitRange = rangeAxis.isAutoRange();
+        if (fitRange) {
+            showFittedRange();
+        }
+        scheduleResample();
+    }
+
+    /**
+     * Re-samples the visible window once the current event has been handled, so that a
+     * zoom changing both axes samples once, for both.
+     */
+    private void scheduleResample() {
+        if (resamplePending) {
+            return;
+        }
+        resamplePending = true;
+        SwingUtilities.invokeLater(() -> {
+            resamplePending = false;
+            Range visible = domainAxis.getRange();
+            resample(visible.getLowerBound(), visible.getUpperBound(), plot -> { });
+        });
+    }
+
+    /**
+     * Shows the y range fitted around the curves of the last plot, or JFreeChart's own
+     * if none could be fitted.
+     */
+    private void showFittedRange() {
+        fittingRange = true;
+        try {
+            if (Double.isNaN(fittedLow)) {
+                rangeAxis.setAutoRange(true);
+            }
+            else {
+                rangeAxis.setRange(fittedLow, fittedHigh);
+            }
+        }
+        finally {
+            fittingRange = false;
+        }
+    }
+
+    /**
+     * Re-samples the current window when a definition the plotted functions use changes.
+     */
+    private void workspaceChanged(Workspace.Change change) {
+        if (functions != null && change.affects(plottedNames)) {
+            resample(requestedStart, requestedEnd, plot -> { });
+        }
+    }
+
+    /**
+     * Samples the latest functions over a window in the background, at the resolution of
+     * the chart, replacing any sampling still in progress. All the functions share one
+     * sampling pass, which skips refining curves outside the visible y range, or outside
+     * the range fitted around them while the range is fitted. When the points are ready
+     * they are shown, then {@code andThen} runs on the Event Dispatch Thread.
+     */
+    private void resample(double start, double end, Consumer<Plot> andThen) {
+        Supplier<List<PlotFunction>> compiler = functions;
+        requestedStart = start;
+        requestedEnd = end;
+        double low = fitRange ? Double.NaN : rangeAxis.getLowerBound();
+        double high = fitRange ? Double.NaN : rangeAxis.getUpperBound();
+        int width = Math.max(MIN_PIXELS, chartContainer.getWidth());
+        int height = Math.max(MIN_PIXELS, chartContainer.getHeight());
+        showBusy();
+        plotter.submit(monitor -> {
+            long sampleStart = EngineMetrics.start();
+            List<PlotFunction> compiled = compiler.get();
+            OverlaySampler sampler = new OverlaySampler();
+            int curves;
+            try {
+                curves = sampler.sample(compiled, start, end, width, height, low, high, monitor);
+            }
+            catch (CancellationException e) {
+                throw e;
+            }
+            catch (RuntimeException e) {
+                EngineMetrics.failed(EngineMetrics.Stage.SAMPLE, sampleStart);
+                throw e;
+            }
+            EngineMetrics.record(EngineMetrics.Stage.SAMPLE, sampleStart);
+            // The sampler belongs to this run, so its buffers go to the dataset uncopied.
+            List<String> keys = new ArrayList<>();
+            double[][] xs = new double[curves][];
+            double[][] ys = new double[curves][];
+            int[] counts = new int[curves];
+            List<FeatureFinder.Feature> features = new ArrayList<>();
+            List<String> undefined = new ArrayList<>();
+            for (int i = 0; i < curves; i++) {
+                keys.add(compiled.get(i).text());
+                xs[i] = sampler.xs(i);
+                ys[i] = sampler.ys(i);
+                counts[i] = sampler.count(i);
+                FeatureFinder finder = compiled.get(i).newFeatureFinder();
+                if (finder != null) {
+                    features.addAll(finder.find(start, end, width));
+                }
+                if (sampler.isUndefinedSomewhere(i)) {
+                    undefined.add(compiled.get(i).text());
+                }
+            }
+            return new Plot(start, end, keys, xs, ys, counts, features, sampler.low(), sampler.high(), undefined);
+        }, plot -> {
+            dataset.setData(plot.keys(), plot.xs(), plot.ys(), plot.counts());
+            fittedLow = plot.low();
+            fittedHigh = plot.high();
+            if (fitRange) {
+                showFittedRange();
+            }
+            showFeatures(plot.features());
+            showIdle();
+            if (!plot.undefined().isEmpty()) {
+                statusLabel.setText(String.join(", ", plot.undefined()) + " undefined in parts of the window");
+            }
+            andThen.accept(plot);
+        });
+    }
+
+    /**
+     * Marks the roots and extrema on the chart and counts them next to the inputs.
+     */
+    private void showFeatures(List<FeatureFinder.Feature> features) {
+        roots.clear();
+        minima.clear();
+        maxima.clear();
+        for (FeatureFinder.Feature feature : features) {
+            XYSeries series = switch (feature.kind()) {
+                case ROOT -> roots;
+                case MINIMUM -> minima;
+                case MAXIMUM -> maxima;
+            };
+            series.add(feature.x(), feature.y(), false);
+        }
+        roots.fireSeriesChanged();
+        minima.fireSeriesChanged();
+        maxima.fireSeriesChanged();
+        featureLabel.setText(roots.getItemCount() + " roots, " + (minima.getItemCount() + maxima.getItemCount()) + " extrema");
+    }
+
+    /**
+     * Times each chart render, which JFreeChart brackets with progress events on the Event
+     * Dispatch Thread, and reports the first one with data to {@link Startup}.
+     */
+    private void renderProgress(ChartProgressEvent event) {
+        if (event.getType() == ChartProgressEvent.DRAWING_STARTED) {
+            renderStart = EngineMetrics.start();
+        }
+        else if (event.getType() == ChartProgressEvent.DRAWING_FINISHED) {
+            EngineMetrics.record(EngineMetrics.Stage.RENDER, renderStart);
+            if (dataset.getSeriesCount() > 0) {
+                Startup.plotShown();
+            }
+        }
+    }
+
+    private void cancelPlot() {
+        plotter.cancel();
+        plottedText = null;
+        showIdle();
+        statusLabel.setText("Cancelled");
+    }
+
+    private void plotFailed(Throwable error) {
+        showIdle();
+        statusLabel.setText("Error: " + error.getMessage());
+    }
+
+    private void showBusy() {
+        statusLabel.setText("");
+        progressBar.setVisible(true);
+        cancelButton.setEnabled(true);
+    }
+
+    private void showIdle() {
+        progressBar.setVisible(false);
+        cancelButton.setEnabled(false);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,20 @@
+/**
+ * One evaluated expression in the calculator history.
+ *
+ * @param expression Original expression
+ * @param postfix    Reverse Polish form of the expression
+ * @param result     Result of evaluating the expression
+ */
+public record HistoryEntry(String expression, String postfix, double result) {
+    /**
+     * @return the result without decimals when it is a whole number, otherwise with 8 decimals
+     */
+    public String formattedResult() {
+        return result % 1 == 0 ? String.format("%.0f", result) : String.format("%.8f", result);
+    }
+
+    @Override
+    public String toString() {
+        return "Expression: " + expression + ", Result: " + formattedResult();
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Receives each change to a {@link HistoryStore} as it happens, so views can apply the
+ * change instead of reloading the whole history. Listeners are called on the thread that
+ * added the entry.
+ */
+@FunctionalInterface
+public interface HistoryListener {
+    /**
+     * Called after an entry is added.
+     *
+     * @param added   the new entry
+     * @param evicted the oldest entry, dropped to make room, or null if nothing was dropped
+     */
+    void entryAdded(HistoryEntry added, HistoryEntry evicted);
+}
@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The HistoryLog class is an append-only binary file of history entries, written through a
+ * memory-mapped region so that an append is a few buffer writes rather than a system call.
+ * Each record is a length followed by the expression, the postfix form and the result, and
+ * is followed by a zero length that marks the end of the log. The record and the zero after
+ * it are written before the record's length, so a record cut short by a crash still reads
+ * as the end of the log, even if it landed on the bytes of an older one. Opening the log
+ * checks each record's layout and scans the file a chunk at a time, so logs past 2 GB open
+ * too. Entries are read back in binary form, without parsing any text.
+ */
+public final class HistoryLog implements Closeable {
+    private static final int MAGIC = 0x43484C31;
+    private static final int HEADER_SIZE = 8;
+    private static final int REGION_SIZE = 1 << 20;
+    private static final int SCAN_SIZE = 1 << 26;
+    private static final int MIN_LENGTH = Integer.BYTES + Integer.BYTES + Double.BYTES;
+
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int recordCount;
+    private final long end;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    private HistoryLog(FileChannel channel, long[] offsets, int recordCount, long position) throws IOException {
+        this.channel = channel;
+        this.offsets = offsets;
+        this.recordCount = recordCount;
+        this.end = position;
+        this.position = position;
+        map(position, REGION_SIZE);
+        region.putInt(0, 0);
+    }
+
+    /**
+     * Reads ints from the log through a window mapped a chunk at a time, since a single
+     * mapping cannot pass 2 GB.
+     */
+    private static final class Scanner {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Scanner(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * @return the int at the offset, which must be at least four bytes before the end
+         */
+        int getInt(long offset) throws IOException {
+            if (window == null || offset < windowStart || offset + Integer.BYTES > windowStart + window.capacity()) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SCAN_SIZE, size - offset));
+                windowStart = offset;
+            }
+            return window.getInt((int) (offset - windowStart));
+        }
+
+        /**
+         * @return true if a whole record of the length starts at the offset, with string
+         *         lengths that add up to it
+         */
+        boolean isRecord(long offset, int length) throws IOException {
+            if (length < MIN_LENGTH || offset + Integer.BYTES + length > size) {
+                return false;
+            }
+            int expression = getInt(offset + Integer.BYTES);
+            if (expression < 0 || expression > length - MIN_LENGTH) {
+                return false;
+            }
+            return getInt(offset + 2 * Integer.BYTES + expression) == length - MIN_LENGTH - expression;
+        }
+    }
+
+    /**
+     * Opens a log, creating it if it does not exist, and finds the end of its records.
+     *
+     * @param path location of the log
+     * @return the opened log
+     * @throws IOException if the file cannot be opened or is not a history log
+     */
+    public static HistoryLog open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(0).flip();
+                channel.write(header, 0);
+                return new HistoryLog(channel, new long[0], 0, HEADER_SIZE);
+            }
+
+            Scanner scanner = new Scanner(channel, size);
+            if (size < HEADER_SIZE || scanner.getInt(0) != MAGIC) {
+                throw new IOException("Not a history log: " + path);
+            }
+            long[] offsets = new long[64];
+            int count = 0;
+            long offset = HEADER_SIZE;
+            while (offset + Integer.BYTES <= size) {
+                int length = scanner.getInt(offset);
+                if (!scanner.isRecord(offset, length)) {
+                    break;
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = offset;
+                offset += Integer.BYTES + length;
+            }
+            return new HistoryLog(channel, offsets, count, offset);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the newest entries that were in the log when it was opened.
+     *
+     * @param limit maximum number of entries to read
+     * @return the entries, oldest first
+     */
+    public List<HistoryEntry> readLast(int limit) {
+        int first = Math.max(0, recordCount - limit);
+        List<HistoryEntry> entries = new ArrayList<>(recordCount - first);
+        if (recordCount == 0) {
+            return entries;
+        }
+        try {
+            for (int i = first; i < recordCount; i++) {
+                long next = i + 1 < recordCount ? offsets[i + 1] : end;
+                ByteBuffer record = ByteBuffer.allocate((int) (next - offsets[i] - Integer.BYTES));
+                while (record.hasRemaining()) {
+                    if (channel.read(record, offsets[i] + Integer.BYTES + record.position()) < 0) {
+                        throw new IOException("History log ends inside a record");
+                    }
+                }
+                record.flip();
+                String expression = readString(record);
+                String postfix = readString(record);
+                entries.add(new HistoryEntry(expression, postfix, record.getDouble()));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends an entry to the end of the log.
+     */
+    public synchronized void append(HistoryEntry entry) {
+        byte[] expression = entry.expression().getBytes(StandardCharsets.UTF_8);
+        byte[] postfix = entry.postfix().getBytes(StandardCharsets.UTF_8);
+        int length = Integer.BYTES + expression.length + Integer.BYTES + postfix.length + Double.BYTES;
+        int recordSize = Integer.BYTES + length;
+        try {
+            if (position + recordSize + Integer.BYTES > regionStart + region.capacity()) {
+                map(position, Math.max(REGION_SIZE, recordSize + Integer.BYTES));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int offset = (int) (position - regionStart);
+        region.position(offset + Integer.BYTES);
+        region.putInt(expression.length).put(expression);
+        region.putInt(postfix.length).put(postfix);
+        region.putDouble(entry.result());
+        region.putInt(0);
+        region.putInt(offset, length);
+        position += recordSize;
+    }
+
+    private void map(long start, int size) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        regionStart = start;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        region.force();
+        channel.close();
+    }
+}
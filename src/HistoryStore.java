@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The HistoryStore class keeps the most recent history entries in a fixed-size ring buffer.
+ * Writers claim a sequence number with a single atomic increment and publish their entry to
+ * the slot for that number, so adding never blocks; once the buffer is full the oldest entry
+ * is overwritten. When a {@link HistoryLog} is attached, every entry is also appended to it
+ * and the log's newest entries are loaded back when the store is created. Registered
+ * {@link HistoryListener}s are told about each added and evicted entry.
+ */
+public final class HistoryStore {
+    /**
+     * Default number of entries kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final HistoryLog log;
+    private final List<HistoryListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * An entry tagged with the sequence number it was written under, so readers can tell
+     * it apart from an older or newer entry in the same slot.
+     */
+    private record Slot(long sequence, HistoryEntry entry) {
+    }
+
+    /**
+     * @param capacity maximum number of entries kept
+     */
+    public HistoryStore(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity maximum number of entries kept
+     * @param log      log to persist entries to and reload them from, or null
+     */
+    public HistoryStore(int capacity, HistoryLog log) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        if (log != null) {
+            for (HistoryEntry entry : log.readLast(capacity)) {
+                publish(entry);
+            }
+        }
+        this.log = log;
+    }
+
+    /**
+     * Creates the store configured by the {@code calculator.history.capacity} and
+     * {@code calculator.history.file} system properties. History is only persisted
+     * when a file is given.
+     *
+     * @return the configured store
+     */
+    public static HistoryStore fromSystemProperties() {
+        int capacity = Integer.getInteger("calculator.history.capacity", DEFAULT_CAPACITY);
+        String file = System.getProperty("calculator.history.file");
+        if (file == null || file.isEmpty()) {
+            return new HistoryStore(capacity);
+        }
+        try {
+            return new HistoryStore(capacity, HistoryLog.open(Path.of(file)));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Unable to open history file " + file, e);
+        }
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest one if the store is full.
+     */
+    public void add(HistoryEntry entry) {
+        HistoryEntry evicted = publish(entry);
+        if (log != null) {
+            log.append(entry);
+        }
+        for (HistoryListener listener : listeners) {
+            listener.entryAdded(entry, evicted);
+        }
+    }
+
+    /**
+     * @return the entry that was overwritten, or null if the slot was empty
+     */
+    private HistoryEntry publish(HistoryEntry entry) {
+        long sequence = nextSequence.getAndIncrement();
+        Slot previous = slots.getAndSet((int) (sequence % slots.length()), new Slot(sequence, entry));
+        return previous == null ? null : previous.entry();
+    }
+
+    /**
+     * Registers a listener for entries added from now on.
+     */
+    public void addListener(HistoryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     */
+    public void removeListener(HistoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Copies the entries currently held, oldest first. Entries still being written by
+     * another thread are left out.
+     *
+     * @return the entries
+     */
+    public List<HistoryEntry> snapshot() {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - slots.length());
+        List<HistoryEntry> entries = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot slot = slots.get((int) (sequence % slots.length()));
+            if (slot != null && slot.sequence() == sequence) {
+                entries.add(slot.entry());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return maximum number of entries kept
+     */
+    public int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * Interval arithmetic on the operand stacks of {@link CompiledExpression#evaluateInterval}.
+ * Each operand is an interval held in two parallel arrays of lower and upper bounds; a
+ * binary operation combines the intervals at {@code i} and {@code i + 1} into {@code i}, a
+ * function replaces the interval at {@code i}. Results are rounded outwards by one ulp, the
+ * most the JDK's operations and functions may be off by, so the exact value for any point
+ * of the operands lies within the result.
+ * <p>
+ * Where a result may be infinitely large, as for a division by an interval holding zero,
+ * the bound is infinite. The parts of an operand outside a function's domain, such as the
+ * negative part for {@code sqrt}, are left out; an operand entirely outside gives the empty
+ * interval, with NaN bounds, which every later operation passes on but a power that may be
+ * to the zeroth, as NaN^0 is 1. Factorials and ψ are computed by approximations less exact
+ * than an ulp, so their bounds are widened by a relative {@value #APPROXIMATION_ERROR}.
+ * <p>
+ * A bound of zero that was not rounded, as that of a constant, a square or a variable's
+ * range, keeps its sign: a lower bound of +0 means the operand is never -0, and an upper
+ * bound of -0 that it is never +0. Dividing by zero gives an infinity of the zero's sign,
+ * so this is what bounds a reciprocal on one side only.
+ */
+final class IntervalArithmetic {
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2;
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+    private static final double APPROXIMATION_ERROR = 1e-9;
+    /**
+     * Where x! is lowest for x >= 0, and a value just below that lowest value.
+     */
+    private static final double FACTORIAL_MINIMUM_AT = 0.46163214496836234;
+    private static final double FACTORIAL_MINIMUM = 0.8856031944108;
+
+    private IntervalArithmetic() {
+    }
+
+    /**
+     * Applies a binary opcode to the intervals at i and i + 1, leaving the result at i.
+     */
+    static void applyOperator(int opcode, double[] lows, double[] highs, int i) {
+        if (opcode == CompiledExpression.POWER && Double.isNaN(lows[i]) && lows[i + 1] <= 0 && highs[i + 1] >= 0) {
+            // x^0 is 1 even where x is undefined.
+            lows[i] = 1;
+            highs[i] = 1;
+            return;
+        }
+        if (Double.isNaN(lows[i]) || Double.isNaN(lows[i + 1])) {
+            setEmpty(lows, highs, i);
+            return;
+        }
+        switch (opcode) {
+            case CompiledExpression.ADD -> set(lows, highs, i, lows[i] + lows[i + 1], highs[i] + highs[i + 1]);
+            case CompiledExpression.SUBTRACT -> set(lows, highs, i, lows[i] - highs[i + 1], highs[i] - lows[i + 1]);
+            case CompiledExpression.MULTIPLY -> multiply(lows, highs, i);
+            case CompiledExpression.DIVIDE -> divide(lows, highs, i);
+            case CompiledExpression.POWER -> power(lows, highs, i);
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Applies a unary opcode to the interval at i.
+     */
+    static void applyFunction(int opcode, double[] lows, double[] highs, int i) {
+        double low = lows[i];
+        double high = highs[i];
+        if (Double.isNaN(low)) {
+            return;
+        }
+        switch (opcode) {
+            case CompiledExpression.SIN -> periodic(lows, highs, i, Math.sin(low), Math.sin(high), HALF_PI, -HALF_PI);
+            case CompiledExpression.COS -> periodic(lows, highs, i, Math.cos(low), Math.cos(high), 0, Math.PI);
+            case CompiledExpression.TAN -> {
+                if (high - low >= Math.PI || contains(low, high, HALF_PI, Math.PI)) {
+                    set(lows, highs, i, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                }
+                else {
+                    set(lows, highs, i, Math.tan(low), Math.tan(high));
+                }
+            }
+            case CompiledExpression.LOG -> {
+                if (high < 0) {
+                    setEmpty(lows, highs, i);
+                }
+                else {
+                    set(lows, highs, i, Math.log10(Math.max(low, 0)), Math.log10(high));
+                }
+            }
+            case CompiledExpression.LN -> {
+                if (high < 0) {
+                    setEmpty(lows, highs, i);
+                }
+                else {
+                    set(lows, highs, i, Math.log(Math.max(low, 0)), Math.log(high));
+                }
+            }
+            case CompiledExpression.SQRT -> {
+                if (high < 0) {
+                    setEmpty(lows, highs, i);
+                }
+                else {
+                    set(lows, highs, i, Math.sqrt(Math.max(low, 0)), Math.sqrt(high));
+                    // The square root of -0 is -0.
+                    lows[i] = Math.max(lows[i], low < 0 || isNegativeZero(low) ? -0.0 : 0.0);
+                }
+            }
+            case CompiledExpression.FACTORIAL -> factorial(lows, highs, i);
+            case CompiledExpression.DIGAMMA -> {
+                if (low > 0) {
+                    setApproximate(lows, highs, i, Factorials.digamma(low), Factorials.digamma(high));
+                }
+                else {
+                    set(lows, highs, i, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                }
+            }
+            case CompiledExpression.NEGATE -> {
+                lows[i] = -high;
+                highs[i] = -low;
+            }
+            case CompiledExpression.TO_RADIANS -> set(lows, highs, i, low * DEGREES_TO_RADIANS, high * DEGREES_TO_RADIANS);
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    private static void multiply(double[] lows, double[] highs, int i) {
+        double a = lows[i];
+        double b = highs[i];
+        double c = lows[i + 1];
+        double d = highs[i + 1];
+        double ac = times(a, c);
+        double ad = times(a, d);
+        double bc = times(b, c);
+        double bd = times(b, d);
+        set(lows, highs, i, Math.min(Math.min(ac, ad), Math.min(bc, bd)), Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+    }
+
+    /**
+     * @return the product, taking zero times infinity as zero, since an infinite bound
+     *         stands for values that are large but finite
+     */
+    private static double times(double x, double y) {
+        return x == 0 || y == 0 ? 0 : x * y;
+    }
+
+    private static void divide(double[] lows, double[] highs, int i) {
+        double c = lows[i + 1];
+        double d = highs[i + 1];
+        if (c > 0 || d < 0) {
+            double a = lows[i];
+            double b = highs[i];
+            double ac = a / c;
+            double ad = a / d;
+            double bc = b / c;
+            double bd = b / d;
+            set(lows, highs, i, Math.min(Math.min(ac, ad), Math.min(bc, bd)), Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+        }
+        else if (c == 0 && d == 0) {
+            // Zero divides into an infinity of either sign, or NaN.
+            set(lows, highs, i, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        else {
+            // The reciprocal of a divisor that reaches zero from one side is unbounded on
+            // that side; one that crosses zero, even only by holding -0 or +0 at the wrong
+            // end, is unbounded on both.
+            lows[i + 1] = c == 0 && !isNegativeZero(c) ? Math.nextDown(1 / d) : Double.NEGATIVE_INFINITY;
+            highs[i + 1] = d == 0 && isNegativeZero(d) ? Math.nextUp(1 / c) : Double.POSITIVE_INFINITY;
+            multiply(lows, highs, i);
+        }
+    }
+
+    private static void power(double[] lows, double[] highs, int i) {
+        double a = lows[i];
+        double b = highs[i];
+        double c = lows[i + 1];
+        double d = highs[i + 1];
+        if (c == d && c == Math.rint(c) && Math.abs(c) <= Integer.MAX_VALUE) {
+            integerPower(lows, highs, i, c);
+            return;
+        }
+        if (b < 0 && c == d) {
+            // A negative base only has real powers for integer exponents, but Math.pow
+            // takes -Infinity to any other power as if it were +Infinity.
+            if (a == Double.NEGATIVE_INFINITY) {
+                double p = Math.pow(Double.POSITIVE_INFINITY, c);
+                set(lows, highs, i, p, p);
+            }
+            else {
+                setEmpty(lows, highs, i);
+            }
+            return;
+        }
+        // x^y is monotonic in x for a fixed y and in y for a fixed x >= 0, so over a box
+        // it is lowest and highest at corners. A negative base, -0 included, gives ±|x|^y.
+        boolean positive = a > 0 || a == 0 && !isNegativeZero(a);
+        double from = positive ? a : b >= 0 ? 0 : -b;
+        double to = positive ? b : Math.max(-a, b);
+        double p1 = Math.pow(from, c);
+        double p2 = Math.pow(from, d);
+        double p3 = Math.pow(to, c);
+        double p4 = Math.pow(to, d);
+        double low = Math.min(Math.min(p1, p2), Math.min(p3, p4));
+        double high = Math.max(Math.max(p1, p2), Math.max(p3, p4));
+        if (Double.isNaN(low) || Double.isNaN(high)) {
+            low = 0;
+            high = Double.POSITIVE_INFINITY;
+        }
+        set(lows, highs, i, positive ? low : -high, high);
+    }
+
+    private static void integerPower(double[] lows, double[] highs, int i, double n) {
+        double a = lows[i];
+        double b = highs[i];
+        if (n == 0) {
+            lows[i] = 1;
+            highs[i] = 1;
+            return;
+        }
+        double m = Math.abs(n);
+        boolean even = m % 2 == 0;
+        if (!even || a >= 0) {
+            set(lows, highs, i, Math.pow(a, m), Math.pow(b, m));
+        }
+        else if (b <= 0) {
+            set(lows, highs, i, Math.pow(b, m), Math.pow(a, m));
+        }
+        else {
+            set(lows, highs, i, 0, Math.max(Math.pow(a, m), Math.pow(b, m)));
+            lows[i] = 0;
+        }
+        if (n < 0) {
+            lows[i + 1] = lows[i];
+            highs[i + 1] = highs[i];
+            lows[i] = 1;
+            highs[i] = 1;
+            divide(lows, highs, i);
+        }
+    }
+
+    /**
+     * Bounds sin or cos given their values at the ends: the result reaches 1 or -1 if a
+     * crest or trough lies in between.
+     *
+     * @param crest  where the function is 1, modulo 2π
+     * @param trough where the function is -1, modulo 2π
+     */
+    private static void periodic(double[] lows, double[] highs, int i, double atLow, double atHigh,
+                                 double crest, double trough) {
+        double low = lows[i];
+        double high = highs[i];
+        if (!(high - low < TWO_PI)) {
+            lows[i] = -1;
+            highs[i] = 1;
+            return;
+        }
+        set(lows, highs, i, Math.min(atLow, atHigh), Math.max(atLow, atHigh));
+        lows[i] = contains(low, high, trough, TWO_PI) ? -1 : Math.max(lows[i], -1);
+        highs[i] = contains(low, high, crest, TWO_PI) ? 1 : Math.min(highs[i], 1);
+    }
+
+    /**
+     * @return true if {@code phase + k * period} lies in [low, high] for some integer k,
+     *         or close enough that rounding in the reduction by π could hide it
+     */
+    private static boolean contains(double low, double high, double phase, double period) {
+        double margin = 2 * Math.ulp(Math.max(Math.abs(low), Math.abs(high))) + 1e-15;
+        double k = Math.floor((low - phase) / period);
+        for (int j = -1; j <= 2; j++) {
+            double at = phase + (k + j) * period;
+            if (at >= low - margin && at <= high + margin) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bounds x! = Γ(x + 1), which above -1 falls to its lowest point and then rises.
+     * Between consecutive poles at the negative integers it keeps one sign, and its
+     * magnitude is log-convex, so it is largest at an end.
+     */
+    private static void factorial(double[] lows, double[] highs, int i) {
+        double low = lows[i];
+        double high = highs[i];
+        if (low <= -1) {
+            if (Math.floor(low) != Math.floor(high) || low == Math.floor(low)) {
+                set(lows, highs, i, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                return;
+            }
+            double atLow = Factorials.factorial(low);
+            double largest = Math.max(Math.abs(atLow), Math.abs(Factorials.factorial(high)));
+            if (atLow > 0) {
+                setApproximate(lows, highs, i, 0, largest);
+            }
+            else {
+                setApproximate(lows, highs, i, -largest, 0);
+            }
+            return;
+        }
+        double atLow = Factorials.factorial(low);
+        double atHigh = Factorials.factorial(high);
+        if (high <= FACTORIAL_MINIMUM_AT) {
+            setApproximate(lows, highs, i, atHigh, atLow);
+        }
+        else if (low >= FACTORIAL_MINIMUM_AT) {
+            setApproximate(lows, highs, i, atLow, atHigh);
+        }
+        else {
+            setApproximate(lows, highs, i, FACTORIAL_MINIMUM, Math.max(atLow, atHigh));
+        }
+    }
+
+    /**
+     * Sets the interval at i, rounding outwards. A bound that is NaN, as from infinity
+     * minus infinity, becomes infinite.
+     */
+    private static void set(double[] lows, double[] highs, int i, double low, double high) {
+        lows[i] = Double.isNaN(low) ? Double.NEGATIVE_INFINITY : Math.nextDown(low);
+        highs[i] = Double.isNaN(high) ? Double.POSITIVE_INFINITY : Math.nextUp(high);
+    }
+
+    private static void setApproximate(double[] lows, double[] highs, int i, double low, double high) {
+        set(lows, highs, i, low - Math.abs(low) * APPROXIMATION_ERROR, high + Math.abs(high) * APPROXIMATION_ERROR);
+    }
+
+    private static boolean isNegativeZero(double x) {
+        return Double.doubleToRawLongBits(x) == Long.MIN_VALUE;
+    }
+
+    private static void setEmpty(double[] lows, double[] highs, int i) {
+        lows[i] = Double.NaN;
+        highs[i] = Double.NaN;
+    }
+}
@@ -0,0 +1,416 @@
+import java.util.Arrays;
+
+/**
+ * The Lexer class scans an expression in a single pass and writes primitive token codes,
+ * source spans and number values into buffers that are reused between calls. Parentheses
+ * are checked with a depth counter and operators with an operand/operator state, so a
+ * lexer can validate input without allocating. A name directly followed by an opening
+ * parenthesis that is not a built-in function is a CALL of a user-defined function, whose
+ * arguments are separated by commas. A Lexer is not thread-safe.
+ */
+public final class Lexer {
+    public static final int NUMBER = 0;
+    public static final int NAME = 1;
+    public static final int FUNCTION = 2;
+    public static final int PLUS = 3;
+    public static final int MINUS = 4;
+    public static final int MULTIPLY = 5;
+    public static final int DIVIDE = 6;
+    public static final int POWER = 7;
+    public static final int NEGATE = 8;
+    public static final int FACTORIAL = 9;
+    public static final int LEFT_PARENTHESIS = 10;
+    public static final int RIGHT_PARENTHESIS = 11;
+    public static final int CALL = 12;
+    public static final int COMMA = 13;
+
+    private static final String IMPROPER_FORMAT = "Error: Improper expression format.";
+    private static final String UNSUPPORTED_CHARACTER = "Unsupported character: ";
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence input;
+    private int[] types = new int[32];
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private double[] values = new double[32];
+    private int count;
+    private String error;
+    private int errorPosition;
+
+    /**
+     * Tokenizes the input, replacing the tokens of any previous call.
+     *
+     * @param input expression to scan
+     * @return number of tokens
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public int tokenize(CharSequence input) {
+        if (!scan(input)) {
+            if (error == UNSUPPORTED_CHARACTER) {
+                throw new IllegalArgumentException(error + input.charAt(errorPosition));
+            }
+            throw new IllegalArgumentException(error);
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether the input is a well formed expression without throwing or allocating.
+     *
+     * @param input expression to scan
+     * @return true if valid, false otherwise
+     */
+    public boolean isValid(CharSequence input) {
+        return scan(input);
+    }
+
+    /**
+     * Parses a region of the input that holds exactly one number, such as a field of a
+     * CSV line. The number may be signed and surrounded by whitespace; it is converted
+     * the same way as numbers in expressions, without allocating. The tokens of any
+     * previous call are replaced.
+     *
+     * @param input text holding the number
+     * @param start offset of the region
+     * @param end   offset after the region
+     * @return value of the number
+     * @throws NumberFormatException if the region is not a single number
+     */
+    public double parseNumber(CharSequence input, int start, int end) {
+        while (start < end && Character.isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(input.charAt(end - 1))) {
+            end--;
+        }
+        boolean negative = start < end && input.charAt(start) == '-';
+        int from = negative || (start < end && input.charAt(start) == '+') ? start + 1 : start;
+
+        this.input = input;
+        count = 0;
+        error = null;
+        boolean number = from < end && (isDigit(input.charAt(from))
+                || (input.charAt(from) == '.' && from + 1 < end && isDigit(input.charAt(from + 1))));
+        if (!number || scanNumber(input, from, end) != end) {
+            throw new NumberFormatException("Not a number: " + input.subSequence(start, end));
+        }
+        return negative ? -values[0] : values[0];
+    }
+
+    /**
+     * @return position in the input of the last error found, or -1 if the last scan succeeded
+     */
+    public int errorPosition() {
+        return error == null ? -1 : errorPosition;
+    }
+
+    /**
+     * @return number of tokens from the last scan
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return token code of the i-th token
+     */
+    public int type(int i) {
+        return types[i];
+    }
+
+    /**
+     * @return start offset of the i-th token in the input
+     */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @return end offset (exclusive) of the i-th token in the input
+     */
+    public int end(int i) {
+        return ends[i];
+    }
+
+    /**
+     * @return value of a NUMBER token, or the opcode of a FUNCTION token
+     */
+    public double value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @return the text of the i-th token
+     */
+    public String text(int i) {
+        return input.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /**
+     * Compares the text of a token to a name without allocating.
+     *
+     * @return true if the token spells the name
+     */
+    public boolean textEquals(int i, String name) {
+        return regionEquals(input, starts[i], ends[i], name);
+    }
+
+    private static boolean regionEquals(CharSequence input, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int k = 0; k < name.length(); k++) {
+            if (input.charAt(start + k) != name.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the whole input, stopping at the first error.
+     *
+     * @return true if the input is well formed
+     */
+    private boolean scan(CharSequence input) {
+        this.input = input;
+        count = 0;
+        error = null;
+        int depth = 0;
+        boolean expectOperand = true;
+        int length = input.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = input.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(input.charAt(i + 1)))) {
+                if (!expectOperand) {
+                    return fail(IMPROPER_FORMAT, i);
+                }
+                int end = scanNumber(input, i, length);
+                if (end < 0) {
+                    return fail(IMPROPER_FORMAT, i);
+                }
+                i = end;
+                expectOperand = false;
+                continue;
+            }
+
+            if (Character.isLetter(c)) {
+                if (!expectOperand) {
+                    return fail(IMPROPER_FORMAT, i);
+                }
+                int start = i;
+                while (i < length && Character.isLetter(input.charAt(i))) {
+                    i++;
+                }
+                int function = function(input, start, i);
+                if (function >= 0) {
+                    add(FUNCTION, start, i, function);
+                }
+                else if (nextIsLeftParenthesis(input, i)) {
+                    add(CALL, start, i, 0);
+                }
+                else {
+                    add(NAME, start, i, 0);
+                    expectOperand = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '(' -> {
+                    if (!expectOperand) {
+                        return fail(IMPROPER_FORMAT, i);
+                    }
+                    depth++;
+                    add(LEFT_PARENTHESIS, i, i + 1, 0);
+                }
+                case ')' -> {
+                    if (expectOperand || --depth < 0) {
+                        return fail(IMPROPER_FORMAT, i);
+                    }
+                    add(RIGHT_PARENTHESIS, i, i + 1, 0);
+                }
+                case ',' -> {
+                    if (expectOperand || depth == 0) {
+                        return fail(IMPROPER_FORMAT, i);
+                    }
+                    add(COMMA, i, i + 1, 0);
+                    expectOperand = true;
+                }
+                case '!' -> {
+                    if (expectOperand) {
+                        return fail(IMPROPER_FORMAT, i);
+                    }
+                    add(FACTORIAL, i, i + 1, 0);
+                }
+                case '-' -> {
+                    add(expectOperand ? NEGATE : MINUS, i, i + 1, 0);
+                    expectOperand = true;
+                }
+                case '+' -> {
+                    if (!expectOperand) {
+                        add(PLUS, i, i + 1, 0);
+                        expectOperand = true;
+                    }
+                }
+                case '*', '/', '^' -> {
+                    if (expectOperand) {
+                        return fail(IMPROPER_FORMAT, i);
+                    }
+                    add(c == '*' ? MULTIPLY : c == '/' ? DIVIDE : POWER, i, i + 1, 0);
+                    expectOperand = true;
+                }
+                default -> {
+                    return fail(UNSUPPORTED_CHARACTER, i);
+                }
+            }
+            i++;
+        }
+
+        if (expectOperand || depth != 0) {
+            return fail(IMPROPER_FORMAT, length);
+        }
+        return true;
+    }
+
+    private boolean fail(String message, int position) {
+        error = message;
+        errorPosition = position;
+        return false;
+    }
+
+    /**
+     * @return true if the next character after {@code i} that is not whitespace is '('
+     */
+    private static boolean nextIsLeftParenthesis(CharSequence input, int i) {
+        while (i < input.length() && Character.isWhitespace(input.charAt(i))) {
+            i++;
+        }
+        return i < input.length() && input.charAt(i) == '(';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Scans a decimal number with optional fraction and exponent and records it as a token.
+     * Numbers with at most 15 significant digits and a small exponent are converted exactly
+     * without allocating; anything longer falls back to {@link Double#parseDouble}.
+     *
+     * @return offset after the number, or -1 if the exponent has no digits
+     */
+    private int scanNumber(CharSequence input, int start, int length) {
+        int i = start;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+
+        while (i < length && isDigit(input.charAt(i))) {
+            if (digits < 15) {
+                mantissa = mantissa * 10 + (input.charAt(i) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            }
+            else {
+                exact = false;
+            }
+            i++;
+        }
+        if (i < length && input.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(input.charAt(i))) {
+                if (digits < 15) {
+                    mantissa = mantissa * 10 + (input.charAt(i) - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale--;
+                }
+                else {
+                    exact = false;
+                }
+                i++;
+            }
+        }
+        if (i < length && (input.charAt(i) == 'e' || input.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean negative = false;
+            if (j < length && (input.charAt(j) == '+' || input.charAt(j) == '-')) {
+                negative = input.charAt(j) == '-';
+                j++;
+            }
+            if (j >= length || !isDigit(input.charAt(j))) {
+                return -1;
+            }
+            int exponent = 0;
+            while (j < length && isDigit(input.charAt(j))) {
+                exponent = Math.min(exponent * 10 + (input.charAt(j) - '0'), 100_000);
+                j++;
+            }
+            scale += negative ? -exponent : exponent;
+            i = j;
+        }
+
+        double value;
+        if (exact && scale >= -22 && scale <= 22) {
+            value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        }
+        else {
+            value = Double.parseDouble(input.subSequence(start, i).toString());
+        }
+        add(NUMBER, start, i, value);
+        return i;
+    }
+
+    /**
+     * Looks up a built-in function name in the input without allocating.
+     *
+     * @return the function opcode, or -1 if the name is not a built-in function
+     */
+    private static int function(CharSequence input, int start, int end) {
+        if (regionEquals(input, start, end, "sin")) {
+            return CompiledExpression.SIN;
+        }
+        if (regionEquals(input, start, end, "cos")) {
+            return CompiledExpression.COS;
+        }
+        if (regionEquals(input, start, end, "tan")) {
+            return CompiledExpression.TAN;
+        }
+        if (regionEquals(input, start, end, "log")) {
+            return CompiledExpression.LOG;
+        }
+        if (regionEquals(input, start, end, "sqrt")) {
+            return CompiledExpression.SQRT;
+        }
+        return -1;
+    }
+
+    private void add(int type, int start, int end, double value) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[count] = type;
+        starts[count] = start;
+        ends[count] = end;
+        values[count] = value;
+        count++;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The NodeInterner class gives every distinct subtree of the expression trees it sees one
+ * canonical node, so that equal subtrees become the same object and can be told apart by
+ * identity. Each canonical node gets a small id, and a node is looked up by its opcode or
+ * value and the ids of its children. Unlike hashing the records, which walks the whole
+ * subtree each time, interning a tree takes time linear in its size. Trees are walked with
+ * an explicit stack, so deep ones, such as a sum of thousands of terms, do not overflow
+ * the call stack.
+ */
+final class NodeInterner {
+    private static final int CONSTANT = -1;
+    private static final int VARIABLE = -2;
+
+    private final Map<Key, ExpressionNode> canonical = new HashMap<>();
+    private final Map<ExpressionNode, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * A node by its kind, which is the opcode of an operator or function, its value and
+     * the ids of its children, or -1 for children it does not have.
+     */
+    private record Key(int kind, long value, int left, int right) {
+    }
+
+    /**
+     * @return the canonical node equal to the tree
+     */
+    ExpressionNode intern(ExpressionNode root) {
+        Key key = key(root);
+        if (key != null) {
+            // A leaf, or a node whose children are canonical, as the optimizer builds them.
+            return canonical(key, root);
+        }
+        Map<ExpressionNode, ExpressionNode> interned = new IdentityHashMap<>();
+        Deque<ExpressionNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            ExpressionNode node = pending.peek();
+            if (interned.containsKey(node)) {
+                pending.pop();
+                continue;
+            }
+            if (ids.containsKey(node)) {
+                interned.put(node, node);
+                pending.pop();
+                continue;
+            }
+            ExpressionNode candidate = switch (node) {
+                case ExpressionNode.Unary unary -> {
+                    ExpressionNode operand = interned.get(unary.operand());
+                    if (operand == null) {
+                        pending.push(unary.operand());
+                        yield null;
+                    }
+                    yield operand == unary.operand() ? unary : new ExpressionNode.Unary(unary.opcode(), operand);
+                }
+                case ExpressionNode.Binary binary -> {
+                    ExpressionNode left = interned.get(binary.left());
+                    ExpressionNode right = interned.get(binary.right());
+                    if (left == null || right == null) {
+                        if (right == null) {
+                            pending.push(binary.right());
+                        }
+                        if (left == null) {
+                            pending.push(binary.left());
+                        }
+                        yield null;
+                    }
+                    yield left == binary.left() && right == binary.right()
+                            ? binary : new ExpressionNode.Binary(binary.opcode(), left, right);
+                }
+                default -> node;
+            };
+            if (candidate != null) {
+                pending.pop();
+                interned.put(node, canonical(key(candidate), candidate));
+            }
+        }
+        return interned.get(root);
+    }
+
+    /**
+     * @return the key of a leaf or of a node whose children are canonical, otherwise null
+     */
+    private Key key(ExpressionNode node) {
+        return switch (node) {
+            case ExpressionNode.Constant constant -> new Key(CONSTANT, Double.doubleToLongBits(constant.value()), -1, -1);
+            case ExpressionNode.Variable variable -> new Key(VARIABLE, variable.index(), -1, -1);
+            case ExpressionNode.Unary unary -> {
+                Integer operand = ids.get(unary.operand());
+                yield operand == null ? null : new Key(unary.opcode(), 0, operand, -1);
+            }
+            case ExpressionNode.Binary binary -> {
+                Integer left = ids.get(binary.left());
+                Integer right = ids.get(binary.right());
+                yield left == null || right == null ? null : new Key(binary.opcode(), 0, left, right);
+            }
+        };
+    }
+
+    /**
+     * @return the canonical node of the key, which becomes the node if there is none yet
+     */
+    private ExpressionNode canonical(Key key, ExpressionNode node) {
+        ExpressionNode existing = canonical.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing;
+        }
+        ids.put(node, ids.size());
+        return node;
+    }
+}
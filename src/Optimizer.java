@@ -0,0 +1,194 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The Optimizer class rewrites a compiled expression into an equivalent, cheaper one. It
+ * works on the expression tree, bottom up:
+ * <ul>
+ *     <li>subtrees without variables are folded into a single constant;</li>
+ *     <li>identities that hold exactly in floating point are removed
+ *     ({@code x*1}, {@code x/1}, {@code x-0}, {@code x^1}, {@code --x});</li>
+ *     <li>integer powers from 2 to 8 become multiplications by squaring, and {@code x^0} becomes 1;</li>
+ *     <li>a degree to radian conversion of {@code c*x} is merged into the constant {@code c}.</li>
+ * </ul>
+ * Identical subtrees are then emitted once and reused through temporaries. Trees are walked
+ * with an explicit stack and results are interned by a {@link NodeInterner}, so the time
+ * taken grows linearly with the size of the expression, however deep it is.
+ */
+public final class Optimizer {
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+    private static final int MAX_EXPANDED_POWER = 8;
+
+    private final NodeInterner interner = new NodeInterner();
+
+    private Optimizer() {
+    }
+
+    /**
+     * @param program expression to optimize
+     * @return the optimized expression
+     */
+    public static CompiledExpression optimize(CompiledExpression program) {
+        return optimize(program.toTree(), program.variables());
+    }
+
+    /**
+     * @param tree      expression to optimize
+     * @param variables names of the variables the tree refers to
+     * @return the optimized expression
+     */
+    public static CompiledExpression optimize(ExpressionNode tree, String[] variables) {
+        return CompiledExpression.fromTree(new Optimizer().simplify(tree), variables);
+    }
+
+    /**
+     * Optimizes several expressions together into one program with a result per tree.
+     * The trees are simplified by the same optimizer, so a subtree that appears in more
+     * than one of them is computed once.
+     *
+     * @param trees     expressions to optimize
+     * @param variables names of the variables the trees refer to
+     * @return the fused program
+     */
+    public static CompiledExpression optimize(ExpressionNode[] trees, String[] variables) {
+        Optimizer optimizer = new Optimizer();
+        ExpressionNode[] simplified = new ExpressionNode[trees.length];
+        for (int i = 0; i < trees.length; i++) {
+            simplified[i] = optimizer.simplify(trees[i]);
+        }
+        return CompiledExpression.fromTrees(simplified, variables);
+    }
+
+    /**
+     * Simplifies a tree, bottom up. Results are interned, so equal subtrees become the same
+     * object.
+     *
+     * @return the simplified tree
+     */
+    ExpressionNode simplify(ExpressionNode root) {
+        Map<ExpressionNode, ExpressionNode> simplified = new IdentityHashMap<>();
+        Deque<ExpressionNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            ExpressionNode node = pending.peek();
+            if (simplified.containsKey(node)) {
+                pending.pop();
+                continue;
+            }
+            ExpressionNode result;
+            switch (node) {
+                case ExpressionNode.Constant constant -> result = constant;
+                case ExpressionNode.Variable variable -> result = variable;
+                case ExpressionNode.Unary unary -> {
+                    ExpressionNode operand = simplified.get(unary.operand());
+                    if (operand == null) {
+                        pending.push(unary.operand());
+                        continue;
+                    }
+                    result = simplifyUnary(unary.opcode(), operand);
+                }
+                case ExpressionNode.Binary binary -> {
+                    ExpressionNode left = simplified.get(binary.left());
+                    ExpressionNode right = simplified.get(binary.right());
+                    if (left == null || right == null) {
+                        if (right == null) {
+                            pending.push(binary.right());
+                        }
+                        if (left == null) {
+                            pending.push(binary.left());
+                        }
+                        continue;
+                    }
+                    result = simplifyBinary(binary.opcode(), left, right);
+                }
+            }
+            pending.pop();
+            simplified.put(node, interner.intern(result));
+        }
+        return simplified.get(root);
+    }
+
+    private ExpressionNode simplifyUnary(int opcode, ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Constant constant) {
+            return new ExpressionNode.Constant(CompiledExpression.applyFunction(opcode, constant.value()));
+        }
+        if (opcode == CompiledExpression.NEGATE && operand instanceof ExpressionNode.Unary inner
+                && inner.opcode() == CompiledExpression.NEGATE) {
+            return inner.operand();
+        }
+        if (opcode == CompiledExpression.TO_RADIANS && operand instanceof ExpressionNode.Binary product
+                && product.opcode() == CompiledExpression.MULTIPLY) {
+            if (product.left() instanceof ExpressionNode.Constant factor) {
+                return multiply(new ExpressionNode.Constant(factor.value() * DEGREES_TO_RADIANS), product.right());
+            }
+            if (product.right() instanceof ExpressionNode.Constant factor) {
+                return multiply(product.left(), new ExpressionNode.Constant(factor.value() * DEGREES_TO_RADIANS));
+            }
+        }
+        return new ExpressionNode.Unary(opcode, operand);
+    }
+
+    private ExpressionNode simplifyBinary(int opcode, ExpressionNode left, ExpressionNode right) {
+        if (left instanceof ExpressionNode.Constant a && right instanceof ExpressionNode.Constant b) {
+            return new ExpressionNode.Constant(CompiledExpression.applyOperator(opcode, a.value(), b.value()));
+        }
+        switch (opcode) {
+            case CompiledExpression.MULTIPLY -> {
+                if (ExpressionNode.isConstant(right, 1)) {
+                    return left;
+                }
+                if (ExpressionNode.isConstant(left, 1)) {
+                    return right;
+                }
+            }
+            case CompiledExpression.DIVIDE -> {
+                if (ExpressionNode.isConstant(right, 1)) {
+                    return left;
+                }
+            }
+            case CompiledExpression.SUBTRACT -> {
+                if (ExpressionNode.isConstant(right, 0)) {
+                    return left;
+                }
+            }
+            case CompiledExpression.POWER -> {
+                if (right instanceof ExpressionNode.Constant exponent) {
+                    double n = exponent.value();
+                    if (n == 0) {
+                        return new ExpressionNode.Constant(1);
+                    }
+                    if (n == 1) {
+                        return left;
+                    }
+                    if (n == Math.rint(n) && n > 1 && n <= MAX_EXPANDED_POWER) {
+                        return power(left, (int) n);
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+        return new ExpressionNode.Binary(opcode, left, right);
+    }
+
+    /**
+     * Expands {@code base^n} into multiplications by squaring. Squares reuse one interned
+     * node for both operands, so the emitted program computes each of them once.
+     */
+    private ExpressionNode power(ExpressionNode base, int n) {
+        if (n == 1) {
+            return base;
+        }
+        if (n % 2 == 0) {
+            ExpressionNode half = power(base, n / 2);
+            return multiply(half, half);
+        }
+        return multiply(power(base, n - 1), base);
+    }
+
+    private ExpressionNode multiply(ExpressionNode left, ExpressionNode right) {
+        return interner.intern(new ExpressionNode.Binary(CompiledExpression.MULTIPLY, left, right));
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The OverlaySampler class samples several functions over the same window for one chart.
+ * The grid pass is shared: the x column is computed once, and the functions the Calculator
+ * engine compiled are fused into a single program that evaluates all of them block by
+ * block, computing a subexpression common to several functions only once. Functions only
+ * exp4j can parse are sampled on the same grid one at a time. The grid includes the first
+ * midpoints adaptive refinement tests, so a smooth curve needs no further evaluations;
+ * refinement and decimation then run per function, as in {@link PlotSampler}, since each
+ * curve bends in its own places.
+ * <p>
+ * Each function the Calculator engine compiled is also bounded over the grid by interval
+ * arithmetic, which fits the y range to show around the curves, leaving out the spikes
+ * towards poles, and spares refinement wherever a curve is off-screen or jumps at a pole.
+ * <p>
+ * The grid, the fused program and the output buffers of every curve are kept between
+ * calls, so re-plotting the same functions after a zoom allocates almost nothing. A
+ * sampler must stay confined to one thread.
+ */
+public final class OverlaySampler {
+    /**
+     * Fused programs by the identity of their compiled functions rather than by their text,
+     * since text that uses workspace definitions compiles to a new function when those
+     * change. Hashing the trees instead would walk each of them on every lookup.
+     */
+    private static final ExpressionCache<List<PlotFunction>, CompiledExpression> FUSED =
+            new ExpressionCache<>(Integer.getInteger("graphing.overlay.cache.size", 32));
+
+    private static final String[] VARIABLES = {"x"};
+    /**
+     * Space left above and below the curves in a fitted range, as a fraction of their span.
+     */
+    private static final double FIT_MARGIN = 0.05;
+
+    private final List<Decimator> decimators = new ArrayList<>();
+    private double[] gridX = new double[0];
+    private double[][] gridY = new double[0][];
+    private boolean[] undefined = new boolean[0];
+    private boolean[] settled = new boolean[0];
+    private double[] breaks = new double[0];
+    private double fittedLow = Double.NaN;
+    private double fittedHigh = Double.NaN;
+    private int curves;
+
+    /**
+     * Samples the functions over a window, replacing the result of any previous call.
+     *
+     * @return number of curves, one per function
+     */
+    public int sample(List<PlotFunction> functions, double start, double end, int width, int height) {
+        return sample(functions, start, end, width, height, TaskMonitor.NONE);
+    }
+
+    /**
+     * Samples the functions over a window like {@link #sample(List, double, double, int, int)},
+     * checking for cancellation and reporting progress as it goes.
+     *
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int sample(List<PlotFunction> functions, double start, double end, int width, int height,
+                      TaskMonitor monitor) {
+        return sample(functions, start, end, width, height, Double.NaN, Double.NaN, monitor);
+    }
+
+    /**
+     * Samples the functions over a window of which the given y range is visible. Where
+     * {@link BoundsFinder bounds} show a curve to be above or below that range, or to jump
+     * across it at a pole, it is not refined; the poles are left as gaps. With NaN for the
+     * range, the range {@link #low()} to {@link #high()} fitted around the curves is used.
+     *
+     * @param low  bottom of the visible range, or NaN to fit it
+     * @param high top of the visible range, or NaN to fit it
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int sample(List<PlotFunction> functions, double start, double end, int width, int height,
+                      double low, double high, TaskMonitor monitor) {
+        // Twice the grid of a PlotSampler: the odd points are the midpoints refinement
+        // would otherwise evaluate one at a time, for every function.
+        int n = end > start ? 2 * width * PlotSampler.SAMPLES_PER_PIXEL + 1 : 0;
+        allocate(functions.size(), n);
+        BoundsFinder[] finders = new BoundsFinder[curves];
+        fittedLow = Double.NaN;
+        fittedHigh = Double.NaN;
+        if (n > 0) {
+            double step = (end - start) / (n - 1);
+            grid(functions, start, step);
+            fit(functions, finders, start, 2 * step, n);
+        }
+        if (Double.isNaN(low) || Double.isNaN(high)) {
+            low = fittedLow;
+            high = fittedHigh;
+        }
+        boolean visible = high > low;
+
+        monitor.checkCancelled();
+        monitor.progress(10);
+
+        for (int i = 0; i < curves; i++) {
+            TaskMonitor range = monitor.range(10 + 85 * i / curves, 10 + 85 * (i + 1) / curves);
+            AdaptiveSampler sampler = new AdaptiveSampler(functions.get(i).newEvaluator(),
+                    PlotSampler.MAX_REFINEMENT_DEPTH, width * PlotSampler.MAX_POINTS_PER_PIXEL);
+            double tolerance = visible ? 0.5 * (high - low) / height : AdaptiveSampler.halfPixel(gridY[i], n, height);
+            int sampled;
+            if (visible && finders[i] != null) {
+                finders[i].settle(low, high, settled, breaks);
+                sampled = sampler.refineSampledMidpoints(gridX, gridY[i], n, tolerance, settled, breaks, range);
+            }
+            else {
+                sampled = sampler.refineSampledMidpoints(gridX, gridY[i], n, tolerance, range);
+            }
+            decimators.get(i).minMax(sampler.xs(), sampler.ys(), sampled, start, end, width);
+        }
+        monitor.progress(100);
+        return curves;
+    }
+
+    /**
+     * Bounds each function the Calculator engine compiled over the coarse intervals of
+     * the grid, and fits a y range with a margin around the values of all the curves on
+     * the grid, leaving out those next to a singularity the bounds found unless nothing
+     * else is left.
+     */
+    private void fit(List<PlotFunction> functions, BoundsFinder[] finders, double start, double coarseStep, int n) {
+        int intervals = (n - 1) / 2;
+        if (settled.length < intervals) {
+            settled = new boolean[intervals];
+            breaks = new double[intervals];
+        }
+        for (int i = 0; i < curves; i++) {
+            finders[i] = functions.get(i).newBoundsFinder();
+            undefined[i] = false;
+            if (finders[i] != null) {
+                finders[i].bound(start, coarseStep, intervals);
+                undefined[i] = finders[i].isUndefinedSomewhere();
+            }
+        }
+        double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        include(range, finders, n, true);
+        if (!(range[0] <= range[1])) {
+            include(range, finders, n, false);
+        }
+        double low = range[0];
+        double high = range[1];
+        if (low <= high) {
+            double margin = high > low ? (high - low) * FIT_MARGIN : Math.max(1, Math.abs(low)) / 2;
+            fittedLow = low - margin;
+            fittedHigh = high + margin;
+        }
+    }
+
+    private void include(double[] range, BoundsFinder[] finders, int n, boolean skipNear) {
+        int last = (n - 1) / 2 - 1;
+        for (int i = 0; i < curves; i++) {
+            double[] ys = gridY[i];
+            for (int j = 0; j < n; j++) {
+                if (Double.isFinite(ys[j])
+                        && !(skipNear && finders[i] != null && finders[i].isNearSingularity(Math.min(j / 2, last)))) {
+                    range[0] = Math.min(range[0], ys[j]);
+                    range[1] = Math.max(range[1], ys[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sizes the grid and the per-curve buffers, keeping those that fit.
+     */
+    private void allocate(int functions, int n) {
+        curves = functions;
+        if (gridX.length != n) {
+            gridX = new double[n];
+            gridY = new double[0][];
+        }
+        if (gridY.length < functions) {
+            double[][] grown = new double[functions][];
+            System.arraycopy(gridY, 0, grown, 0, gridY.length);
+            for (int i = gridY.length; i < functions; i++) {
+                grown[i] = new double[n];
+            }
+            gridY = grown;
+        }
+        if (undefined.length < functions) {
+            undefined = new boolean[functions];
+        }
+        while (decimators.size() < functions) {
+            decimators.add(new Decimator());
+        }
+    }
+
+    /**
+     * Evaluates every function on the shared grid: the fused program first, then the
+     * exp4j functions, which rewrite the same x values.
+     */
+    private void grid(List<PlotFunction> functions, double start, double step) {
+        List<PlotFunction> fusedFunctions = new ArrayList<>();
+        List<double[]> fusedColumns = new ArrayList<>();
+        for (int i = 0; i < curves; i++) {
+            PlotFunction function = functions.get(i);
+            if (function.tree() != null) {
+                fusedFunctions.add(function);
+                fusedColumns.add(gridY[i]);
+            }
+        }
+        if (!fusedFunctions.isEmpty()) {
+            CompiledExpression fused = FUSED.get(List.copyOf(fusedFunctions), OverlaySampler::fuse);
+            DomainSampler.sample(fused, start, step, gridX, fusedColumns.toArray(new double[0][]));
+        }
+        for (int i = 0; i < curves; i++) {
+            PlotFunction function = functions.get(i);
+            if (function.tree() == null) {
+                DomainSampler.sample(function::newEvaluator, start, step, gridX, gridY[i]);
+            }
+        }
+    }
+
+    private static CompiledExpression fuse(List<PlotFunction> functions) {
+        ExpressionNode[] trees = new ExpressionNode[functions.size()];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = functions.get(i).tree();
+        }
+        return Optimizer.optimize(trees, VARIABLES);
+    }
+
+    /**
+     * @return number of curves of the last sample
+     */
+    public int curves() {
+        return curves;
+    }
+
+    /**
+     * @return x of each point of a curve of the last sample; only the first
+     *         {@link #count(int)} are valid
+     */
+    public double[] xs(int curve) {
+        return decimators.get(curve).xs();
+    }
+
+    /**
+     * @return y of each point of a curve of the last sample; only the first
+     *         {@link #count(int)} are valid
+     */
+    public double[] ys(int curve) {
+        return decimators.get(curve).ys();
+    }
+
+    /**
+     * @return number of points of a curve of the last sample
+     */
+    public int count(int curve) {
+        return decimators.get(curve).count();
+    }
+
+    /**
+     * @return bottom of the y range fitted to the curves of the last sample, or NaN if
+     *         none has a finite value
+     */
+    public double low() {
+        return fittedLow;
+    }
+
+    /**
+     * @return top of the y range fitted to the curves of the last sample, or NaN if none
+     *         has a finite value
+     */
+    public double high() {
+        return fittedHigh;
+    }
+
+    /**
+     * @return true if the bounds of a curve of the last sample show its function to be
+     *         undefined over part of the window
+     */
+    public boolean isUndefinedSomewhere(int curve) {
+        return undefined[curve];
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+
+/**
+ * The PlotFunction class is a function of x as typed into the GraphingTool. It is compiled
+ * with the Calculator engine when the Calculator grammar covers it, and with exp4j otherwise.
+ * Either way the text means what it does to exp4j: trigonometry is in radians, {@code log}
+ * is the natural logarithm and {@code ^} groups from the right.
+ */
+public final class PlotFunction {
+    private static final ExpressionCache<String, PlotFunction> CACHE =
+            new ExpressionCache<>(Integer.getInteger("graphing.cache.size", 256));
+
+    private static final String[] VARIABLES = {"x"};
+
+    private final String text;
+    private final ExpressionNode tree;
+    private final CompiledExpression compiled;
+
+    private PlotFunction(String text, ExpressionNode tree, CompiledExpression compiled) {
+        this.text = text;
+        this.tree = tree;
+        this.compiled = compiled;
+    }
+
+    /**
+     * Retrieves the statistics of the cache of compiled plot functions.
+     *
+     * @return hit, miss and eviction counts
+     */
+    public static ExpressionCache.Stats getCacheStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * Compiles a function of x, reusing the compiled form of text plotted before.
+     *
+     * @param text function text, such as {@code sin(x)}
+     * @return the compiled function
+     * @throws IllegalArgumentException if neither engine can parse the text
+     */
+    public static PlotFunction compile(String text) {
+        return CACHE.get(text.strip(), PlotFunction::create);
+    }
+
+    /**
+     * Compiles a function of x that may use the definitions of a workspace, with the
+     * current values of its variables. Text that uses none is compiled as by
+     * {@link #compile(String)}; text that does is compiled afresh each time, since the
+     * definitions it uses may have changed. The text means the same either way, while the
+     * functions it calls keep the angle unit of the workspace.
+     *
+     * @param text      function text, such as {@code f(x) + a}
+     * @param workspace definitions the text may use
+     * @return the compiled function
+     * @throws IllegalArgumentException if the text cannot be parsed
+     */
+    public static PlotFunction compile(String text, Workspace workspace) {
+        if (!workspace.uses(text)) {
+            return compile(text);
+        }
+        ExpressionNode tree = workspace.tree(text, Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH, VARIABLES);
+        return new PlotFunction(text.strip(), tree, Optimizer.optimize(tree, VARIABLES));
+    }
+
+    /**
+     * Compiles each of several functions separated by semicolons, skipping empty ones.
+     *
+     * @param text functions, such as {@code sin(x); cos(x)}
+     * @return the compiled functions, in order
+     * @throws IllegalArgumentException if neither engine can parse one of them
+     */
+    public static List<PlotFunction> compileAll(String text) {
+        List<PlotFunction> compiled = new ArrayList<>();
+        for (String function : text.split(";")) {
+            if (!function.isBlank()) {
+                compiled.add(compile(function));
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles each of several functions separated by semicolons, skipping empty ones,
+     * against the definitions of a workspace.
+     *
+     * @param text      functions, such as {@code f(x); f(x) + a}
+     * @param workspace definitions the functions may use
+     * @return the compiled functions, in order
+     * @throws IllegalArgumentException if one of them cannot be parsed
+     */
+    public static List<PlotFunction> compileAll(String text, Workspace workspace) {
+        List<PlotFunction> compiled = new ArrayList<>();
+        for (String function : text.split(";")) {
+            if (!function.isBlank()) {
+                compiled.add(compile(function, workspace));
+            }
+        }
+        return compiled;
+    }
+
+    private static PlotFunction create(String text) {
+        try {
+            Calculator calculator = new Calculator(text, Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH,
+                    Map.of(), VARIABLES);
+            return new PlotFunction(text, calculator.toTree(), calculator.compile());
+        }
+        catch (IllegalArgumentException unsupported) {
+            new ExpressionBuilder(text).variable("x").build();
+            return new PlotFunction(text, null, null);
+        }
+    }
+
+    /**
+     * @return the function text
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * @return the expression tree of the Calculator program, or null if the function is
+     *         evaluated by exp4j
+     */
+    public ExpressionNode tree() {
+        return tree;
+    }
+
+    /**
+     * @return the Calculator program, or null if the function is evaluated by exp4j
+     */
+    public CompiledExpression compiled() {
+        return compiled;
+    }
+
+    /**
+     * Creates a finder for the roots and extrema of the function. The finder keeps scratch
+     * state and must stay confined to the thread that uses it.
+     *
+     * @return a new finder, or null if the function is evaluated by exp4j, which has no
+     *         symbolic derivatives
+     */
+    public FeatureFinder newFeatureFinder() {
+        return tree == null ? null : new FeatureFinder(tree, VARIABLES);
+    }
+
+    /**
+     * Creates a finder for the bounds of the function over intervals of x. The finder keeps
+     * scratch state and must stay confined to the thread that uses it.
+     *
+     * @return a new finder, or null if the function is evaluated by exp4j
+     */
+    public BoundsFinder newBoundsFinder() {
+        return tree == null ? null : new BoundsFinder(tree, VARIABLES);
+    }
+
+    /**
+     * Samples the function in parallel from start at the given step. The Calculator engine
+     * evaluates whole chunks at once; exp4j gets one expression per worker thread since
+     * exp4j expressions are not thread-safe.
+     */
+    public void sample(double start, double step, double[] xs, double[] ys) {
+        if (compiled != null) {
+            DomainSampler.sample(compiled, start, step, xs, ys);
+        }
+        else {
+            DomainSampler.sample(this::newEvaluator, start, step, xs, ys);
+        }
+    }
+
+    /**
+     * Creates an evaluator for one point at a time. The evaluator keeps scratch state and
+     * must stay confined to the thread that uses it.
+     *
+     * @return a new evaluator
+     */
+    public DoubleUnaryOperator newEvaluator() {
+        if (compiled != null) {
+            double[] stack = new double[compiled.stackSize()];
+            double[] values = new double[1];
+            return x -> {
+                values[0] = x;
+                return compiled.evaluate(stack, values);
+            };
+        }
+        Expression e = new ExpressionBuilder(text).variable("x").build();
+        return x -> {
+            e.setVariable("x", x);
+            return e.evaluate();
+        };
+    }
+}
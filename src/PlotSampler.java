@@ -0,0 +1,73 @@
+/**
+ * The PlotSampler class turns a function and a visible window into the points a chart draws.
+ * Sampling runs in three passes: a parallel pass over a grid of a few points per pixel,
+ * adaptive refinement where the curve bends or breaks, then min/max decimation to the plot
+ * width. The cost follows the screen size, not the domain. It needs no window, so plots can
+ * be produced and measured headless; the decimation buffers are reused between calls, so
+ * a sampler must stay confined to one thread.
+ */
+public final class PlotSampler {
+    static final int SAMPLES_PER_PIXEL = 2;
+    static final int MAX_REFINEMENT_DEPTH = 10;
+    static final int MAX_POINTS_PER_PIXEL = 64;
+
+    private final Decimator decimator = new Decimator();
+
+    /**
+     * Samples the function over a window, replacing the result of any previous call.
+     *
+     * @return number of points, available from {@link #xs()} and {@link #ys()}
+     */
+    public int sample(PlotFunction function, double start, double end, int width, int height) {
+        return sample(function, start, end, width, height, TaskMonitor.NONE);
+    }
+
+    /**
+     * Samples the function over a window like {@link #sample(PlotFunction, double, double, int, int)},
+     * checking for cancellation and reporting progress as it goes. Refinement, the costly
+     * pass, reports most of the progress.
+     *
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public int sample(PlotFunction function, double start, double end, int width, int height, TaskMonitor monitor) {
+        int n = width * SAMPLES_PER_PIXEL + 1;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        if (end > start) {
+            function.sample(start, (end - start) / (n - 1), xs, ys);
+        }
+        else {
+            n = 0;
+        }
+
+        monitor.checkCancelled();
+        monitor.progress(10);
+
+        AdaptiveSampler sampler = new AdaptiveSampler(function.newEvaluator(), MAX_REFINEMENT_DEPTH, width * MAX_POINTS_PER_PIXEL);
+        int sampled = sampler.refine(xs, ys, n, AdaptiveSampler.halfPixel(ys, n, height), monitor.range(10, 95));
+        int kept = decimator.minMax(sampler.xs(), sampler.ys(), sampled, start, end, width);
+        monitor.progress(100);
+        return kept;
+    }
+
+    /**
+     * @return x of each point of the last sample; only the first {@link #count()} are valid
+     */
+    public double[] xs() {
+        return decimator.xs();
+    }
+
+    /**
+     * @return y of each point of the last sample; only the first {@link #count()} are valid
+     */
+    public double[] ys() {
+        return decimator.ys();
+    }
+
+    /**
+     * @return number of points of the last sample
+     */
+    public int count() {
+        return decimator.count();
+    }
+}
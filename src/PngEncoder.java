@@ -0,0 +1,106 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The PngEncoder class writes RGB images as PNG, several times faster than ImageIO. The
+ * ImageIO writer tries every PNG filter on every row to pick the one that compresses
+ * best, which costs more than drawing a chart. Charts are mostly flat colour, so this
+ * encoder applies the "up" filter to every row, which turns repeated rows into zeros, and
+ * deflates at the fastest level; the files are a little larger. An encoder reuses its
+ * buffers and deflater, so it must stay confined to one thread.
+ */
+public final class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int FILTER_UP = 2;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private byte[] row = new byte[0];
+    private byte[] compressed = new byte[1 << 16];
+
+    /**
+     * Encodes an image of type {@link BufferedImage#TYPE_INT_RGB}.
+     *
+     * @return the PNG file
+     * @throws IllegalArgumentException if the image is of another type
+     */
+    public byte[] encode(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Expected an RGB image but found type " + image.getType());
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int stride = 3 * width;
+        if (row.length != stride + 1) {
+            row = new byte[stride + 1];
+        }
+
+        out.reset();
+        out.writeBytes(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        chunk("IHDR", header, header.length);
+
+        deflater.reset();
+        data.reset();
+        row[0] = FILTER_UP;
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0, i = 1; x < width; x++, i += 3) {
+                int pixel = pixels[offset + x];
+                int above = y == 0 ? 0 : pixels[offset - width + x];
+                row[i] = (byte) ((pixel >> 16) - (above >> 16));
+                row[i + 1] = (byte) ((pixel >> 8) - (above >> 8));
+                row[i + 2] = (byte) (pixel - above);
+            }
+            deflater.setInput(row);
+            drain();
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(compressed);
+            data.write(compressed, 0, n);
+        }
+        chunk("IDAT", data.toByteArray(), data.size());
+        chunk("IEND", new byte[0], 0);
+        return out.toByteArray();
+    }
+
+    private void drain() {
+        while (!deflater.needsInput()) {
+            int n = deflater.deflate(compressed);
+            data.write(compressed, 0, n);
+        }
+    }
+
+    private void chunk(String type, byte[] data, int length) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] field = new byte[4];
+        writeInt(field, 0, length);
+        out.writeBytes(field);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeBytes(typeBytes);
+        out.write(data, 0, length);
+        writeInt(field, 0, (int) crc.getValue());
+        out.writeBytes(field);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,410 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * The PreciseEvaluator class evaluates an expression tree without going through double.
+ * Values stay exact {@link Rational}s as long as every step has an exact result: the four
+ * operations, integer powers, factorials of integers, square roots of perfect squares,
+ * logarithms of powers of ten, and sines and cosines of multiples of 30 degrees. The first
+ * step without one switches to {@link BigDecimal} arithmetic at a few digits more than the
+ * requested precision, with the functions of {@link BigMath}, and the result is rounded to
+ * the requested precision at the end.
+ * <p>
+ * Exact values are kept below {@link #MAX_EXACT_BITS} bits, and their denominators below
+ * {@link #MAX_DENOMINATOR_BITS}, since reducing a fraction takes a gcd that is quadratic in
+ * the size of its denominator. A literal or a step whose fraction would be larger, such as
+ * {@code 1e99999999} or the product of two huge powers, is taken as a BigDecimal at the
+ * working precision instead, so a short expression cannot run for minutes or exhaust memory.
+ * <p>
+ * The literals of the expression text are the variables of the tree, with their exact values,
+ * so {@code 0.1} is exactly one tenth and literals that round to the same double stay apart.
+ * Any other constant is taken at the decimal value of its double.
+ */
+public final class PreciseEvaluator {
+    private static final int GUARD_DIGITS = 5;
+    private static final int MAX_EXACT_FACTORIAL = 100_000;
+    private static final long MAX_EXACT_BITS = 1 << 21;
+    private static final long MAX_DENOMINATOR_BITS = 1 << 16;
+    private static final double BITS_PER_DIGIT = Math.log(10) / Math.log(2);
+    private static final int MAX_ARGUMENT_DIGITS = 10_000;
+    private static final int MAX_FORMATTED_DIGITS = 10_000;
+    private static final int MAX_FORMATTED_FRACTION = 60;
+    private static final Rational NINETY = Rational.of(BigInteger.valueOf(90));
+    private static final Rational THIRTY = Rational.of(BigInteger.valueOf(30));
+    private static final Rational HALF = Rational.of(BigInteger.ONE, BigInteger.TWO);
+
+    private final MathContext mathContext;
+    private final MathContext working;
+    private final BigDecimal[] literals;
+
+    /**
+     * @param mathContext precision of the result
+     * @param literals    the exact value of each number literal of the expression, which
+     *                    the tree loads as the variable of the same index
+     * @throws IllegalArgumentException if the precision is unlimited
+     */
+    public PreciseEvaluator(MathContext mathContext, BigDecimal[] literals) {
+        if (mathContext.getPrecision() == 0) {
+            throw new IllegalArgumentException("Precision must be limited");
+        }
+        this.mathContext = mathContext;
+        this.working = new MathContext(mathContext.getPrecision() + GUARD_DIGITS, mathContext.getRoundingMode());
+        this.literals = literals;
+    }
+
+    /**
+     * Evaluates a tree whose variables are the literals.
+     *
+     * @return a {@link Rational} if the result is exact, otherwise a BigDecimal rounded to
+     *         the precision
+     * @throws ArithmeticException if a step has no real result, such as a division by zero
+     */
+    public Number evaluate(ExpressionNode root) {
+        Number result = value(root);
+        return result instanceof BigDecimal decimal ? decimal.round(mathContext) : result;
+    }
+
+    private Number value(ExpressionNode node) {
+        return switch (node) {
+            case ExpressionNode.Constant constant -> constant(constant.value());
+            case ExpressionNode.Variable variable -> {
+                if (variable.index() >= literals.length) {
+                    throw new IllegalStateException("Unbound variable at position " + variable.index());
+                }
+                yield literal(literals[variable.index()]);
+            }
+            case ExpressionNode.Unary unary -> unary(unary);
+            case ExpressionNode.Binary binary -> binary(binary.opcode(), value(binary.left()), value(binary.right()));
+        };
+    }
+
+    /**
+     * @return the literal as a fraction, or rounded to the working precision if the fraction
+     *         would be too large
+     */
+    private Number literal(BigDecimal value) {
+        long scale = (long) Math.ceil(Math.abs((double) value.scale()) * BITS_PER_DIGIT);
+        long unscaled = value.unscaledValue().bitLength();
+        boolean exact = value.scale() > 0 ? fits(unscaled, scale) : fits(unscaled + scale, 1);
+        return exact ? Rational.of(value) : value.round(working);
+    }
+
+    /**
+     * @return a constant that is not a literal, such as one from the body of an inlined
+     *         function, at the shortest decimal that rounds to its double
+     */
+    private static Number constant(double value) {
+        if (!Double.isFinite(value)) {
+            throw new ArithmeticException("Overflow");
+        }
+        return Rational.of(BigDecimal.valueOf(value));
+    }
+
+    private Number unary(ExpressionNode.Unary unary) {
+        int opcode = unary.opcode();
+        if (opcode == CompiledExpression.SIN || opcode == CompiledExpression.COS || opcode == CompiledExpression.TAN) {
+            boolean degrees = unary.operand() instanceof ExpressionNode.Unary inner
+                    && inner.opcode() == CompiledExpression.TO_RADIANS;
+            Number angle = value(degrees ? ((ExpressionNode.Unary) unary.operand()).operand() : unary.operand());
+            return switch (opcode) {
+                case CompiledExpression.SIN -> sinOrCos(angle, degrees, 0);
+                case CompiledExpression.COS -> sinOrCos(angle, degrees, 1);
+                default -> tan(angle, degrees);
+            };
+        }
+        Number operand = value(unary.operand());
+        return switch (opcode) {
+            case CompiledExpression.NEGATE ->
+                    operand instanceof Rational rational ? rational.negate() : ((BigDecimal) operand).negate();
+            case CompiledExpression.SQRT -> sqrt(operand);
+            case CompiledExpression.LOG -> log(operand);
+            case CompiledExpression.LN -> ln(operand);
+            case CompiledExpression.FACTORIAL -> factorial(operand);
+            case CompiledExpression.TO_RADIANS -> decimal(operand).multiply(BigMath.pi(working)).divide(BigDecimal.valueOf(180), working);
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        };
+    }
+
+    private Number binary(int opcode, Number left, Number right) {
+        if (opcode == CompiledExpression.POWER) {
+            return power(left, right);
+        }
+        if (left instanceof Rational a && right instanceof Rational b && fits(opcode, a, b)) {
+            return switch (opcode) {
+                case CompiledExpression.ADD -> a.add(b);
+                case CompiledExpression.SUBTRACT -> a.subtract(b);
+                case CompiledExpression.MULTIPLY -> a.multiply(b);
+                case CompiledExpression.DIVIDE -> a.divide(b);
+                default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+            };
+        }
+        BigDecimal a = decimal(left);
+        BigDecimal b = decimal(right);
+        return switch (opcode) {
+            case CompiledExpression.ADD -> a.add(b, working);
+            case CompiledExpression.SUBTRACT -> a.subtract(b, working);
+            case CompiledExpression.MULTIPLY -> a.multiply(b, working);
+            case CompiledExpression.DIVIDE -> a.divide(b, working);
+            default -> throw new IllegalStateException("Unknown opcode: " + opcode);
+        };
+    }
+
+    /**
+     * @return true if the result of the operation on a and b, reckoned from the sizes of
+     *         their numerators and denominators, fits the limits of exact values
+     */
+    private static boolean fits(int opcode, Rational a, Rational b) {
+        long an = a.numerator().bitLength();
+        long ad = a.denominator().bitLength();
+        long bn = b.numerator().bitLength();
+        long bd = b.denominator().bitLength();
+        return switch (opcode) {
+            case CompiledExpression.MULTIPLY -> fits(an + bn, ad + bd);
+            case CompiledExpression.DIVIDE -> fits(an + bd, ad + bn);
+            default -> fits(Math.max(an + bd, bn + ad) + 1, ad + bd);
+        };
+    }
+
+    /**
+     * @return true if a fraction with a numerator and denominator of the given bits fits the
+     *         limits of exact values
+     */
+    private static boolean fits(long numeratorBits, long denominatorBits) {
+        return numeratorBits <= MAX_EXACT_BITS && denominatorBits <= MAX_DENOMINATOR_BITS;
+    }
+
+    /**
+     * Raises to a power. Integer exponents of exact bases are exact while the result fits
+     * the limits of exact values; half-integer exponents take a square root first,
+     * which is exact for perfect squares. Everything else is e^(y ln x).
+     */
+    private Number power(Number base, Number exponent) {
+        if (exponent instanceof Rational y && y.isInteger() && y.numerator().bitLength() < 32) {
+            int n = y.numerator().intValueExact();
+            if (base instanceof Rational x) {
+                long numerator = x.numerator().bitLength() * (long) Math.abs(n);
+                long denominator = x.isInteger() ? 1 : x.denominator().bitLength() * (long) Math.abs(n);
+                boolean exact = n >= 0 ? fits(numerator, denominator) : fits(denominator, numerator);
+                if (exact || x.numerator().abs().equals(x.denominator())) {
+                    return x.pow(n);
+                }
+            }
+            return decimal(base).pow(n, working);
+        }
+        if (exponent instanceof Rational y && y.denominator().equals(BigInteger.TWO)
+                && y.numerator().bitLength() < 32 && base.doubleValue() >= 0) {
+            return power(sqrt(base), Rational.of(y.numerator()));
+        }
+        BigDecimal x = bounded(decimal(base));
+        BigDecimal y = bounded(decimal(exponent));
+        if (x.signum() == 0) {
+            if (y.signum() > 0) {
+                return Rational.ZERO;
+            }
+            throw new ArithmeticException("Division by zero");
+        }
+        if (x.signum() < 0) {
+            throw new ArithmeticException("Negative number raised to a fractional power");
+        }
+        // The error of y ln x is multiplied by the size of the result, so it gets the extra digits.
+        MathContext log = new MathContext(working.getPrecision() + Math.max(0, y.precision() - y.scale())
+                + Math.max(0, x.precision() - x.scale()) / 3);
+        return BigMath.exp(y.multiply(BigMath.ln(x, log), log), working);
+    }
+
+    private Number sqrt(Number operand) {
+        if (operand instanceof Rational x) {
+            if (x.signum() < 0) {
+                throw new ArithmeticException("Square root of a negative number");
+            }
+            Rational root = exactSqrt(x);
+            if (root != null) {
+                return root;
+            }
+        }
+        BigDecimal x = decimal(operand);
+        if (x.signum() < 0) {
+            throw new ArithmeticException("Square root of a negative number");
+        }
+        return x.sqrt(working);
+    }
+
+    /**
+     * @return the square root if the numerator and denominator are perfect squares, otherwise null
+     */
+    private static Rational exactSqrt(Rational x) {
+        if (x.signum() < 0) {
+            return null;
+        }
+        BigInteger numerator = x.numerator().sqrt();
+        BigInteger denominator = x.denominator().sqrt();
+        if (numerator.multiply(numerator).equals(x.numerator()) && denominator.multiply(denominator).equals(x.denominator())) {
+            return Rational.of(numerator, denominator);
+        }
+        return null;
+    }
+
+    private Number log(Number operand) {
+        if (operand instanceof Rational x && x.signum() > 0) {
+            int numerator = powerOfTen(x.numerator());
+            int denominator = powerOfTen(x.denominator());
+            if (numerator >= 0 && denominator >= 0) {
+                return Rational.of(BigInteger.valueOf(numerator - denominator));
+            }
+        }
+        return BigMath.ln(decimal(operand), working).divide(BigMath.ln10(working), working);
+    }
+
+    private Number ln(Number operand) {
+        if (operand instanceof Rational x && x.equals(Rational.ONE)) {
+            return Rational.ZERO;
+        }
+        return BigMath.ln(decimal(operand), working);
+    }
+
+    /**
+     * @return k if the value is 10^k, otherwise -1
+     */
+    private static int powerOfTen(BigInteger value) {
+        // 10^k is the only power of ten with k trailing zero bits.
+        int k = value.getLowestSetBit();
+        return BigInteger.TEN.pow(k).equals(value) ? k : -1;
+    }
+
+    private Number factorial(Number operand) {
+        BigInteger n;
+        if (operand instanceof Rational x && x.isInteger()) {
+            n = x.numerator();
+        }
+        else if (operand instanceof BigDecimal x && (x.signum() == 0 || x.stripTrailingZeros().scale() <= 0)) {
+            n = x.toBigInteger();
+        }
+        else {
+            throw new ArithmeticException("Factorial of a non-integer needs double precision");
+        }
+        if (n.signum() < 0) {
+            throw new ArithmeticException("Factorial of a negative number");
+        }
+        if (n.compareTo(BigInteger.valueOf(MAX_EXACT_FACTORIAL)) > 0) {
+            throw new ArithmeticException("Factorial of a number above " + MAX_EXACT_FACTORIAL + " needs double precision");
+        }
+        return Rational.of(Factorials.exact(n.intValue()));
+    }
+
+    /**
+     * Computes sin(x + quarterTurns · 90°). An exact angle in degrees is reduced exactly to
+     * within 45 degrees of a quarter turn, so whole multiples of 30 and 90 degrees give
+     * exact results.
+     */
+    private Number sinOrCos(Number angle, boolean degrees, int quarterTurns) {
+        if (degrees && angle instanceof Rational x) {
+            BigInteger k = nearest(x.divide(NINETY));
+            Rational rest = x.subtract(Rational.of(k).multiply(NINETY));
+            int quadrant = k.add(BigInteger.valueOf(quarterTurns)).mod(BigInteger.valueOf(4)).intValue();
+            Rational exact = (quadrant & 1) == 0 ? exactSin(rest) : exactCos(rest);
+            if (exact != null) {
+                return quadrant >= 2 ? exact.negate() : exact;
+            }
+            BigDecimal radians = rest.toBigDecimal(working).multiply(BigMath.pi(working)).divide(BigDecimal.valueOf(180), working);
+            return BigMath.sinOrCos(radians, quadrant, working);
+        }
+        if (angle instanceof Rational x && x.signum() == 0) {
+            return quarterTurns == 0 ? Rational.ZERO : Rational.ONE;
+        }
+        BigDecimal radians = bounded(decimal(angle));
+        if (degrees) {
+            radians = radians.multiply(BigMath.pi(working)).divide(BigDecimal.valueOf(180), working);
+        }
+        return BigMath.sinOrCos(radians, quarterTurns, working);
+    }
+
+    /**
+     * @return the nearest integer to a fraction, halves rounded up
+     */
+    private static BigInteger nearest(Rational value) {
+        BigInteger[] division = value.numerator().shiftLeft(1).add(value.denominator())
+                .divideAndRemainder(value.denominator().shiftLeft(1));
+        return division[1].signum() < 0 ? division[0].subtract(BigInteger.ONE) : division[0];
+    }
+
+    private static Rational exactSin(Rational degrees) {
+        if (degrees.signum() == 0) {
+            return Rational.ZERO;
+        }
+        if (degrees.equals(THIRTY)) {
+            return HALF;
+        }
+        return degrees.equals(THIRTY.negate()) ? HALF.negate() : null;
+    }
+
+    private static Rational exactCos(Rational degrees) {
+        return degrees.signum() == 0 ? Rational.ONE : null;
+    }
+
+    private Number tan(Number angle, boolean degrees) {
+        Number sin = sinOrCos(angle, degrees, 0);
+        Number cos = sinOrCos(angle, degrees, 1);
+        if (cos instanceof Rational c && c.signum() == 0) {
+            throw new ArithmeticException("Tangent of a right angle");
+        }
+        return binary(CompiledExpression.DIVIDE, sin, cos);
+    }
+
+    /**
+     * Powers and sines need as many extra digits of ln x, π or ln 2 as their argument has
+     * before the point, so huge arguments are refused rather than computed for minutes.
+     *
+     * @throws ArithmeticException if the argument has more than {@link #MAX_ARGUMENT_DIGITS}
+     *                             digits before the point
+     */
+    private static BigDecimal bounded(BigDecimal argument) {
+        if (argument.precision() - argument.scale() > MAX_ARGUMENT_DIGITS) {
+            throw new ArithmeticException("Argument too large for precise evaluation");
+        }
+        return argument;
+    }
+
+    private BigDecimal decimal(Number value) {
+        return value instanceof Rational rational ? rational.toBigDecimal(working) : (BigDecimal) value;
+    }
+
+    /**
+     * Formats a result of {@link #evaluate}. Exact integers and terminating decimals are
+     * written out in full up to {@link #MAX_FORMATTED_DIGITS} digits; other fractions are
+     * written as a fraction, if short, and as a decimal rounded to the precision, marked
+     * with ≈.
+     *
+     * @return the result as text
+     */
+    public static String format(Number value, MathContext mathContext) {
+        if (value instanceof Rational rational) {
+            if (rational.isInteger() && rational.numerator().bitLength() * 0.302 < MAX_FORMATTED_DIGITS) {
+                return rational.numerator().toString();
+            }
+            if (!rational.isInteger() && rational.denominator().bitLength() < MAX_FORMATTED_DIGITS && rational.isTerminating()) {
+                BigDecimal exact = new BigDecimal(rational.numerator()).divide(new BigDecimal(rational.denominator()));
+                if (exact.precision() < MAX_FORMATTED_DIGITS) {
+                    return exact.toPlainString();
+                }
+            }
+            String decimal = "≈ " + decimalText(rational.toBigDecimal(mathContext), mathContext);
+            String fraction = rational.toString();
+            return rational.isInteger() || fraction.length() > MAX_FORMATTED_FRACTION ? decimal : fraction + " " + decimal;
+        }
+        return "≈ " + decimalText(((BigDecimal) value).round(mathContext), mathContext);
+    }
+
+    /**
+     * @return the decimal without trailing zeros, in scientific notation only if it is too
+     *         large or too small to write out within the precision
+     */
+    private static String decimalText(BigDecimal value, MathContext mathContext) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        int exponent = stripped.precision() - stripped.scale() - 1;
+        if (exponent >= -6 && exponent < mathContext.getPrecision()) {
+            return stripped.toPlainString();
+        }
+        return stripped.toString();
+    }
+}
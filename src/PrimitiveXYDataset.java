@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.List;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * The PrimitiveXYDataset class is a JFreeChart dataset stored in pairs of {@code double[]}
+ * columns, one pair per series. Unlike {@code XYSeries} it keeps no boxed data items and
+ * does no sorting or duplicate checks, and its buffers are pooled: each series slot keeps
+ * its columns when the data is replaced, so a chart can be re-plotted in place, with one
+ * curve or many. The x values must be ascending. The bounds of both axes are computed once
+ * per update so the chart does not rescan the data.
+ */
+public class PrimitiveXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+    private final Comparable<?> seriesKey;
+    private Comparable<?>[] keys;
+    private double[][] xs = new double[1][0];
+    private double[][] ys = new double[1][0];
+    private int[] counts = new int[1];
+    private int seriesCount = 1;
+    private Range domainBounds;
+    private Range rangeBounds;
+
+    /**
+     * @param seriesKey name of the series shown in the legend while there is one series
+     */
+    public PrimitiveXYDataset(Comparable<?> seriesKey) {
+        this.seriesKey = seriesKey;
+        this.keys = new Comparable<?>[] {seriesKey};
+    }
+
+    /**
+     * Replaces the data with a single series of the first {@code count} points of the
+     * given columns and notifies the chart. The columns are copied, so the caller may
+     * reuse them.
+     *
+     * @param newXs x values, ascending
+     * @param newYs y values
+     * @param count number of points
+     */
+    public void setData(double[] newXs, double[] newYs, int count) {
+        seriesCount = 1;
+        keys[0] = seriesKey;
+        copy(0, newXs, newYs, count);
+        updateBounds();
+        fireDatasetChanged();
+    }
+
+    /**
+     * Replaces the data with one series per key and notifies the chart once. Series i
+     * gets the first {@code counts[i]} points of {@code newXs[i]} and {@code newYs[i]},
+     * copied into the buffers the i-th series used before.
+     *
+     * @param seriesKeys names of the series shown in the legend
+     * @param newXs      x values of each series, ascending
+     * @param newYs      y values of each series
+     * @param counts     number of points of each series
+     */
+    public void setData(List<? extends Comparable<?>> seriesKeys, double[][] newXs, double[][] newYs, int[] counts) {
+        int n = seriesKeys.size();
+        if (xs.length < n) {
+            keys = Arrays.copyOf(keys, n);
+            xs = grow(xs, n);
+            ys = grow(ys, n);
+            this.counts = Arrays.copyOf(this.counts, n);
+        }
+        seriesCount = n;
+        for (int i = 0; i < n; i++) {
+            keys[i] = seriesKeys.get(i);
+            copy(i, newXs[i], newYs[i], counts[i]);
+        }
+        updateBounds();
+        fireDatasetChanged();
+    }
+
+    private static double[][] grow(double[][] columns, int n) {
+        double[][] grown = Arrays.copyOf(columns, n);
+        for (int i = columns.length; i < n; i++) {
+            grown[i] = new double[0];
+        }
+        return grown;
+    }
+
+    private void copy(int series, double[] newXs, double[] newYs, int count) {
+        if (xs[series].length < count) {
+            xs[series] = new double[count];
+            ys[series] = new double[count];
+        }
+        System.arraycopy(newXs, 0, xs[series], 0, count);
+        System.arraycopy(newYs, 0, ys[series], 0, count);
+        counts[series] = count;
+    }
+
+    /**
+     * Removes all points and notifies the chart.
+     */
+    public void clear() {
+        seriesCount = 1;
+        keys[0] = seriesKey;
+        counts[0] = 0;
+        updateBounds();
+        fireDatasetChanged();
+    }
+
+    private void updateBounds() {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int series = 0; series < seriesCount; series++) {
+            int count = counts[series];
+            if (count == 0) {
+                continue;
+            }
+            double[] x = xs[series];
+            double[] y = ys[series];
+            minX = Math.min(minX, x[0]);
+            maxX = Math.max(maxX, x[count - 1]);
+            for (int i = 0; i < count; i++) {
+                if (Double.isFinite(y[i])) {
+                    min = Math.min(min, y[i]);
+                    max = Math.max(max, y[i]);
+                }
+            }
+        }
+        domainBounds = minX <= maxX ? new Range(minX, maxX) : null;
+        rangeBounds = min <= max ? new Range(min, max) : null;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return seriesCount;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        return keys[series];
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return counts[series];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return xs[series][item];
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return ys[series][item];
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return xs[series][item];
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return ys[series][item];
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return domainBounds;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+}
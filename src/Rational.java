@@ -0,0 +1,207 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * The Rational class is an exact fraction of two {@link BigInteger}s, always in lowest
+ * terms with a positive denominator. Integers, the common case, have a denominator of one
+ * and skip the gcd entirely, so integer chains cost no more than plain BigInteger
+ * arithmetic. Instances are immutable.
+ */
+public final class Rational extends Number implements Comparable<Rational> {
+    public static final Rational ZERO = new Rational(BigInteger.ZERO, BigInteger.ONE);
+    public static final Rational ONE = new Rational(BigInteger.ONE, BigInteger.ONE);
+    private static final MathContext DOUBLE_DIGITS = new MathContext(20);
+
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    /**
+     * @return the integer as a fraction
+     */
+    public static Rational of(BigInteger value) {
+        return new Rational(value, BigInteger.ONE);
+    }
+
+    /**
+     * @return numerator / denominator in lowest terms
+     * @throws ArithmeticException if the denominator is zero
+     */
+    public static Rational of(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        if (denominator.equals(BigInteger.ONE)) {
+            return new Rational(numerator, denominator);
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if (!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return new Rational(numerator, denominator);
+    }
+
+    /**
+     * @return the decimal as a fraction, exactly
+     */
+    public static Rational of(BigDecimal value) {
+        if (value.scale() <= 0) {
+            return of(value.toBigIntegerExact());
+        }
+        return of(value.unscaledValue(), BigInteger.TEN.pow(value.scale()));
+    }
+
+    public BigInteger numerator() {
+        return numerator;
+    }
+
+    public BigInteger denominator() {
+        return denominator;
+    }
+
+    /**
+     * @return true if the denominator is one
+     */
+    public boolean isInteger() {
+        return denominator.equals(BigInteger.ONE);
+    }
+
+    public int signum() {
+        return numerator.signum();
+    }
+
+    public Rational add(Rational other) {
+        if (isInteger() && other.isInteger()) {
+            return of(numerator.add(other.numerator));
+        }
+        if (denominator.equals(other.denominator)) {
+            return of(numerator.add(other.numerator), denominator);
+        }
+        return of(numerator.multiply(other.denominator).add(other.numerator.multiply(denominator)),
+                denominator.multiply(other.denominator));
+    }
+
+    public Rational subtract(Rational other) {
+        return add(other.negate());
+    }
+
+    public Rational multiply(Rational other) {
+        if (isInteger() && other.isInteger()) {
+            return of(numerator.multiply(other.numerator));
+        }
+        return of(numerator.multiply(other.numerator), denominator.multiply(other.denominator));
+    }
+
+    /**
+     * @throws ArithmeticException if the divisor is zero
+     */
+    public Rational divide(Rational other) {
+        return of(numerator.multiply(other.denominator), denominator.multiply(other.numerator));
+    }
+
+    public Rational negate() {
+        return new Rational(numerator.negate(), denominator);
+    }
+
+    /**
+     * Raises the fraction to an integer power by repeated squaring of its numerator and
+     * denominator, which stay in lowest terms.
+     *
+     * @throws ArithmeticException if zero is raised to a negative power
+     */
+    public Rational pow(int exponent) {
+        if (exponent >= 0) {
+            return new Rational(numerator.pow(exponent), denominator.pow(exponent));
+        }
+        if (exponent == Integer.MIN_VALUE) {
+            throw new ArithmeticException("Exponent out of range");
+        }
+        return of(denominator.pow(-exponent), numerator.pow(-exponent));
+    }
+
+    /**
+     * @return the fraction as a decimal, rounded to the context; exact if it terminates
+     *         within the context's precision
+     */
+    public BigDecimal toBigDecimal(MathContext mathContext) {
+        if (isInteger()) {
+            return new BigDecimal(numerator).round(mathContext);
+        }
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), mathContext);
+    }
+
+    /**
+     * @return true if the fraction has a finite decimal expansion, that is, if its
+     *         denominator has no prime factors but 2 and 5
+     */
+    public boolean isTerminating() {
+        BigInteger rest = denominator.shiftRight(denominator.getLowestSetBit());
+        BigInteger five = BigInteger.valueOf(5);
+        while (!rest.equals(BigInteger.ONE)) {
+            BigInteger[] quotient = rest.divideAndRemainder(five);
+            if (quotient[1].signum() != 0) {
+                return false;
+            }
+            rest = quotient[0];
+        }
+        return true;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return isInteger() ? numerator.longValue() : (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        if (isInteger()) {
+            return numerator.doubleValue();
+        }
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), DOUBLE_DIGITS).doubleValue();
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        return numerator.multiply(other.denominator).compareTo(other.numerator.multiply(denominator));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Rational rational
+                && numerator.equals(rational.numerator) && denominator.equals(rational.denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator.hashCode() + denominator.hashCode();
+    }
+
+    /**
+     * @return the fraction as {@code numerator/denominator}, or just the numerator for an
+     *         integer
+     */
+    @Override
+    public String toString() {
+        return isInteger() ? numerator.toString() : numerator + "/" + denominator;
+    }
+}
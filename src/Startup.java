@@ -0,0 +1,119 @@
+import java.awt.GraphicsEnvironment;
+import java.time.Duration;
+import java.time.Instant;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+
+/**
+ * The Startup class keeps the calculator's cold start short and measures it.
+ * <p>
+ * Once the first frame is on screen, the classes the graphing tool needs (JFreeChart,
+ * exp4j, the samplers and Java2D) are loaded on a low-priority background thread by
+ * drawing a chart offscreen, so the first click on "Graph" does not wait for them.
+ * <p>
+ * With {@code -Dcalculator.startup.report=true} the time from the start of the JVM to the
+ * first frame and to the first plot is printed to standard error. With
+ * {@code -Dcalculator.startup.run=frame} the application exits once the first frame is
+ * shown, and with {@code -Dcalculator.startup.run=plot} it opens the graphing tool at once
+ * and exits once its first plot is drawn; the startup benchmark and the training run use
+ * these.
+ * <p>
+ * Run as the main class for the training run that records an AppCDS archive of the classes
+ * loaded at startup, see the README. With a display it starts the calculator and plots;
+ * without one it loads the same engine, chart and Swing classes headlessly.
+ */
+public final class Startup {
+    private static String run = System.getProperty("calculator.startup.run");
+    private static boolean report = Boolean.getBoolean("calculator.startup.report") || run != null;
+    private static boolean frameShown;
+    private static boolean plotShown;
+
+    private Startup() {
+    }
+
+    /**
+     * Called on the Event Dispatch Thread when the calculator's window has opened. Reports
+     * the time, then starts preloading the graphing classes or, for a scripted run, opens
+     * the graphing tool or exits.
+     *
+     * @param openGraph opens the graphing tool
+     */
+    static void frameShown(Runnable openGraph) {
+        if (frameShown) {
+            return;
+        }
+        frameShown = true;
+        report("first frame");
+        if ("frame".equals(run)) {
+            System.exit(0);
+        }
+        if ("plot".equals(run)) {
+            openGraph.run();
+        }
+        Thread.ofPlatform().name("Preload").daemon().priority(Thread.MIN_PRIORITY).start(GraphingTool::preload);
+    }
+
+    /**
+     * Called on the Event Dispatch Thread when a graph has been drawn with data. Reports
+     * the time of the first one and ends a scripted run.
+     */
+    static void plotShown() {
+        if (plotShown) {
+            return;
+        }
+        plotShown = true;
+        report("first plot");
+        if ("plot".equals(run)) {
+            System.exit(0);
+        }
+    }
+
+    /**
+     * @return true if the time to the first frame and plot is reported
+     */
+    static boolean isReporting() {
+        return report;
+    }
+
+    private static void report(String milestone) {
+        if (!report) {
+            return;
+        }
+        Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+        String elapsed = started == null ? "?" : String.valueOf(Duration.between(started, Instant.now()).toMillis());
+        System.err.println("Startup: " + milestone + " after " + elapsed + " ms");
+    }
+
+    /**
+     * Loads the classes used at startup and for the first plot, for a training run under
+     * {@code -XX:ArchiveClassesAtExit}.
+     */
+    public static void main(String[] args) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            run = "plot";
+            report = true;
+            CalculatorGUI.main(args);
+            return;
+        }
+        new Calculator("2 + 3 * sin(30)").value();
+        new Calculator("sqrt(2)^2 - 5! / 4").value();
+        Workspace workspace = new Workspace(Calculator.AngleUnit.DEGREES);
+        workspace.define("a = 3");
+        workspace.define("f(x) = x^2 + a");
+        workspace.evaluate("f(2)");
+        GraphingTool.preload();
+        JComponent[] components = {
+                new JButton("7"), new JTextField(), new JTextArea(), new JList<>(new String[]{"1"}),
+                new JComboBox<>(new String[]{"Double"}), new JScrollPane(new JTextArea()), new JSplitPane()
+        };
+        for (JComponent component : components) {
+            component.getPreferredSize();
+        }
+    }
+}
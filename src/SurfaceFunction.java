@@ -0,0 +1,128 @@
+import java.util.Map;
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+
+/**
+ * The SurfaceFunction class is a function of x and y as typed into the SurfaceTool. Like a
+ * {@link PlotFunction}, it is compiled with the Calculator engine when the Calculator grammar
+ * covers it, and with exp4j otherwise, and means what it does to exp4j either way.
+ */
+public final class SurfaceFunction {
+    private static final ExpressionCache<String, SurfaceFunction> CACHE =
+            new ExpressionCache<>(Integer.getInteger("graphing.cache.size", 256));
+
+    private static final String[] VARIABLES = {"x", "y"};
+
+    private final String text;
+    private final CompiledExpression compiled;
+
+    /**
+     * Evaluates a function on a grid of evenly spaced points. A grid evaluator keeps
+     * scratch state and must stay confined to the thread that uses it.
+     */
+    @FunctionalInterface
+    public interface GridEvaluator {
+        /**
+         * Evaluates the grid row by row, from the top: point (i, j) is at
+         * {@code x = left + i * spacing}, {@code y = top - j * spacing}.
+         *
+         * @param out receives the value at point (i, j) at index {@code j * columns + i}
+         */
+        void evaluate(double left, double top, double spacing, int columns, int rows, float[] out);
+    }
+
+    private SurfaceFunction(String text, CompiledExpression compiled) {
+        this.text = text;
+        this.compiled = compiled;
+    }
+
+    /**
+     * Compiles a function of x and y, reusing the compiled form of text plotted before.
+     *
+     * @param text function text, such as {@code sin(x) * cos(y)}
+     * @return the compiled function
+     * @throws IllegalArgumentException if neither engine can parse the text
+     */
+    public static SurfaceFunction compile(String text) {
+        return CACHE.get(text.strip(), SurfaceFunction::create);
+    }
+
+    private static SurfaceFunction create(String text) {
+        try {
+            Calculator calculator = new Calculator(text, Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH,
+                    Map.of(), VARIABLES);
+            return new SurfaceFunction(text, calculator.compile());
+        }
+        catch (IllegalArgumentException unsupported) {
+            new ExpressionBuilder(text).variables(VARIABLES).build();
+            return new SurfaceFunction(text, null);
+        }
+    }
+
+    /**
+     * @return the function text
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Creates an evaluator for grids of points. The Calculator engine evaluates a whole
+     * grid as columns of x and y; exp4j evaluates one point at a time.
+     *
+     * @return a new evaluator
+     */
+    public GridEvaluator newGridEvaluator() {
+        if (compiled != null) {
+            return new CompiledGrid(compiled);
+        }
+        Expression e = new ExpressionBuilder(text).variables(VARIABLES).build();
+        return (left, top, spacing, columns, rows, out) -> {
+            for (int j = 0, k = 0; j < rows; j++) {
+                e.setVariable("y", top - j * spacing);
+                for (int i = 0; i < columns; i++, k++) {
+                    e.setVariable("x", left + i * spacing);
+                    out[k] = (float) e.evaluate();
+                }
+            }
+        };
+    }
+
+    /**
+     * Evaluates grids with the column evaluator, reusing its columns and registers.
+     */
+    private static final class CompiledGrid implements GridEvaluator {
+        private final CompiledExpression compiled;
+        private final double[][] registers;
+        private double[][] columns = new double[VARIABLES.length][0];
+        private double[] values = new double[0];
+
+        CompiledGrid(CompiledExpression compiled) {
+            this.compiled = compiled;
+            this.registers = compiled.newRegisters();
+        }
+
+        @Override
+        public void evaluate(double left, double top, double spacing, int columns, int rows, float[] out) {
+            int n = columns * rows;
+            if (values.length < n) {
+                this.columns = new double[VARIABLES.length][n];
+                values = new double[n];
+            }
+            // The program was compiled with VARIABLES, so x is the first column and y the second.
+            double[] xs = this.columns[0];
+            double[] ys = this.columns[1];
+            for (int j = 0, k = 0; j < rows; j++) {
+                double rowY = top - j * spacing;
+                for (int i = 0; i < columns; i++, k++) {
+                    xs[k] = left + i * spacing;
+                    ys[k] = rowY;
+                }
+            }
+            compiled.evaluateColumns(this.columns, values, 0, n, registers);
+            for (int k = 0; k < n; k++) {
+                out[k] = (float) values[k];
+            }
+        }
+    }
+}
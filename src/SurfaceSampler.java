@@ -0,0 +1,362 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SurfaceSampler class draws a function of x and y as a heatmap, optionally with
+ * contour lines. The plane is cut into square tiles on a grid anchored at the origin, one
+ * tile per {@value #TILE_SIZE} by {@value #TILE_SIZE} pixels at a given zoom. Tiles are
+ * evaluated in parallel on a fork/join pool, each as one grid through the column
+ * evaluator, and kept as {@code float} values in a cache shared by all samplers, so a pan
+ * only evaluates the tiles that come into view. Colours are written straight into the
+ * {@code int} raster of the image.
+ * <p>
+ * A coarse pass evaluates one point per {@code step} by {@code step} pixels and fills the
+ * block with it, which is cheap enough to show at once while the full resolution is
+ * computed. Tiles already cached at full resolution are used as they are.
+ */
+public final class SurfaceSampler {
+    /**
+     * Side of a tile in pixels.
+     */
+    static final int TILE_SIZE = 64;
+
+    /**
+     * Number of contour lines drawn over the range of the values in view.
+     */
+    static final int CONTOURS = 12;
+
+    private static final int NAN_COLOR = 0xE0E0E0;
+    private static final int[] PALETTE = palette(0x30123B, 0x4662D7, 0x1AE4B6, 0xA4FC3C, 0xFABA39, 0xE4460A, 0x7A0403);
+
+    private static final ExpressionCache<TileKey, Tile> TILES =
+            new ExpressionCache<>(Long.getLong("graphing.surface.cache.size", 1L << 24), tile -> tile.values.length);
+
+    private SurfaceSampler() {
+    }
+
+    /**
+     * The part of the plane in view: {@code spacing} units of x and y per pixel, with the
+     * top-left pixel at pixel {@code (left, top)} of the plane, counted from the origin.
+     * Pixel column {@code c} is at {@code x = c * spacing} and pixel row {@code r} at
+     * {@code y = -r * spacing}, so a pan by whole pixels keeps every tile on the grid.
+     */
+    public record Window(double spacing, long left, long top, int width, int height) {
+        /**
+         * @return a window of the given size centred on a point
+         */
+        public static Window centered(double x, double y, double spacing, int width, int height) {
+            return new Window(spacing, Math.round(x / spacing) - width / 2, Math.round(-y / spacing) - height / 2,
+                    width, height);
+        }
+
+        /**
+         * @return x at the centre of the window
+         */
+        public double centerX() {
+            return (left + width / 2) * spacing;
+        }
+
+        /**
+         * @return y at the centre of the window
+         */
+        public double centerY() {
+            return -(top + height / 2) * spacing;
+        }
+
+        /**
+         * @return the window moved so the content shifts by the given number of pixels
+         */
+        public Window panned(int dx, int dy) {
+            return new Window(spacing, left - dx, top - dy, width, height);
+        }
+
+        /**
+         * Zooms to a new spacing, keeping the point under pixel {@code (column, row)} of the
+         * window in place. Tiles are cached per spacing, so zooming back to a spacing
+         * computed the same way finds them again.
+         *
+         * @return the zoomed window
+         */
+        public Window zoomed(double spacing, int column, int row) {
+            double x = (left + column) * this.spacing;
+            double y = -(top + row) * this.spacing;
+            return new Window(spacing, Math.round(x / spacing) - column, Math.round(-y / spacing) - row, width, height);
+        }
+
+        /**
+         * @return the window resized, keeping its centre
+         */
+        public Window resized(int width, int height) {
+            return new Window(spacing, left + this.width / 2 - width / 2, top + this.height / 2 - height / 2,
+                    width, height);
+        }
+    }
+
+    /**
+     * The smallest and largest finite values in view, which the colours span. Both are
+     * NaN if there are none.
+     */
+    public record Scale(double min, double max) {
+    }
+
+    /**
+     * A tile is identified by the function, the zoom, the step between its points and its
+     * position on the tile grid.
+     */
+    private record TileKey(String function, double spacing, int step, long column, long row) {
+    }
+
+    /**
+     * The values of one tile, row by row from the top, with the range of its finite values.
+     * A tile of {@code side} by {@code side} values covers {@code 1 << shift} by
+     * {@code 1 << shift} pixels with each value.
+     */
+    private record Tile(float[] values, int side, int shift, float min, float max) {
+        /**
+         * @return the value at pixel (i, j) of the tile
+         */
+        float at(int i, int j) {
+            return values[(j >> shift) * side + (i >> shift)];
+        }
+    }
+
+    /**
+     * Draws the window using the common fork/join pool.
+     *
+     * @param function function to draw
+     * @param window   part of the plane to draw
+     * @param step     1 for full resolution, or a power of two up to {@link #TILE_SIZE} for
+     *                 one point per {@code step} by {@code step} pixels
+     * @param contours whether to draw contour lines over the heatmap
+     * @param image    a {@link BufferedImage#TYPE_INT_RGB} image at least the size of the window
+     * @param monitor  checked between tiles; progress goes from 0 to 100 over the tiles
+     * @return range of the values the colours span
+     * @throws java.util.concurrent.CancellationException if the monitor is cancelled
+     */
+    public static Scale render(SurfaceFunction function, Window window, int step, boolean contours,
+                               BufferedImage image, TaskMonitor monitor) {
+        return render(ForkJoinPool.commonPool(), function, window, step, contours, image, monitor);
+    }
+
+    /**
+     * Draws the window in two parallel passes over its tiles: the first finds or
+     * evaluates every tile, the second colours them once the range of the values in view
+     * is known.
+     */
+    public static Scale render(ForkJoinPool pool, SurfaceFunction function, Window window, int step,
+                               boolean contours, BufferedImage image, TaskMonitor monitor) {
+        if (step < 1 || step > TILE_SIZE || Integer.bitCount(step) != 1) {
+            throw new IllegalArgumentException("Expected a power of two up to " + TILE_SIZE + " but found " + step);
+        }
+        if (image.getType() != BufferedImage.TYPE_INT_RGB
+                || image.getWidth() < window.width() || image.getHeight() < window.height()) {
+            throw new IllegalArgumentException("Expected an RGB image of at least " + window.width() + "x" + window.height());
+        }
+        long firstColumn = Math.floorDiv(window.left(), TILE_SIZE);
+        long firstRow = Math.floorDiv(window.top(), TILE_SIZE);
+        int columns = (int) (Math.floorDiv(window.left() + window.width() - 1, TILE_SIZE) - firstColumn + 1);
+        int rows = (int) (Math.floorDiv(window.top() + window.height() - 1, TILE_SIZE) - firstRow + 1);
+        Tile[] tiles = new Tile[columns * rows];
+
+        ThreadLocal<SurfaceFunction.GridEvaluator> evaluators = ThreadLocal.withInitial(function::newGridEvaluator);
+        AtomicInteger done = new AtomicInteger();
+        pool.invoke(new Tiles(0, tiles.length, (from, to) -> {
+            for (int t = from; t < to && !monitor.isCancelled(); t++) {
+                tiles[t] = tile(function, window.spacing(), step, firstColumn + t % columns, firstRow + t / columns,
+                        evaluators);
+                monitor.progress(95 * done.incrementAndGet() / tiles.length);
+            }
+        }));
+        monitor.checkCancelled();
+
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (Tile tile : tiles) {
+            min = Math.min(min, tile.min());
+            max = Math.max(max, tile.max());
+        }
+        float low = min;
+        float high = max;
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int stride = image.getWidth();
+        pool.invoke(new Tiles(0, tiles.length, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                long column = firstColumn + t % columns;
+                long row = firstRow + t / columns;
+                Tile right = t % columns < columns - 1 ? tiles[t + 1] : null;
+                Tile below = t + columns < tiles.length ? tiles[t + columns] : null;
+                color(tiles[t], right, below, column * TILE_SIZE - window.left(), row * TILE_SIZE - window.top(),
+                        window, low, high, contours, pixels, stride);
+            }
+        }));
+        monitor.progress(100);
+        return min > max ? new Scale(Double.NaN, Double.NaN) : new Scale(min, max);
+    }
+
+    /**
+     * @return true if every tile of the window is cached at full resolution, so drawing it
+     *         evaluates nothing
+     */
+    public static boolean isCached(SurfaceFunction function, Window window) {
+        long lastColumn = Math.floorDiv(window.left() + window.width() - 1, TILE_SIZE);
+        long lastRow = Math.floorDiv(window.top() + window.height() - 1, TILE_SIZE);
+        for (long row = Math.floorDiv(window.top(), TILE_SIZE); row <= lastRow; row++) {
+            for (long column = Math.floorDiv(window.left(), TILE_SIZE); column <= lastColumn; column++) {
+                if (TILES.getIfPresent(new TileKey(function.text(), window.spacing(), 1, column, row)) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the statistics of the tile cache, whose weight counts values.
+     *
+     * @return hit, miss and eviction counts
+     */
+    public static ExpressionCache.Stats getCacheStats() {
+        return TILES.stats();
+    }
+
+    /**
+     * Empties the tile cache.
+     */
+    public static void clearCache() {
+        TILES.clear();
+    }
+
+    /**
+     * Returns a tile at the given step, or the full-resolution tile if it is cached,
+     * evaluating and caching it on a miss.
+     */
+    private static Tile tile(SurfaceFunction function, double spacing, int step, long column, long row,
+                             ThreadLocal<SurfaceFunction.GridEvaluator> evaluators) {
+        if (step > 1) {
+            Tile fine = TILES.getIfPresent(new TileKey(function.text(), spacing, 1, column, row));
+            if (fine != null) {
+                return fine;
+            }
+        }
+        return TILES.get(new TileKey(function.text(), spacing, step, column, row), key -> {
+            int side = TILE_SIZE / step;
+            float[] values = new float[side * side];
+            evaluators.get().evaluate(column * TILE_SIZE * spacing, -row * TILE_SIZE * spacing, step * spacing,
+                    side, side, values);
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (float value : values) {
+                if (Float.isFinite(value)) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+            return new Tile(values, side, Integer.numberOfTrailingZeros(step), min, max);
+        });
+    }
+
+    /**
+     * Colours the part of a tile that is in view. A tile of fewer points than pixels is
+     * scaled up by repeating each point. A contour line is drawn where a pixel and its
+     * neighbour to the right or below fall between different contour levels; the
+     * neighbours of the last column and row are in the next tiles, or, at the edge of
+     * the view, to the left and above instead.
+     *
+     * @param right tile to the right, or null at the edge of the view
+     * @param below tile below, or null at the edge of the view
+     * @param x     pixel column of the tile's left edge in the image; may be negative
+     * @param y     pixel row of the tile's top edge in the image; may be negative
+     */
+    private static void color(Tile tile, Tile right, Tile below, long x, long y, Window window, float min, float max,
+                              boolean contours, int[] pixels, int stride) {
+        float[] values = tile.values();
+        int side = tile.side();
+        int shift = tile.shift();
+        int last = TILE_SIZE - 1;
+        float colors = max > min ? (PALETTE.length - 1) / (max - min) : 0;
+        float levels = max > min ? CONTOURS / (max - min) : 0;
+        int fromX = (int) Math.max(0, -x);
+        int toX = (int) Math.min(TILE_SIZE, window.width() - x);
+        int fromY = (int) Math.max(0, -y);
+        int toY = (int) Math.min(TILE_SIZE, window.height() - y);
+        for (int j = fromY; j < toY; j++) {
+            int row = (j >> shift) * side;
+            int offset = (int) ((y + j) * stride + x);
+            for (int i = fromX; i < toX; i++) {
+                float value = values[row + (i >> shift)];
+                int color;
+                if (!Float.isFinite(value)) {
+                    color = NAN_COLOR;
+                }
+                else {
+                    color = PALETTE[(int) ((value - min) * colors)];
+                    if (contours) {
+                        int level = (int) ((value - min) * levels);
+                        float across = i < last ? tile.at(i + 1, j) : right != null ? right.at(0, j) : tile.at(i - 1, j);
+                        float down = j < last ? tile.at(i, j + 1) : below != null ? below.at(i, 0) : tile.at(i, j - 1);
+                        if (level != (int) ((across - min) * levels) || level != (int) ((down - min) * levels)) {
+                            color = (color >> 1) & 0x7F7F7F;
+                        }
+                    }
+                }
+                pixels[offset + i] = color;
+            }
+        }
+    }
+
+    /**
+     * @return 256 colours blending evenly from each stop to the next
+     */
+    private static int[] palette(int... stops) {
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            double position = (double) i / (palette.length - 1) * (stops.length - 1);
+            int stop = Math.min((int) position, stops.length - 2);
+            double t = position - stop;
+            int rgb = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int from = (stops[stop] >> shift) & 0xFF;
+                int to = (stops[stop + 1] >> shift) & 0xFF;
+                rgb |= (int) Math.round(from + (to - from) * t) << shift;
+            }
+            palette[i] = rgb;
+        }
+        return palette;
+    }
+
+    /**
+     * Processes the tiles in a range of indices.
+     */
+    private interface TileRange {
+        void process(int from, int to);
+    }
+
+    /**
+     * A contiguous range of tile indices, split in half down to single tiles, which are
+     * large enough to be worth a task of their own.
+     */
+    private static final class Tiles extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final TileRange range;
+
+        Tiles(int from, int to, TileRange range) {
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                range.process(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Tiles(from, middle, range), new Tiles(middle, to, range));
+        }
+    }
+}
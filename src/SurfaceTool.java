@@ -0,0 +1,254 @@
+import java.awt.BorderLayout;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+/**
+ * The SurfaceTool class plots a function of x and y as a heatmap, optionally with contour
+ * lines. Drag to pan and use the mouse wheel to zoom. Each view is drawn in the background
+ * by {@link SurfaceSampler}: a coarse image first, unless every tile is already cached,
+ * and then the full resolution. While a view is being drawn the previous image is shown
+ * moved and scaled to where it belongs.
+ */
+public class SurfaceTool extends JFrame {
+    private static final Duration PLOT_TIMEOUT = Duration.ofSeconds(30);
+    private static final int COARSE_STEP = 8;
+    private static final double DEFAULT_SPACING = 20.0 / 800;
+    private static final int ZOOM_STEPS_PER_DOUBLING = 4;
+    private static final int SPARE_IMAGES = 2;
+
+    private final JTextField functionInput;
+    private final JCheckBox contoursBox = new JCheckBox("Contours");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JLabel statusLabel = new JLabel();
+    private final SurfacePanel surfacePanel = new SurfacePanel();
+    private final BackgroundRunner<View> plotter =
+            new BackgroundRunner<>("Surface plotting", PLOT_TIMEOUT, this::plotFailed, progressBar::setValue);
+    private final ConcurrentLinkedQueue<BufferedImage> spareImages = new ConcurrentLinkedQueue<>();
+    private String functionText;
+    private SurfaceSampler.Window window = SurfaceSampler.Window.centered(0, 0, DEFAULT_SPACING, 1, 1);
+    private int zoom;
+
+    /**
+     * An image of the surface and the window it shows.
+     */
+    private record View(BufferedImage image, SurfaceSampler.Window window, SurfaceSampler.Scale scale) {
+    }
+
+    public SurfaceTool() {
+        setTitle("Surface Plot");
+        setSize(800, 700);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        JPanel inputPanel = new JPanel();
+        inputPanel.add(new JLabel("f(x, y):"));
+        functionInput = new JTextField("sin(x) * cos(y)", 20);
+        functionInput.addActionListener(_ -> plotSurface());
+        inputPanel.add(functionInput);
+
+        contoursBox.addActionListener(_ -> redraw());
+        inputPanel.add(contoursBox);
+
+        JButton plotButton = new JButton("Plot");
+        plotButton.addActionListener(_ -> plotSurface());
+        inputPanel.add(plotButton);
+
+        cancelButton.addActionListener(_ -> cancelPlot());
+        inputPanel.add(cancelButton);
+        inputPanel.add(progressBar);
+        inputPanel.add(statusLabel);
+        showIdle();
+
+        setLayout(new BorderLayout());
+        add(inputPanel, BorderLayout.NORTH);
+        add(surfacePanel, BorderLayout.CENTER);
+
+        functionText = functionInput.getText();
+        setVisible(true);
+    }
+
+    /**
+     * Shows the surface and follows the mouse: dragging pans by whole pixels, so the
+     * tiles already evaluated stay valid, and the wheel zooms around the pointer.
+     */
+    private final class SurfacePanel extends JComponent {
+        private View shown;
+        private Point dragged;
+
+        SurfacePanel() {
+            MouseAdapter mouse = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    dragged = e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    window = window.panned(e.getX() - dragged.x, e.getY() - dragged.y);
+                    dragged = e.getPoint();
+                    redraw();
+                }
+
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    zoom -= e.getWheelRotation();
+                    double spacing = DEFAULT_SPACING * Math.pow(2, -(double) zoom / ZOOM_STEPS_PER_DOUBLING);
+                    window = window.zoomed(spacing, e.getX(), e.getY());
+                    redraw();
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
+            addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    window = window.resized(Math.max(1, getWidth()), Math.max(1, getHeight()));
+                    redraw();
+                }
+            });
+        }
+
+        /**
+         * Replaces the image shown, handing the previous one back for reuse.
+         */
+        void show(View view) {
+            if (shown != null) {
+                recycle(shown.image());
+            }
+            shown = view;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.clearRect(0, 0, getWidth(), getHeight());
+            if (shown == null) {
+                return;
+            }
+            SurfaceSampler.Window from = shown.window();
+            double scale = from.spacing() / window.spacing();
+            int x = (int) Math.round(from.left() * scale - window.left());
+            int y = (int) Math.round(from.top() * scale - window.top());
+            int width = (int) Math.round(from.width() * scale);
+            int height = (int) Math.round(from.height() * scale);
+            g.drawImage(shown.image(), x, y, x + width, y + height, 0, 0, from.width(), from.height(), null);
+        }
+    }
+
+    /**
+     * Plots the typed function over the current window.
+     */
+    private void plotSurface() {
+        functionText = functionInput.getText();
+        redraw();
+    }
+
+    /**
+     * Draws the current window in the background, replacing any drawing still in
+     * progress. The coarse image is shown as soon as it is ready, unless the run has been
+     * superseded by then.
+     */
+    private void redraw() {
+        if (functionText == null || functionText.isBlank()) {
+            return;
+        }
+        String text = functionText;
+        SurfaceSampler.Window target = window;
+        boolean contours = contoursBox.isSelected();
+        showBusy();
+        plotter.submit(monitor -> {
+            SurfaceFunction function = SurfaceFunction.compile(text);
+            TaskMonitor fine = monitor;
+            if (!SurfaceSampler.isCached(function, target)) {
+                BufferedImage coarse = spareImage(target);
+                SurfaceSampler.Scale scale = SurfaceSampler.render(function, target, COARSE_STEP, contours, coarse,
+                        monitor.range(0, 10));
+                SwingUtilities.invokeLater(() -> {
+                    if (monitor.isCancelled()) {
+                        recycle(coarse);
+                    }
+                    else {
+                        surfacePanel.show(new View(coarse, target, scale));
+                    }
+                });
+                fine = monitor.range(10, 100);
+            }
+            long sampleStart = EngineMetrics.start();
+            BufferedImage image = spareImage(target);
+            SurfaceSampler.Scale scale = SurfaceSampler.render(function, target, 1, contours, image, fine);
+            EngineMetrics.record(EngineMetrics.Stage.SAMPLE, sampleStart);
+            return new View(image, target, scale);
+        }, view -> {
+            surfacePanel.show(view);
+            showIdle();
+            SurfaceSampler.Scale scale = view.scale();
+            statusLabel.setText(Double.isNaN(scale.min())
+                    ? "Undefined everywhere in view"
+                    : String.format("z from %.4g to %.4g", scale.min(), scale.max()));
+        });
+    }
+
+    /**
+     * @return an image no longer shown that fits the window, or a new one
+     */
+    private BufferedImage spareImage(SurfaceSampler.Window target) {
+        BufferedImage image;
+        while ((image = spareImages.poll()) != null) {
+            if (image.getWidth() == target.width() && image.getHeight() == target.height()) {
+                return image;
+            }
+        }
+        return new BufferedImage(target.width(), target.height(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    private void recycle(BufferedImage image) {
+        if (spareImages.size() < SPARE_IMAGES) {
+            spareImages.offer(image);
+        }
+    }
+
+    private void cancelPlot() {
+        plotter.cancel();
+        showIdle();
+        statusLabel.setText("Cancelled");
+    }
+
+    private void plotFailed(Throwable error) {
+        showIdle();
+        statusLabel.setText("Error: " + error.getMessage());
+    }
+
+    private void showBusy() {
+        statusLabel.setText("");
+        progressBar.setVisible(true);
+        cancelButton.setEnabled(true);
+    }
+
+    private void showIdle() {
+        progressBar.setVisible(false);
+        cancelButton.setEnabled(false);
+    }
+
+    public static void main(String[] args) {
+        new SurfaceTool();
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * A TaskMonitor is how long-running work learns that it should stop and tells how far it
+ * has come. Work checks {@link #checkCancelled()} between steps, so cancelling never
+ * interrupts it halfway through a step.
+ */
+public interface TaskMonitor {
+    /**
+     * A monitor for work nobody watches: it is never cancelled and ignores progress.
+     */
+    TaskMonitor NONE = new TaskMonitor() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void progress(int percent) {
+        }
+    };
+
+    /**
+     * @return true once the work is no longer wanted
+     */
+    boolean isCancelled();
+
+    /**
+     * Reports progress.
+     *
+     * @param percent share of the work done, from 0 to 100
+     */
+    void progress(int percent);
+
+    /**
+     * @throws CancellationException if the work is no longer wanted
+     */
+    default void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Creates a monitor for one step of the work, whose progress from 0 to 100 is reported
+     * to this monitor as progress from {@code from} to {@code to}.
+     *
+     * @return monitor for the step
+     */
+    default TaskMonitor range(int from, int to) {
+        TaskMonitor parent = this;
+        return new TaskMonitor() {
+            @Override
+            public boolean isCancelled() {
+                return parent.isCancelled();
+            }
+
+            @Override
+            public void progress(int percent) {
+                parent.progress(from + (to - from) * percent / 100);
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.List;
+
+/**
+ * A function defined by the user, such as {@code f(x) = x^2 + a}, that expressions can
+ * call like a built-in one. Calls are inlined when the calling expression is compiled, so
+ * a compiled expression never calls anything at run time.
+ *
+ * @param name       name the function is called by
+ * @param parameters names of the parameters, at least one
+ * @param body       parsed, unoptimized program of the function; its variables are the
+ *                   parameters, in order, followed by the names it reads from the caller
+ */
+public record UserFunction(String name, List<String> parameters, CompiledExpression body) {
+    public UserFunction {
+        parameters = List.copyOf(parameters);
+        if (parameters.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one parameter for " + name);
+        }
+        String[] variables = body.variables();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i >= variables.length || !variables[i].equals(parameters.get(i))) {
+                throw new IllegalArgumentException("Expected the body of " + name + " to start with its parameters");
+            }
+        }
+    }
+
+    /**
+     * @return the names the body reads from the caller, which is every variable of the body
+     *         that is not a parameter
+     */
+    public List<String> globals() {
+        String[] variables = body.variables();
+        return List.of(variables).subList(parameters.size(), variables.length);
+    }
+}
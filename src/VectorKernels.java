@@ -0,0 +1,35 @@
+/**
+ * The VectorKernels interface is the part of the column evaluator that can run on the JDK
+ * Vector API: the powers and functions, which the JIT does not vectorize on its own as it
+ * does the arithmetic loops. The implementation lives in {@code vector/src}, is compiled
+ * only by the {@code vector} build profile, and needs
+ * {@code --add-modules jdk.incubator.vector} at run time; without either, {@link #load()}
+ * finds none and the evaluator keeps its scalar loops. Vector results may differ from
+ * {@link Math} in the last bit.
+ */
+interface VectorKernels {
+    /**
+     * Replaces each of the first n values with the function of it.
+     *
+     * @return false, leaving the values alone, if the function has no vector form
+     */
+    boolean applyFunction(int opcode, double[] values, int n);
+
+    /**
+     * Raises each of the first n bases to the exponent in the same row.
+     */
+    void power(double[] bases, double[] exponents, int n);
+
+    /**
+     * @return the Vector API kernels, or null if they were not built or the incubator
+     *         module is not loaded
+     */
+    static VectorKernels load() {
+        try {
+            return (VectorKernels) Class.forName("IncubatorVectorKernels").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,699 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The Workspace class holds definitions that build on each other like the cells of a
+ * spreadsheet: variables such as {@code a = 3} or {@code b = a * 2}, and functions such as
+ * {@code f(x) = x^2 + a}, which expressions call like built-in ones. Each definition is
+ * compiled once, with the functions it calls inlined, and the workspace keeps the graph of
+ * which definitions refer to which.
+ * <p>
+ * Redefining a name updates only what depends on it, in dependency order: definitions
+ * that call a changed function are compiled again, and variables that read a changed
+ * value are evaluated again with the program they already have. A variable whose value
+ * comes out the same does not count as changed, so the update stops there. Watched
+ * formulas, such as the results shown in a history view, are updated the same way, and
+ * listeners are told which names and formulas changed.
+ * <p>
+ * Defining and watching each come in two steps, so that a view can do the slow part off
+ * its event thread and publish the outcome only if it still wants it: {@link #stage}
+ * compiles and evaluates a definition and everything it affects without changing the
+ * workspace, and {@link #commit} applies it; likewise {@link #formula} evaluates an
+ * expression and {@link #watch(Formula)} starts updating it. A staged definition or
+ * formula can only be committed while the definitions are still those it was computed
+ * against.
+ * <p>
+ * A definition that refers to an unknown name, that would depend on itself, or that
+ * would leave a definition depending on it unable to compile is rejected, and the
+ * workspace is left unchanged. Methods are synchronized, so views on different threads
+ * can share a workspace.
+ */
+public final class Workspace {
+    private static final String DEFINITION_FORMAT =
+            "Error: Expected a definition such as a = 3 or f(x, y) = x^2 + y";
+
+    private final Calculator.AngleUnit angleUnit;
+    private final Lexer lexer = new Lexer();
+    private final Map<String, Definition> definitions = new HashMap<>();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private final Map<String, Set<Formula>> watchers = new HashMap<>();
+    private final List<WorkspaceListener> listeners = new CopyOnWriteArrayList<>();
+    private long revision;
+
+    /**
+     * A variable, with its program and value, or a function.
+     *
+     * @param text       the right-hand side of the definition
+     * @param references names of other definitions the text refers to
+     * @param program    program of a variable, or null for a function
+     * @param value      value of a variable
+     * @param function   the function, or null for a variable
+     */
+    private record Definition(String text, Set<String> references, CompiledExpression program, double value,
+                              UserFunction function) {
+        boolean isFunction() {
+            return function != null;
+        }
+    }
+
+    /**
+     * A program compiled against the workspace, with the names its text refers to.
+     */
+    private record Compiled(Set<String> references, CompiledExpression program) {
+    }
+
+    /**
+     * An expression evaluated against the workspace, such as {@code f(2) + a}. A watched
+     * formula keeps its value up to date as the definitions it depends on change; if a
+     * change leaves it unable to compile, its value becomes NaN.
+     */
+    public static final class Formula {
+        private final String text;
+        private final long revision;
+        private volatile Set<String> references;
+        private volatile CompiledExpression program;
+        private volatile double value;
+        private boolean watched;
+
+        private Formula(String text, Compiled compiled, double value, long revision) {
+            this.text = text;
+            this.references = compiled.references();
+            this.program = compiled.program();
+            this.value = value;
+            this.revision = revision;
+        }
+
+        /**
+         * @return the expression text
+         */
+        public String text() {
+            return text;
+        }
+
+        /**
+         * @return the postfix form of the program, with calls inlined
+         */
+        public String postfix() {
+            return program.toPostFix();
+        }
+
+        /**
+         * @return the current value
+         */
+        public double value() {
+            return value;
+        }
+
+        /**
+         * @return names of the definitions the formula reads, directly or through the
+         *         functions it calls
+         */
+        Set<String> names() {
+            Set<String> names = new HashSet<>(references);
+            names.addAll(List.of(program.variables()));
+            return names;
+        }
+    }
+
+    /**
+     * The new program and value of a watched formula, or just its value if the program is
+     * the one it has.
+     */
+    private record FormulaUpdate(Compiled compiled, double value) {
+    }
+
+    /**
+     * A definition compiled and evaluated, with everything it affects, but not yet
+     * committed to the workspace.
+     */
+    public static final class Staged {
+        private final long revision;
+        private final String name;
+        private final Definition previous;
+        private final Definition defined;
+        private final Map<String, Definition> definitions;
+        private final Set<String> changed;
+        private final Map<Formula, FormulaUpdate> formulas;
+
+        private Staged(long revision, String name, Definition previous, Definition defined,
+                       Map<String, Definition> definitions, Set<String> changed, Map<Formula, FormulaUpdate> formulas) {
+            this.revision = revision;
+            this.name = name;
+            this.previous = previous;
+            this.defined = defined;
+            this.definitions = definitions;
+            this.changed = changed;
+            this.formulas = formulas;
+        }
+    }
+
+    /**
+     * What one definition changed.
+     *
+     * @param names    definitions that were compiled again or have a new value, including
+     *                 the one defined
+     * @param formulas watched formulas that were updated
+     */
+    public record Change(Set<String> names, List<Formula> formulas) {
+        /**
+         * @return true if any of the given names changed
+         */
+        public boolean affects(Set<String> used) {
+            for (String name : used) {
+                if (names.contains(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param angleUnit unit of the arguments of sin, cos and tan in every definition
+     */
+    public Workspace(Calculator.AngleUnit angleUnit) {
+        this.angleUnit = angleUnit;
+    }
+
+    /**
+     * @return true if the text is a definition rather than an expression
+     */
+    public static boolean isDefinition(String text) {
+        return text.indexOf('=') >= 0;
+    }
+
+    /**
+     * Adds or replaces a definition and updates everything that depends on it.
+     *
+     * @param text a variable such as {@code a = 3} or a function such as
+     *             {@code f(x, y) = x^2 + y}
+     * @return what changed
+     * @throws IllegalArgumentException if the definition does not compile, would depend
+     *                                  on itself, or would break a definition depending on it
+     */
+    public Change define(String text) {
+        Change change;
+        synchronized (this) {
+            change = apply(stage(text));
+        }
+        notifyListeners(change);
+        return change;
+    }
+
+    /**
+     * Applies a staged definition and tells the listeners what changed. Nothing is
+     * compiled or evaluated.
+     *
+     * @return what changed
+     * @throws IllegalStateException if another definition or watch was committed since the
+     *                               definition was staged
+     */
+    public Change commit(Staged staged) {
+        Change change;
+        synchronized (this) {
+            checkRevision(staged.revision);
+            change = apply(staged);
+        }
+        notifyListeners(change);
+        return change;
+    }
+
+    /**
+     * @return the value of a variable
+     * @throws IllegalArgumentException if there is no variable of that name
+     */
+    public synchronized double value(String name) {
+        Definition definition = definitions.get(name);
+        if (definition == null || definition.isFunction()) {
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        }
+        return definition.value();
+    }
+
+    /**
+     * Evaluates an expression against the current definitions and keeps its value up to
+     * date until {@link #unwatch} is called.
+     *
+     * @return the evaluated formula
+     * @throws IllegalArgumentException if the expression does not compile
+     */
+    public synchronized Formula watch(String text) {
+        Formula formula = formula(text);
+        watch(formula);
+        return formula;
+    }
+
+    /**
+     * Compiles and evaluates an expression against the current definitions, without
+     * watching it yet.
+     *
+     * @return the evaluated formula, to {@link #watch(Formula)}
+     * @throws IllegalArgumentException if the expression does not compile
+     */
+    public synchronized Formula formula(String text) {
+        Compiled compiled = compile(text, List.of(), Map.of());
+        return new Formula(text, compiled, evaluate(compiled.program(), Map.of()), revision);
+    }
+
+    /**
+     * Keeps the value of a formula from {@link #formula} up to date until {@link #unwatch}
+     * is called. Nothing is compiled or evaluated.
+     *
+     * @throws IllegalStateException if a definition was committed since the formula was
+     *                               evaluated, or the formula is already watched
+     */
+    public synchronized void watch(Formula formula) {
+        checkRevision(formula.revision);
+        if (formula.watched) {
+            throw new IllegalStateException("Formula is already watched: " + formula.text);
+        }
+        register(formula);
+        revision++;
+    }
+
+    /**
+     * Stops updating a watched formula.
+     */
+    public synchronized void unwatch(Formula formula) {
+        formula.watched = false;
+        for (String name : formula.names()) {
+            Set<Formula> watching = watchers.get(name);
+            if (watching != null && watching.remove(formula) && watching.isEmpty()) {
+                watchers.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Evaluates an expression against the current definitions once.
+     *
+     * @return the value
+     * @throws IllegalArgumentException if the expression does not compile
+     */
+    public synchronized double evaluate(String text) {
+        return evaluate(compile(text, List.of(), Map.of()).program(), Map.of());
+    }
+
+    /**
+     * Compiles an expression of the given parameters against the current definitions,
+     * for callers such as the graphing tool that evaluate it many times: calls are
+     * inlined and variables are replaced by their current values. The expression itself
+     * is compiled in the given angle unit and syntax, such as those of a graph; the
+     * functions it calls keep the workspace's, which they were defined in.
+     *
+     * @return the expression tree, whose variables are the parameters
+     * @throws IllegalArgumentException if the expression does not compile
+     */
+    public synchronized ExpressionNode tree(String text, Calculator.AngleUnit angleUnit, Calculator.Syntax syntax,
+                                            String... parameters) {
+        CompiledExpression program = compile(text, List.of(parameters), Map.of(), angleUnit, syntax).program();
+        String[] variables = program.variables();
+        double[] values = new double[variables.length];
+        for (int i = parameters.length; i < variables.length; i++) {
+            values[i] = definitions.get(variables[i]).value();
+        }
+        return bind(program.toTree(), parameters.length, values);
+    }
+
+    /**
+     * @return true if the text refers to any definition of the workspace; text that does
+     *         not parse refers to none
+     */
+    public synchronized boolean uses(String text) {
+        return !names(text).isEmpty();
+    }
+
+    /**
+     * @return names of the definitions the text depends on, directly or through other
+     *         definitions; empty if the text does not parse
+     */
+    public synchronized Set<String> names(String text) {
+        Set<String> names = new HashSet<>();
+        if (!lexer.isValid(text)) {
+            return names;
+        }
+        List<String> pending = new ArrayList<>();
+        for (int i = 0; i < lexer.count(); i++) {
+            if (lexer.type(i) == Lexer.NAME || lexer.type(i) == Lexer.CALL) {
+                pending.add(lexer.text(i));
+            }
+        }
+        while (!pending.isEmpty()) {
+            String name = pending.removeLast();
+            Definition definition = definitions.get(name);
+            if (definition != null && names.add(name)) {
+                pending.addAll(definition.references());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Registers a listener that is told about every change from now on.
+     */
+    public void addListener(WorkspaceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     */
+    public void removeListener(WorkspaceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Compiles and evaluates a definition, then recompiles or evaluates again each
+     * definition and watched formula that depends on it, in dependency order, into a
+     * staging map. The workspace is not changed, so a rejected definition changes nothing.
+     *
+     * @param text a variable such as {@code a = 3} or a function such as
+     *             {@code f(x, y) = x^2 + y}
+     * @return the definition, to {@link #commit}
+     * @throws IllegalArgumentException if the definition does not compile, would depend
+     *                                  on itself, or would break a definition depending on it
+     */
+    public synchronized Staged stage(String text) {
+        int equals = text.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException(DEFINITION_FORMAT);
+        }
+        String body = text.substring(equals + 1).strip();
+        List<String> parameters = new ArrayList<>();
+        String name = parseHeader(text.substring(0, equals), parameters);
+
+        Map<String, Definition> staged = new HashMap<>();
+        Definition previous = definitions.get(name);
+        Definition defined = compileDefinition(name, parameters, body, staged);
+        List<String> affected = dependentsInOrder(name);
+        if (defined.references().contains(name) || intersects(defined.references(), new HashSet<>(affected))) {
+            throw new IllegalArgumentException("Error: Circular definition of " + name);
+        }
+        staged.put(name, defined);
+        Set<String> changedCode = new HashSet<>();
+        Set<String> changedValues = new HashSet<>();
+        if (defined.isFunction() || previous != null && previous.isFunction()) {
+            changedCode.add(name);
+        }
+        if (!defined.isFunction() && (previous == null || previous.isFunction()
+                || Double.compare(previous.value(), defined.value()) != 0)) {
+            changedValues.add(name);
+        }
+
+        for (String dependent : affected) {
+            Definition current = definitions.get(dependent);
+            Definition next = current;
+            if (intersects(current.references(), changedCode)) {
+                List<String> dependentParameters = current.isFunction() ? current.function().parameters() : List.of();
+                try {
+                    next = compileDefinition(dependent, dependentParameters, current.text(), staged);
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Error: " + dependent + " depends on " + name
+                            + " and would no longer compile: " + e.getMessage());
+                }
+                if (next.isFunction()) {
+                    changedCode.add(dependent);
+                }
+            }
+            else if (!current.isFunction() && intersects(current.program().variables(), changedValues)) {
+                next = new Definition(current.text(), current.references(), current.program(),
+                        evaluate(current.program(), staged), null);
+            }
+            if (next != current) {
+                staged.put(dependent, next);
+                if (!next.isFunction() && Double.compare(current.value(), next.value()) != 0) {
+                    changedValues.add(dependent);
+                }
+            }
+        }
+
+        Set<String> changed = new LinkedHashSet<>(changedCode);
+        changed.addAll(changedValues);
+        return new Staged(revision, name, previous, defined, staged, changed,
+                stageWatchers(changed, changedCode, changedValues, staged));
+    }
+
+    /**
+     * Commits a staged definition and the new values of the formulas it affects.
+     */
+    private Change apply(Staged staged) {
+        if (staged.previous != null) {
+            for (String reference : staged.previous.references()) {
+                dependents.get(reference).remove(staged.name);
+            }
+        }
+        for (String reference : staged.defined.references()) {
+            dependents.computeIfAbsent(reference, r -> new LinkedHashSet<>()).add(staged.name);
+        }
+        definitions.putAll(staged.definitions);
+        revision++;
+
+        List<Formula> updated = new ArrayList<>();
+        for (Map.Entry<Formula, FormulaUpdate> entry : staged.formulas.entrySet()) {
+            Formula formula = entry.getKey();
+            FormulaUpdate update = entry.getValue();
+            if (!formula.watched) {
+                continue;
+            }
+            if (update.compiled() != null) {
+                unwatch(formula);
+                formula.references = update.compiled().references();
+                formula.program = update.compiled().program();
+                register(formula);
+            }
+            formula.value = update.value();
+            updated.add(formula);
+        }
+        return new Change(staged.changed, updated);
+    }
+
+    /**
+     * @throws IllegalStateException if the workspace is no longer at the revision
+     */
+    private void checkRevision(long staged) {
+        if (staged != revision) {
+            throw new IllegalStateException("Definitions changed meanwhile; evaluate again");
+        }
+    }
+
+    private void register(Formula formula) {
+        formula.watched = true;
+        for (String name : formula.names()) {
+            watchers.computeIfAbsent(name, n -> new LinkedHashSet<>()).add(formula);
+        }
+    }
+
+    private void notifyListeners(Change change) {
+        for (WorkspaceListener listener : listeners) {
+            listener.changed(change);
+        }
+    }
+
+    /**
+     * Parses the left-hand side of a definition: a name, or a name with parameters.
+     *
+     * @param parameters receives the parameters, if any
+     * @return the name being defined
+     */
+    private String parseHeader(String header, List<String> parameters) {
+        try {
+            lexer.tokenize(header);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(DEFINITION_FORMAT);
+        }
+        int count = lexer.count();
+        if (count == 1 && lexer.type(0) == Lexer.NAME) {
+            return lexer.text(0);
+        }
+        if (count < 4 || lexer.type(0) != Lexer.CALL || lexer.type(count - 1) != Lexer.RIGHT_PARENTHESIS) {
+            throw new IllegalArgumentException(DEFINITION_FORMAT);
+        }
+        for (int i = 2; i < count; i += 2) {
+            int separator = i + 1 == count - 1 ? Lexer.RIGHT_PARENTHESIS : Lexer.COMMA;
+            if (lexer.type(i) != Lexer.NAME || lexer.type(i + 1) != separator) {
+                throw new IllegalArgumentException(DEFINITION_FORMAT);
+            }
+            String parameter = lexer.text(i);
+            if (parameters.contains(parameter)) {
+                throw new IllegalArgumentException("Error: Parameter " + parameter + " appears twice");
+            }
+            parameters.add(parameter);
+        }
+        return lexer.text(0);
+    }
+
+    /**
+     * Compiles the right-hand side of a definition and, for a variable, evaluates it.
+     */
+    private Definition compileDefinition(String name, List<String> parameters, String body,
+                                         Map<String, Definition> staged) {
+        Compiled compiled = compile(body, parameters, staged);
+        if (parameters.isEmpty()) {
+            return new Definition(body, compiled.references(), compiled.program(),
+                    evaluate(compiled.program(), staged), null);
+        }
+        return new Definition(body, compiled.references(), null, Double.NaN,
+                new UserFunction(name, parameters, compiled.program()));
+    }
+
+    /**
+     * Compiles an expression of the given parameters. Its variables are the parameters
+     * followed by every workspace variable it reads, directly or inside the functions it
+     * calls, since those are inlined.
+     */
+    private Compiled compile(String text, List<String> parameters, Map<String, Definition> staged) {
+        return compile(text, parameters, staged, angleUnit, Calculator.Syntax.CALCULATOR);
+    }
+
+    private Compiled compile(String text, List<String> parameters, Map<String, Definition> staged,
+                             Calculator.AngleUnit angleUnit, Calculator.Syntax syntax) {
+        lexer.tokenize(text);
+        Set<String> references = new LinkedHashSet<>();
+        Set<String> globals = new LinkedHashSet<>();
+        Map<String, UserFunction> functions = new HashMap<>();
+        for (int i = 0; i < lexer.count(); i++) {
+            String name = lexer.type(i) == Lexer.NAME || lexer.type(i) == Lexer.CALL ? lexer.text(i) : null;
+            if (name == null || lexer.type(i) == Lexer.NAME && parameters.contains(name)) {
+                continue;
+            }
+            Definition definition = lookup(name, staged);
+            if (lexer.type(i) == Lexer.NAME) {
+                if (definition == null || definition.isFunction()) {
+                    throw new IllegalArgumentException("Unknown variable: " + name);
+                }
+                globals.add(name);
+            }
+            else {
+                if (definition == null || !definition.isFunction()) {
+                    throw new IllegalArgumentException("Unknown function: " + name);
+                }
+                for (String global : definition.function().globals()) {
+                    if (parameters.contains(global)) {
+                        throw new IllegalArgumentException("Error: Parameter " + global + " hides the variable "
+                                + global + " that " + name + " reads");
+                    }
+                    globals.add(global);
+                }
+                functions.put(name, definition.function());
+            }
+            references.add(name);
+        }
+        List<String> variables = new ArrayList<>(parameters);
+        variables.addAll(globals);
+        Calculator calculator = new Calculator(text, angleUnit, syntax, functions, variables.toArray(new String[0]));
+        return new Compiled(references, calculator.program());
+    }
+
+    /**
+     * Evaluates a program with the values of the workspace variables it reads.
+     */
+    private double evaluate(CompiledExpression program, Map<String, Definition> staged) {
+        String[] variables = program.variables();
+        double[] values = new double[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            values[i] = lookup(variables[i], staged).value();
+        }
+        return program.evaluate(new double[program.stackSize()], values);
+    }
+
+    private Definition lookup(String name, Map<String, Definition> staged) {
+        Definition definition = staged.get(name);
+        return definition != null ? definition : definitions.get(name);
+    }
+
+    /**
+     * @return every definition that depends on the name, directly or not, each after all
+     *         the definitions it depends on
+     */
+    private List<String> dependentsInOrder(String name) {
+        List<String> postOrder = new ArrayList<>();
+        visitDependents(name, new HashSet<>(), postOrder);
+        postOrder.removeLast();
+        return postOrder.reversed();
+    }
+
+    private void visitDependents(String name, Set<String> visited, List<String> postOrder) {
+        if (!visited.add(name)) {
+            return;
+        }
+        for (String dependent : dependents.getOrDefault(name, Set.of())) {
+            visitDependents(dependent, visited, postOrder);
+        }
+        postOrder.add(name);
+    }
+
+    /**
+     * Recompiles or evaluates again, against the staged definitions, the watched formulas
+     * that read a changed name. A formula that no longer compiles keeps its program and
+     * gets the value NaN.
+     *
+     * @return the new program or value of each formula to update
+     */
+    private Map<Formula, FormulaUpdate> stageWatchers(Set<String> changed, Set<String> changedCode,
+                                                      Set<String> changedValues, Map<String, Definition> staged) {
+        Map<Formula, FormulaUpdate> updates = new LinkedHashMap<>();
+        for (String name : changed) {
+            for (Formula formula : watchers.getOrDefault(name, Set.of())) {
+                if (updates.containsKey(formula)) {
+                    continue;
+                }
+                if (intersects(formula.references, changedCode)) {
+                    FormulaUpdate update;
+                    try {
+                        Compiled compiled = compile(formula.text, List.of(), staged);
+                        update = new FormulaUpdate(compiled, evaluate(compiled.program(), staged));
+                    }
+                    catch (IllegalArgumentException e) {
+                        update = new FormulaUpdate(null, Double.NaN);
+                    }
+                    updates.put(formula, update);
+                }
+                else if (intersects(formula.program.variables(), changedValues)) {
+                    updates.put(formula, new FormulaUpdate(null, evaluate(formula.program, staged)));
+                }
+            }
+        }
+        return updates;
+    }
+
+    private static boolean intersects(Set<String> names, Set<String> changed) {
+        for (String name : names) {
+            if (changed.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean intersects(String[] names, Set<String> changed) {
+        for (String name : names) {
+            if (changed.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the tree with every variable from {@code first} on replaced by its value
+     */
+    private static ExpressionNode bind(ExpressionNode node, int first, double[] values) {
+        return switch (node) {
+            case ExpressionNode.Variable variable when variable.index() >= first ->
+                    new ExpressionNode.Constant(values[variable.index()]);
+            case ExpressionNode.Unary unary -> new ExpressionNode.Unary(unary.opcode(), bind(unary.operand(), first, values));
+            case ExpressionNode.Binary binary -> new ExpressionNode.Binary(binary.opcode(),
+                    bind(binary.left(), first, values), bind(binary.right(), first, values));
+            default -> node;
+        };
+    }
+}
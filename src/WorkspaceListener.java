@@ -0,0 +1,14 @@
+/**
+ * Receives each change to a {@link Workspace}, so views can refresh just what depends on
+ * the definitions that changed. Listeners are called on the thread that made the change,
+ * once the workspace is consistent again.
+ */
+@FunctionalInterface
+public interface WorkspaceListener {
+    /**
+     * Called after a definition is added or changed.
+     *
+     * @param change the names and watched formulas that changed
+     */
+    void changed(Workspace.Change change);
+}
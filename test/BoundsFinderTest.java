@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BoundsFinderTest {
+    private static final String[] X = {"x"};
+    /**
+     * Start of the grid, off zero so that no grid point is where sin(x)/x is undefined.
+     */
+    private static final double START = -10.01;
+    private static final double STEP = 0.05;
+    private static final int INTERVALS = 400;
+    private static final int POINTS = 32;
+
+    private static CompiledExpression program(String text) {
+        return new Calculator(text, Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH, Map.of(), X).program();
+    }
+
+    private static BoundsFinder bound(String text) {
+        BoundsFinder finder = new BoundsFinder(program(text).toTree(), X);
+        finder.bound(START, STEP, INTERVALS);
+        return finder;
+    }
+
+    @Test
+    void settledIntervalsAwayFromPolesHoldNoVisiblePoint() {
+        String[] functions = {"sin(x)", "x^2", "x^3/50", "1/x", "tan(x)", "tan(x)^2", "sqrt(x)", "log(x)", "sin(x)/x",
+            "x!", "1/(x^2-4)", "2^x", "sqrt(x^2)"};
+        double[][] ranges = {{-2, 2}, {0.5, 0.75}, {-100, -50}, {3, 1e6}};
+        boolean[] settled = new boolean[INTERVALS];
+        double[] breaks = new double[INTERVALS];
+        for (String function : functions) {
+            CompiledExpression program = program(function);
+            BoundsFinder finder = bound(function);
+            double[] stack = new double[program.stackSize()];
+            for (double[] range : ranges) {
+                finder.settle(range[0], range[1], settled, breaks);
+                for (int c = 0; c < INTERVALS; c++) {
+                    // Within a sliver about a pole, the curve may pass through the range
+                    // narrower than a pixel.
+                    if (!settled[c] || finder.isNearSingularity(c)) {
+                        continue;
+                    }
+                    for (int p = 0; p <= POINTS; p++) {
+                        double x = START + (c + (double) p / POINTS) * STEP;
+                        double y = program.evaluate(stack, new double[] {x});
+                        assertFalse(y >= range[0] && y <= range[1],
+                                function + " = " + y + " at x=" + x + " in settled interval " + c);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void polesAreBrokenAndRemovableSingularitiesAreNot() {
+        boolean[] settled = new boolean[INTERVALS];
+        double[] breaks = new double[INTERVALS];
+
+        bound("tan(x)").settle(-5, 5, settled, breaks);
+        int poles = 0;
+        for (int c = 0; c < INTERVALS; c++) {
+            if (!Double.isNaN(breaks[c])) {
+                double pole = Math.PI / 2 + Math.round((breaks[c] - Math.PI / 2) / Math.PI) * Math.PI;
+                assertEquals(pole, breaks[c], STEP, "break at " + breaks[c]);
+                poles++;
+            }
+        }
+        assertEquals(6, poles);
+
+        bound("1/x").settle(-5, 5, settled, breaks);
+        int at = (int) ((0 - START) / STEP);
+        assertEquals(0, breaks[at], STEP);
+
+        BoundsFinder sinc = bound("sin(x)/x");
+        sinc.settle(-5, 5, settled, breaks);
+        for (int c = 0; c < INTERVALS; c++) {
+            assertTrue(Double.isNaN(breaks[c]), "break in sin(x)/x at " + breaks[c]);
+        }
+    }
+
+    @Test
+    void undefinedPartsAreReported() {
+        assertTrue(bound("sqrt(x)").isUndefinedSomewhere());
+        assertTrue(bound("log(x)").isUndefinedSomewhere());
+        assertFalse(bound("x^2").isUndefinedSomewhere());
+        assertFalse(bound("1/x").isUndefinedSomewhere());
+    }
+
+    @Test
+    void intervalsNextToASingularityAreMarked() {
+        BoundsFinder finder = bound("1/x");
+        int at = (int) ((0 - START) / STEP);
+        assertTrue(finder.isNearSingularity(at));
+        assertFalse(finder.isNearSingularity(0));
+        assertFalse(finder.isNearSingularity(INTERVALS - 1));
+    }
+}
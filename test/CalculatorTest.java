@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class CalculatorTest {
+    private static final String[] XYZ = {"x", "y", "z"};
+
+    private static String postfix(String input, Calculator.Syntax syntax) {
+        return new Calculator(input, Calculator.AngleUnit.RADIANS, syntax, Map.of(), XYZ).convertToPostFix();
+    }
+
+    private static void assertBoth(String expected, String input) {
+        assertEquals(expected, postfix(input, Calculator.Syntax.CALCULATOR), input);
+        assertEquals(expected, postfix(input, Calculator.Syntax.GRAPH), input);
+    }
+
+    @Test
+    void precedenceIsTheSameInBothSyntaxes() {
+        assertBoth("2 3 4 * +", "2+3*4");
+        assertBoth("2 3 * 4 +", "2*3+4");
+        assertBoth("2 3 ^ 2 *", "2^3*2");
+        assertBoth("x 2 ^ neg", "-x^2");
+        assertBoth("2 x neg *", "2*-x");
+        assertBoth("3 ! neg", "-3!");
+        assertBoth("3 ! 2 ^", "3!^2");
+        assertBoth("2 2 ! ^", "2^2!");
+        assertBoth("x sin 2 ^", "sin(x)^2");
+        assertBoth("1 2 3 - -", "1-(2-3)");
+    }
+
+    @Test
+    void operatorsOtherThanPowerGroupFromTheLeft() {
+        assertBoth("x y - z -", "x-y-z");
+        assertBoth("x y / z /", "x/y/z");
+        assertBoth("x y / z *", "x/y*z");
+        assertBoth("x y - z +", "x-y+z");
+        assertEquals(-4, new Calculator("1-2-3").evaluate());
+        assertEquals(1, new Calculator("8/4/2").evaluate());
+    }
+
+    @Test
+    void powerGroupsFromTheLeftInTheCalculatorAndFromTheRightInGraphs() {
+        assertEquals("x y ^ z ^", postfix("x^y^z", Calculator.Syntax.CALCULATOR));
+        assertEquals("x y z ^ ^", postfix("x^y^z", Calculator.Syntax.GRAPH));
+        assertEquals("x y ^ z ^ 2 *", postfix("x^y^z*2", Calculator.Syntax.CALCULATOR));
+        assertEquals("x y z ^ ^ 2 *", postfix("x^y^z*2", Calculator.Syntax.GRAPH));
+        assertEquals(64, new Calculator("2^3^2").evaluate());
+        assertEquals(512, new Calculator("2^3^2", Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH,
+                Map.of()).evaluate());
+    }
+
+    @Test
+    void logIsDecimalInTheCalculatorAndNaturalInGraphs() {
+        assertEquals("x log", postfix("log(x)", Calculator.Syntax.CALCULATOR));
+        assertEquals("x ln", postfix("log(x)", Calculator.Syntax.GRAPH));
+    }
+
+    @Test
+    void negationBindsLooserThanPower() {
+        assertEquals(-4, new Calculator("-2^2").evaluate());
+        assertEquals(0.5, new Calculator("2^-1").evaluate());
+        assertEquals(2, new Calculator("--2").evaluate());
+    }
+
+    @Test
+    void malformedExpressionsAreRejected() {
+        for (String input : new String[] {"2x", "1+", "(1", "1)", "*2", "sin()"}) {
+            assertThrows(IllegalArgumentException.class, () -> new Calculator(input, XYZ).evaluate(), input);
+        }
+    }
+}
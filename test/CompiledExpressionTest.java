@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CompiledExpressionTest {
+
+    private static CompiledExpression roundTrip(CompiledExpression program) {
+        return CompiledExpression.fromPostFix(program.toPostFix());
+    }
+
+    @Test
+    void negativeZeroKeepsItsSign() {
+        CompiledExpression program = new Calculator("0 * -1").compile();
+        assertEquals(-0.0, program.evaluate());
+        assertEquals(-0.0, roundTrip(program).evaluate());
+        assertEquals(Double.NEGATIVE_INFINITY, 1 / CompiledExpression.fromPostFix("-0").evaluate());
+    }
+
+    @Test
+    void foldedNonFiniteConstantsRoundTrip() {
+        assertEquals(Double.POSITIVE_INFINITY, roundTrip(new Calculator("1/0").compile()).evaluate());
+        assertEquals(Double.NEGATIVE_INFINITY, roundTrip(new Calculator("-1/0").compile()).evaluate());
+        assertTrue(Double.isNaN(roundTrip(new Calculator("0/0").compile()).evaluate()));
+    }
+
+    @Test
+    void constantsRoundTripExactly() {
+        double[] values = {0.1, 1e-300, 1.2345678901234567e200, 4.9e-324, Double.MAX_VALUE, 1e15, -123456789012345.6};
+        for (double value : values) {
+            CompiledExpression program = CompiledExpression.fromPostFix(Double.toString(value));
+            assertEquals(value, roundTrip(program).evaluate(), program.toPostFix());
+        }
+    }
+
+    @Test
+    void numbersFollowTheExpressionGrammar() {
+        for (String token : new String[] {"NaN", "Infinity", "-Infinity", "0x10", "1d", "1f", "1e", "."}) {
+            assertThrows(IllegalArgumentException.class, () -> CompiledExpression.fromPostFix(token), token);
+        }
+        assertEquals(-2.5, CompiledExpression.fromPostFix("-2.5").evaluate());
+        assertEquals(300, CompiledExpression.fromPostFix("3E2").evaluate());
+    }
+}
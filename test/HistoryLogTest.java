@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryLogTest {
+    private static final HistoryEntry FIRST = new HistoryEntry("1+2", "1 2 +", 3);
+    private static final HistoryEntry SECOND = new HistoryEntry("2*3", "2 3 *", 6);
+    private static final HistoryEntry THIRD = new HistoryEntry("4", "4", 4);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopening() throws IOException {
+        Path path = directory.resolve("history.log");
+        try (HistoryLog log = HistoryLog.open(path)) {
+            log.append(FIRST);
+            log.append(SECOND);
+        }
+        try (HistoryLog log = HistoryLog.open(path)) {
+            assertEquals(List.of(FIRST, SECOND), log.readLast(10));
+            assertEquals(List.of(SECOND), log.readLast(1));
+        }
+    }
+
+    @Test
+    void bytesLeftByACrashAfterTheLastRecordAreIgnored() throws IOException {
+        Path path = directory.resolve("history.log");
+        try (HistoryLog log = HistoryLog.open(path)) {
+            log.append(FIRST);
+            log.append(SECOND);
+        }
+        // A record whose length was written over a body cut short, with a negative string length.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putInt(20).putInt(-5).flip(), 8 + recordSize(FIRST) + recordSize(SECOND));
+        }
+        try (HistoryLog log = HistoryLog.open(path)) {
+            assertEquals(List.of(FIRST, SECOND), log.readLast(10));
+            log.append(THIRD);
+        }
+        try (HistoryLog log = HistoryLog.open(path)) {
+            assertEquals(List.of(FIRST, SECOND, THIRD), log.readLast(10));
+        }
+    }
+
+    private static int recordSize(HistoryEntry entry) {
+        return 4 + 4 + entry.expression().getBytes(StandardCharsets.UTF_8).length
+                + 4 + entry.postfix().getBytes(StandardCharsets.UTF_8).length + 8;
+    }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class IntervalArithmeticTest {
+    private static final String[] X = {"x"};
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "sqrt", "log"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "^"};
+    private static final int POINTS = 64;
+
+    private static String randomExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return switch (random.nextInt(3)) {
+                case 0 -> "x";
+                case 1 -> Integer.toString(random.nextInt(4));
+                default -> "0.5";
+            };
+        }
+        return switch (random.nextInt(7)) {
+            case 0, 1 -> FUNCTIONS[random.nextInt(FUNCTIONS.length)] + "(" + randomExpression(random, depth - 1) + ")";
+            case 2 -> "-" + randomExpression(random, depth - 1);
+            case 3 -> "(" + randomExpression(random, depth - 1) + ")!";
+            default -> "(" + randomExpression(random, depth - 1) + OPERATORS[random.nextInt(OPERATORS.length)]
+                    + randomExpression(random, depth - 1) + ")";
+        };
+    }
+
+    /**
+     * Checks that the value at each of a number of points of [a, b], its ends included,
+     * lies within the bounds found for the whole interval, or is undefined.
+     */
+    private static void assertContains(CompiledExpression program, String input, double a, double b) {
+        double[] lowStack = new double[program.stackSize()];
+        double[] highStack = new double[program.stackSize()];
+        program.evaluateInterval(new double[] {a}, new double[] {b}, lowStack, highStack);
+        double low = lowStack[0];
+        double high = highStack[0];
+        double[] stack = new double[program.stackSize()];
+        for (int p = 0; p <= POINTS; p++) {
+            double t = (double) p / POINTS;
+            double x = Math.min(Math.max(a * (1 - t) + b * t, a), b);
+            double value = program.evaluate(stack, new double[] {x});
+            if (!Double.isNaN(value)) {
+                assertTrue(low <= value && value <= high,
+                        input + " = " + value + " at x=" + x + " outside [" + low + ", " + high + "] for [" + a + ", " + b + "]");
+            }
+        }
+    }
+
+    @Test
+    void boundsHoldEveryValueOfRandomExpressions() {
+        Random random = new Random(25);
+        for (int n = 0; n < 3_000; n++) {
+            String input = randomExpression(random, 4);
+            Calculator.AngleUnit unit = random.nextBoolean() ? Calculator.AngleUnit.RADIANS : Calculator.AngleUnit.DEGREES;
+            CompiledExpression program = new Calculator(input, unit, Calculator.Syntax.GRAPH, Map.of(), X).program();
+            for (int k = 0; k < 4; k++) {
+                double a = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(5) - 1);
+                double b = a + random.nextDouble() * Math.pow(10, random.nextInt(4) - 2);
+                assertContains(program, input, a, b);
+            }
+        }
+    }
+
+    @Test
+    void boundsHoldAtTheEdgesOfDomainsAndPeriods() {
+        String[] inputs = {"sqrt(x)", "log(x)", "1/x", "x^0.5", "x^-2", "x^3", "(-2)^x", "x^x", "tan(x)", "sin(x)",
+            "cos(x)", "x!", "sin(x)/x", "0^x", "x^0"};
+        double[][] ranges = {{-1, 0}, {0, 0}, {0, 1}, {-0.0, 0.0}, {-1e-300, 1e-300}, {Math.PI / 2 - 1e-9, Math.PI / 2},
+            {-3.5, -2.5}, {-3, -3}, {1, 2}, {0.5, 4.5}, {1e15, 1e15 + 1000}, {-1e308, 1e308}, {170, 172}};
+        for (String input : inputs) {
+            CompiledExpression program = new Calculator(input, Calculator.AngleUnit.RADIANS, Calculator.Syntax.GRAPH,
+                    Map.of(), X).program();
+            for (double[] range : ranges) {
+                assertContains(program, input, range[0], range[1]);
+            }
+        }
+        // ψ only comes from derivatives of factorials, so it has no name in expressions.
+        CompiledExpression digamma = CompiledExpression.fromTree(
+                new ExpressionNode.Unary(CompiledExpression.DIGAMMA, new ExpressionNode.Variable(0)), X);
+        for (double[] range : ranges) {
+            assertContains(digamma, "digamma(x)", range[0], range[1]);
+        }
+    }
+}
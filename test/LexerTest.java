@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LexerTest {
+    private final Lexer lexer = new Lexer();
+
+    private double parse(String text) {
+        return lexer.parseNumber(text, 0, text.length());
+    }
+
+    private double token(String text) {
+        assertEquals(1, lexer.tokenize(text), text);
+        assertEquals(Lexer.NUMBER, lexer.type(0), text);
+        return lexer.value(0);
+    }
+
+    @Test
+    void numbersConvertLikeParseDouble() {
+        String[] numbers = {
+            "0", "0.1", "123456789012345", "1234567890123456", "9007199254740993",
+            "12345678901234567890123", "0.000000000000000000001234567890123456789",
+            "000000000000000000001.5", "1.0000000000000000000001", "3.14159265358979323846",
+            "1e22", "1e23", "1e-22", "1e-23", "123456789012345e-22", "123456789012345e22",
+            "4.9e-324", "2.4703282292062328e-324", "2.2250738585072011e-308", "1.7976931348623157e308",
+            "1e-400", "1e400", "1e999999999999", "0e999999999999", ".5", "5.", "1E+5", "1E-5",
+        };
+        for (String number : numbers) {
+            double expected = Double.parseDouble(number);
+            assertEquals(expected, parse(number), number);
+            assertEquals(expected, token(number), number);
+        }
+    }
+
+    @Test
+    void randomNumbersConvertLikeParseDouble() {
+        Random random = new Random(42);
+        for (int n = 0; n < 100_000; n++) {
+            StringBuilder number = new StringBuilder();
+            int digits = 1 + random.nextInt(20);
+            int point = random.nextInt(digits + 1);
+            for (int i = 0; i < digits; i++) {
+                if (i == point) {
+                    number.append('.');
+                }
+                number.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                number.append('e').append(random.nextInt(80) - 40);
+            }
+            String text = number.toString();
+            assertEquals(Double.parseDouble(text), parse(text), text);
+        }
+    }
+
+    @Test
+    void negativeZeroKeepsItsSign() {
+        assertEquals(-0.0, parse("-0"));
+        assertEquals(-0.0, parse(" -0.000e5 "));
+        assertEquals(0.0, parse("+0"));
+        assertEquals(-0.0, new Calculator("-0").evaluate());
+    }
+
+    @Test
+    void malformedNumbersAreRejected() {
+        for (String text : new String[] {"", "-", ".", "1e", "1e+", "1.5.2", "--1", "0x1", "NaN", "Infinity", "1 2"}) {
+            assertThrows(NumberFormatException.class, () -> parse(text), text);
+        }
+        for (String text : new String[] {"1e", "2E-", "3e+*2"}) {
+            assertFalse(lexer.isValid(text), text);
+            assertThrows(IllegalArgumentException.class, () -> lexer.tokenize(text), text);
+        }
+    }
+}
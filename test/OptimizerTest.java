@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class OptimizerTest {
+    private static final String[] X = {"x"};
+    private static final String[] XY = {"x", "y"};
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "sqrt", "log"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+    private static double evaluate(CompiledExpression program, double x) {
+        return program.evaluate(new double[program.stackSize()], new double[] {x});
+    }
+
+    @Test
+    void deepExpressionsCompileWithoutOverflowingTheStack() {
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 1; i < 100_000; i++) {
+            sum.append(" + x * ").append(i % 7);
+        }
+        Calculator calculator = new Calculator(sum.toString(), X);
+        CompiledExpression optimized = calculator.compile();
+        assertEquals(evaluate(calculator.program(), 2), evaluate(optimized, 2));
+        assertEquals(599_992, evaluate(optimized, 2));
+    }
+
+    @Test
+    void deeplyNestedFunctionsCompileWithoutOverflowingTheStack() {
+        String nested = "sqrt(".repeat(20_000) + "x" + ")".repeat(20_000);
+        CompiledExpression optimized = new Calculator(nested, X).compile();
+        assertEquals(1, evaluate(optimized, 1));
+    }
+
+    private static String optimizedPostFix(String input) {
+        return new Calculator(input, Calculator.AngleUnit.RADIANS, Calculator.Syntax.CALCULATOR, Map.of(), XY)
+                .convertToOptimizedPostFix();
+    }
+
+    @Test
+    void repeatedSubexpressionsAreComputedOnce() {
+        assertEquals("x sin dup *", optimizedPostFix("sin(x)*sin(x)"));
+        assertEquals("x y + sqrt =t0 t0 2 * +", optimizedPostFix("sqrt(x+y) + sqrt(x+y)*2"));
+        assertEquals("x 1 + =t0 t0 * t0 +", optimizedPostFix("(x+1)^2 + (x+1)"));
+        assertEquals("x y - y x - +", optimizedPostFix("(x-y) + (y-x)"));
+    }
+
+    @Test
+    void smallIntegerPowersAreExpandedBySquaring() {
+        assertEquals("x dup *", optimizedPostFix("x^2"));
+        assertEquals("x dup * dup *", optimizedPostFix("x^4"));
+        assertEquals("x dup * dup * dup *", optimizedPostFix("x^8"));
+        assertEquals("x 9 ^", optimizedPostFix("x^9"));
+        assertEquals("x 0.5 ^", optimizedPostFix("x^0.5"));
+        assertEquals("x -2 ^", optimizedPostFix("x^-2"));
+        assertEquals("1", optimizedPostFix("x^0"));
+        assertEquals("x", optimizedPostFix("x^1"));
+        for (int n = 2; n <= 8; n++) {
+            CompiledExpression optimized = new Calculator("x^" + n, X).compile();
+            for (double x : new double[] {-3.7, -1, -0.0, 0.1, 1.5, 7, 1e30, 1e-30}) {
+                double expected = Math.pow(x, n);
+                assertEquals(expected, evaluate(optimized, x), Math.abs(expected) * 1e-15, "x^" + n + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    void identitiesAndConstantsAreFolded() {
+        assertEquals("6 x +", optimizedPostFix("2*3+x"));
+        assertEquals("x", optimizedPostFix("x*1"));
+        assertEquals("x", optimizedPostFix("1*x/1-0"));
+        // x+0 and 0*x are not identities for -0, infinities and NaN.
+        assertEquals("x 0 +", optimizedPostFix("x+0"));
+        assertEquals("0 x *", optimizedPostFix("0*x"));
+    }
+
+    private static String randomExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return switch (random.nextInt(4)) {
+                case 0 -> "x";
+                case 1 -> "y";
+                case 2 -> Integer.toString(random.nextInt(5));
+                default -> "(" + randomExpression(random, 0) + ")";
+            };
+        }
+        return switch (random.nextInt(6)) {
+            case 0 -> FUNCTIONS[random.nextInt(FUNCTIONS.length)] + "(" + randomExpression(random, depth - 1) + ")";
+            case 1 -> "-" + randomExpression(random, depth - 1);
+            case 2 -> "(" + randomExpression(random, depth - 1) + ")^" + random.nextInt(2);
+            default -> "(" + randomExpression(random, depth - 1) + OPERATORS[random.nextInt(OPERATORS.length)]
+                    + randomExpression(random, depth - 1) + ")";
+        };
+    }
+
+    @Test
+    void optimizedProgramsEvaluateLikeTheParsedOnes() {
+        Random random = new Random(7);
+        double[] values = {-2.5, -1, -0.0, 0, 0.5, 1, 3, Double.NaN, Double.POSITIVE_INFINITY};
+        for (int n = 0; n < 2_000; n++) {
+            String input = randomExpression(random, 6) + "+" + randomExpression(random, 4);
+            Calculator calculator = new Calculator(input, Calculator.AngleUnit.RADIANS, Calculator.Syntax.CALCULATOR,
+                    Map.of(), XY);
+            CompiledExpression parsed = calculator.program();
+            CompiledExpression optimized = calculator.compile();
+            double[] parsedStack = new double[parsed.stackSize()];
+            double[] optimizedStack = new double[optimized.stackSize()];
+            for (double x : values) {
+                for (double y : values) {
+                    double[] variables = {x, y};
+                    assertEquals(parsed.evaluate(parsedStack, variables), optimized.evaluate(optimizedStack, variables),
+                            input + " at x=" + x + ", y=" + y);
+                }
+            }
+        }
+    }
+}
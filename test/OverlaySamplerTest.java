@@ -0,0 +1,30 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class OverlaySamplerTest {
+    @Test
+    void resamplingAfterARedefinitionUsesTheNewValue() {
+        Workspace workspace = new Workspace(Calculator.AngleUnit.RADIANS);
+        workspace.define("a = 3");
+        OverlaySampler sampler = new OverlaySampler();
+        sampler.sample(PlotFunction.compileAll("x + a; x^2", workspace), -1, 1, 200, 100);
+        assertOffset(sampler, 3);
+
+        workspace.define("a = 100");
+        sampler.sample(PlotFunction.compileAll("x + a; x^2", workspace), -1, 1, 200, 100);
+        assertOffset(sampler, 100);
+    }
+
+    /**
+     * Checks that every point of the first curve lies on y = x + offset.
+     */
+    private static void assertOffset(OverlaySampler sampler, double offset) {
+        assertTrue(sampler.count(0) > 0);
+        for (int i = 0; i < sampler.count(0); i++) {
+            assertEquals(offset, sampler.ys(0)[i] - sampler.xs(0)[i], 1e-9);
+        }
+    }
+}
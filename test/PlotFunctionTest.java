@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import org.junit.jupiter.api.Test;
+
+class PlotFunctionTest {
+    private static double valueAt(String text, double x) {
+        return PlotFunction.compile(text).newEvaluator().applyAsDouble(x);
+    }
+
+    private static double valueAt(String text, Workspace workspace, double x) {
+        return PlotFunction.compile(text, workspace).newEvaluator().applyAsDouble(x);
+    }
+
+    @Test
+    void logIsNaturalAsInExp4j() {
+        assertNotNull(PlotFunction.compile("log(x)").compiled());
+        assertEquals(Math.log(3), valueAt("log(x)", 3));
+        // pi is not in the Calculator grammar, so this one is evaluated by exp4j.
+        assertEquals(Math.log(3), valueAt("log(x) + 0 * pi", 3), 1e-15);
+    }
+
+    @Test
+    void powerGroupsFromTheRightAsInExp4j() {
+        assertNotNull(PlotFunction.compile("2^x^2").compiled());
+        assertEquals(512, valueAt("2^x^2", 3));
+        assertEquals(512, valueAt("2^x^2 + 0 * pi", 3));
+        assertEquals(-9, valueAt("-x^2", 3));
+    }
+
+    @Test
+    void textUsingDefinitionsMeansWhatOtherGraphTextMeans() {
+        Workspace workspace = new Workspace(Calculator.AngleUnit.DEGREES);
+        workspace.define("a = 2");
+        assertEquals(Math.sin(90) + 2, valueAt("sin(x) + a", workspace, 90), 1e-15);
+        assertEquals(Math.log(3) + 2, valueAt("log(x) + a", workspace, 3));
+        assertEquals(512 + 2, valueAt("2^x^2 + a", workspace, 3));
+    }
+
+    @Test
+    void calledFunctionsKeepTheWorkspaceMeaning() {
+        Workspace workspace = new Workspace(Calculator.AngleUnit.DEGREES);
+        workspace.define("f(t) = sin(t)");
+        workspace.define("g(t) = log(t)");
+        assertEquals(1, valueAt("f(x)", workspace, 90), 1e-15);
+        assertEquals(1 + Math.sin(90), valueAt("f(x) + sin(x)", workspace, 90), 1e-15);
+        assertEquals(3, valueAt("g(x)", workspace, 1000), 1e-15);
+    }
+
+    @Test
+    void calculatorKeepsItsOwnMeaning() {
+        assertEquals(3, new Calculator("log(1000)").value(), 1e-15);
+        assertEquals(64, new Calculator("2^3^2").value());
+    }
+}
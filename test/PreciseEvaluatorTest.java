@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class PreciseEvaluatorTest {
+    private static final MathContext CONTEXT = new MathContext(34);
+
+    private static Number value(String expression) {
+        return new Calculator(expression).value(CONTEXT);
+    }
+
+    @Test
+    void literalsThatRoundToTheSameDoubleKeepTheirExactValues() {
+        assertEquals(0.1, 0.1000000000000000000001);
+        assertEquals(Rational.of(new BigDecimal("1e-22")), value("0.1000000000000000000001 - 0.1"));
+        assertEquals(Rational.of(new BigDecimal("-1e-22")), value("0.1 - 0.1000000000000000000001"));
+    }
+
+    @Test
+    void literalsAreExactDecimals() {
+        assertEquals(Rational.of(new BigDecimal("0.3")), value("0.1 + 0.2"));
+        assertEquals(Rational.of(new BigDecimal("-0.3")), value("0.1 * -3"));
+        assertEquals(Rational.of(BigInteger.ONE, BigInteger.valueOf(3)), value("1 / 3"));
+    }
+
+    @Test
+    void hugeLiteralsAreRoundedInsteadOfExpanded() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(new BigDecimal("1e99999999"), value("1e99999999"));
+            assertEquals(new BigDecimal("1e-99999999"), value("1e-99999999"));
+            assertEquals(0, new BigDecimal(-9999999).compareTo((BigDecimal) value("log(1e-9999999)")));
+            assertEquals(0, new BigDecimal("1e-200000").compareTo((BigDecimal) value("sqrt(1e-400000)")));
+        });
+    }
+
+    @Test
+    void stepsBeyondTheExactLimitsAreRounded() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(Rational.of(BigInteger.ONE.shiftLeft(1 << 20)), value("2^(2^20)"));
+            BigDecimal product = assertInstanceOf(BigDecimal.class, value("2^(2^23)*2^(2^23)"));
+            assertEquals(5050445, product.precision() - product.scale() - 1);
+            assertEquals(0, BigDecimal.ONE.compareTo((BigDecimal) value("1e-400000+1")));
+            assertEquals(Rational.of(new BigDecimal("1.0001")), value("1e-4+1"));
+        });
+    }
+
+    @Test
+    void hugeArgumentsOfFunctionsAreRefused() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(ArithmeticException.class, () -> value("sin(1e99999999)"));
+            assertThrows(ArithmeticException.class, () -> value("2^(1e99999999)"));
+        });
+    }
+}
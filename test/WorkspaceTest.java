@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class WorkspaceTest {
+    private final Workspace workspace = new Workspace(Calculator.AngleUnit.DEGREES);
+
+    @Test
+    void redefiningAVariableUpdatesItsDependents() {
+        workspace.define("a = 3");
+        workspace.define("b = a * 2");
+        workspace.define("c = b + 1");
+        workspace.define("d = 5");
+
+        Workspace.Change change = workspace.define("a = 10");
+
+        assertEquals(20, workspace.value("b"));
+        assertEquals(21, workspace.value("c"));
+        assertEquals(List.of("a", "b", "c"), List.copyOf(change.names()));
+        assertFalse(change.affects(Set.of("d")));
+    }
+
+    @Test
+    void anUnchangedValueStopsTheUpdate() {
+        workspace.define("a = 3");
+        workspace.define("b = a * 0");
+        workspace.define("c = b + 1");
+
+        Workspace.Change change = workspace.define("a = 4");
+
+        assertEquals(Set.of("a"), change.names());
+    }
+
+    @Test
+    void redefiningAFunctionRecompilesItsDependents() {
+        workspace.define("f(x) = x + 1");
+        workspace.define("g(x) = f(x) * 2");
+        workspace.define("b = g(1)");
+        assertEquals(4, workspace.value("b"));
+
+        Workspace.Change change = workspace.define("f(x) = x + 10");
+
+        assertEquals(22, workspace.value("b"));
+        assertTrue(change.names().containsAll(Set.of("f", "g", "b")));
+    }
+
+    @Test
+    void stagedDefinitionsChangeNothingUntilCommitted() {
+        workspace.define("a = 3");
+        Workspace.Formula formula = workspace.watch("a * 2");
+
+        Workspace.Staged staged = workspace.stage("a = 4");
+        assertEquals(3, workspace.value("a"));
+        assertEquals(6, formula.value());
+
+        Workspace.Change change = workspace.commit(staged);
+        assertEquals(4, workspace.value("a"));
+        assertEquals(8, formula.value());
+        assertEquals(List.of(formula), change.formulas());
+    }
+
+    @Test
+    void stagedWorkIsRejectedOnceTheDefinitionsChange() {
+        workspace.define("a = 3");
+        Workspace.Staged staged = workspace.stage("a = 4");
+        Workspace.Formula formula = workspace.formula("a + 1");
+        workspace.define("a = 5");
+
+        assertThrows(IllegalStateException.class, () -> workspace.commit(staged));
+        assertThrows(IllegalStateException.class, () -> workspace.watch(formula));
+        assertEquals(5, workspace.value("a"));
+        assertEquals(4, formula.value());
+    }
+
+    @Test
+    void watchedFormulasFollowRedefinitions() {
+        workspace.define("a = 3");
+        workspace.define("f(x) = x * a");
+        Workspace.Formula formula = workspace.watch("f(2) + a");
+        assertEquals(9, formula.value());
+
+        Workspace.Change change = workspace.define("a = 5");
+        assertEquals(15, formula.value());
+        assertEquals(List.of(formula), change.formulas());
+
+        workspace.define("f(x) = x - a");
+        assertEquals(2, formula.value());
+
+        workspace.unwatch(formula);
+        change = workspace.define("a = 7");
+        assertTrue(change.formulas().isEmpty());
+        assertEquals(2, formula.value());
+    }
+
+    @Test
+    void plotsUsingARedefinedNameAreAffected() {
+        workspace.define("a = 3");
+        workspace.define("f(x) = x^2 + a");
+        Set<String> plotted = workspace.names("f(x) * 2");
+        assertEquals(Set.of("f", "a"), plotted);
+
+        assertTrue(workspace.define("a = 4").affects(plotted));
+        assertEquals(2 * (9 + 4), PlotFunction.compile("f(x) * 2", workspace).newEvaluator().applyAsDouble(3));
+        assertFalse(workspace.define("b = 1").affects(plotted));
+    }
+
+    @Test
+    void circularDefinitionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> workspace.define("a = a + 1"));
+
+        workspace.define("a = 1");
+        workspace.define("b = a + 1");
+        workspace.define("c = b + 1");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> workspace.define("a = c"));
+        assertTrue(e.getMessage().contains("Circular"));
+        assertEquals(1, workspace.value("a"));
+        assertEquals(3, workspace.value("c"));
+
+        workspace.define("g(x) = x");
+        workspace.define("f(x) = g(x) + 1");
+        assertThrows(IllegalArgumentException.class, () -> workspace.define("g(x) = f(x)"));
+        assertEquals(3, workspace.evaluate("f(2)"));
+    }
+
+    @Test
+    void definitionsThatWouldBreakADependentAreRejected() {
+        workspace.define("f(x) = x + 1");
+        workspace.define("b = f(1)");
+        assertThrows(IllegalArgumentException.class, () -> workspace.define("f(x, y) = x + y"));
+        assertEquals(2, workspace.value("b"));
+    }
+
+    @Test
+    void inlinedCallsTakeNegatedArguments() {
+        workspace.define("f(x) = x^2 - x");
+        workspace.define("g(x, y) = x - y");
+        assertEquals(6, workspace.evaluate("f(-2)"));
+        assertEquals(-6, workspace.evaluate("-f(-2)"));
+        assertEquals(12, workspace.evaluate("f(-(1 + 2))"));
+        assertEquals(1, workspace.evaluate("g(-1, -2)"));
+        assertEquals(3, workspace.evaluate("g(1, -2)"));
+        assertEquals(12, PlotFunction.compile("f(-x)", workspace).newEvaluator().applyAsDouble(3));
+    }
+
+    @Test
+    void inlinedCallsTakeNestedArguments() {
+        workspace.define("f(x) = x^2 - x");
+        workspace.define("g(x, y) = x - y");
+        workspace.define("h(y, x) = g(x, y) * 10");
+        assertEquals(2, workspace.evaluate("f(f(2))"));
+        assertEquals(8, workspace.evaluate("g(f(3), -f(2))"));
+        assertEquals(-4, workspace.evaluate("g(g(1, 2), g(3, 0))"));
+        assertEquals(10, workspace.evaluate("h(1, 2)"));
+        assertEquals(-50, workspace.evaluate("h(f(3), 1)"));
+        assertEquals(30, workspace.evaluate("f((1 + 2) * 2) / (g(4, 3))"));
+        assertEquals(0.5, workspace.evaluate("sin(g(40, 10))"), 1e-15);
+    }
+
+    @Test
+    void definitionsTooLargeToInlineAreRejected() {
+        // fb(x) = fa(x) * fa(x) and so on, each twice the size of the one before.
+        workspace.define("fa(x) = sqrt(x)");
+        char last = 'a';
+        while (last < 'z') {
+            char next = (char) (last + 1);
+            try {
+                workspace.define("f" + next + "(x) = f" + last + "(x) * f" + last + "(x)");
+            }
+            catch (IllegalArgumentException e) {
+                break;
+            }
+            last = next;
+        }
+        assertTrue(last > 'j' && last < 'z');
+        assertEquals(65536, workspace.evaluate("ff(2)"), 1e-9);
+        String tooLarge = "f" + last + "(fj(2))";
+        assertThrows(IllegalArgumentException.class, () -> workspace.evaluate(tooLarge));
+    }
+}
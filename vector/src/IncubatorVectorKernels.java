@@ -0,0 +1,51 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The IncubatorVectorKernels class implements {@link VectorKernels} with
+ * {@code jdk.incubator.vector}, whose transcendental operations run several lanes at once
+ * through the JDK's vector math library. Rows past the last whole vector are done one at a
+ * time, with the functions of {@link CompiledExpression}.
+ */
+final class IncubatorVectorKernels implements VectorKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean applyFunction(int opcode, double[] values, int n) {
+        if (opcode != CompiledExpression.SIN && opcode != CompiledExpression.COS && opcode != CompiledExpression.TAN
+                && opcode != CompiledExpression.LOG && opcode != CompiledExpression.LN) {
+            return false;
+        }
+        int k = 0;
+        for (int bound = SPECIES.loopBound(n); k < bound; k += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, values, k);
+            // Each call names its operator, so the JIT sees a constant and intrinsifies it.
+            DoubleVector y = switch (opcode) {
+                case CompiledExpression.SIN -> x.lanewise(VectorOperators.SIN);
+                case CompiledExpression.COS -> x.lanewise(VectorOperators.COS);
+                case CompiledExpression.TAN -> x.lanewise(VectorOperators.TAN);
+                case CompiledExpression.LOG -> x.lanewise(VectorOperators.LOG10);
+                default -> x.lanewise(VectorOperators.LOG);
+            };
+            y.intoArray(values, k);
+        }
+        for (; k < n; k++) {
+            values[k] = CompiledExpression.applyFunction(opcode, values[k]);
+        }
+        return true;
+    }
+
+    @Override
+    public void power(double[] bases, double[] exponents, int n) {
+        int k = 0;
+        for (int bound = SPECIES.loopBound(n); k < bound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, bases, k)
+                    .lanewise(VectorOperators.POW, DoubleVector.fromArray(SPECIES, exponents, k))
+                    .intoArray(bases, k);
+        }
+        for (; k < n; k++) {
+            bases[k] = Math.pow(bases[k], exponents[k]);
+        }
+    }
+}